@@ -0,0 +1,330 @@
+// What is this file?
+// Multi-instance test (gradle clusterTest): starts two JVMs of the boot jar with the cluster profile on one
+// H2 database, served over TCP by this test so that either instance can be paused or killed, and checks:
+//   1. concurrent logins of one driver on both instances leave exactly one active session
+//   2. the instance that does not own the session answers reports with 421 and the owner's node ID
+//   3. the dispatcher pages of the other instance show the owner's events (read model refresh)
+//   4. the scheduled jobs take a cluster-wide lock
+//   5. an owner paused (SIGSTOP) past its lease refuses the driver's reports once it runs again, because
+//      the other instance took the session over meanwhile (no split brain). The scheduled lease renewal is
+//      switched off (renewed only by requests), so the resumed owner cannot learn of the takeover from it
+//      before the first report: the refusal must come from its own copy of the lease running out
+//   6. after the owner is killed, the other instance takes the session over once its lease expired
+// Why is this needed?
+// Leases, versions and job locks only matter with several JVMs on one database; the unit tests run one.
+// System properties (set by the clusterTest task): cluster.boot-jar, cluster.work-dir; optional
+// cluster.logins (20), cluster.lease-seconds (10), cluster.timeout-seconds (180).
+// Pausing uses kill -STOP/-CONT, so the test needs a Unix-like OS.
+
+package com.drivermonitoring.cluster;
+
+import org.h2.tools.Server;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class ClusterSessionOwnershipTest {
+
+    private static final String DRIVER_ID = "910001";
+    private static final String OWNER_HEADER = "X-Session-Owner";
+
+    private final Path bootJar = Paths.get(System.getProperty("cluster.boot-jar", "build/libs/drowsiness-detection-0.0.1-SNAPSHOT.jar"));
+    private final Path workDir = Paths.get(System.getProperty("cluster.work-dir", "build/cluster-test"));
+    private final int logins = Integer.getInteger("cluster.logins", 20);
+    private final int leaseSeconds = Integer.getInteger("cluster.lease-seconds", 10);
+    private final int timeoutSeconds = Integer.getInteger("cluster.timeout-seconds", 180);
+    private final String java = ProcessHandle.current().info().command().orElse("java");
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(1))
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+    private final List<Node> nodes = new ArrayList<>();
+    private Server databaseServer;
+    private String jdbcUrl;
+    // Owner of the driver's session after the logins, and the other instance
+    private Node owner;
+    private Node other;
+
+    @BeforeAll
+    void startInstances() throws Exception {
+        FileSystemUtils.deleteRecursively(workDir);
+        Files.createDirectories(workDir);
+        int databasePort = freePort();
+        databaseServer = Server.createTcpServer("-tcpPort", String.valueOf(databasePort), "-ifNotExists",
+                "-baseDir", workDir.resolve("db").toAbsolutePath().toString()).start();
+        jdbcUrl = "jdbc:h2:tcp://localhost:" + databasePort + "/cluster";
+
+        // One after the other: the first instance migrates the database, the second finds it current
+        for (String nodeId : List.of("node-1", "node-2")) {
+            Node node = start(nodeId);
+            nodes.add(node);
+            awaitStatus(node, HttpRequest.newBuilder(node.base.resolve("/driver/login")).GET().build(), 200);
+            System.out.printf("%s listening on port %d%n", nodeId, node.port);
+        }
+    }
+
+    @AfterAll
+    void stopInstances() throws Exception {
+        for (Node node : nodes) {
+            signal(node, "CONT");
+            node.process.destroy();
+            if (!node.process.waitFor(30, TimeUnit.SECONDS)) {
+                node.process.destroyForcibly().waitFor();
+            }
+        }
+        if (databaseServer != null) {
+            databaseServer.stop();
+        }
+        System.out.println("Instance logs: " + workDir.toAbsolutePath());
+    }
+
+    @Test
+    @Order(1)
+    void concurrentLoginsLeaveOneActiveSession() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(logins);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < logins; i++) {
+            Node node = nodes.get(i % nodes.size());
+            results.add(pool.submit(() -> {
+                go.await();
+                return http.send(HttpRequest.newBuilder(node.base.resolve("/driver/start"))
+                        .header("Content-Type", "application/x-www-form-urlencoded")
+                        .POST(HttpRequest.BodyPublishers.ofString("driverName=Cluster+Test&driverId=" + DRIVER_ID))
+                        .build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+            }));
+        }
+        go.countDown();
+        for (Future<Integer> result : results) {
+            result.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertEquals("1", queryString("SELECT COUNT(*) FROM driver_sessions WHERE driver_id = ? AND active = TRUE", DRIVER_ID));
+        String ownerId = currentOwner();
+        owner = nodes.stream().filter(node -> node.id.equals(ownerId)).findFirst().orElse(null);
+        assertNotNull(owner, "active session owned by an instance (owner " + ownerId + ")");
+        other = owner == nodes.get(0) ? nodes.get(1) : nodes.get(0);
+    }
+
+    @Test
+    @Order(2)
+    void otherInstanceRedirectsReportsToTheOwner() throws Exception {
+        assertEquals(200, postEvent(owner).statusCode(), "owner accepts the report");
+        HttpResponse<String> misdirected = postEvent(other);
+        assertEquals(421, misdirected.statusCode());
+        assertEquals(owner.id, misdirected.headers().firstValue(OWNER_HEADER).orElse(null));
+    }
+
+    @Test
+    @Order(3)
+    void dispatcherPageOfTheOtherInstanceShowsTheOwnersReports() throws Exception {
+        assertTrue(awaitPageContains(other, "/dispatcher/driver/" + DRIVER_ID, "<td>DROWSY</td>", 20),
+                "dispatcher page of " + other.id + " shows the report stored by " + owner.id);
+    }
+
+    @Test
+    @Order(4)
+    void scheduledJobTakesAClusterWideLock() throws Exception {
+        // The rollup catch-up runs every second on both instances: its lock row names the holder
+        String holder = awaitLockHolder("rollup-catch-up", null);
+        assertTrue(holder != null && nodes.stream().anyMatch(node -> node.id.equals(holder)), "lock holder " + holder);
+    }
+
+    @Test
+    @Order(5)
+    void pausedOwnerRefusesReportsAfterATakeover() throws Exception {
+        Node paused = owner;
+        signal(paused, "STOP");
+        try {
+            // The other instance gets the session once the paused owner's lease expired in the database
+            assertEquals(200, awaitAccepted(other), other.id + " takes the session over");
+            assertEquals(other.id, currentOwner());
+        } finally {
+            signal(paused, "CONT");
+        }
+        // First request after the pause: the old owner's local lease ran out, it must ask the database
+        HttpResponse<String> stale = postEvent(paused);
+        assertEquals(421, stale.statusCode(), "resumed owner " + paused.id + " refuses the report");
+        assertEquals(other.id, stale.headers().firstValue(OWNER_HEADER).orElse(null));
+        owner = other;
+        other = paused;
+    }
+
+    @Test
+    @Order(6)
+    void survivorTakesOverAfterTheOwnerIsKilled() throws Exception {
+        owner.process.destroyForcibly().waitFor();
+        assertEquals(200, awaitAccepted(other), other.id + " takes the session over");
+        assertEquals(other.id, currentOwner());
+        assertEquals(other.id, awaitLockHolder("rollup-catch-up", other.id), "rollup catch-up lock moves to the survivor");
+    }
+
+    // Posts reports to the instance until one is accepted (at most three leases); returns the last status
+    private int awaitAccepted(Node node) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(leaseSeconds * 3L + 10);
+        int status = 0;
+        while (System.nanoTime() < deadline) {
+            status = postEvent(node).statusCode();
+            if (status == 200) {
+                break;
+            }
+            Thread.sleep(500);
+        }
+        return status;
+    }
+
+    private HttpResponse<String> postEvent(Node node) throws Exception {
+        String event = String.format(Locale.ROOT,
+                "{\"driverId\":\"%s\",\"state\":\"DROWSY\",\"duration\":1.0,\"clientEventId\":\"%s\"," +
+                "\"metadata\":{\"earValue\":0.17,\"timestamp\":%d}}",
+                DRIVER_ID, UUID.randomUUID(), System.currentTimeMillis());
+        return http.send(HttpRequest.newBuilder(node.base.resolve("/api/detection-event"))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.ofString(event))
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private boolean awaitPageContains(Node node, String path, String text, int timeoutSeconds) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        while (System.nanoTime() < deadline) {
+            HttpResponse<String> page = http.send(HttpRequest.newBuilder(node.base.resolve(path)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            if (page.statusCode() == 200 && page.body().contains(text)) {
+                return true;
+            }
+            Thread.sleep(500);
+        }
+        return false;
+    }
+
+    // Waits for the lock row of a job (held by the expected instance, if given)
+    private String awaitLockHolder(String jobName, String expected) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        String holder = null;
+        while (System.nanoTime() < deadline) {
+            holder = queryString("SELECT locked_by FROM job_locks WHERE job_name = ?", jobName);
+            if (holder != null && (expected == null || expected.equals(holder))) {
+                return holder;
+            }
+            Thread.sleep(500);
+        }
+        return holder;
+    }
+
+    private String currentOwner() throws Exception {
+        return queryString("SELECT owner_node FROM driver_sessions WHERE driver_id = ? AND active = TRUE", DRIVER_ID);
+    }
+
+    private Node start(String nodeId) throws IOException {
+        Path dir = workDir.resolve(nodeId);
+        Files.createDirectories(dir);
+        int port = freePort();
+        List<String> command = new ArrayList<>(List.of(java, "-jar", bootJar.toAbsolutePath().toString(),
+                "--spring.profiles.active=cluster",
+                "--server.port=" + port,
+                "--cluster.node-id=" + nodeId,
+                "--cluster.lease-seconds=" + leaseSeconds,
+                "--cluster.lease-renew-ms=3600000",
+                "--cluster.lease-safety-margin-ms=2000",
+                "--rollup.catch-up.delay-ms=1000",
+                "--rollup.catch-up.initial-delay-ms=0",
+                "--spring.datasource.url=" + jdbcUrl,
+                "--archive.directory=" + dir.resolve("archive").toAbsolutePath(),
+                "--journal.directory=" + dir.resolve("journal").toAbsolutePath(),
+                "--diagnostics.jfr.directory=" + dir.resolve("jfr").toAbsolutePath()));
+        Process process = new ProcessBuilder(command)
+                .directory(dir.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(dir.resolve("instance.log").toFile())
+                .start();
+        return new Node(nodeId, port, URI.create("http://localhost:" + port), process);
+    }
+
+    // Retries until the request is answered with the status: connection refused while the instance boots
+    private void awaitStatus(Node node, HttpRequest request, int status) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        while (true) {
+            if (!node.process.isAlive()) {
+                throw new IllegalStateException(node.id + " exited with code " + node.process.exitValue() + " during startup");
+            }
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException(node.id + " did not answer " + request.uri() + " within " + timeoutSeconds + " s");
+            }
+            try {
+                if (http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == status) {
+                    return;
+                }
+            } catch (ConnectException e) {
+                // Not listening yet
+            } catch (IOException e) {
+                // Connection closed while the instance starts
+            }
+            Thread.sleep(100);
+        }
+    }
+
+    // Sends a signal to the instance (STOP pauses every thread of the JVM, CONT resumes it)
+    private static void signal(Node node, String signal) throws Exception {
+        if (node.process.isAlive()) {
+            new ProcessBuilder("kill", "-" + signal, String.valueOf(node.process.pid())).inheritIO().start().waitFor();
+        }
+    }
+
+    private String queryString(String sql, String parameter) throws Exception {
+        try (Connection connection = DriverManager.getConnection(jdbcUrl, "sa", "password");
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, parameter);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getString(1) : null;
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    record Node(String id, int port, URI base, Process process) {
+    }
+}
@@ -0,0 +1,70 @@
+// What is this file?
+// Synthetic detection data shared by the JMH benchmarks: client metadata, metadata JSON and event lists.
+// Why is this needed?
+// The benchmarks run without a database; fixed seeds keep the inputs identical between runs and releases.
+
+package com.drivermonitoring.benchmark;
+
+import com.drivermonitoring.model.Event;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+final class BenchmarkData {
+
+    static final String DRIVER_ID = "100001";
+    static final LocalDateTime NOW = LocalDateTime.of(2025, 3, 14, 15, 0);
+
+    private static final String[] TYPES = {"DROWSY", "DISTRACTED", "DROWSY", "HIGH_BLINK_RATE"};
+    private static final String[] DIRECTIONS = {"center", "left", "right", "down"};
+
+    private BenchmarkData() {
+    }
+
+    // Metadata as sent by the monitoring page with a detection event
+    static Map<String, Object> clientMetadata(Random random) {
+        Map<String, Object> metadata = new HashMap<>();
+        float left = 0.15f + random.nextFloat() * 0.2f;
+        float right = 0.15f + random.nextFloat() * 0.2f;
+        metadata.put("earValue", (left + right) / 2);
+        metadata.put("leftEar", left);
+        metadata.put("rightEar", right);
+        metadata.put("headDirection", DIRECTIONS[random.nextInt(DIRECTIONS.length)]);
+        metadata.put("faceDetected", true);
+        metadata.put("featureSource", "MediaPipe");
+        metadata.put("blinkRate", 10 + random.nextInt(25));
+        metadata.put("yaw", random.nextDouble() * 40 - 20);
+        metadata.put("pitch", random.nextDouble() * 30 - 15);
+        metadata.put("eyesClosedSeconds", random.nextDouble() * 3);
+        return metadata;
+    }
+
+    // Metadata JSON as stored in driver_events.metadata
+    static String metadataJson(Random random) {
+        return String.format(Locale.ROOT,
+                "{\"blinkRate\":%d,\"yaw\":%.3f,\"pitch\":%.3f,\"eyesClosedSeconds\":%.2f,"
+                        + "\"timestamp\":%d,\"sessionId\":%d,\"eventType\":\"DROWSY\",\"source\":\"MediaPipe\"}",
+                10 + random.nextInt(25), random.nextDouble() * 40 - 20, random.nextDouble() * 30 - 15,
+                random.nextDouble() * 3, 1_700_000_000_000L + random.nextInt(1_000_000), 1 + random.nextInt(50));
+    }
+
+    // Stored events of one driver spread over the last 30 minutes, 500 events per session
+    static List<Event> events(int count, long seed) {
+        Random random = new Random(seed);
+        List<Event> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Event event = new Event(1L + i / 500, DRIVER_ID, TYPES[random.nextInt(TYPES.length)],
+                    0.5f + random.nextFloat() * 4f, metadataJson(random));
+            event.setEventId((long) i + 1);
+            event.setStartTime(NOW.minusSeconds(1800L * (count - i) / count));
+            event.setEarValue(0.15f + random.nextFloat() * 0.2f);
+            events.add(event);
+        }
+        return events;
+    }
+}
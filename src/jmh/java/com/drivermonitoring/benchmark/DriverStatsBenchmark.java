@@ -0,0 +1,93 @@
+// What is this file?
+// JMH benchmark of the aggregation behind DispatcherController.driverStats for a date range:
+// latest events of the range, summary with blink statistics, session count and the page percentages.
+// Why is this needed?
+// The date-range statistics page is the one dispatcher view still computed from event history,
+// so its cost grows with the number of events in the range.
+
+package com.drivermonitoring.benchmark;
+
+import com.drivermonitoring.controller.DispatcherController;
+import com.drivermonitoring.model.Event;
+import com.drivermonitoring.model.EventSummary;
+import com.drivermonitoring.service.DispatcherReadModel;
+import com.drivermonitoring.service.EventLoggingService;
+import com.drivermonitoring.service.EventRollupService;
+import com.drivermonitoring.service.SessionService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ui.ExtendedModelMap;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DriverStatsBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int events;
+
+    private final DispatcherController controller = new DispatcherController();
+    private final LocalDate day = BenchmarkData.NOW.toLocalDate();
+
+    @Setup(Level.Trial)
+    public void setUp() throws ReflectiveOperationException {
+        List<Event> eventList = BenchmarkData.events(events, 42);
+        // Latest events of the range come from memory instead of the database and the archive
+        EventLoggingService history = (EventLoggingService) Proxy.newProxyInstance(
+                EventLoggingService.class.getClassLoader(), new Class<?>[]{EventLoggingService.class},
+                (proxy, method, args) -> "getEventsForDriver".equals(method.getName())
+                        ? eventList.subList(0, Math.min((Integer) args[3], eventList.size())) : null);
+        // Session count of the range, as driver_sessions returns it
+        SessionService sessions = (SessionService) Proxy.newProxyInstance(
+                SessionService.class.getClassLoader(), new Class<?>[]{SessionService.class},
+                (proxy, method, args) -> "countSessionsForDriver".equals(method.getName()) ? 1L : null);
+        // Summary of the same events, as EventRollupService builds it for the raw edges of a range
+        EventRollupService rollups = new EventRollupService() {
+            @Override
+            public EventSummary summarize(String driverId, LocalDateTime from, LocalDateTime to) {
+                EventSummary summary = new EventSummary();
+                for (Event event : eventList) {
+                    summary.addEvent(event, extractBlinkRate(event.getMetadata()));
+                }
+                return summary;
+            }
+        };
+        inject("eventLoggingService", history);
+        inject("eventRollupService", rollups);
+        inject("sessionService", sessions);
+        inject("dispatcherReadModel", new DispatcherReadModel());
+    }
+
+    private void inject(String fieldName, Object value) throws ReflectiveOperationException {
+        Field field = DispatcherController.class.getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(controller, value);
+    }
+
+    @Benchmark
+    public ExtendedModelMap driverStatsForRange() {
+        ExtendedModelMap model = new ExtendedModelMap();
+        controller.driverStats(BenchmarkData.DRIVER_ID, day, day, model);
+        return model;
+    }
+}
@@ -0,0 +1,58 @@
+// What is this file?
+// JMH benchmark of the metadata handling of EventLoggingServiceImpl.logEventWithMetadata:
+// splitting the client metadata into event columns and serialising the rest to JSON.
+// Why is this needed?
+// It runs once per detection report, before the event reaches the coalescer or the database.
+
+package com.drivermonitoring.benchmark;
+
+import com.drivermonitoring.model.DriverState;
+import com.drivermonitoring.model.Event;
+import com.drivermonitoring.service.EventLoggingServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventMetadataBenchmark {
+
+    private static final int INPUTS = 256;
+
+    // Only buildEvent is used: no repositories or other collaborators are needed
+    private final EventLoggingServiceImpl service = new EventLoggingServiceImpl();
+    private Map<String, Object>[] metadata;
+    private int next;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        Random random = new Random(42);
+        metadata = new Map[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            metadata[i] = BenchmarkData.clientMetadata(random);
+        }
+    }
+
+    @Benchmark
+    public Event buildEventFromMetadata() {
+        next = (next + 1) & (INPUTS - 1);
+        return service.buildEvent(7L, BenchmarkData.DRIVER_ID, DriverState.DROWSY, 1.5f, metadata[next]);
+    }
+}
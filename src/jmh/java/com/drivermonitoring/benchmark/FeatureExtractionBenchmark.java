@@ -0,0 +1,61 @@
+// What is this file?
+// JMH benchmark of driver feature extraction over synthetic event lists of growing size.
+// Why is this needed?
+// The prediction refresher extracts features for every active driver; the size parameter shows
+// how the summary part scales with the number of raw events in the period.
+
+package com.drivermonitoring.benchmark;
+
+import com.drivermonitoring.model.Event;
+import com.drivermonitoring.model.EventSummary;
+import com.drivermonitoring.service.DriverFeatureExtractor;
+import com.drivermonitoring.service.EventRollupService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FeatureExtractionBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    private int events;
+
+    private final DriverFeatureExtractor featureExtractor = new DriverFeatureExtractor();
+    private final LocalDateTime sessionStart = BenchmarkData.NOW.minusMinutes(95);
+    private List<Event> eventList;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        eventList = BenchmarkData.events(events, 42);
+    }
+
+    // Same work as DriverFeatureExtractor.extractFeatures when the period is read from raw events:
+    // summary of the events (blinkRate from the metadata JSON), then the feature vector
+    @Benchmark
+    public Map<String, Float> extractFeatures() {
+        EventSummary summary = new EventSummary();
+        for (Event event : eventList) {
+            summary.addEvent(event, EventRollupService.extractBlinkRate(event.getMetadata()));
+        }
+        return featureExtractor.buildFeatures(summary, sessionStart, BenchmarkData.NOW, 30);
+    }
+}
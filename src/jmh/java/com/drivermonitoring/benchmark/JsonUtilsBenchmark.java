@@ -0,0 +1,63 @@
+// What is this file?
+// JMH benchmarks of JsonUtils: parsing stored metadata JSON and reading one typed value from it.
+// Why is this needed?
+// Every rollup update and raw-edge summary reads blinkRate from the metadata JSON of each event.
+
+package com.drivermonitoring.benchmark;
+
+import com.drivermonitoring.util.JsonUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonUtilsBenchmark {
+
+    private static final int INPUTS = 256;
+
+    private String[] json;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        json = new String[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            json[i] = BenchmarkData.metadataJson(random);
+        }
+    }
+
+    // Rotating inputs keep the JIT from specialising on one string
+    private String nextJson() {
+        next = (next + 1) & (INPUTS - 1);
+        return json[next];
+    }
+
+    @Benchmark
+    public Map<String, Object> parseJson() {
+        return JsonUtils.parseJson(nextJson());
+    }
+
+    @Benchmark
+    public Optional<Double> getTypedValueFromJson() {
+        return JsonUtils.getTypedValueFromJson(nextJson(), "blinkRate", Double.class);
+    }
+}
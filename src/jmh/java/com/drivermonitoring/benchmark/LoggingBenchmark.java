@@ -0,0 +1,181 @@
+// What is this file?
+// JMH benchmark of the per-event ingest log line with four request threads, in the setups of
+// logback-spring.xml and before it:
+//   sync           pattern encoder, synchronous appender (the old setup)
+//   async          pattern encoder behind the bounded AsyncAppender (never blocks)
+//   async-json     ECS JSON encoder behind the AsyncAppender (prod profile)
+//   sampled-async  SampledLogger, 5 messages per driver and minute, in front of the async appender
+// Lines go to a file, so every write is a real system call as with a console piped to a collector.
+// At the end of each trial the number of lines actually written is printed: async setups drop INFO
+// lines when the queue is full instead of slowing the request threads down.
+// Why is this needed?
+// It shows what logging costs the ingest threads, and how much of it each setup removes.
+
+package com.drivermonitoring.benchmark;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.OutputStreamAppender;
+import ch.qos.logback.core.encoder.Encoder;
+import com.drivermonitoring.util.SampledLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.logging.logback.StructuredLogEncoder;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class LoggingBenchmark {
+
+    private static final int DRIVERS = 200;
+
+    @Param({"sync", "async", "async-json", "sampled-async"})
+    public String setup;
+
+    private LoggerContext context;
+    private Logger logger;
+    private SampledLogger sampledLogger;
+    private String[] driverIds;
+    private Path file;
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder calls = new LongAdder();
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        driverIds = new String[DRIVERS];
+        for (int i = 0; i < DRIVERS; i++) {
+            driverIds[i] = String.format("%06d", 100000 + i);
+        }
+        file = Files.createTempFile("logging-benchmark", ".log");
+        // A context of its own, so the benchmark JVM's logback.xml does not interfere
+        context = new LoggerContext();
+        context.setName("logging-benchmark");
+        context.setMDCAdapter(new LogbackMDCAdapter());
+        // The structured encoder reads the service name and other fields from the Spring environment
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("benchmark",
+                Map.of("spring.application.name", "drowsiness-detection")));
+        context.putObject(Environment.class.getName(), environment);
+
+        OutputStreamAppender<ILoggingEvent> fileAppender = new OutputStreamAppender<>();
+        fileAppender.setContext(context);
+        fileAppender.setEncoder(setup.equals("async-json") ? jsonEncoder() : patternEncoder());
+        fileAppender.setOutputStream(new LineCountingStream(new FileOutputStream(file.toFile())));
+        fileAppender.start();
+
+        Appender<ILoggingEvent> appender = fileAppender;
+        if (!setup.equals("sync")) {
+            // Same settings as logback-spring.xml
+            AsyncAppender async = new AsyncAppender();
+            async.setContext(context);
+            async.setQueueSize(8192);
+            async.setNeverBlock(true);
+            async.setIncludeCallerData(false);
+            async.addAppender(fileAppender);
+            async.start();
+            appender = async;
+        }
+        logger = context.getLogger("com.drivermonitoring.service.EventLoggingServiceImpl");
+        logger.setAdditive(false);
+        logger.setLevel(ch.qos.logback.classic.Level.INFO);
+        logger.addAppender(appender);
+        sampledLogger = new SampledLogger(logger, 5, Duration.ofMinutes(1));
+        lines.reset();
+        calls.reset();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.stop();
+        System.out.printf("%n[%s] %d log calls, %d lines written%n", setup, calls.sum(), lines.sum());
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void logEvent(ThreadState thread) {
+        String driverId = driverIds[thread.next];
+        thread.next = (thread.next + 1) % DRIVERS;
+        calls.increment();
+        if (setup.equals("sampled-async")) {
+            sampledLogger.info(driverId, "Logged {} event with metadata from {} for driver {}, duration: {}s, session: {}",
+                    "DROWSY", "MediaPipe", driverId, 1.5f, 42L);
+        } else {
+            logger.info("Logged {} event with metadata from {} for driver {}, duration: {}s, session: {}",
+                    "DROWSY", "MediaPipe", driverId, 1.5f, 42L);
+        }
+    }
+
+    // Spring Boot's default console pattern without colours
+    private Encoder<ILoggingEvent> patternEncoder() {
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d{yyyy-MM-dd'T'HH:mm:ss.SSSXXX} %5p 1234 --- [drowsiness-detection] [%15.15t] %-40.40logger{39} : %m%n");
+        encoder.start();
+        return encoder;
+    }
+
+    private Encoder<ILoggingEvent> jsonEncoder() {
+        StructuredLogEncoder encoder = new StructuredLogEncoder();
+        encoder.setContext(context);
+        encoder.setFormat("ecs");
+        encoder.start();
+        return encoder;
+    }
+
+    // Counts written lines; the appender writes whole lines
+    private class LineCountingStream extends FilterOutputStream {
+        LineCountingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            for (int i = offset; i < offset + length; i++) {
+                if (bytes[i] == '\n') {
+                    lines.increment();
+                }
+            }
+            out.write(bytes, offset, length);
+        }
+    }
+}
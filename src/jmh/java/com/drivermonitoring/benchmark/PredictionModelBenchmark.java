@@ -0,0 +1,59 @@
+// What is this file?
+// JMH benchmark of MockAIFatiguePredictionModel.predict on feature vectors of all three risk levels.
+// Why is this needed?
+// It is the baseline a trained model replacing the rule-based one has to be compared against.
+
+package com.drivermonitoring.benchmark;
+
+import com.drivermonitoring.ai.FatiguePrediction;
+import com.drivermonitoring.ai.MockAIFatiguePredictionModel;
+import com.drivermonitoring.model.EventSummary;
+import com.drivermonitoring.service.DriverFeatureExtractor;
+import com.drivermonitoring.service.EventRollupService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PredictionModelBenchmark {
+
+    private final MockAIFatiguePredictionModel model = new MockAIFatiguePredictionModel();
+    private final List<Map<String, Float>> features = new ArrayList<>();
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        DriverFeatureExtractor extractor = new DriverFeatureExtractor();
+        // Event lists of different density give LOW, MEDIUM and HIGH predictions
+        for (int count : new int[]{5, 60, 400}) {
+            EventSummary summary = new EventSummary();
+            BenchmarkData.events(count, count).forEach(event ->
+                    summary.addEvent(event, EventRollupService.extractBlinkRate(event.getMetadata())));
+            features.add(extractor.buildFeatures(summary, BenchmarkData.NOW.minusMinutes(95), BenchmarkData.NOW, 30));
+        }
+    }
+
+    @Benchmark
+    public FatiguePrediction predict() {
+        next = (next + 1) % features.size();
+        return model.predict(features.get(next));
+    }
+}
@@ -0,0 +1,376 @@
+// What is this file?
+// Load generator simulating a fleet of drivers against a running instance.
+// Run it with: gradle loadTest -Pbase=http://localhost:8080 -Pdrivers=25,50,100,200 -PstageSeconds=60
+// Each simulated driver logs in through /driver/start, alternates normal driving with DROWSY/DISTRACTED
+// episodes reported to /api/detection-event the way the monitoring page does (growing duration on every
+// frame, NORMAL when the episode ends), polls /api/driver/{id}/prediction and sends a heartbeat every 15 s.
+// The fleet grows stage by stage; every stage prints throughput and latency percentiles per endpoint.
+// Why is this needed?
+// It finds the saturation point of the stack before a rollout. Requests are sent on a fixed schedule
+// (open loop, like independent browsers) and latency is measured from the time a request was due, not from
+// when it was actually sent, so a stalled server shows up in the percentiles (coordinated omission correction).
+// Other options (--name=value after -PloadArgs=...):
+//   --report-hz=10        reports per second during an episode (frames the client reports)
+//   --drowsy-share=0.6    share of episodes that are DROWSY (the rest are DISTRACTED)
+//   --episode-mean-s=4    mean episode length, exponential
+//   --gap-mean-s=20       mean normal driving time between episodes, exponential
+//   --poll-s=15           prediction poll and heartbeat period
+//   --slo-ms=250          p99 latency above which a stage counts as saturated
+//   --report-dir=...      where the .hgrm percentile distributions are written
+// Simulated sessions are not ended: the server closes them after the heartbeat timeout.
+
+package com.drivermonitoring.benchmark;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class FleetLoadGenerator {
+
+    // Latencies are recorded in microseconds, up to one minute
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    enum Endpoint { LOGIN, EVENT, PREDICTION, HEARTBEAT }
+
+    private final Options options;
+    private final HttpClient http;
+    private final ScheduledExecutorService scheduler;
+    // Corrected: from the time the request was due; raw: from the time it was sent
+    private final Map<Endpoint, Recorder> corrected = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, Recorder> raw = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, LongAdder> sent = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, LongAdder> errors = new EnumMap<>(Endpoint.class);
+    private final List<SimulatedDriver> drivers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    FleetLoadGenerator(Options options) {
+        this.options = options;
+        this.http = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+        this.scheduler = Executors.newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        for (Endpoint endpoint : Endpoint.values()) {
+            corrected.put(endpoint, new Recorder(MAX_LATENCY_MICROS, 3));
+            raw.put(endpoint, new Recorder(MAX_LATENCY_MICROS, 3));
+            sent.put(endpoint, new LongAdder());
+            errors.put(endpoint, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        System.out.printf(Locale.ROOT, "Load test against %s: stages of %s drivers, %d s each%n",
+                options.base, options.driverStages, options.stageSeconds);
+        new FleetLoadGenerator(options).run();
+    }
+
+    void run() throws InterruptedException, IOException {
+        Files.createDirectories(options.reportDir);
+        List<StageResult> results = new ArrayList<>();
+        try {
+            for (int target : options.driverStages) {
+                while (drivers.size() < target) {
+                    SimulatedDriver driver = new SimulatedDriver(drivers.size());
+                    drivers.add(driver);
+                    // Logins of a new stage are spread over its first second
+                    driver.start(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(driver.random.nextInt(1000)));
+                }
+                // Interval histograms restart with every stage
+                resetIntervals();
+                long stageStart = System.nanoTime();
+                Thread.sleep(TimeUnit.SECONDS.toMillis(options.stageSeconds));
+                double seconds = (System.nanoTime() - stageStart) / 1e9;
+                StageResult result = collectStage(target, seconds);
+                results.add(result);
+                result.print(System.out, options.sloMillis);
+            }
+        } finally {
+            running = false;
+            scheduler.shutdownNow();
+        }
+        printSummary(results);
+    }
+
+    private void resetIntervals() {
+        corrected.values().forEach(Recorder::reset);
+        raw.values().forEach(Recorder::reset);
+        sent.values().forEach(LongAdder::reset);
+        errors.values().forEach(LongAdder::reset);
+    }
+
+    private StageResult collectStage(int driverCount, double seconds) throws IOException {
+        StageResult result = new StageResult(driverCount, seconds);
+        for (Endpoint endpoint : Endpoint.values()) {
+            Histogram correctedHistogram = corrected.get(endpoint).getIntervalHistogram();
+            Histogram rawHistogram = raw.get(endpoint).getIntervalHistogram();
+            result.endpoints.put(endpoint, new EndpointResult(correctedHistogram, rawHistogram,
+                    sent.get(endpoint).sum(), errors.get(endpoint).sum()));
+            if (correctedHistogram.getTotalCount() > 0) {
+                Path file = options.reportDir.resolve(String.format(Locale.ROOT, "stage-%04d-%s.hgrm",
+                        driverCount, endpoint.name().toLowerCase()));
+                try (PrintStream out = new PrintStream(Files.newOutputStream(file), false, StandardCharsets.UTF_8)) {
+                    correctedHistogram.outputPercentileDistribution(out, 1000.0); // in milliseconds
+                }
+            }
+        }
+        return result;
+    }
+
+    private void printSummary(List<StageResult> results) {
+        System.out.println();
+        System.out.println("drivers  events/s  event p99 ms  event p99 raw ms  prediction p99 ms  errors  saturated");
+        StageResult firstSaturated = null;
+        for (StageResult result : results) {
+            EndpointResult event = result.endpoints.get(Endpoint.EVENT);
+            EndpointResult prediction = result.endpoints.get(Endpoint.PREDICTION);
+            boolean saturated = result.isSaturated(options.sloMillis);
+            if (saturated && firstSaturated == null) {
+                firstSaturated = result;
+            }
+            System.out.printf(Locale.ROOT, "%7d  %8.1f  %12.1f  %16.1f  %17.1f  %6d  %s%n",
+                    result.drivers, event.completed() / result.seconds, event.percentileMillis(99),
+                    event.rawPercentileMillis(99), prediction.percentileMillis(99), result.totalErrors(),
+                    saturated ? "yes" : "no");
+        }
+        if (firstSaturated != null) {
+            System.out.printf(Locale.ROOT, "Saturation reached at %d drivers (p99 above %d ms, errors or throughput below offered load)%n",
+                    firstSaturated.drivers, options.sloMillis);
+        } else {
+            System.out.println("No stage saturated: add stages with more drivers");
+        }
+        System.out.println("Percentile distributions (coordinated omission corrected): " + options.reportDir.toAbsolutePath());
+    }
+
+    // Sends a request that was due at dueNanos and records its latency when the response arrives
+    private void send(Endpoint endpoint, HttpRequest request, long dueNanos, Runnable onSuccess) {
+        if (!running) {
+            return;
+        }
+        sent.get(endpoint).increment();
+        long sentNanos = System.nanoTime();
+        http.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+            long now = System.nanoTime();
+            corrected.get(endpoint).recordValue(Math.min(MAX_LATENCY_MICROS, (now - dueNanos) / 1000));
+            raw.get(endpoint).recordValue(Math.min(MAX_LATENCY_MICROS, (now - sentNanos) / 1000));
+            // 409 is the dedupe answer to a retry in flight, not a server error
+            if (error != null || (response.statusCode() >= 400 && response.statusCode() != 409)) {
+                errors.get(endpoint).increment();
+            } else if (onSuccess != null) {
+                onSuccess.run();
+            }
+        });
+    }
+
+    // Runs the task at dueNanos (or right away if that time has passed)
+    private void at(long dueNanos, Runnable task) {
+        if (!running) {
+            return;
+        }
+        try {
+            scheduler.schedule(task, Math.max(0, dueNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // The run has ended while a response was in flight
+        }
+    }
+
+    private class SimulatedDriver {
+        final String driverId;
+        final Random random;
+
+        SimulatedDriver(int index) {
+            // 6-digit IDs starting with 9 stay apart from real drivers
+            this.driverId = String.format(Locale.ROOT, "9%05d", index);
+            this.random = new Random(index);
+        }
+
+        void start(long dueNanos) {
+            String form = "driverName=" + URLEncoder.encode("Load " + driverId, StandardCharsets.UTF_8) + "&driverId=" + driverId;
+            HttpRequest login = HttpRequest.newBuilder(options.base.resolve("/driver/start"))
+                    .header("Content-Type", "application/x-www-form-urlencoded")
+                    .timeout(Duration.ofSeconds(30))
+                    .POST(HttpRequest.BodyPublishers.ofString(form))
+                    .build();
+            at(dueNanos, () -> send(Endpoint.LOGIN, login, dueNanos, () -> {
+                long now = System.nanoTime();
+                schedulePoll(now + TimeUnit.MILLISECONDS.toNanos(random.nextInt(options.pollSeconds * 1000)));
+                scheduleHeartbeat(now + TimeUnit.MILLISECONDS.toNanos(random.nextInt(options.pollSeconds * 1000)));
+                scheduleEpisode(now + exponentialNanos(options.gapMeanSeconds));
+            }));
+        }
+
+        // Polls follow their own fixed schedule, whatever the server's response time
+        void schedulePoll(long dueNanos) {
+            at(dueNanos, () -> {
+                HttpRequest poll = HttpRequest.newBuilder(options.base.resolve("/api/driver/" + driverId + "/prediction?period=1"))
+                        .timeout(Duration.ofSeconds(30))
+                        .GET()
+                        .build();
+                send(Endpoint.PREDICTION, poll, dueNanos, null);
+                schedulePoll(dueNanos + TimeUnit.SECONDS.toNanos(options.pollSeconds));
+            });
+        }
+
+        void scheduleHeartbeat(long dueNanos) {
+            at(dueNanos, () -> {
+                HttpRequest heartbeat = HttpRequest.newBuilder(options.base.resolve("/api/driver/" + driverId + "/heartbeat"))
+                        .timeout(Duration.ofSeconds(30))
+                        .POST(HttpRequest.BodyPublishers.noBody())
+                        .build();
+                send(Endpoint.HEARTBEAT, heartbeat, dueNanos, null);
+                scheduleHeartbeat(dueNanos + TimeUnit.SECONDS.toNanos(options.pollSeconds));
+            });
+        }
+
+        // One episode: a report per frame with the growing duration, then NORMAL, then normal driving
+        void scheduleEpisode(long startNanos) {
+            String state = random.nextDouble() < options.drowsyShare ? "DROWSY" : "DISTRACTED";
+            long lengthNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(200), exponentialNanos(options.episodeMeanSeconds));
+            long frameNanos = TimeUnit.SECONDS.toNanos(1) / options.reportHz;
+            long reports = Math.max(1, lengthNanos / frameNanos);
+            for (long i = 1; i <= reports; i++) {
+                long dueNanos = startNanos + i * frameNanos;
+                float duration = (i * frameNanos) / 1e9f;
+                at(dueNanos, () -> send(Endpoint.EVENT, eventRequest(state, duration), dueNanos, null));
+            }
+            long endNanos = startNanos + (reports + 1) * frameNanos;
+            at(endNanos, () -> {
+                send(Endpoint.EVENT, eventRequest("NORMAL", 0f), endNanos, null);
+                scheduleEpisode(endNanos + exponentialNanos(options.gapMeanSeconds));
+            });
+        }
+
+        HttpRequest eventRequest(String state, float duration) {
+            double ear = "DROWSY".equals(state) ? 0.17 + random.nextGaussian() * 0.02 : 0.28 + random.nextGaussian() * 0.03;
+            String body = String.format(Locale.ROOT,
+                    "{\"driverId\":\"%s\",\"state\":\"%s\",\"duration\":%.3f,\"clientEventId\":\"%s\","
+                            + "\"metadata\":{\"source\":\"MediaPipe\",\"faceDetected\":true,\"timestamp\":%d,"
+                            + "\"earValue\":%.4f,\"leftEar\":%.4f,\"rightEar\":%.4f,\"headDirection\":\"%s\"}}",
+                    driverId, state, duration, UUID.randomUUID(), System.currentTimeMillis(),
+                    ear, ear + 0.005, ear - 0.005, "DISTRACTED".equals(state) ? "left" : "center");
+            return HttpRequest.newBuilder(options.base.resolve("/api/detection-event"))
+                    .header("Content-Type", "application/json")
+                    .timeout(Duration.ofSeconds(30))
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+        }
+
+        long exponentialNanos(double meanSeconds) {
+            return (long) (-Math.log(1 - random.nextDouble()) * meanSeconds * 1e9);
+        }
+    }
+
+    record EndpointResult(Histogram corrected, Histogram raw, long sent, long errors) {
+        long completed() {
+            return corrected.getTotalCount();
+        }
+
+        double percentileMillis(double percentile) {
+            return corrected.getValueAtPercentile(percentile) / 1000.0;
+        }
+
+        double rawPercentileMillis(double percentile) {
+            return raw.getValueAtPercentile(percentile) / 1000.0;
+        }
+    }
+
+    static class StageResult {
+        final int drivers;
+        final double seconds;
+        final Map<Endpoint, EndpointResult> endpoints = new EnumMap<>(Endpoint.class);
+
+        StageResult(int drivers, double seconds) {
+            this.drivers = drivers;
+            this.seconds = seconds;
+        }
+
+        long totalErrors() {
+            return endpoints.values().stream().mapToLong(EndpointResult::errors).sum();
+        }
+
+        // Saturated: p99 over the SLO, failed requests, or fewer responses than requests sent (backlog grows)
+        boolean isSaturated(long sloMillis) {
+            EndpointResult event = endpoints.get(Endpoint.EVENT);
+            return event.percentileMillis(99) > sloMillis
+                    || totalErrors() > 0
+                    || (event.sent() > 100 && event.completed() < event.sent() * 0.95);
+        }
+
+        void print(PrintStream out, long sloMillis) {
+            out.printf(Locale.ROOT, "%n=== %d drivers, %.0f s%s ===%n", drivers, seconds, isSaturated(sloMillis) ? " (saturated)" : "");
+            out.println("endpoint      sent   done   req/s    p50 ms    p90 ms    p99 ms  p99.9 ms    max ms  p99 raw ms  errors");
+            endpoints.forEach((endpoint, result) -> out.printf(Locale.ROOT,
+                    "%-10s %7d %6d %7.1f %9.1f %9.1f %9.1f %9.1f %9.1f %11.1f %7d%n",
+                    endpoint.name().toLowerCase(), result.sent(), result.completed(), result.completed() / seconds,
+                    result.percentileMillis(50), result.percentileMillis(90), result.percentileMillis(99),
+                    result.percentileMillis(99.9), result.corrected().getMaxValue() / 1000.0,
+                    result.rawPercentileMillis(99), result.errors()));
+        }
+    }
+
+    static class Options {
+        URI base = URI.create("http://localhost:8080");
+        List<Integer> driverStages = List.of(25, 50, 100, 200);
+        int stageSeconds = 60;
+        int reportHz = 10;
+        double drowsyShare = 0.6;
+        double episodeMeanSeconds = 4;
+        double gapMeanSeconds = 20;
+        int pollSeconds = 15;
+        long sloMillis = 250;
+        Path reportDir = Paths.get("build/reports/loadgen");
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                if (!arg.startsWith("--") || !arg.contains("=")) {
+                    throw new IllegalArgumentException("Expected --name=value, got " + arg);
+                }
+                values.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+            Options options = new Options();
+            options.base = URI.create(values.getOrDefault("base", options.base.toString()));
+            if (values.containsKey("drivers")) {
+                List<Integer> stages = new ArrayList<>();
+                for (String stage : values.get("drivers").split(",")) {
+                    stages.add(Integer.parseInt(stage.trim()));
+                }
+                options.driverStages = stages;
+            }
+            options.stageSeconds = Integer.parseInt(values.getOrDefault("stage-seconds", String.valueOf(options.stageSeconds)));
+            options.reportHz = Integer.parseInt(values.getOrDefault("report-hz", String.valueOf(options.reportHz)));
+            options.drowsyShare = Double.parseDouble(values.getOrDefault("drowsy-share", String.valueOf(options.drowsyShare)));
+            options.episodeMeanSeconds = Double.parseDouble(values.getOrDefault("episode-mean-s", String.valueOf(options.episodeMeanSeconds)));
+            options.gapMeanSeconds = Double.parseDouble(values.getOrDefault("gap-mean-s", String.valueOf(options.gapMeanSeconds)));
+            options.pollSeconds = Integer.parseInt(values.getOrDefault("poll-s", String.valueOf(options.pollSeconds)));
+            options.sloMillis = Long.parseLong(values.getOrDefault("slo-ms", String.valueOf(options.sloMillis)));
+            options.reportDir = Paths.get(values.getOrDefault("report-dir", options.reportDir.toString()));
+            return options;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+// What is this file?
+// Stand-alone benchmark comparing the old single driver_events table with monthly partitions.
+// Run it with: gradle partitionBenchmark -Prows=20000000
+// Why is this needed?
+// It shows what partition pruning and partition drops buy at tens of millions of rows:
+// time-window queries and retention are timed on identical data in both layouts.
+
+package com.drivermonitoring.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+public class PartitionLayoutBenchmark {
+
+    private static final String SINGLE_TABLE = "events_single";
+    private static final String PARTITION_PREFIX = "events_p";
+    private static final int LOAD_SLICE = 1_000_000;
+    private static final int DRIVER_QUERIES = 500;
+    private static final int FLEET_QUERIES = 20;
+
+    public static void main(String[] args) throws Exception {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 20_000_000L;
+        int months = args.length > 1 ? Integer.parseInt(args[1]) : 12;
+        int drivers = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        Path directory = Paths.get(args.length > 3 ? args[3] : "build/benchmark");
+
+        deleteDirectory(directory);
+        Files.createDirectories(directory);
+        String url = "jdbc:h2:file:" + directory.toAbsolutePath().resolve("partition-benchmark");
+        YearMonth firstMonth = YearMonth.now().minusMonths(months - 1);
+
+        System.out.printf("Rows: %,d, months: %d, drivers: %d%n", rows, months, drivers);
+        try (Connection connection = DriverManager.getConnection(url, "sa", "")) {
+            long started = System.nanoTime();
+            createTable(connection, SINGLE_TABLE);
+            for (int m = 0; m < months; m++) {
+                String partition = PARTITION_PREFIX + m;
+                createTable(connection, partition);
+                long from = rows * m / months;
+                long to = rows * (m + 1) / months;
+                load(connection, SINGLE_TABLE, firstMonth.plusMonths(m), from, to, drivers);
+                load(connection, partition, firstMonth.plusMonths(m), from, to, drivers);
+            }
+            System.out.printf("Loaded both layouts in %.1f s%n%n", (System.nanoTime() - started) / 1e9);
+
+            YearMonth lastMonth = firstMonth.plusMonths(months - 1);
+            String lastPartition = PARTITION_PREFIX + (months - 1);
+            Random random = new Random(42);
+
+            // 1. One driver, 30-minute window in the latest month (feature extraction, driver pages)
+            List<Object[]> driverWindows = new ArrayList<>();
+            for (int i = 0; i < DRIVER_QUERIES; i++) {
+                LocalDateTime from = randomTime(random, lastMonth);
+                driverWindows.add(new Object[] {"driver-" + random.nextInt(drivers), from, from.plusMinutes(30)});
+            }
+            String driverSql = "SELECT COUNT(*), SUM(duration) FROM %s WHERE driver_id = ? AND start_time >= ? AND start_time < ?";
+            compare("Driver 30-min window (" + DRIVER_QUERIES + " queries)",
+                    time(connection, String.format(driverSql, allPartitionsView(connection, 0, months)), driverWindows),
+                    time(connection, String.format(driverSql, SINGLE_TABLE), driverWindows),
+                    time(connection, String.format(driverSql, lastPartition), driverWindows));
+
+            // 2. Whole fleet, 1-hour window (rollup catch-up job)
+            List<Object[]> fleetWindows = new ArrayList<>();
+            for (int i = 0; i < FLEET_QUERIES; i++) {
+                LocalDateTime from = randomTime(random, lastMonth);
+                fleetWindows.add(new Object[] {from, from.plusHours(1)});
+            }
+            String fleetSql = "SELECT driver_id, COUNT(*), SUM(duration) FROM %s WHERE start_time >= ? AND start_time < ? GROUP BY driver_id";
+            compare("Fleet 1-hour window (" + FLEET_QUERIES + " queries)",
+                    time(connection, String.format(fleetSql, "events_all"), fleetWindows),
+                    time(connection, String.format(fleetSql, SINGLE_TABLE), fleetWindows),
+                    time(connection, String.format(fleetSql, lastPartition), fleetWindows));
+
+            // 3. Retention of the oldest month: row delete vs partition drop
+            LocalDateTime threshold = firstMonth.plusMonths(1).atDay(1).atStartOfDay();
+            long deleteNanos;
+            long deleted;
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM " + SINGLE_TABLE + " WHERE start_time < ?")) {
+                statement.setTimestamp(1, Timestamp.valueOf(threshold));
+                long start = System.nanoTime();
+                deleted = statement.executeUpdate();
+                deleteNanos = System.nanoTime() - start;
+            }
+            long dropNanos;
+            try (Statement statement = connection.createStatement()) {
+                long start = System.nanoTime();
+                // The view must stop referencing the partition before it can be dropped, as in EventPartitionManager
+                allPartitionsView(connection, 1, months);
+                statement.execute("DROP TABLE " + PARTITION_PREFIX + "0");
+                dropNanos = System.nanoTime() - start;
+            }
+            System.out.printf("Retention of one month (%,d rows)%n", deleted);
+            System.out.printf("  single table DELETE : %10.1f ms%n", deleteNanos / 1e6);
+            System.out.printf("  partition DROP TABLE: %10.1f ms (including the view update)%n", dropNanos / 1e6);
+        }
+        deleteDirectory(directory);
+    }
+
+    // Same columns and indexes as the application tables
+    private static void createTable(Connection connection, String table) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE " + table + " (event_id BIGINT PRIMARY KEY, session_id BIGINT, driver_id VARCHAR(255), " +
+                    "start_time TIMESTAMP(6), end_time TIMESTAMP(6), duration REAL NOT NULL, event_type VARCHAR(255))");
+            statement.execute("CREATE INDEX idx_" + table + "_driver_time ON " + table + " (driver_id, start_time)");
+            statement.execute("CREATE INDEX idx_" + table + "_time ON " + table + " (start_time)");
+        }
+    }
+
+    // Rows [from, to) spread evenly over the month, generated inside the database
+    private static void load(Connection connection, String table, YearMonth month, long from, long to, int drivers) throws SQLException {
+        long monthSeconds = (long) month.lengthOfMonth() * 24 * 3600;
+        long count = Math.max(1, to - from);
+        for (long sliceStart = from; sliceStart < to; sliceStart += LOAD_SLICE) {
+            long sliceEnd = Math.min(to, sliceStart + LOAD_SLICE);
+            String offset = "(X - " + from + ") * " + monthSeconds + " / " + count;
+            String monthStart = "TIMESTAMP '" + Timestamp.valueOf(month.atDay(1).atStartOfDay()) + "'";
+            String sql = "INSERT INTO " + table + " SELECT X, X / 50, CONCAT('driver-', MOD(X, " + drivers + ")), " +
+                    "DATEADD(SECOND, " + offset + ", " + monthStart + "), " +
+                    "DATEADD(SECOND, " + offset + " + 3, " + monthStart + "), 3.0, " +
+                    "CASEWHEN(MOD(X, 3) = 0, 'DISTRACTED', 'DROWSY') FROM SYSTEM_RANGE(?, ?)";
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setLong(1, sliceStart);
+                statement.setLong(2, sliceEnd - 1);
+                statement.executeUpdate();
+            }
+        }
+    }
+
+    // UNION ALL view over every partition, like the driver_events view of the application
+    private static String allPartitionsView(Connection connection, int firstPartition, int months) throws SQLException {
+        List<String> selects = new ArrayList<>();
+        for (int m = firstPartition; m < months; m++) {
+            selects.add("SELECT * FROM " + PARTITION_PREFIX + m);
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE OR REPLACE VIEW events_all AS " + String.join(" UNION ALL ", selects));
+        }
+        return "events_all";
+    }
+
+    // Runs every parameter set once to warm up, then once more timed; returns total nanoseconds
+    private static long time(Connection connection, String sql, List<Object[]> parameters) throws SQLException {
+        long total = 0;
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int round = 0; round < 2; round++) {
+                long start = System.nanoTime();
+                for (Object[] values : parameters) {
+                    for (int i = 0; i < values.length; i++) {
+                        statement.setObject(i + 1, values[i] instanceof LocalDateTime time ? Timestamp.valueOf(time) : values[i]);
+                    }
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            // Consume rows
+                        }
+                    }
+                }
+                total = System.nanoTime() - start;
+            }
+        }
+        return total;
+    }
+
+    private static void compare(String title, long viewNanos, long singleNanos, long prunedNanos) {
+        System.out.println(title);
+        System.out.printf("  single table          : %10.1f ms%n", singleNanos / 1e6);
+        System.out.printf("  view over partitions  : %10.1f ms%n", viewNanos / 1e6);
+        System.out.printf("  pruned partition      : %10.1f ms%n%n", prunedNanos / 1e6);
+    }
+
+    private static LocalDateTime randomTime(Random random, YearMonth month) {
+        return month.atDay(1).atStartOfDay().plusMinutes(random.nextInt(month.lengthOfMonth() * 24 * 60 - 60));
+    }
+
+    private static void deleteDirectory(Path directory) throws Exception {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted((a, b) -> b.compareTo(a)).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,287 @@
+// What is this file?
+// Startup benchmark: launches the application in several build variants and measures the time from
+// process start until the first /api/detection-event is accepted (a driver logged in through
+// /driver/start, the event answered 200). Run it with: gradle startupBenchmark [-Pruns=5]
+// Variants:
+//   standard       boot jar with the default configuration
+//   prod           boot jar with the prod profile (no schema validation, no SQL logging)
+//   prod-aot       extracted jar, prod profile and Spring AOT bean definitions
+//   prod-aot-cds   the fast-startup build: prod-aot with the AppCDS archive of the training run
+// Why is this needed?
+// Cab-region nodes restart often, and until the first event is accepted, detections of that region are
+// retried or lost. Tracking this number release by release shows when startup gets slower.
+// Options (--name=value after -PstartupArgs=...):
+//   --runs=5                     measured restarts per variant (after one unmeasured first boot)
+//   --variants=standard,...      variants to run
+//   --timeout-s=180              longest wait for one start
+// Every variant restarts on its own database under --work-dir, created by the first boot.
+
+package com.drivermonitoring.benchmark;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+public class StartupBenchmark {
+
+    private static final String DRIVER_ID = "900001";
+
+    private final Options options;
+    private final HttpClient http = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(1))
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+
+    StartupBenchmark(Options options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        System.out.printf(Locale.ROOT, "Startup benchmark: %s, %d run(s) each%n", options.variants, options.runs);
+        new StartupBenchmark(options).run();
+    }
+
+    void run() throws Exception {
+        Map<String, VariantResult> results = new LinkedHashMap<>();
+        for (String variant : options.variants) {
+            Path dir = options.workDir.resolve(variant);
+            deleteRecursively(dir);
+            Files.createDirectories(dir);
+            VariantResult result = new VariantResult();
+            // First boot migrates an empty database: reported, but not part of the restart statistics
+            result.firstBoot = start(variant, dir, 0);
+            for (int run = 1; run <= options.runs; run++) {
+                result.restarts.add(start(variant, dir, run));
+            }
+            results.put(variant, result);
+            result.print(variant);
+        }
+        printSummary(results);
+        writeResults(results);
+    }
+
+    // Starts one instance, waits for the first accepted detection event and shuts it down again
+    private Timing start(String variant, Path dir, int run) throws Exception {
+        int port = freePort();
+        List<String> command = command(variant, dir, port);
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .directory(dir.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(dir.resolve("run-" + run + ".log").toFile());
+        URI base = URI.create("http://localhost:" + port);
+
+        long launched = System.nanoTime();
+        Process process = builder.start();
+        try {
+            long deadline = launched + TimeUnit.SECONDS.toNanos(options.timeoutSeconds);
+            awaitOk(process, deadline, HttpRequest.newBuilder(base.resolve("/driver/start"))
+                    .header("Content-Type", "application/x-www-form-urlencoded")
+                    .POST(HttpRequest.BodyPublishers.ofString("driverName=Startup+Benchmark&driverId=" + DRIVER_ID))
+                    .build());
+            long loggedIn = System.nanoTime();
+            String event = String.format(Locale.ROOT,
+                    "{\"driverId\":\"%s\",\"state\":\"DROWSY\",\"duration\":1.0,\"clientEventId\":\"%s\"," +
+                    "\"metadata\":{\"earValue\":0.17,\"blinkRate\":12,\"timestamp\":%d}}",
+                    DRIVER_ID, UUID.randomUUID(), System.currentTimeMillis());
+            awaitOk(process, deadline, HttpRequest.newBuilder(base.resolve("/api/detection-event"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(event))
+                    .build());
+            long accepted = System.nanoTime();
+            return new Timing((loggedIn - launched) / 1e6, (accepted - launched) / 1e6);
+        } finally {
+            // Graceful shutdown, so the next run restarts on a cleanly closed database
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private List<String> command(String variant, Path dir, int port) {
+        List<String> command = new ArrayList<>();
+        command.add(options.java);
+        Path fastJar = options.fastStartupDir.resolve("app/application.jar").toAbsolutePath();
+        switch (variant) {
+            case "standard", "prod" -> {
+                command.add("-jar");
+                command.add(options.bootJar.toAbsolutePath().toString());
+            }
+            case "prod-aot" -> {
+                command.add("-Dspring.aot.enabled=true");
+                command.add("-jar");
+                command.add(fastJar.toString());
+            }
+            case "prod-aot-cds" -> {
+                command.add("-XX:SharedArchiveFile=" + options.fastStartupDir.resolve("application.jsa").toAbsolutePath());
+                command.add("-Dspring.aot.enabled=true");
+                command.add("-jar");
+                command.add(fastJar.toString());
+            }
+            default -> throw new IllegalArgumentException("Unknown variant " + variant);
+        }
+        if (!variant.equals("standard")) {
+            command.add("--spring.profiles.active=prod");
+        }
+        command.add("--server.port=" + port);
+        command.add("--spring.datasource.url=jdbc:h2:file:" + dir.resolve("db/startup").toAbsolutePath());
+        command.add("--archive.directory=" + dir.resolve("archive").toAbsolutePath());
+        command.add("--journal.directory=" + dir.resolve("journal").toAbsolutePath());
+        command.add("--diagnostics.jfr.directory=" + dir.resolve("jfr").toAbsolutePath());
+        return command;
+    }
+
+    // Retries until the request is answered 200: connection refused and 5xx while the application boots
+    private void awaitOk(Process process, long deadline, HttpRequest request) throws Exception {
+        while (true) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Application exited with code " + process.exitValue() + " during startup");
+            }
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("No 200 from " + request.uri() + " within " + options.timeoutSeconds + " s");
+            }
+            try {
+                HttpResponse<Void> response = http.send(request, HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() == 200) {
+                    return;
+                }
+            } catch (ConnectException e) {
+                // Not listening yet
+            } catch (IOException e) {
+                // Connection closed while the server starts or stops
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private void printSummary(Map<String, VariantResult> results) {
+        System.out.printf("%n%-14s %10s %12s %12s %12s %12s%n", "variant", "first boot", "login med", "event min", "event med", "event max");
+        for (Map.Entry<String, VariantResult> entry : results.entrySet()) {
+            VariantResult result = entry.getValue();
+            System.out.printf(Locale.ROOT, "%-14s %10.0f %12.0f %12.0f %12.0f %12.0f%n", entry.getKey(),
+                    result.firstBoot.firstEventMillis, result.median(true), result.min(), result.median(false), result.max());
+        }
+        System.out.println("(milliseconds from process start; 'event' = first accepted /api/detection-event after a restart)");
+    }
+
+    private void writeResults(Map<String, VariantResult> results) throws IOException {
+        Files.createDirectories(options.reportDir);
+        try (Writer out = Files.newBufferedWriter(options.reportDir.resolve("startup-results.properties"))) {
+            for (Map.Entry<String, VariantResult> entry : results.entrySet()) {
+                VariantResult result = entry.getValue();
+                String prefix = entry.getKey() + ".";
+                out.write(String.format(Locale.ROOT, "%sfirst-boot-ms=%.0f%n%slogin-median-ms=%.0f%n" +
+                                "%sfirst-event-min-ms=%.0f%n%sfirst-event-median-ms=%.0f%n%sfirst-event-max-ms=%.0f%n",
+                        prefix, result.firstBoot.firstEventMillis, prefix, result.median(true),
+                        prefix, result.min(), prefix, result.median(false), prefix, result.max()));
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (var paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Collections.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    record Timing(double loginMillis, double firstEventMillis) {
+    }
+
+    static class VariantResult {
+        Timing firstBoot;
+        final List<Timing> restarts = new ArrayList<>();
+
+        double min() {
+            return restarts.stream().mapToDouble(Timing::firstEventMillis).min().orElse(0);
+        }
+
+        double max() {
+            return restarts.stream().mapToDouble(Timing::firstEventMillis).max().orElse(0);
+        }
+
+        double median(boolean login) {
+            List<Double> values = new ArrayList<>();
+            for (Timing timing : restarts) {
+                values.add(login ? timing.loginMillis : timing.firstEventMillis);
+            }
+            Collections.sort(values);
+            if (values.isEmpty()) {
+                return 0;
+            }
+            int middle = values.size() / 2;
+            return values.size() % 2 == 1 ? values.get(middle) : (values.get(middle - 1) + values.get(middle)) / 2;
+        }
+
+        void print(String variant) {
+            StringBuilder runs = new StringBuilder();
+            for (Timing timing : restarts) {
+                runs.append(String.format(Locale.ROOT, " %.0f", timing.firstEventMillis));
+            }
+            System.out.printf(Locale.ROOT, "%s: first boot %.0f ms, restarts to first accepted event (ms):%s%n",
+                    variant, firstBoot.firstEventMillis, runs);
+        }
+    }
+
+    static class Options {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        Path bootJar = Paths.get("build/libs/drowsiness-detection-0.0.1-SNAPSHOT.jar");
+        Path fastStartupDir = Paths.get("build/fast-startup");
+        Path workDir = Paths.get("build/startup-benchmark");
+        Path reportDir = Paths.get("build/reports/startup");
+        List<String> variants = List.of("standard", "prod", "prod-aot", "prod-aot-cds");
+        int runs = 5;
+        int timeoutSeconds = 180;
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                if (!arg.startsWith("--") || !arg.contains("=")) {
+                    throw new IllegalArgumentException("Expected --name=value, got " + arg);
+                }
+                values.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+            Options options = new Options();
+            options.java = values.getOrDefault("java", options.java);
+            options.bootJar = Paths.get(values.getOrDefault("boot-jar", options.bootJar.toString()));
+            options.fastStartupDir = Paths.get(values.getOrDefault("fast-startup-dir", options.fastStartupDir.toString()));
+            options.workDir = Paths.get(values.getOrDefault("work-dir", options.workDir.toString()));
+            options.reportDir = Paths.get(values.getOrDefault("report-dir", options.reportDir.toString()));
+            if (values.containsKey("variants")) {
+                options.variants = List.of(values.get("variants").split(","));
+            }
+            options.runs = Integer.parseInt(values.getOrDefault("runs", String.valueOf(options.runs)));
+            options.timeoutSeconds = Integer.parseInt(values.getOrDefault("timeout-s", String.valueOf(options.timeoutSeconds)));
+            return options;
+        }
+    }
+}
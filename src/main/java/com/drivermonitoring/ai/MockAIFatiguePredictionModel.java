@@ -43,13 +43,4 @@ public class MockAIFatiguePredictionModel implements PredictionModel {
             weights.put(key, Math.max(0f, Math.min(1f, weights.get(key) + delta)));
         }
     }
-
-    // Оценка времени до высокого риска (очень упрощённо)
-    private int estimateTimeToHighRisk(float probability, Map<String, Float> features) {
-        if (probability >= 0.6f) return 0;
-        float rate = 0.01f + features.getOrDefault("drowsyEvents", 0.01f) + features.getOrDefault("drivingDuration", 0.01f);
-        float delta = 0.6f - probability;
-        int minutes = (int) Math.ceil(delta / rate * 10); // чем выше rate, тем быстрее нарастает риск
-        return Math.max(1, Math.min(minutes, 120));
-    }
 }
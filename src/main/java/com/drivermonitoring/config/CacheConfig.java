@@ -0,0 +1,61 @@
+// What is this file?
+// Spring Cache configuration: Caffeine caches for drivers and active sessions, with size and TTL limits.
+// Why is this needed?
+// Driver and active-session lookups run on every login, event and heartbeat although the data is tiny
+// and rarely changes. Caches are transaction-aware: evictions made by a write are applied after its
+// commit, so a concurrent reader cannot put the pre-commit row back into the cache.
+
+package com.drivermonitoring.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String DRIVER_BY_ID = "driverById";
+    public static final String DRIVER_EXISTS = "driverExists";
+    public static final String DRIVER_LIST = "driverList";
+    public static final String ACTIVE_SESSION = "activeSessionByDriver";
+
+    @Value("${cache.drivers.max-size:10000}")
+    private long driversMaxSize;
+
+    @Value("${cache.drivers.ttl-seconds:600}")
+    private long driversTtlSeconds;
+
+    @Value("${cache.active-sessions.max-size:10000}")
+    private long activeSessionsMaxSize;
+
+    @Value("${cache.active-sessions.ttl-seconds:60}")
+    private long activeSessionsTtlSeconds;
+
+    @Bean
+    public CacheManager cacheManager() {
+        CaffeineCacheManager manager = new CaffeineCacheManager();
+        // Only the caches below exist: a typo in a cache name fails instead of creating an unbounded cache
+        manager.setCacheNames(List.of());
+        manager.registerCustomCache(DRIVER_BY_ID, caffeine(driversMaxSize, driversTtlSeconds).build());
+        manager.registerCustomCache(DRIVER_EXISTS, caffeine(driversMaxSize, driversTtlSeconds).build());
+        manager.registerCustomCache(DRIVER_LIST, caffeine(1, driversTtlSeconds).build());
+        manager.registerCustomCache(ACTIVE_SESSION, caffeine(activeSessionsMaxSize, activeSessionsTtlSeconds).build());
+        return new TransactionAwareCacheManagerProxy(manager);
+    }
+
+    private static Caffeine<Object, Object> caffeine(long maxSize, long ttlSeconds) {
+        return Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats();
+    }
+}
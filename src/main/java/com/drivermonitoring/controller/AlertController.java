@@ -0,0 +1,47 @@
+// What is this file?
+// REST controller of the server-side alerts: a Server-Sent Events stream for the dispatcher panel and the
+// latest alerts as JSON.
+// Why is this needed?
+// Dispatchers get an alert the moment a rule fires for any driver, without polling every driver's page.
+
+package com.drivermonitoring.controller;
+
+import com.drivermonitoring.dto.AlertDTO;
+import com.drivermonitoring.service.AlertBroadcaster;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/alerts")
+public class AlertController {
+
+    // Upper bound for limit; the broadcaster keeps alerts.history-size alerts anyway
+    private static final int MAX_LIMIT = 200;
+
+    @Autowired
+    private AlertBroadcaster alertBroadcaster;
+
+    // EventSource sends Last-Event-ID when it reconnects: the alerts fired in between are sent first
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return alertBroadcaster.subscribe(lastEventId);
+    }
+
+    @GetMapping("/recent")
+    public ResponseEntity<?> recent(@RequestParam(defaultValue = "50") int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            return ResponseEntity.badRequest().body("Parameter limit must be between 1 and " + MAX_LIMIT);
+        }
+        List<AlertDTO> alerts = alertBroadcaster.recent(limit);
+        return ResponseEntity.ok(alerts);
+    }
+}
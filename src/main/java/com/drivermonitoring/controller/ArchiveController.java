@@ -0,0 +1,27 @@
+// What is this file?
+// REST controller exposing the state of the event archive.
+// Why is this needed?
+// Operators can follow the progress of the retention job (events, chunks, segments, bytes, errors).
+
+package com.drivermonitoring.controller;
+
+import com.drivermonitoring.service.EventArchiveService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/archive")
+public class ArchiveController {
+
+    @Autowired
+    private EventArchiveService eventArchiveService;
+
+    @GetMapping("/status")
+    public Map<String, Object> status() {
+        return eventArchiveService.getProgress();
+    }
+}
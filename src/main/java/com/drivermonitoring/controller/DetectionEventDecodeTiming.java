@@ -0,0 +1,52 @@
+// What is this file?
+// Request body advice for MediaPipeEventController: times the JSON decoding of the detection event
+// (stage "decode" of the pipeline metrics).
+// Why is this needed?
+// The body is decoded by Spring before the controller method runs, so the controller cannot time it itself.
+
+package com.drivermonitoring.controller;
+
+import com.drivermonitoring.service.PipelineMetrics;
+import com.drivermonitoring.service.PipelineMetrics.Stage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.RequestBodyAdviceAdapter;
+
+import java.lang.reflect.Type;
+
+@ControllerAdvice(assignableTypes = MediaPipeEventController.class)
+public class DetectionEventDecodeTiming extends RequestBodyAdviceAdapter {
+
+    // The body is read on the request thread between beforeBodyRead and afterBodyRead
+    private static final ThreadLocal<Long> DECODE_START = new ThreadLocal<>();
+
+    @Autowired
+    private PipelineMetrics pipelineMetrics;
+
+    @Override
+    public boolean supports(MethodParameter methodParameter, Type targetType,
+                            Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public HttpInputMessage beforeBodyRead(HttpInputMessage inputMessage, MethodParameter parameter, Type targetType,
+                                           Class<? extends HttpMessageConverter<?>> converterType) {
+        DECODE_START.set(System.nanoTime());
+        return inputMessage;
+    }
+
+    @Override
+    public Object afterBodyRead(Object body, HttpInputMessage inputMessage, MethodParameter parameter, Type targetType,
+                                Class<? extends HttpMessageConverter<?>> converterType) {
+        Long start = DECODE_START.get();
+        if (start != null) {
+            DECODE_START.remove();
+            pipelineMetrics.record(Stage.DECODE, System.nanoTime() - start);
+        }
+        return body;
+    }
+}
@@ -1,106 +1,103 @@
 // What is this file?
 // This controller manages the Dispatcher panel: list drivers, select a driver, view stats and logs.
 // Why is this needed?
-// It connects the database (Driver, Event entities) with the Dispatcher front-end.
+// It connects the dispatcher read model (driver and session summaries, recent events, predictions)
+// with the Dispatcher front-end; only the explicit date-range view reads event history.
 
 package com.drivermonitoring.controller;
 
-import com.drivermonitoring.model.Driver;
+import com.drivermonitoring.dto.DriverSummaryDTO;
 import com.drivermonitoring.model.Event;
-import com.drivermonitoring.repository.DriverRepository;
-import com.drivermonitoring.repository.EventRepository;
-import com.drivermonitoring.service.DriverAnalyticsService;
-import com.drivermonitoring.service.DriverRatingService;
+import com.drivermonitoring.model.EventSummary;
+import com.drivermonitoring.service.AlertLatencyTracker;
+import com.drivermonitoring.service.DispatcherReadModel;
+import com.drivermonitoring.service.EventLoggingService;
+import com.drivermonitoring.service.EventRollupService;
+import com.drivermonitoring.service.SessionService;
 import com.drivermonitoring.ai.FatiguePrediction;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Controller
 public class DispatcherController {
 
+    // Events listed on the date-range page
+    private static final int RANGE_EVENTS_SHOWN = 100;
+
+    @Autowired
+    private DispatcherReadModel dispatcherReadModel;
+
     @Autowired
-    private DriverRepository driverRepository;
+    private EventRollupService eventRollupService;
 
     @Autowired
-    private EventRepository eventRepository;
+    private EventLoggingService eventLoggingService;
 
     @Autowired
-    private DriverAnalyticsService driverAnalyticsService;
+    private AlertLatencyTracker alertLatencyTracker;
 
     @Autowired
-    private DriverRatingService driverRatingService;
+    private SessionService sessionService;
 
     @GetMapping("/dispatcher")
     public String dispatcherPanel(Model model) {
-        List<Driver> drivers = driverRepository.findAll();
-        // Формируем список с оценкой
-        List<HashMap<String, String>> driverInfos = new ArrayList<>();
-        for (Driver driver : drivers) {
-            HashMap<String, String> info = new HashMap<>();
-            info.put("driverName", driver.getDriverName());
-            info.put("driverId", driver.getDriverId());
-            info.put("rating", driverRatingService.getDriverRating(driver.getDriverId()));
-            driverInfos.add(info);
-        }
-        model.addAttribute("driverInfos", driverInfos);
+        // Список водителей с оценкой берётся из read model, без запросов к БД
+        model.addAttribute("driverInfos", dispatcherReadModel.getDriverSummaries());
+        // Задержка «обнаружение -> прогноз на экране» по всему парку (SLA)
+        model.addAttribute("alertLatency", alertLatencyTracker.getReport());
         return "dispatcher_panel";
     }
 
     @GetMapping("/dispatcher/driver/{driverId}")
-    public String driverStats(@PathVariable String driverId, Model model) {
-        Driver driver = driverRepository.findById(driverId).orElse(null);
-        List<Event> events = eventRepository.findByDriverIdOrderByStartTimeDesc(driverId);
-        // Сводная статистика
-        int totalEvents = events.size();
-        float totalDuration = 0f;
-        float drowsyTime = 0f;
-        float distractedTime = 0f;
-        float normalTime = 0f;
-        float sumEar = 0f;
-        int earCount = 0;
-        float sumBlinkRate = 0f;
-        int blinkCount = 0;
-        for (Event e : events) {
-            float dur = e.getDuration();
-            totalDuration += dur;
-            if ("DROWSY".equalsIgnoreCase(e.getEventType())) drowsyTime += dur;
-            else if ("DISTRACTED".equalsIgnoreCase(e.getEventType())) distractedTime += dur;
-            else normalTime += dur;
-            if (e.getEarValue() != null) {
-                sumEar += e.getEarValue();
-                earCount++;
-            }
-            if (e.getMetadata() != null && e.getMetadata().contains("blinkRate")) {
-                try {
-                    String meta = e.getMetadata();
-                    int idx = meta.indexOf("blinkRate");
-                    if (idx >= 0) {
-                        String sub = meta.substring(idx);
-                        String[] parts = sub.split(":");
-                        if (parts.length > 1) {
-                            String val = parts[1].replaceAll("[^0-9.]", "");
-                            sumBlinkRate += Float.parseFloat(val);
-                            blinkCount++;
-                        }
-                    }
-                } catch (Exception ignore) {}
-            }
+    public String driverStats(@PathVariable String driverId,
+                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                              Model model) {
+        DriverSummaryDTO driver = dispatcherReadModel.getDriverSummary(driverId);
+        List<Event> events;
+        float totalDuration;
+        float drowsyTime;
+        float distractedTime;
+        float avgEar;
+        float avgBlinkRate;
+        long sessionCount;
+        if (from != null && to != null) {
+            // Период по датам (включительно): последние события из БД (архив - только если их не хватило),
+            // итоги из агрегатов, число сессий из driver_sessions
+            LocalDateTime rangeStart = from.atStartOfDay();
+            LocalDateTime rangeEnd = to.plusDays(1).atStartOfDay();
+            events = eventLoggingService.getEventsForDriver(driverId, rangeStart, rangeEnd, RANGE_EVENTS_SHOWN);
+            EventSummary summary = eventRollupService.summarize(driverId, rangeStart, rangeEnd);
+            totalDuration = (float) summary.getTotalDuration();
+            drowsyTime = (float) summary.getDuration("DROWSY");
+            distractedTime = (float) summary.getDuration("DISTRACTED");
+            avgEar = summary.getAverageEar() != null ? summary.getAverageEar() : 0f;
+            avgBlinkRate = summary.getAverageBlinkRate();
+            sessionCount = sessionService.countSessionsForDriver(driverId, rangeStart, rangeEnd);
+        } else {
+            // Последние события и итоги за всё время из read model (стоимость - только показанные строки)
+            events = dispatcherReadModel.getRecentEvents(driverId);
+            model.addAttribute("sessions", dispatcherReadModel.getRecentSessions(driverId));
+            totalDuration = driver != null ? (float) driver.getTotalDuration() : 0f;
+            drowsyTime = driver != null ? (float) driver.getDrowsyDuration() : 0f;
+            distractedTime = driver != null ? (float) driver.getDistractedDuration() : 0f;
+            avgEar = driver != null && driver.getAverageEar() != null ? driver.getAverageEar() : 0f;
+            avgBlinkRate = driver != null ? driver.getAverageBlinkRate() : 0f;
+            sessionCount = driver != null ? driver.getSessionCount() : 0;
         }
-        float totalRiskTime = drowsyTime + distractedTime;
+        float normalTime = totalDuration - drowsyTime - distractedTime;
         float drowsyPercent = totalDuration > 0 ? drowsyTime / totalDuration * 100f : 0f;
         float distractedPercent = totalDuration > 0 ? distractedTime / totalDuration * 100f : 0f;
         float normalPercent = totalDuration > 0 ? normalTime / totalDuration * 100f : 0f;
-        float avgEar = earCount > 0 ? sumEar / earCount : 0f;
-        float avgBlinkRate = blinkCount > 0 ? sumBlinkRate / blinkCount : 0f;
-        // Количество уникальных сессий
-        long sessionCount = events.stream().map(Event::getSessionId).distinct().count();
         float avgSessionDuration = sessionCount > 0 ? totalDuration / sessionCount : 0f;
         // Передаём в шаблон
         model.addAttribute("driver", driver);
@@ -112,12 +109,15 @@ public class DispatcherController {
         model.addAttribute("avgBlinkRate", avgBlinkRate);
         model.addAttribute("sessionCount", sessionCount);
         model.addAttribute("avgSessionDuration", avgSessionDuration);
+        model.addAttribute("from", from);
+        model.addAttribute("to", to);
         return "driver_statistics";
     }
 
     @GetMapping("/dispatcher/driver/{driverId}/prediction")
     public String driverPrediction(@PathVariable String driverId, Model model) {
-        FatiguePrediction prediction = driverAnalyticsService.getFatiguePrediction(driverId);
+        // Прогноз пересчитывается в фоне (DispatcherPredictionRefresher), здесь только чтение
+        FatiguePrediction prediction = dispatcherReadModel.getPrediction(driverId);
         model.addAttribute("prediction", prediction);
         model.addAttribute("driverId", driverId);
         return "driver_prediction";
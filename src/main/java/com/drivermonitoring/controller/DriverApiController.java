@@ -2,19 +2,62 @@ package com.drivermonitoring.controller;
 
 import com.drivermonitoring.ai.FatiguePrediction;
 import com.drivermonitoring.service.DriverAnalyticsService;
+import com.drivermonitoring.service.EventLoggingService;
+import com.drivermonitoring.service.SessionLeaseService;
+import com.drivermonitoring.service.SessionLivenessService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.LocalDateTime;
+
 @RestController
 public class DriverApiController {
     @Autowired
     private DriverAnalyticsService driverAnalyticsService;
+    @Autowired
+    private EventLoggingService eventLoggingService;
+    @Autowired
+    private SessionLivenessService sessionLivenessService;
+    @Autowired
+    private SessionLeaseService sessionLeaseService;
 
     @GetMapping("/api/driver/{driverId}/prediction")
     public FatiguePrediction getDriverPrediction(@PathVariable String driverId, @RequestParam(defaultValue = "1") int period) {
         return driverAnalyticsService.getFatiguePrediction(driverId, period);
     }
+
+    // Heartbeat кабины: сессия остаётся активной, пока они приходят (см. session.heartbeat-timeout-seconds)
+    @PostMapping("/api/driver/{driverId}/heartbeat")
+    public ResponseEntity<?> heartbeat(@PathVariable String driverId) {
+        // В кластере heartbeat принимает экземпляр, владеющий сессией (иначе 421 с его ID)
+        String owner = sessionLeaseService.acquire(driverId);
+        if (owner != null && !owner.equals(sessionLeaseService.getNodeId())) {
+            return ResponseEntity.status(SessionLeaseService.MISDIRECTED_REQUEST)
+                    .header(SessionLeaseService.OWNER_HEADER, owner)
+                    .body("Session of driver " + driverId + " is handled by " + owner);
+        }
+        if (!sessionLivenessService.heartbeat(driverId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No active session for driver: " + driverId);
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    // События водителя за период (включая уже архивированные), новые первыми
+    @GetMapping("/api/driver/{driverId}/events")
+    public ResponseEntity<?> getDriverEvents(@PathVariable String driverId,
+                                             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                             @RequestParam(defaultValue = "1000") int limit) {
+        if (!from.isBefore(to) || limit <= 0) {
+            return ResponseEntity.badRequest().body("Invalid range or limit");
+        }
+        return ResponseEntity.ok(eventLoggingService.getEventsForDriver(driverId, from, to, limit));
+    }
 }
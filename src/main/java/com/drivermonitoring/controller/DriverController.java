@@ -8,8 +8,14 @@ package com.drivermonitoring.controller;
 import com.drivermonitoring.model.Driver; // Add import
 import com.drivermonitoring.model.DriverSession;
 import com.drivermonitoring.repository.DriverRepository; // Add import
+import com.drivermonitoring.service.DispatcherReadModel;
+import com.drivermonitoring.service.DriverPartitions;
 import com.drivermonitoring.service.SessionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired; // Add import
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -20,12 +26,23 @@ import jakarta.servlet.http.HttpSession;
 @Controller
 public class DriverController {
 
+    private static final Logger logger = LoggerFactory.getLogger(DriverController.class);
+
+    // Session starts that conflicted with another instance are retried this many times in total
+    private static final int START_ATTEMPTS = 3;
+
     @Autowired
     private SessionService sessionService;
 
     @Autowired // Inject DriverRepository
     private DriverRepository driverRepository;
 
+    @Autowired
+    private DispatcherReadModel dispatcherReadModel;
+
+    @Autowired
+    private DriverPartitions driverPartitions;
+
     @GetMapping("/driver/login")
     public String driverLogin() {
         // Returns the view name for the driver login page
@@ -43,15 +60,33 @@ public class DriverController {
              return "driver_login"; // Return to login page with error
         }
 
-        // Save driver information if it doesn't exist
-        if (!driverRepository.existsById(driverId)) {
-            Driver driver = new Driver(driverId, driverName);
-            driverRepository.save(driver);
+        // Registration and session start run on the driver's partition, so a double submit of the form
+        // cannot register the driver twice or open two sessions
+        DriverSession driverSession = null;
+        // Another instance may start or end the same driver's session at the same moment (cluster mode):
+        // the unique index on active sessions or the session version rejects one of the writes, which is retried
+        for (int attempt = 1; attempt <= START_ATTEMPTS; attempt++) {
+            try {
+                driverSession = driverPartitions.execute(driverId, () -> {
+                    // Save driver information if it doesn't exist
+                    if (!driverRepository.existsById(driverId)) {
+                        Driver driver = new Driver(driverId, driverName);
+                        driverRepository.save(driver);
+                        dispatcherReadModel.driverRegistered(driverId, driverName);
+                    }
+                    // Start the session using the service
+                    return sessionService.startSession(driverId);
+                });
+                break;
+            } catch (OptimisticLockingFailureException | DataIntegrityViolationException e) {
+                logger.warn("Session start of driver {} conflicted with a concurrent write (attempt {}): {}",
+                        driverId, attempt, e.getMessage());
+            } catch (Exception e) {
+                logger.error("Could not start session for driver {}: {}", driverId, e.getMessage());
+                break;
+            }
         }
 
-        // Start the session using the service
-        DriverSession driverSession = sessionService.startSession(driverId);
-
         if (driverSession == null) {
             // Handle error if session couldn't be started (e.g., invalid driverId was somehow passed)
             model.addAttribute("error", "Could not start monitoring session.");
@@ -78,12 +113,15 @@ public class DriverController {
         String driverId = (String) httpSession.getAttribute("driverId");
 
         if (driverId != null) {
-            // End the session using the service
-            sessionService.endSession(driverId);
+            // End the session on the driver's partition, after the reports that are still queued
+            try {
+                driverPartitions.execute(driverId, () -> sessionService.endSession(driverId));
+            } catch (Exception e) {
+                // The liveness check closes the session once the driver stays silent
+                logger.error("Could not end session of driver {}: {}", driverId, e.getMessage());
+            }
         } else {
-            // Log a warning if driverId wasn't found in session
-            // Consider adding a logger instance to the class
-            System.err.println("Warning: driverId not found in session during exit.");
+            logger.warn("driverId not found in session during exit");
         }
 
         // Invalidate the HTTP session to log the driver out
@@ -0,0 +1,144 @@
+// What is this file?
+// REST controller for raw event exports: GET /api/events/export?from=...&to=...[&driverId=...][&format=csv|ndjson]
+// streams the events of a driver (or of every driver) with startTime in [from, to) as a file download,
+// gzip-compressed when the client accepts it.
+// Why is this needed?
+// Dispatch and safety audits take raw event dumps of long periods; the response is written while the
+// events are read (EventExportService), so its size is not limited by the heap.
+
+package com.drivermonitoring.controller;
+
+import com.drivermonitoring.service.EventExportService;
+import com.drivermonitoring.service.EventExportService.Format;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.zip.GZIPOutputStream;
+
+@RestController
+@RequestMapping("/api/events")
+public class EventExportController {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventExportController.class);
+
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+
+    @Autowired
+    private EventExportService eventExportService;
+
+    // Exports stream far longer than the global async timeout (spring.mvc.async.request-timeout)
+    @Value("${export.timeout-ms:21600000}")
+    private long exportTimeoutMs;
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                        @RequestParam(required = false) String driverId,
+                                                        @RequestParam(defaultValue = "csv") String format,
+                                                        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                                        HttpServletRequest request) {
+        if (!from.isBefore(to)) {
+            return error(HttpStatus.BAD_REQUEST, "Parameter from must be before to");
+        }
+        Format exportFormat;
+        try {
+            exportFormat = Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return error(HttpStatus.BAD_REQUEST, "Unknown format: " + format + " (csv or ndjson)");
+        }
+        String driver = (driverId != null && !driverId.isBlank()) ? driverId.trim() : null;
+        EventExportService.Slot slot = eventExportService.tryStart();
+        if (slot == null) {
+            return error(HttpStatus.SERVICE_UNAVAILABLE, "Too many exports running, please retry later");
+        }
+        // Sets this request's timeout and releases the slot when the request ends, even if the body never runs
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(EventExportController.class.getName(),
+                new ExportRequestInterceptor(slot, exportTimeoutMs));
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+
+        StreamingResponseBody body = out -> {
+            try {
+                if (gzip) {
+                    GZIPOutputStream gzipOut = new GZIPOutputStream(out, 64 * 1024);
+                    eventExportService.export(driver, from, to, exportFormat, gzipOut);
+                    gzipOut.finish();
+                } else {
+                    eventExportService.export(driver, from, to, exportFormat, out);
+                }
+            } catch (IOException e) {
+                // The client went away; the cursor is closed and the export slot released
+                logger.info("Export of {} in [{}, {}) aborted: {}", driver != null ? "driver " + driver : "all drivers",
+                        from, to, e.getMessage());
+                throw e;
+            } finally {
+                slot.release();
+            }
+        };
+
+        String fileName = "events-" + (driver != null ? driver + "-" : "") + FILE_TIME.format(from) + "-" + FILE_TIME.format(to)
+                + "." + exportFormat.getExtension();
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getContentType() + ";charset=UTF-8"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(fileName).build().toString())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+
+    private static class ExportRequestInterceptor implements CallableProcessingInterceptor {
+        private final EventExportService.Slot slot;
+        private final long timeoutMs;
+
+        ExportRequestInterceptor(EventExportService.Slot slot, long timeoutMs) {
+            this.slot = slot;
+            this.timeoutMs = timeoutMs;
+        }
+
+        @Override
+        public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+            // Called before the async processing starts, when the timeout can still be changed
+            if (request instanceof AsyncWebRequest asyncRequest) {
+                asyncRequest.setTimeout(timeoutMs);
+            }
+        }
+
+        @Override
+        public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+            slot.release();
+        }
+    }
+
+    // Streaming responses only take a StreamingResponseBody, so error messages are written as one too
+    private static ResponseEntity<StreamingResponseBody> error(HttpStatus status, String message) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(out -> out.write(message.getBytes(StandardCharsets.UTF_8)));
+    }
+}
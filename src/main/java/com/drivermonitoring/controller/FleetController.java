@@ -0,0 +1,99 @@
+// What is this file?
+// REST controller with fleet-wide views for dispatchers, such as the riskiest drivers right now.
+// Why is this needed?
+// Dispatchers should see the few drivers at risk without opening every driver in the list.
+
+package com.drivermonitoring.controller;
+
+import com.drivermonitoring.dto.AlertLatencyReportDTO;
+import com.drivermonitoring.dto.ClockSkewDTO;
+import com.drivermonitoring.dto.DriverRiskDTO;
+import com.drivermonitoring.model.Driver;
+import com.drivermonitoring.repository.DriverRepository;
+import com.drivermonitoring.service.AlertLatencyTracker;
+import com.drivermonitoring.service.DispatcherReadModel;
+import com.drivermonitoring.service.FleetRiskIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@RestController
+@RequestMapping("/api/fleet")
+public class FleetController {
+
+    // Upper bound for n so a single request cannot ask for the whole fleet
+    private static final int MAX_TOP_N = 100;
+
+    @Autowired
+    private FleetRiskIndex fleetRiskIndex;
+
+    @Autowired
+    private DriverRepository driverRepository;
+
+    @Autowired
+    private DispatcherReadModel dispatcherReadModel;
+
+    @Autowired
+    private AlertLatencyTracker alertLatencyTracker;
+
+    @GetMapping("/top-risk")
+    public ResponseEntity<?> topRisk(@RequestParam(defaultValue = "10") int n,
+                                     @RequestParam(defaultValue = "5") int window) {
+        // Validate request parameters
+        if (n < 1 || n > MAX_TOP_N) {
+            return ResponseEntity.badRequest().body("Parameter n must be between 1 and " + MAX_TOP_N);
+        }
+        if (!fleetRiskIndex.isSupportedWindow(window)) {
+            return ResponseEntity.badRequest().body("Unsupported window " + window
+                    + ", supported windows (minutes): " + Arrays.toString(FleetRiskIndex.SUPPORTED_WINDOWS));
+        }
+
+        List<DriverRiskDTO> top = fleetRiskIndex.topRisk(n, window, LocalDateTime.now());
+
+        // Add driver names with one query for the N drivers shown
+        List<String> ids = top.stream().map(DriverRiskDTO::getDriverId).collect(Collectors.toList());
+        Map<String, Driver> driversById = driverRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Driver::getDriverId, Function.identity()));
+        for (DriverRiskDTO entry : top) {
+            Driver driver = driversById.get(entry.getDriverId());
+            if (driver != null) {
+                entry.setDriverName(driver.getDriverName());
+            }
+        }
+        return ResponseEntity.ok(top);
+    }
+
+    // Detection-to-alert latency: fleet-wide stage percentiles and the drivers with the largest clock skew
+    @GetMapping("/alert-latency")
+    public ResponseEntity<AlertLatencyReportDTO> alertLatency() {
+        return ResponseEntity.ok(alertLatencyTracker.getReport());
+    }
+
+    // Clock offset estimate of one driver's browser
+    @GetMapping("/alert-latency/drivers/{driverId}")
+    public ResponseEntity<?> driverClockSkew(@PathVariable String driverId) {
+        ClockSkewDTO skew = alertLatencyTracker.getClockSkew(driverId);
+        if (skew == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No client timestamps received from driver " + driverId);
+        }
+        return ResponseEntity.ok(skew);
+    }
+
+    // Size and lag of the dispatcher read model (queued, applied and dropped updates)
+    @GetMapping("/read-model/status")
+    public ResponseEntity<Map<String, Object>> readModelStatus() {
+        return ResponseEntity.ok(dispatcherReadModel.getStatus());
+    }
+}
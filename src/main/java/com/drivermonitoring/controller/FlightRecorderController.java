@@ -0,0 +1,87 @@
+// What is this file?
+// REST controller for on-demand JDK Flight Recorder recordings: start, status, dump (download) and stop.
+// Why is this needed?
+// A recording of a misbehaving instance can be taken and downloaded over HTTP, then opened in JDK Mission Control.
+
+package com.drivermonitoring.controller;
+
+import com.drivermonitoring.service.FlightRecorderService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+
+@RestController
+@RequestMapping("/api/diagnostics/jfr")
+public class FlightRecorderController {
+
+    private static final Set<String> SETTINGS = Set.of("default", "profile");
+
+    @Autowired
+    private FlightRecorderService flightRecorderService;
+
+    @PostMapping("/start")
+    public ResponseEntity<?> start(@RequestParam(defaultValue = "profile") String settings,
+                                   @RequestParam(defaultValue = "0") long durationSeconds) {
+        if (!SETTINGS.contains(settings)) {
+            return ResponseEntity.badRequest().body("Unsupported settings " + settings + ", supported: " + SETTINGS);
+        }
+        if (durationSeconds < 0) {
+            return ResponseEntity.badRequest().body("durationSeconds must not be negative");
+        }
+        try {
+            return ResponseEntity.ok(flightRecorderService.start(settings, durationSeconds));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body("Could not start the recording: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/status")
+    public ResponseEntity<Map<String, Object>> status() {
+        return ResponseEntity.ok(flightRecorderService.getStatus());
+    }
+
+    // Snapshot of the recording so far, as a .jfr download (the recording keeps running)
+    @GetMapping("/dump")
+    public ResponseEntity<?> dump() {
+        try {
+            return download(flightRecorderService.dump());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body("Could not dump the recording: " + e.getMessage());
+        }
+    }
+
+    // Stops the on-demand recording and returns it as a .jfr download
+    @PostMapping("/stop")
+    public ResponseEntity<?> stop() {
+        try {
+            return download(flightRecorderService.stop());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body("Could not stop the recording: " + e.getMessage());
+        }
+    }
+
+    private static ResponseEntity<FileSystemResource> download(Path file) {
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + file.getFileName() + "\"")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(new FileSystemResource(file));
+    }
+}
@@ -0,0 +1,27 @@
+// What is this file?
+// REST controller exposing the state of the event journal and its projector.
+// Why is this needed?
+// Operators can see how far the database is behind the journal (lag) and whether projection fails.
+
+package com.drivermonitoring.controller;
+
+import com.drivermonitoring.service.JournalProjector;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/journal")
+public class JournalController {
+
+    @Autowired
+    private JournalProjector journalProjector;
+
+    @GetMapping("/status")
+    public Map<String, Object> status() {
+        return journalProjector.getStatus();
+    }
+}
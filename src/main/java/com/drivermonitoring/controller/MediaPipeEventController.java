@@ -7,18 +7,36 @@
 package com.drivermonitoring.controller;
 
 import com.drivermonitoring.dto.ClientEventDTO;
+import com.drivermonitoring.jfr.DetectionRequestEvent;
 import com.drivermonitoring.model.DriverState;
+import com.drivermonitoring.model.Event;
+import com.drivermonitoring.service.AlertLatencyTracker;
+import com.drivermonitoring.service.DriverPartitions;
+import com.drivermonitoring.service.EventDeduplicator;
 import com.drivermonitoring.service.EventLoggingService;
+import com.drivermonitoring.service.PipelineMetrics;
+import com.drivermonitoring.service.PipelineMetrics.Rejection;
+import com.drivermonitoring.service.PipelineMetrics.Stage;
+import com.drivermonitoring.service.SessionLeaseService;
+import com.drivermonitoring.service.SessionLivenessService;
 import com.drivermonitoring.service.SessionService;
+import com.drivermonitoring.util.SampledLogger;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
 @RestController
 @RequestMapping("/api") // Base path for API endpoints
 public class MediaPipeEventController {
@@ -31,64 +49,185 @@ public class MediaPipeEventController {
     @Autowired
     private SessionService sessionService; // Assuming SessionService exists
 
+    @Autowired
+    private SessionLivenessService sessionLivenessService;
+
+    @Autowired
+    private EventDeduplicator eventDeduplicator;
+
+    @Autowired
+    private PipelineMetrics pipelineMetrics;
+
+    @Autowired
+    private AlertLatencyTracker alertLatencyTracker;
+
+    @Autowired
+    private DriverPartitions driverPartitions;
+
+    @Autowired
+    private SessionLeaseService sessionLeaseService;
+
+    // Per-report messages are sampled per driver (see EventLoggingServiceImpl)
+    @Value("${ingest.log-sampling.per-driver-limit:5}")
+    private int logSamplingLimit;
+
+    @Value("${ingest.log-sampling.window-seconds:60}")
+    private int logSamplingWindowSeconds;
+
+    private SampledLogger requestLog;
+
+    @PostConstruct
+    public void init() {
+        requestLog = new SampledLogger(logger, logSamplingLimit, Duration.ofSeconds(logSamplingWindowSeconds));
+    }
+
     @PostMapping("/detection-event")
     public ResponseEntity<?> logDetectionEvent(@RequestBody ClientEventDTO eventData) {
+        DetectionRequestEvent jfrEvent = new DetectionRequestEvent();
+        jfrEvent.begin();
+        ResponseEntity<?> response = handleDetectionEvent(eventData);
+        if (jfrEvent.shouldCommit()) {
+            if (eventData != null) {
+                jfrEvent.driverId = eventData.getDriverId();
+                jfrEvent.state = eventData.getState();
+                jfrEvent.clientEventId = eventData.getClientEventId();
+            }
+            jfrEvent.status = response.getStatusCode().value();
+            jfrEvent.commit();
+        }
+        return response;
+    }
+
+    private ResponseEntity<?> handleDetectionEvent(ClientEventDTO eventData) {
+        long receivedAt = System.currentTimeMillis();
         try {
-            logger.debug("Received detection event: {}", eventData);
+            requestLog.debug(eventData != null ? eventData.getDriverId() : null, "Received detection event: {}", eventData);
 
             // Validate essential input data
             if (eventData == null || eventData.getDriverId() == null || eventData.getState() == null) {
                 logger.warn("Received invalid event data: {}", eventData);
+                pipelineMetrics.eventRejected(Rejection.MISSING_FIELDS);
                 return ResponseEntity.badRequest().body("Missing required fields: driverId, state");
             }
 
-            String driverId = eventData.getDriverId();
-            String stateStr = eventData.getState();
-
-            // Check for active session *before* processing further
-            if (sessionService.getActiveSession(driverId) == null) {
-                logger.warn("No active session found for driver {} when receiving event.", driverId);
-                // Consider if this should be an error or just ignored depending on requirements
-                return ResponseEntity.badRequest().body("No active session found for driver: " + driverId);
-            }
-
-            // Convert state string to enum, handling potential errors
-            DriverState driverState;
+            // All work of one driver runs on its partition thread, in arrival order
             try {
-                driverState = DriverState.valueOf(stateStr.toUpperCase()); // Use uppercase for robustness
-            } catch (IllegalArgumentException e) {
-                logger.warn("Received invalid driver state value: {}", stateStr);
-                return ResponseEntity.badRequest().body("Invalid driver state: " + stateStr);
+                return driverPartitions.execute(eventData.getDriverId(), () -> processOnce(eventData, receivedAt));
+            } catch (RejectedExecutionException | TimeoutException e) {
+                // A report that timed out may still be stored: its retry is answered by the dedupe check
+                requestLog.warn(eventData.getDriverId(), "Detection event of driver {} not accepted: {}", eventData.getDriverId(), e.getMessage());
+                pipelineMetrics.eventRejected(Rejection.OVERLOADED);
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Server is busy, please retry");
             }
-
-            // Log only non-NORMAL states
-            if (driverState != DriverState.NORMAL) {
-                // Use default duration if not provided (e.g., 1.0 second for instantaneous events)
-                float duration = (eventData.getDuration() != null) ? eventData.getDuration() : 1.0f;
-
-                // Log the event using the service
-                eventLoggingService.logEventWithMetadata(
-                    driverId,
-                    driverState,
-                    duration,
-                    eventData.getMetadata() // Pass metadata map directly
-                );
-
-                // No need for logger.info here as the service implementation already logs
-            } else {
-                 logger.debug("Received NORMAL state event for driver {}, not logging.", driverId);
-            }
-
-            return ResponseEntity.ok().build(); // Acknowledge successful processing
-
         } catch (Exception e) {
             // Catch unexpected errors during processing
             logger.error("Error processing detection event for driver {}: {}",
                          (eventData != null ? eventData.getDriverId() : "unknown"), e.getMessage(), e);
+            pipelineMetrics.eventRejected(Rejection.ERROR);
             return ResponseEntity.internalServerError().body("An internal error occurred while processing the event.");
         }
     }
 
+    // Runs on the driver's partition: the owner check, the dedupe claim, then the report itself
+    private ResponseEntity<?> processOnce(ClientEventDTO eventData, long receivedAt) {
+        // In a cluster the instance holding the driver's session handles its reports (and their dedupe)
+        String owner = sessionLeaseService.acquire(eventData.getDriverId());
+        if (owner != null && !owner.equals(sessionLeaseService.getNodeId())) {
+            pipelineMetrics.eventRejected(Rejection.MISDIRECTED);
+            return ResponseEntity.status(SessionLeaseService.MISDIRECTED_REQUEST)
+                    .header(SessionLeaseService.OWNER_HEADER, owner)
+                    .body("Session of driver " + eventData.getDriverId() + " is handled by " + owner);
+        }
+        // Retried copies of an accepted report are answered without touching the database
+        String clientEventId = eventData.getClientEventId();
+        if (clientEventId == null || clientEventId.isBlank()) {
+            return processEvent(eventData, receivedAt);
+        }
+        switch (eventDeduplicator.claim(eventData.getDriverId(), clientEventId)) {
+            case DUPLICATE:
+                requestLog.debug(eventData.getDriverId(), "Duplicate event {} of driver {} ignored", clientEventId, eventData.getDriverId());
+                pipelineMetrics.duplicateEvent();
+                return ResponseEntity.ok().build();
+            case IN_PROGRESS:
+                pipelineMetrics.eventRejected(Rejection.IN_PROGRESS);
+                return ResponseEntity.status(HttpStatus.CONFLICT).body("Event " + clientEventId + " is being processed, retry later");
+            default:
+                break;
+        }
+        ResponseEntity<?> response = null;
+        try {
+            response = processEvent(eventData, receivedAt);
+            return response;
+        } finally {
+            // Only an accepted report is remembered; a failed one may be retried with the same ID
+            if (response != null && response.getStatusCode().is2xxSuccessful()) {
+                eventDeduplicator.complete(eventData.getDriverId(), clientEventId);
+            } else {
+                eventDeduplicator.release(eventData.getDriverId(), clientEventId);
+            }
+        }
+    }
+
+    // Validates the session and state and logs the report (NORMAL closes the open episode)
+    private ResponseEntity<?> processEvent(ClientEventDTO eventData, long receivedAt) {
+        String driverId = eventData.getDriverId();
+        String stateStr = eventData.getState();
+
+        // Check for active session *before* processing further
+        if (pipelineMetrics.time(Stage.SESSION_LOOKUP, () -> sessionService.getActiveSession(driverId)) == null) {
+            requestLog.warn(driverId, "No active session found for driver {} when receiving event.", driverId);
+            pipelineMetrics.eventRejected(Rejection.NO_ACTIVE_SESSION);
+            // Consider if this should be an error or just ignored depending on requirements
+            return ResponseEntity.badRequest().body("No active session found for driver: " + driverId);
+        }
+        // Every detection event is also a sign of life of the cab
+        sessionLivenessService.touch(driverId);
+
+        // Convert state string to enum, handling potential errors
+        DriverState driverState;
+        try {
+            driverState = DriverState.valueOf(stateStr.toUpperCase()); // Use uppercase for robustness
+        } catch (IllegalArgumentException e) {
+            requestLog.warn(driverId, "Received invalid driver state value: {}", stateStr);
+            pipelineMetrics.eventRejected(Rejection.INVALID_STATE);
+            return ResponseEntity.badRequest().body("Invalid driver state: " + stateStr);
+        }
+        pipelineMetrics.eventReceived(driverState);
+
+        // Log only non-NORMAL states
+        if (driverState != DriverState.NORMAL) {
+            // Use default duration if not provided (e.g., 1.0 second for instantaneous events)
+            float duration = (eventData.getDuration() != null) ? eventData.getDuration() : 1.0f;
+
+            // Start of the detection-to-alert chain: the client stamps metadata.timestamp when it detects the state
+            Object clientTimestamp = eventData.getMetadata() != null ? eventData.getMetadata().get("timestamp") : null;
+            alertLatencyTracker.received(driverId, clientTimestamp instanceof Number ? (Number) clientTimestamp : null, receivedAt);
+
+            // Log the event using the service
+            Event logged = eventLoggingService.logEventWithMetadata(
+                driverId,
+                driverState,
+                duration,
+                eventData.getMetadata() // Pass metadata map directly
+            );
+
+            // Never acknowledge an event that was not stored (database or journal unavailable)
+            if (logged == null) {
+                pipelineMetrics.eventRejected(Rejection.STORE_FAILED);
+                alertLatencyTracker.abandon(driverId, receivedAt);
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Event could not be stored, please retry");
+            }
+
+            // No need for logger.info here as the service implementation already logs
+        } else {
+             requestLog.debug(driverId, "Received NORMAL state event for driver {}, not logging.", driverId);
+             // The drowsy/distracted episode is over: write it now instead of after the gap timeout
+             eventLoggingService.closeOpenEvent(driverId);
+        }
+
+        return ResponseEntity.ok().build(); // Acknowledge successful processing
+    }
+
     // The task description included an alternative endpoint /driver-state.
     // If needed, it can be added here, potentially calling the same logic.
     /*
@@ -0,0 +1,23 @@
+// What is this file?
+// Data Transfer Object of an alert raised by the server-side alert engine for one driver.
+// Why is this needed?
+// It is pushed to the dispatchers subscribed to /api/alerts/stream and returned by /api/alerts/recent.
+
+package com.drivermonitoring.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AlertDTO {
+    private long id; // Increasing; the SSE event ID, so a reconnecting browser gets what it missed
+    private String driverId;
+    private String rule; // Name of the rule that fired, e.g. drowsy-episodes
+    private String message;
+    private LocalDateTime firedAt;
+}
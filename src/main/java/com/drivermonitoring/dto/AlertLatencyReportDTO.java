@@ -0,0 +1,21 @@
+// What is this file?
+// Data Transfer Object for the detection-to-alert latency report: stage percentiles and clock skew.
+// Why is this needed?
+// It is the JSON of /api/fleet/alert-latency and the model of the latency card on the dispatcher panel.
+
+package com.drivermonitoring.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AlertLatencyReportDTO {
+    private List<LatencyStageDTO> stages;
+    private int driversTracked;
+    // Drivers with the largest clock offset, largest first
+    private List<ClockSkewDTO> largestSkew;
+}
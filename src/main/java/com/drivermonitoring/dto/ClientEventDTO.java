@@ -16,4 +16,5 @@ public class ClientEventDTO {
     private String state;
     private Float duration; // Changed from Double to Float for consistency with JS/potential precision needs
     private Map<String, Object> metadata;
+    private String clientEventId; // Generated by the client per report and kept on retries (optional)
 }
@@ -0,0 +1,23 @@
+// What is this file?
+// Data Transfer Object with the estimated clock offset between one driver's browser and the server.
+// Why is this needed?
+// Client timestamps are only comparable with server time after this offset is removed;
+// dispatchers see which cabs have a badly set clock.
+
+package com.drivermonitoring.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClockSkewDTO {
+    private String driverId;
+    // Server clock minus client clock minus the fastest recent delivery (positive: the client clock is behind)
+    private long offsetMillis;
+    private long samples;
+    private LocalDateTime lastSampleTime;
+}
@@ -0,0 +1,24 @@
+// File: src/main/java/com/drivermonitoring/dto/DriverRiskDTO.java
+// What is this file?
+// Data Transfer Object for one driver in the top-risk list of the fleet API.
+// Why is this needed?
+// It structures the JSON returned to dispatchers by /api/fleet/top-risk.
+
+package com.drivermonitoring.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DriverRiskDTO {
+    private String driverId;
+    private String driverName; // Filled in by the controller
+    private float riskFraction; // Drowsy + distracted share of the window, in [0,1]
+    private float drowsyFraction;
+    private float distractedFraction;
+    private LocalDateTime lastEventTime;
+}
@@ -0,0 +1,30 @@
+// File: src/main/java/com/drivermonitoring/dto/DriverSummaryDTO.java
+// What is this file?
+// Data Transfer Object with the denormalized all-time summary of one driver, as kept by the dispatcher read model.
+// Why is this needed?
+// The dispatcher pages render it directly instead of aggregating events or rollups per request.
+
+package com.drivermonitoring.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DriverSummaryDTO {
+    private String driverId;
+    private String driverName;
+    private String rating;
+    private long eventCount;
+    private long sessionCount;
+    private double totalDuration; // Seconds, all event types
+    private double drowsyDuration;
+    private double distractedDuration;
+    private Float averageEar; // Null if no event had an EAR value
+    private float averageBlinkRate;
+    private Long activeSessionId; // Null if the driver is not driving
+    private LocalDateTime lastEventTime;
+}
@@ -0,0 +1,23 @@
+// What is this file?
+// Data Transfer Object with the fleet-wide latency percentiles of one stage of the detection-to-alert chain.
+// Why is this needed?
+// It structures the stages returned by /api/fleet/alert-latency and shown on the dispatcher panel.
+
+package com.drivermonitoring.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LatencyStageDTO {
+    private String stage;
+    private long count; // Measurements since start
+    // Percentiles of the recent measurements (last few minutes), in milliseconds
+    private double p50Millis;
+    private double p90Millis;
+    private double p99Millis;
+    private double maxMillis;
+}
@@ -0,0 +1,27 @@
+// File: src/main/java/com/drivermonitoring/dto/SessionSummaryDTO.java
+// What is this file?
+// Data Transfer Object with the denormalized summary of one driving session, as kept by the dispatcher read model.
+// Why is this needed?
+// The driver statistics page lists recent sessions with their event totals without querying events.
+
+package com.drivermonitoring.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SessionSummaryDTO {
+    private Long sessionId;
+    private String driverId;
+    private LocalDateTime startTime;
+    private LocalDateTime endTime; // Null while the session is active
+    private boolean active;
+    private long drowsyCount;
+    private long distractedCount;
+    private double drowsyDuration;
+    private double distractedDuration;
+}
@@ -0,0 +1,29 @@
+// What is this file?
+// JFR event for one active-session lookup (SessionServiceImpl.getActiveSession).
+// Why is this needed?
+// The lookup runs on every detection event and heartbeat; recorded lookups show cache misses and JDBC waits.
+
+package com.drivermonitoring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("com.drivermonitoring.ActiveSessionLookup")
+@Label("Active Session Lookup")
+@Category({"Driver Monitoring", "Sessions"})
+@Description("Lookup of the active session of a driver (served from the cache or the database)")
+@StackTrace(false)
+@Threshold("1 ms") // Cache hits take microseconds: by default only misses and slow lookups are recorded
+public class ActiveSessionLookupEvent extends Event {
+
+    @Label("Driver ID")
+    public String driverId;
+
+    @Label("Found")
+    public boolean found;
+}
@@ -0,0 +1,36 @@
+// What is this file?
+// JFR event for one POST /api/detection-event request (MediaPipeEventController.logDetectionEvent).
+// Why is this needed?
+// Slow ingest requests in a flight recording can be lined up with GC pauses, JDBC waits and lock contention
+// on the same thread and time axis.
+
+package com.drivermonitoring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("com.drivermonitoring.DetectionRequest")
+@Label("Detection Event Request")
+@Category({"Driver Monitoring", "Ingest"})
+@Description("Handling of one detection event sent by a monitoring page")
+@StackTrace(false)
+@Threshold("1 ms") // Frequent: only requests slower than this are recorded by default
+public class DetectionRequestEvent extends Event {
+
+    @Label("Driver ID")
+    public String driverId;
+
+    @Label("State")
+    public String state;
+
+    @Label("HTTP Status")
+    public int status;
+
+    @Label("Client Event ID")
+    public String clientEventId;
+}
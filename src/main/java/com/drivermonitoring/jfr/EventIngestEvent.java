@@ -0,0 +1,37 @@
+// What is this file?
+// JFR event for logging one detection report with metadata (EventLoggingServiceImpl.logEventWithMetadata).
+// Why is this needed?
+// It separates the ingest service time (session lookup, metadata, coalescing, insert or journal fsync)
+// from the rest of the request in a flight recording.
+
+package com.drivermonitoring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("com.drivermonitoring.EventIngest")
+@Label("Event Ingest")
+@Category({"Driver Monitoring", "Ingest"})
+@Description("Logging of one detection report: metadata, coalescing and storage")
+@StackTrace(false)
+@Threshold("1 ms")
+public class EventIngestEvent extends Event {
+
+    @Label("Driver ID")
+    public String driverId;
+
+    @Label("State")
+    public String state;
+
+    @Label("Report Duration")
+    @Description("Seconds covered by the report")
+    public float reportSeconds;
+
+    @Label("Accepted")
+    public boolean accepted;
+}
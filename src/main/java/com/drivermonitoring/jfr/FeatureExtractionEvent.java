@@ -0,0 +1,29 @@
+// What is this file?
+// JFR event for one feature extraction (DriverFeatureExtractor.extractFeatures).
+// Why is this needed?
+// Its cost depends on the number of events summarized for the period; the event records that count.
+
+package com.drivermonitoring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.drivermonitoring.FeatureExtraction")
+@Label("Feature Extraction")
+@Category({"Driver Monitoring", "Prediction"})
+@Description("Summary of a driver's recent events and the feature vector built from it")
+public class FeatureExtractionEvent extends Event {
+
+    @Label("Driver ID")
+    public String driverId;
+
+    @Label("Period Minutes")
+    public int periodMinutes;
+
+    @Label("Events Scanned")
+    @Description("Events covered by the summary (rollup buckets and raw edge events)")
+    public long eventsScanned;
+}
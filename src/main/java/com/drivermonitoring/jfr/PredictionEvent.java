@@ -0,0 +1,28 @@
+// What is this file?
+// JFR event for one fatigue model evaluation (PredictionModel.predict).
+// Why is this needed?
+// A trained model replacing the rule-based one must stay cheap; recordings show its cost per driver.
+
+package com.drivermonitoring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.drivermonitoring.Prediction")
+@Label("Fatigue Prediction")
+@Category({"Driver Monitoring", "Prediction"})
+@Description("Evaluation of the fatigue prediction model on a feature vector")
+public class PredictionEvent extends Event {
+
+    @Label("Driver ID")
+    public String driverId;
+
+    @Label("Features")
+    public int featureCount;
+
+    @Label("Risk Level")
+    public String riskLevel;
+}
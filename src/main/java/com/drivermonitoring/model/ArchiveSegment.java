@@ -0,0 +1,31 @@
+// What is this file?
+// Describes one archived event segment file: its driver, time range, event count and event ID range.
+// Why is this needed?
+// Archive queries use these values to skip segments that cannot contain matching events.
+
+package com.drivermonitoring.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchiveSegment {
+
+    private String path; // Segment file path
+
+    private String driverId;
+
+    private LocalDateTime minTime; // Earliest event startTime in the segment
+
+    private LocalDateTime maxTime; // Latest event startTime in the segment
+
+    private long eventCount;
+
+    private long firstEventId;
+
+    private long lastEventId;
+}
@@ -31,6 +31,15 @@ public class DriverSession {
     private Long totalDrivingTimeSeconds; // Will be calculated when session ends
     
     private boolean active = true; // Flag to mark active sessions
+
+    // Optimistic lock: a write based on an outdated copy of the session fails instead of overwriting it
+    @Version
+    private Long version;
+
+    // Instance that holds the driver's live state, and until when (renewed while that instance runs)
+    private String ownerNode;
+
+    private LocalDateTime leaseExpiresAt;
     
     // Constructor for starting a new session
     public DriverSession(String driverId) {
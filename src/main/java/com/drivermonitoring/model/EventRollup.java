@@ -0,0 +1,45 @@
+// What is this file?
+// This class represents pre-aggregated event totals of one driver for one minute or one hour bucket.
+// Why is this needed?
+// Analytics over long time ranges sum a few buckets instead of re-reading thousands of raw event rows.
+
+package com.drivermonitoring.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Entity
+@Table(name = "driver_event_rollups")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventRollup {
+
+    public static final int MINUTE_BUCKET = 1;
+    public static final int HOUR_BUCKET = 60;
+
+    @EmbeddedId
+    private EventRollupId id;
+
+    private long eventCount; // Number of events in the bucket
+
+    private double totalDuration; // Summed event duration in seconds
+
+    private double earSum; // Sum of EAR values (for the average)
+
+    private long earCount; // Number of events with an EAR value
+
+    @Column(nullable = true)
+    private Float earMin; // Lowest EAR value in the bucket
+
+    private long blinkCount; // Number of events carrying a blinkRate in metadata
+
+    private double blinkRateSum; // Sum of those blinkRate values
+
+    // Constructor for an empty bucket
+    public EventRollup(EventRollupId id) {
+        this.id = id;
+    }
+}
@@ -0,0 +1,28 @@
+// What is this file?
+// Composite key of an EventRollup row: driver, bucket size, bucket start and event type.
+// Why is this needed?
+// Each rollup bucket is identified by these four values, so they form the primary key of the rollup table.
+
+package com.drivermonitoring.model;
+
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+@Embeddable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventRollupId implements Serializable {
+
+    private String driverId;
+
+    private int bucketMinutes; // 1 for minute buckets, 60 for hour buckets
+
+    private LocalDateTime bucketStart; // Start of the bucket (truncated to minute or hour)
+
+    private String eventType; // "DISTRACTED" or "DROWSY"
+}
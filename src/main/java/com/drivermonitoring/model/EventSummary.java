@@ -0,0 +1,97 @@
+// What is this file?
+// Aggregated event totals (counts, durations, EAR and blink statistics) for a driver over a time range.
+// Why is this needed?
+// It is the common result of combining rollup buckets with raw edge events, used by all analytics.
+
+package com.drivermonitoring.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class EventSummary {
+
+    private final Map<String, Long> counts = new HashMap<>();
+    private final Map<String, Double> durations = new HashMap<>();
+    private double earSum;
+    private long earCount;
+    private Float earMin;
+    private long blinkCount;
+    private double blinkRateSum;
+
+    // Adds one pre-aggregated bucket
+    public void addRollup(EventRollup rollup) {
+        String type = normalizeType(rollup.getId().getEventType());
+        counts.merge(type, rollup.getEventCount(), Long::sum);
+        durations.merge(type, rollup.getTotalDuration(), Double::sum);
+        earSum += rollup.getEarSum();
+        earCount += rollup.getEarCount();
+        earMin = minOf(earMin, rollup.getEarMin());
+        blinkCount += rollup.getBlinkCount();
+        blinkRateSum += rollup.getBlinkRateSum();
+    }
+
+    // Adds one raw event (blinkRate is passed separately because it lives in the metadata JSON)
+    public void addEvent(Event event, Double blinkRate) {
+        String type = normalizeType(event.getEventType());
+        counts.merge(type, 1L, Long::sum);
+        durations.merge(type, (double) event.getDuration(), Double::sum);
+        if (event.getEarValue() != null) {
+            earSum += event.getEarValue();
+            earCount++;
+            earMin = minOf(earMin, event.getEarValue());
+        }
+        if (blinkRate != null) {
+            blinkCount++;
+            blinkRateSum += blinkRate;
+        }
+    }
+
+    public long getCount(String eventType) {
+        return counts.getOrDefault(normalizeType(eventType), 0L);
+    }
+
+    public double getDuration(String eventType) {
+        return durations.getOrDefault(normalizeType(eventType), 0.0);
+    }
+
+    public long getTotalCount() {
+        return counts.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public double getTotalDuration() {
+        return durations.values().stream().mapToDouble(Double::doubleValue).sum();
+    }
+
+    public long getEarCount() {
+        return earCount;
+    }
+
+    // Average EAR, or null if no event had an EAR value
+    public Float getAverageEar() {
+        return earCount > 0 ? (float) (earSum / earCount) : null;
+    }
+
+    public Float getMinEar() {
+        return earMin;
+    }
+
+    public long getBlinkCount() {
+        return blinkCount;
+    }
+
+    // Average blinkRate, or 0 if no event had one
+    public float getAverageBlinkRate() {
+        return blinkCount > 0 ? (float) (blinkRateSum / blinkCount) : 0f;
+    }
+
+    private static String normalizeType(String eventType) {
+        return eventType == null ? "UNKNOWN" : eventType.toUpperCase();
+    }
+
+    private static Float minOf(Float current, Float candidate) {
+        if (candidate == null) {
+            return current;
+        }
+        return (current == null || candidate < current) ? candidate : current;
+    }
+}
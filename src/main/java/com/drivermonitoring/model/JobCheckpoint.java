@@ -0,0 +1,32 @@
+// What is this file?
+// This class stores how far a background job has progressed (for example, the rollup catch-up job
+// or the event journal projector).
+// Why is this needed?
+// Jobs can resume from the stored position after a restart instead of starting from the beginning.
+
+package com.drivermonitoring.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "job_checkpoints")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JobCheckpoint {
+
+    @Id
+    private String jobName;
+
+    private LocalDateTime position; // Everything before this time has been processed
+
+    private LocalDateTime updatedAt;
+
+    private Long offsetValue; // Offset-based jobs (event journal projector): next record to process
+}
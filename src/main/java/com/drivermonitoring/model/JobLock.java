@@ -0,0 +1,29 @@
+// What is this file?
+// This class is a cluster-wide lock of a scheduled job: which instance holds it and until when.
+// Why is this needed?
+// With several instances on one database, jobs such as the stale-session cleanup must run on one of them.
+
+package com.drivermonitoring.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "job_locks")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JobLock {
+
+    @Id
+    private String jobName;
+
+    private String lockedBy; // Node ID of the instance that ran the job last
+
+    private LocalDateTime lockedUntil; // Database time; free for every instance after it
+}
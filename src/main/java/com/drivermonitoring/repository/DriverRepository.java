@@ -2,11 +2,47 @@
 // Repository interface for accessing Driver data from the database.
 // Why is this needed?
 // It allows easy CRUD operations on Driver entities without boilerplate code.
+// Reads are cached (see CacheConfig); every write clears the driver caches.
 
 package com.drivermonitoring.repository;
 
+import com.drivermonitoring.config.CacheConfig;
 import com.drivermonitoring.model.Driver;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.List;
+import java.util.Optional;
+
 public interface DriverRepository extends JpaRepository<Driver, String> {
-}
\ No newline at end of file
+
+    @Override
+    @Cacheable(cacheNames = CacheConfig.DRIVER_BY_ID, key = "#p0")
+    Optional<Driver> findById(String driverId);
+
+    @Override
+    @Cacheable(cacheNames = CacheConfig.DRIVER_EXISTS, key = "#p0")
+    boolean existsById(String driverId);
+
+    @Override
+    @Cacheable(cacheNames = CacheConfig.DRIVER_LIST, key = "'all'")
+    List<Driver> findAll();
+
+    // Drivers are few and rarely written: a write simply clears all driver caches
+    @Override
+    @CacheEvict(cacheNames = {CacheConfig.DRIVER_BY_ID, CacheConfig.DRIVER_EXISTS, CacheConfig.DRIVER_LIST}, allEntries = true)
+    <S extends Driver> S save(S driver);
+
+    @Override
+    @CacheEvict(cacheNames = {CacheConfig.DRIVER_BY_ID, CacheConfig.DRIVER_EXISTS, CacheConfig.DRIVER_LIST}, allEntries = true)
+    <S extends Driver> List<S> saveAll(Iterable<S> drivers);
+
+    @Override
+    @CacheEvict(cacheNames = {CacheConfig.DRIVER_BY_ID, CacheConfig.DRIVER_EXISTS, CacheConfig.DRIVER_LIST}, allEntries = true)
+    void deleteById(String driverId);
+
+    @Override
+    @CacheEvict(cacheNames = {CacheConfig.DRIVER_BY_ID, CacheConfig.DRIVER_EXISTS, CacheConfig.DRIVER_LIST}, allEntries = true)
+    void delete(Driver driver);
+}
@@ -2,13 +2,21 @@
 // Repository interface for accessing DriverSession data from the database.
 // Why is this needed?
 // It allows management of driving sessions and finding active sessions.
+// The active-session lookup by driver is cached (see CacheConfig); writes evict it.
 
 package com.drivermonitoring.repository;
 
+import com.drivermonitoring.config.CacheConfig;
 import com.drivermonitoring.model.DriverSession;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,10 +25,21 @@ public interface DriverSessionRepository extends JpaRepository<DriverSession, Lo
     // Find all sessions for a specific driver
     List<DriverSession> findByDriverId(String driverId);
     
-    // Find active session for a driver
+    // Find active session for a driver (cached: runs on every event and heartbeat).
+    // The cached instance is shared, callers must not modify it
+    @Cacheable(cacheNames = CacheConfig.ACTIVE_SESSION, key = "#p0")
     Optional<DriverSession> findByDriverIdAndActiveTrue(String driverId);
     
-    // Find multiple active sessions for a driver (for error checking)
+    // Latest sessions of a driver, newest first
+    List<DriverSession> findTop10ByDriverIdOrderByStartTimeDesc(String driverId);
+    
+    // Count the sessions of a driver that overlap [from, to) (an active session has no end time yet)
+    @Query("SELECT COUNT(s) FROM DriverSession s WHERE s.driverId = :driverId AND s.startTime < :to " +
+            "AND (s.endTime IS NULL OR s.endTime >= :from)")
+    long countSessionsOverlapping(@Param("driverId") String driverId, @Param("from") LocalDateTime from,
+                                  @Param("to") LocalDateTime to);
+    
+    // Find multiple active sessions for a driver (for error checking; uncached, used by writes)
     List<DriverSession> findAllByDriverIdAndActiveTrue(String driverId);
     
     // Find all active sessions
@@ -29,6 +48,66 @@ public interface DriverSessionRepository extends JpaRepository<DriverSession, Lo
     // Find stale active sessions (for cleanup)
     List<DriverSession> findByActiveTrueAndStartTimeBefore(LocalDateTime threshold);
     
+    @Override
+    @CacheEvict(cacheNames = CacheConfig.ACTIVE_SESSION, key = "#p0.driverId")
+    <S extends DriverSession> S save(S session);
+    
+    @Override
+    @CacheEvict(cacheNames = CacheConfig.ACTIVE_SESSION, allEntries = true)
+    <S extends DriverSession> List<S> saveAll(Iterable<S> sessions);
+
+    @Override
+    @CacheEvict(cacheNames = CacheConfig.ACTIVE_SESSION, key = "#p0.driverId")
+    <S extends DriverSession> S saveAndFlush(S session);
+    
+    // Close the active sessions of several drivers at once (idle sessions, stale sessions).
+    // Sessions that started after endTime are not touched.
+    @CacheEvict(cacheNames = CacheConfig.ACTIVE_SESSION, allEntries = true)
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE driver_sessions SET active = FALSE, end_time = :endTime, " +
+            "total_driving_time_seconds = DATEDIFF('SECOND', start_time, :endTime), version = version + 1 " +
+            "WHERE active = TRUE AND start_time <= :endTime AND driver_id IN (:driverIds)", nativeQuery = true)
+    int closeActiveSessions(@Param("driverIds") Collection<String> driverIds, @Param("endTime") LocalDateTime endTime);
+
+    // Same, limited to the sessions whose live state this instance owns (idle sessions in a cluster)
+    @CacheEvict(cacheNames = CacheConfig.ACTIVE_SESSION, allEntries = true)
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE driver_sessions SET active = FALSE, end_time = :endTime, " +
+            "total_driving_time_seconds = DATEDIFF('SECOND', start_time, :endTime), version = version + 1 " +
+            "WHERE active = TRUE AND start_time <= :endTime AND driver_id IN (:driverIds) AND owner_node = :ownerNode",
+            nativeQuery = true)
+    int closeOwnedActiveSessions(@Param("driverIds") Collection<String> driverIds, @Param("endTime") LocalDateTime endTime,
+                                 @Param("ownerNode") String ownerNode);
+
+    // Takes over the lease of an active session that has no owner, or whose lease expired (database clock).
+    // The version guard makes one of several competing instances win
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE driver_sessions SET owner_node = :ownerNode, " +
+            "lease_expires_at = DATEADD('MILLISECOND', :leaseMillis, LOCALTIMESTAMP), version = version + 1 " +
+            "WHERE session_id = :sessionId AND version = :version AND active = TRUE " +
+            "AND (owner_node IS NULL OR owner_node = :ownerNode OR lease_expires_at IS NULL OR lease_expires_at < LOCALTIMESTAMP)",
+            nativeQuery = true)
+    int takeOverLease(@Param("sessionId") Long sessionId, @Param("version") Long version,
+                      @Param("ownerNode") String ownerNode, @Param("leaseMillis") long leaseMillis);
+
+    // Extends the leases of every active session owned by an instance (does not change the version)
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE driver_sessions SET lease_expires_at = DATEADD('MILLISECOND', :leaseMillis, LOCALTIMESTAMP) " +
+            "WHERE owner_node = :ownerNode AND active = TRUE", nativeQuery = true)
+    int renewLeases(@Param("ownerNode") String ownerNode, @Param("leaseMillis") long leaseMillis);
+
+    // Drivers whose active session is owned by an instance
+    @Query("SELECT s.driverId FROM DriverSession s WHERE s.ownerNode = :ownerNode AND s.active = true")
+    List<String> findActiveDriverIdsOwnedBy(@Param("ownerNode") String ownerNode);
+
+    // Drivers whose active session is held by another instance (or by none)
+    @Query("SELECT s.driverId FROM DriverSession s WHERE s.active = true AND (s.ownerNode IS NULL OR s.ownerNode <> :ownerNode)")
+    List<String> findActiveDriverIdsNotOwnedBy(@Param("ownerNode") String ownerNode);
+    
     // Find most recent sessions
     @Query("SELECT s FROM DriverSession s ORDER BY s.startTime DESC")
     List<DriverSession> findRecentSessions();
@@ -0,0 +1,339 @@
+// What is this file?
+// Manages the monthly partition tables of driver events (driver_events_pYYYYMM) and the
+// driver_events view that unions them, so JPA reads keep working on the same name.
+// Why is this needed?
+// Time-bounded queries only touch the months they need, and retention drops a whole month
+// with one DROP TABLE instead of deleting rows one by one.
+// The tables are shared by every instance of a cluster: all partition DDL runs under one cluster-wide
+// lock, and the view is rebuilt from the tables the database has, not from this instance's memory.
+
+package com.drivermonitoring.repository;
+
+import com.drivermonitoring.service.JobLockService;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Collectors;
+
+@Component
+@DependsOn("entityManagerFactory") // Hibernate schema update runs first, then the table is turned into partitions
+public class EventPartitionManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventPartitionManager.class);
+
+    public static final String VIEW_NAME = "driver_events";
+    public static final String PARTITION_PREFIX = "driver_events_p";
+    public static final String SEQUENCE_NAME = "driver_events_seq";
+    private static final String LEGACY_TABLE = "driver_events_legacy";
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private static final String DDL_LOCK = "event-partitions";
+    // Startup may migrate a whole legacy table; later DDL is one table and a view
+    private static final Duration STARTUP_LOCK_AT_MOST = Duration.ofHours(1);
+    private static final Duration DDL_LOCK_AT_MOST = Duration.ofMinutes(1);
+    private static final Duration DDL_LOCK_WAIT = Duration.ofSeconds(30);
+
+    // Column definitions of one partition, in the order used by every SELECT/INSERT
+    private static final String[][] COLUMN_DEFINITIONS = {
+            {"event_id", "BIGINT NOT NULL PRIMARY KEY"},
+            {"session_id", "BIGINT"},
+            {"driver_id", "VARCHAR(255)"},
+            {"start_time", "TIMESTAMP(6)"},
+            {"end_time", "TIMESTAMP(6)"},
+            {"duration", "REAL NOT NULL"},
+            {"event_type", "VARCHAR(255)"},
+            {"metadata", "CLOB"},
+            {"ear_value", "REAL"},
+            {"left_ear", "REAL"},
+            {"right_ear", "REAL"},
+            {"head_direction", "VARCHAR(32)"},
+            {"face_detected", "BOOLEAN"},
+            {"feature_source", "VARCHAR(32)"}
+    };
+
+    public static final String COLUMNS = Arrays.stream(COLUMN_DEFINITIONS)
+            .map(column -> column[0])
+            .collect(Collectors.joining(", "));
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private JobLockService jobLockService;
+
+    // Partition pruning of reads; refreshed from the database before every DDL and periodically
+    private final NavigableSet<YearMonth> partitions = new ConcurrentSkipListSet<>();
+
+    /**
+     * Converts a plain driver_events table (created by Hibernate or an older version) into partitions,
+     * loads the existing partitions and makes sure the current and next month exist.
+     */
+    @PostConstruct
+    public synchronized void init() {
+        // Instances starting together must not migrate or create the same tables at once
+        jobLockService.runLocked(DDL_LOCK, STARTUP_LOCK_AT_MOST, STARTUP_LOCK_AT_MOST, () -> {
+            if (isBaseTable(LEGACY_TABLE) || isBaseTable(VIEW_NAME)) {
+                migrateLegacyTable();
+            }
+            refreshPartitions();
+            for (YearMonth month : partitions) {
+                addMissingColumns(month);
+            }
+            Long maxId = partitions.isEmpty() ? null : jdbcTemplate.queryForObject(
+                    "SELECT MAX(event_id) FROM (" + unionSql(partitions) + ")", Long.class);
+            executeDdl("CREATE SEQUENCE IF NOT EXISTS " + SEQUENCE_NAME + " START WITH " + ((maxId != null ? maxId : 0) + 1));
+
+            YearMonth current = YearMonth.now();
+            createPartitionIfMissing(current);
+            createPartitionIfMissing(current.plusMonths(1));
+            recreateView();
+        });
+        logger.info("Event storage uses {} monthly partition(s): {}", partitions.size(), partitions);
+    }
+
+    /**
+     * Creates next month's partition ahead of time so inserts never wait for DDL.
+     */
+    @Scheduled(cron = "0 0 1 * * *")
+    public void createUpcomingPartitions() {
+        ensurePartition(YearMonth.now().plusMonths(1));
+    }
+
+    /**
+     * Picks up the partitions other instances created or dropped, for the partition pruning of reads.
+     */
+    @Scheduled(fixedDelayString = "${events.partitions.refresh-ms:60000}")
+    public void reloadPartitions() {
+        refreshPartitions();
+    }
+
+    /**
+     * Returns the partition table for a time, creating it if needed (rare: only for unexpected months).
+     * @param time Event start time.
+     * @return Partition table name.
+     */
+    public String partitionFor(LocalDateTime time) {
+        YearMonth month = YearMonth.from(time != null ? time : LocalDateTime.now());
+        ensurePartition(month);
+        return tableName(month);
+    }
+
+    /**
+     * Partitions that can contain events with startTime in [from, to) (partition pruning).
+     */
+    public List<String> partitionsOverlapping(LocalDateTime from, LocalDateTime to) {
+        List<String> result = new ArrayList<>();
+        if (from == null || to == null || !from.isBefore(to)) {
+            return result;
+        }
+        YearMonth first = YearMonth.from(from);
+        YearMonth last = YearMonth.from(to.minusNanos(1));
+        for (YearMonth month : partitions.subSet(first, true, last, true)) {
+            result.add(tableName(month));
+        }
+        return result;
+    }
+
+    /**
+     * All partition tables, oldest first.
+     */
+    public List<String> allPartitions() {
+        return partitions.stream().map(EventPartitionManager::tableName).collect(Collectors.toList());
+    }
+
+    /**
+     * Months whose every possible event is older than the threshold.
+     */
+    public List<YearMonth> partitionsEndingBefore(LocalDateTime threshold) {
+        List<YearMonth> result = new ArrayList<>();
+        for (YearMonth month : partitions) {
+            if (!month.plusMonths(1).atDay(1).atStartOfDay().isAfter(threshold)) {
+                result.add(month);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drops a whole month of events with a single DROP TABLE.
+     * @param month The month to drop.
+     */
+    public synchronized void dropPartition(YearMonth month) {
+        if (month.equals(YearMonth.now())) {
+            return;
+        }
+        jobLockService.runLocked(DDL_LOCK, DDL_LOCK_AT_MOST, DDL_LOCK_WAIT, () -> {
+            refreshPartitions();
+            if (!partitions.remove(month)) {
+                return;
+            }
+            recreateView();
+            executeDdl("DROP TABLE IF EXISTS " + tableName(month));
+            logger.info("Dropped event partition {}", tableName(month));
+        });
+    }
+
+    /**
+     * @return The next event ID from the shared sequence.
+     */
+    public long nextEventId() {
+        Long id = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR " + SEQUENCE_NAME, Long.class);
+        return id != null ? id : 0L;
+    }
+
+    public static String tableName(YearMonth month) {
+        return PARTITION_PREFIX + month.format(MONTH_FORMAT);
+    }
+
+    private void ensurePartition(YearMonth month) {
+        if (partitions.contains(month)) {
+            return;
+        }
+        synchronized (this) {
+            jobLockService.runLocked(DDL_LOCK, DDL_LOCK_AT_MOST, DDL_LOCK_WAIT, () -> {
+                // Another instance may have created it meanwhile (and rebuilt the view)
+                refreshPartitions();
+                if (createPartitionIfMissing(month)) {
+                    recreateView();
+                }
+            });
+        }
+    }
+
+    // The database decides which partitions exist: other instances create and drop them too
+    private void refreshPartitions() {
+        List<YearMonth> existing = loadPartitions();
+        partitions.addAll(existing);
+        partitions.retainAll(existing);
+    }
+
+    // Returns true if a new partition table was created
+    private boolean createPartitionIfMissing(YearMonth month) {
+        if (partitions.contains(month)) {
+            return false;
+        }
+        String table = tableName(month);
+        String columns = Arrays.stream(COLUMN_DEFINITIONS)
+                .map(column -> column[0] + " " + column[1])
+                .collect(Collectors.joining(", "));
+        executeDdl("CREATE TABLE IF NOT EXISTS " + table + " (" + columns + ")");
+        executeDdl("CREATE INDEX IF NOT EXISTS idx_" + table + "_driver_time ON " + table + " (driver_id, start_time)");
+        executeDdl("CREATE INDEX IF NOT EXISTS idx_" + table + "_session_type ON " + table + " (session_id, event_type)");
+        executeDdl("CREATE INDEX IF NOT EXISTS idx_" + table + "_time ON " + table + " (start_time)");
+        partitions.add(month);
+        logger.info("Created event partition {}", table);
+        return true;
+    }
+
+    // Keeps older partitions in line with the current column list
+    private void addMissingColumns(YearMonth month) {
+        for (String[] column : COLUMN_DEFINITIONS) {
+            if (!column[1].contains("PRIMARY KEY")) {
+                executeDdl("ALTER TABLE " + tableName(month) + " ADD COLUMN IF NOT EXISTS " + column[0] + " " + column[1]);
+            }
+        }
+    }
+
+    // driver_events as a view over all partitions, so every JPA read sees all months.
+    // Called under the DDL lock after refreshPartitions, so the view lists exactly the existing tables
+    private void recreateView() {
+        executeDdl("CREATE OR REPLACE VIEW " + VIEW_NAME + " AS " + unionSql(partitions));
+    }
+
+    private String unionSql(Iterable<YearMonth> months) {
+        List<String> selects = new ArrayList<>();
+        for (YearMonth month : months) {
+            selects.add("SELECT " + COLUMNS + " FROM " + tableName(month));
+        }
+        return String.join(" UNION ALL ", selects);
+    }
+
+    // Copies a plain driver_events table month by month into partitions (idempotent MERGE, safe to resume)
+    private void migrateLegacyTable() {
+        if (isBaseTable(VIEW_NAME)) {
+            executeDdl("ALTER TABLE " + VIEW_NAME + " RENAME TO " + LEGACY_TABLE);
+        } else {
+            executeDdl("DROP VIEW IF EXISTS " + VIEW_NAME);
+        }
+        List<String> legacyColumns = jdbcTemplate.queryForList(
+                "SELECT LOWER(COLUMN_NAME) FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = 'PUBLIC' AND TABLE_NAME = ?",
+                String.class, LEGACY_TABLE.toUpperCase());
+        String selectColumns = Arrays.stream(COLUMN_DEFINITIONS)
+                .map(column -> legacyColumns.contains(column[0]) ? column[0] : "NULL")
+                .collect(Collectors.joining(", "));
+
+        List<YearMonth> months = jdbcTemplate.query(
+                "SELECT DISTINCT YEAR(start_time), MONTH(start_time) FROM " + LEGACY_TABLE + " WHERE start_time IS NOT NULL",
+                (rs, rowNum) -> YearMonth.of(rs.getInt(1), rs.getInt(2)));
+        partitions.addAll(loadPartitions());
+        long copied = 0;
+        for (YearMonth month : months) {
+            createPartitionIfMissing(month);
+            copied += jdbcTemplate.update("MERGE INTO " + tableName(month) + " (" + COLUMNS + ") KEY (event_id) SELECT "
+                    + selectColumns + " FROM " + LEGACY_TABLE + " WHERE start_time >= ? AND start_time < ?",
+                    month.atDay(1).atStartOfDay(), month.plusMonths(1).atDay(1).atStartOfDay());
+        }
+        // Events without a start time go to the current month
+        YearMonth current = YearMonth.now();
+        createPartitionIfMissing(current);
+        copied += jdbcTemplate.update("MERGE INTO " + tableName(current) + " (" + COLUMNS + ") KEY (event_id) SELECT "
+                + selectColumns + " FROM " + LEGACY_TABLE + " WHERE start_time IS NULL");
+
+        executeDdl("DROP TABLE " + LEGACY_TABLE);
+        logger.info("Migrated {} events from the single driver_events table into {} monthly partition(s)", copied, months.size());
+    }
+
+    private List<YearMonth> loadPartitions() {
+        List<String> tables = jdbcTemplate.queryForList(
+                "SELECT LOWER(TABLE_NAME) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = 'PUBLIC' " +
+                "AND TABLE_TYPE = 'BASE TABLE' AND TABLE_NAME LIKE ?",
+                String.class, PARTITION_PREFIX.toUpperCase() + "%");
+        List<YearMonth> months = new ArrayList<>();
+        for (String table : tables) {
+            String suffix = table.substring(PARTITION_PREFIX.length());
+            if (suffix.matches("\\d{6}")) {
+                months.add(YearMonth.parse(suffix, MONTH_FORMAT));
+            }
+        }
+        return months;
+    }
+
+    private boolean isBaseTable(String name) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = 'PUBLIC' AND TABLE_NAME = ? AND TABLE_TYPE = 'BASE TABLE'",
+                Integer.class, name.toUpperCase());
+        return count != null && count > 0;
+    }
+
+    // DDL runs on its own connection: in H2 DDL commits the current transaction,
+    // so it must never run on the connection of an ongoing ingest transaction
+    private void executeDdl(String sql) {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Event partition DDL failed: " + sql, e);
+        }
+    }
+}
@@ -6,13 +6,23 @@
 package com.drivermonitoring.repository;
 
 import com.drivermonitoring.model.Event;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Modifying;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import java.time.LocalDateTime;
 import java.util.List;
 
-public interface EventRepository extends JpaRepository<Event, Long> {
+// Writes, time-range reads and retention are implemented over monthly partitions in EventRepositoryCustomImpl;
+// the derived queries below read the driver_events view that unions all partitions.
+public interface EventRepository extends JpaRepository<Event, Long>, EventRepositoryCustom {
+
+    // Routed to the partition of the event's month (EventRepositoryCustomImpl)
+    @Override
+    <S extends Event> S save(S event);
+
+    @Override
+    <S extends Event> List<S> saveAll(Iterable<S> events);
     
     // Find events by session
     List<Event> findBySessionId(Long sessionId);
@@ -23,16 +33,29 @@ public interface EventRepository extends JpaRepository<Event, Long> {
     // Find events by driver ordered by time (latest first)
     List<Event> findByDriverIdOrderByStartTimeDesc(String driverId);
     
+    // Find the latest events of a driver (for the dispatcher page)
+    List<Event> findTop100ByDriverIdOrderByStartTimeDesc(String driverId);
+    
+    // Count distinct sessions in which the driver has events
+    @Query("SELECT COUNT(DISTINCT e.sessionId) FROM Event e WHERE e.driverId = :driverId")
+    long countDistinctSessionsByDriverId(@Param("driverId") String driverId);
+    
+    // Count events of a session grouped by type: rows of [eventType, count]
+    @Query("SELECT e.eventType, COUNT(e) FROM Event e WHERE e.sessionId = :sessionId GROUP BY e.eventType")
+    List<Object[]> countEventsBySessionIdGroupedByType(@Param("sessionId") Long sessionId);
+    
+    // Totals of a session grouped by type: rows of [eventType, count, total duration]
+    @Query("SELECT e.eventType, COUNT(e), SUM(e.duration) FROM Event e WHERE e.sessionId = :sessionId GROUP BY e.eventType")
+    List<Object[]> sumEventsBySessionIdGroupedByType(@Param("sessionId") Long sessionId);
+    
     // Find events by session and type
     List<Event> findBySessionIdAndEventType(Long sessionId, String eventType);
     
     // Find events before a certain date (for archiving)
     List<Event> findByStartTimeBefore(LocalDateTime threshold);
     
-    // Delete old events (for cleanup)
-    @Modifying
-    @Transactional
-    void deleteByStartTimeBefore(LocalDateTime threshold);
+    // Find the oldest events before a certain date, one chunk at a time (for archiving)
+    List<Event> findByStartTimeBeforeOrderByEventIdAsc(LocalDateTime threshold, Pageable pageable);
     
     // Count events before a certain date (for cleanup reporting)
     long countByStartTimeBefore(LocalDateTime threshold);
@@ -0,0 +1,54 @@
+// What is this file?
+// Event repository operations that are implemented by hand on top of the monthly partitions.
+// Why is this needed?
+// Inserts must be routed to the partition of the event's month, and time-bounded reads and
+// retention must only touch the partitions that overlap the requested range.
+
+package com.drivermonitoring.repository;
+
+import com.drivermonitoring.model.Event;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+public interface EventRepositoryCustom {
+
+    // Insert into (or update in) the partition of the event's month
+    <S extends Event> S save(S event);
+
+    // Batch version of save, one JDBC batch per partition
+    <S extends Event> List<S> saveAll(Iterable<S> events);
+
+    // Find events of a driver in [from, to), reading only the overlapping partitions
+    List<Event> findByDriverIdAndStartTimeGreaterThanEqualAndStartTimeLessThan(String driverId, LocalDateTime from, LocalDateTime to);
+
+    // Latest `limit` events of a driver in [from, to), latest first: partitions are read newest first, each
+    // through the (driver_id, start_time) index with a LIMIT, and reading stops once `limit` rows were found
+    List<Event> findLatestByDriverIdAndStartTime(String driverId, LocalDateTime from, LocalDateTime to, int limit);
+
+    // Find events of all drivers in [from, to), reading only the overlapping partitions (rollup catch-up job)
+    List<Event> findByStartTimeGreaterThanEqualAndStartTimeLessThan(LocalDateTime from, LocalDateTime to);
+
+    // Stream events in [from, to) of one driver (or of all drivers if driverId is null) to the consumer,
+    // partition by partition in start time order, through a forward-only cursor of fetchSize rows (exports)
+    void streamByStartTime(String driverId, LocalDateTime from, LocalDateTime to, int fetchSize, Consumer<Event> consumer);
+
+    // IDs among the given ones that are still stored in the partitions overlapping [from, to)
+    Set<Long> findStoredEventIds(Collection<Long> ids, LocalDateTime from, LocalDateTime to);
+
+    // Time of the oldest stored event (start point of the rollup catch-up job), from the oldest non-empty partition
+    LocalDateTime findMinStartTime();
+
+    // Next chunk of one month's partition in event ID order, after the given ID (for archiving whole partitions)
+    List<Event> findPartitionChunk(YearMonth month, long afterEventId, int limit);
+
+    // Delete events by ID from every partition
+    void deleteAllByIdInBatch(Iterable<Long> ids);
+
+    // Delete old events: whole months are dropped, only the boundary month is deleted row by row
+    void deleteByStartTimeBefore(LocalDateTime threshold);
+}
@@ -0,0 +1,248 @@
+// What is this file?
+// JDBC implementation of EventRepositoryCustom over the monthly driver_events_pYYYYMM partitions.
+// Why is this needed?
+// driver_events is a read-only view over the partitions, so writes, pruned range reads and
+// retention go straight to the partition tables chosen by EventPartitionManager.
+
+package com.drivermonitoring.repository;
+
+import com.drivermonitoring.model.Event;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+public class EventRepositoryCustomImpl implements EventRepositoryCustom {
+
+    private static final String INSERT_PLACEHOLDERS = "?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?";
+    private static final String UPDATE_ASSIGNMENTS = "session_id = ?, driver_id = ?, start_time = ?, end_time = ?, " +
+            "duration = ?, event_type = ?, metadata = ?, ear_value = ?, left_ear = ?, right_ear = ?, " +
+            "head_direction = ?, face_detected = ?, feature_source = ?";
+    // Largest IN (...) list sent in one statement
+    private static final int DELETE_BATCH_SIZE = 500;
+
+    private static final RowMapper<Event> EVENT_ROW_MAPPER = (rs, rowNum) -> {
+        Event event = new Event();
+        event.setEventId(rs.getLong("event_id"));
+        event.setSessionId(rs.getObject("session_id", Long.class));
+        event.setDriverId(rs.getString("driver_id"));
+        event.setStartTime(rs.getObject("start_time", LocalDateTime.class));
+        event.setEndTime(rs.getObject("end_time", LocalDateTime.class));
+        event.setDuration(rs.getFloat("duration"));
+        event.setEventType(rs.getString("event_type"));
+        event.setMetadata(rs.getString("metadata"));
+        event.setEarValue(rs.getObject("ear_value", Float.class));
+        event.setLeftEar(rs.getObject("left_ear", Float.class));
+        event.setRightEar(rs.getObject("right_ear", Float.class));
+        event.setHeadDirection(rs.getString("head_direction"));
+        event.setFaceDetected(rs.getObject("face_detected", Boolean.class));
+        event.setFeatureSource(rs.getString("feature_source"));
+        return event;
+    };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EventPartitionManager partitionManager;
+
+    @Override
+    @Transactional
+    public <S extends Event> S save(S event) {
+        if (event.getEventId() != null && update(event)) {
+            return event;
+        }
+        if (event.getEventId() == null) {
+            event.setEventId(partitionManager.nextEventId());
+        }
+        jdbcTemplate.update(insertSql(partitionManager.partitionFor(event.getStartTime())), insertValues(event));
+        return event;
+    }
+
+    @Override
+    @Transactional
+    public <S extends Event> List<S> saveAll(Iterable<S> events) {
+        List<S> result = new ArrayList<>();
+        Map<String, List<Object[]>> inserts = new LinkedHashMap<>();
+        for (S event : events) {
+            if (event.getEventId() != null && update(event)) {
+                result.add(event);
+                continue;
+            }
+            if (event.getEventId() == null) {
+                event.setEventId(partitionManager.nextEventId());
+            }
+            inserts.computeIfAbsent(partitionManager.partitionFor(event.getStartTime()), table -> new ArrayList<>())
+                    .add(insertValues(event));
+            result.add(event);
+        }
+        for (Map.Entry<String, List<Object[]>> entry : inserts.entrySet()) {
+            jdbcTemplate.batchUpdate(insertSql(entry.getKey()), entry.getValue());
+        }
+        return result;
+    }
+
+    @Override
+    public List<Event> findByDriverIdAndStartTimeGreaterThanEqualAndStartTimeLessThan(String driverId, LocalDateTime from, LocalDateTime to) {
+        List<Event> result = new ArrayList<>();
+        for (String table : partitionManager.partitionsOverlapping(from, to)) {
+            result.addAll(jdbcTemplate.query("SELECT " + EventPartitionManager.COLUMNS + " FROM " + table +
+                    " WHERE driver_id = ? AND start_time >= ? AND start_time < ?", EVENT_ROW_MAPPER, driverId, from, to));
+        }
+        return result;
+    }
+
+    @Override
+    public List<Event> findLatestByDriverIdAndStartTime(String driverId, LocalDateTime from, LocalDateTime to, int limit) {
+        List<Event> result = new ArrayList<>();
+        List<String> tables = partitionManager.partitionsOverlapping(from, to);
+        // Newer months hold newer events: the first partitions usually fill the page
+        for (int i = tables.size() - 1; i >= 0 && result.size() < limit; i--) {
+            result.addAll(jdbcTemplate.query("SELECT " + EventPartitionManager.COLUMNS + " FROM " + tables.get(i) +
+                    " WHERE driver_id = ? AND start_time >= ? AND start_time < ? ORDER BY start_time DESC, event_id DESC LIMIT ?",
+                    EVENT_ROW_MAPPER, driverId, from, to, limit - result.size()));
+        }
+        return result;
+    }
+
+    @Override
+    public List<Event> findByStartTimeGreaterThanEqualAndStartTimeLessThan(LocalDateTime from, LocalDateTime to) {
+        List<Event> result = new ArrayList<>();
+        for (String table : partitionManager.partitionsOverlapping(from, to)) {
+            result.addAll(jdbcTemplate.query("SELECT " + EventPartitionManager.COLUMNS + " FROM " + table +
+                    " WHERE start_time >= ? AND start_time < ?", EVENT_ROW_MAPPER, from, to));
+        }
+        return result;
+    }
+
+    @Override
+    public void streamByStartTime(String driverId, LocalDateTime from, LocalDateTime to, int fetchSize, Consumer<Event> consumer) {
+        String driverFilter = (driverId != null) ? "driver_id = ? AND " : "";
+        for (String table : partitionManager.partitionsOverlapping(from, to)) {
+            // Both orders are served by an index ((driver_id, start_time) or (start_time)): no sort, rows come as read
+            String sql = "SELECT " + EventPartitionManager.COLUMNS + " FROM " + table +
+                    " WHERE " + driverFilter + "start_time >= ? AND start_time < ? ORDER BY start_time, event_id";
+            PreparedStatementCreator statement = connection -> {
+                PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(fetchSize);
+                int index = 1;
+                if (driverId != null) {
+                    ps.setString(index++, driverId);
+                }
+                ps.setObject(index++, from);
+                ps.setObject(index, to);
+                return ps;
+            };
+            // Each row is mapped, handed over and dropped; nothing is collected
+            jdbcTemplate.query(statement, rs -> {
+                consumer.accept(EVENT_ROW_MAPPER.mapRow(rs, 0));
+            });
+        }
+    }
+
+    @Override
+    public Set<Long> findStoredEventIds(Collection<Long> ids, LocalDateTime from, LocalDateTime to) {
+        Set<Long> stored = new HashSet<>();
+        List<Long> idList = new ArrayList<>(ids);
+        for (int start = 0; start < idList.size(); start += DELETE_BATCH_SIZE) {
+            List<Long> batch = idList.subList(start, Math.min(start + DELETE_BATCH_SIZE, idList.size()));
+            String placeholders = batch.stream().map(id -> "?").collect(Collectors.joining(", "));
+            for (String table : partitionManager.partitionsOverlapping(from, to)) {
+                stored.addAll(jdbcTemplate.queryForList("SELECT event_id FROM " + table +
+                        " WHERE event_id IN (" + placeholders + ")", Long.class, batch.toArray()));
+            }
+        }
+        return stored;
+    }
+
+    @Override
+    public LocalDateTime findMinStartTime() {
+        // MIN over the view would scan every partition; per table it is a single index lookup
+        for (String table : partitionManager.allPartitions()) {
+            LocalDateTime min = jdbcTemplate.queryForObject("SELECT MIN(start_time) FROM " + table, LocalDateTime.class);
+            if (min != null) {
+                return min;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<Event> findPartitionChunk(YearMonth month, long afterEventId, int limit) {
+        if (!partitionManager.allPartitions().contains(EventPartitionManager.tableName(month))) {
+            return Collections.emptyList();
+        }
+        // Keyset pagination on the primary key: each chunk is an index range scan
+        return jdbcTemplate.query("SELECT " + EventPartitionManager.COLUMNS + " FROM " + EventPartitionManager.tableName(month) +
+                " WHERE event_id > ? ORDER BY event_id LIMIT ?", EVENT_ROW_MAPPER, afterEventId, limit);
+    }
+
+    @Override
+    @Transactional
+    public void deleteAllByIdInBatch(Iterable<Long> ids) {
+        List<Long> idList = new ArrayList<>();
+        ids.forEach(idList::add);
+        for (int start = 0; start < idList.size(); start += DELETE_BATCH_SIZE) {
+            List<Long> batch = idList.subList(start, Math.min(start + DELETE_BATCH_SIZE, idList.size()));
+            String placeholders = batch.stream().map(id -> "?").collect(Collectors.joining(", "));
+            for (String table : partitionManager.allPartitions()) {
+                jdbcTemplate.update("DELETE FROM " + table + " WHERE event_id IN (" + placeholders + ")", batch.toArray());
+            }
+        }
+    }
+
+    @Override
+    @Transactional
+    public void deleteByStartTimeBefore(LocalDateTime threshold) {
+        for (YearMonth month : partitionManager.partitionsEndingBefore(threshold)) {
+            partitionManager.dropPartition(month);
+        }
+        for (String table : partitionManager.partitionsOverlapping(LocalDateTime.MIN, threshold)) {
+            jdbcTemplate.update("DELETE FROM " + table + " WHERE start_time < ?", threshold);
+        }
+    }
+
+    // Updates an existing event in place; false if it is not in the partition of its start time
+    private boolean update(Event event) {
+        String table = partitionManager.partitionFor(event.getStartTime());
+        Object[] values = insertValues(event);
+        Object[] arguments = new Object[values.length];
+        System.arraycopy(values, 1, arguments, 0, values.length - 1);
+        arguments[values.length - 1] = event.getEventId();
+        if (jdbcTemplate.update("UPDATE " + table + " SET " + UPDATE_ASSIGNMENTS + " WHERE event_id = ?", arguments) > 0) {
+            return true;
+        }
+        // The start time moved to another month: remove the old copy, the caller inserts a new one
+        deleteAllByIdInBatch(List.of(event.getEventId()));
+        return false;
+    }
+
+    private static String insertSql(String table) {
+        return "INSERT INTO " + table + " (" + EventPartitionManager.COLUMNS + ") VALUES (" + INSERT_PLACEHOLDERS + ")";
+    }
+
+    // Values in the column order of EventPartitionManager.COLUMNS
+    private static Object[] insertValues(Event event) {
+        return new Object[] {
+                event.getEventId(), event.getSessionId(), event.getDriverId(), event.getStartTime(), event.getEndTime(),
+                event.getDuration(), event.getEventType(), event.getMetadata(), event.getEarValue(), event.getLeftEar(),
+                event.getRightEar(), event.getHeadDirection(), event.getFaceDetected(), event.getFeatureSource()
+        };
+    }
+}
@@ -0,0 +1,67 @@
+// What is this file?
+// Repository interface for accessing EventRollup buckets from the database.
+// Why is this needed?
+// It updates rollup buckets at ingest and reads them back for time range analytics.
+
+package com.drivermonitoring.repository;
+
+import com.drivermonitoring.model.EventRollup;
+import com.drivermonitoring.model.EventRollupId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface EventRollupRepository extends JpaRepository<EventRollup, EventRollupId> {
+
+    // Find buckets of one size for a driver in [from, to)
+    @Query("SELECT r FROM EventRollup r WHERE r.id.driverId = :driverId AND r.id.bucketMinutes = :bucketMinutes " +
+           "AND r.id.bucketStart >= :from AND r.id.bucketStart < :to")
+    List<EventRollup> findBuckets(@Param("driverId") String driverId,
+                                  @Param("bucketMinutes") int bucketMinutes,
+                                  @Param("from") LocalDateTime from,
+                                  @Param("to") LocalDateTime to);
+
+    // Find all buckets of one size for a driver (all-time totals)
+    @Query("SELECT r FROM EventRollup r WHERE r.id.driverId = :driverId AND r.id.bucketMinutes = :bucketMinutes")
+    List<EventRollup> findAllBuckets(@Param("driverId") String driverId, @Param("bucketMinutes") int bucketMinutes);
+
+    // Delete buckets of one size in [from, to) for all drivers (before the catch-up job rebuilds them)
+    @Modifying
+    @Query("DELETE FROM EventRollup r WHERE r.id.bucketMinutes = :bucketMinutes " +
+           "AND r.id.bucketStart >= :from AND r.id.bucketStart < :to")
+    int deleteBuckets(@Param("bucketMinutes") int bucketMinutes,
+                      @Param("from") LocalDateTime from,
+                      @Param("to") LocalDateTime to);
+
+    // Atomically add a delta to a bucket, creating the bucket if it does not exist yet (H2 MERGE)
+    @Modifying
+    @Query(value = "MERGE INTO driver_event_rollups r " +
+            "USING (VALUES (CAST(:driverId AS VARCHAR(255)), CAST(:bucketMinutes AS INTEGER), " +
+            "CAST(:bucketStart AS TIMESTAMP(6)), CAST(:eventType AS VARCHAR(255)))) " +
+            "s(driver_id, bucket_minutes, bucket_start, event_type) " +
+            "ON r.driver_id = s.driver_id AND r.bucket_minutes = s.bucket_minutes " +
+            "AND r.bucket_start = s.bucket_start AND r.event_type = s.event_type " +
+            "WHEN MATCHED THEN UPDATE SET event_count = r.event_count + :eventCount, " +
+            "total_duration = r.total_duration + :totalDuration, ear_sum = r.ear_sum + :earSum, " +
+            "ear_count = r.ear_count + :earCount, ear_min = LEAST(COALESCE(r.ear_min, CAST(:earMin AS REAL)), COALESCE(CAST(:earMin AS REAL), r.ear_min)), " +
+            "blink_count = r.blink_count + :blinkCount, blink_rate_sum = r.blink_rate_sum + :blinkRateSum " +
+            "WHEN NOT MATCHED THEN INSERT (driver_id, bucket_minutes, bucket_start, event_type, event_count, " +
+            "total_duration, ear_sum, ear_count, ear_min, blink_count, blink_rate_sum) " +
+            "VALUES (s.driver_id, s.bucket_minutes, s.bucket_start, s.event_type, :eventCount, :totalDuration, " +
+            ":earSum, :earCount, CAST(:earMin AS REAL), :blinkCount, :blinkRateSum)",
+            nativeQuery = true)
+    int addToBucket(@Param("driverId") String driverId,
+                    @Param("bucketMinutes") int bucketMinutes,
+                    @Param("bucketStart") LocalDateTime bucketStart,
+                    @Param("eventType") String eventType,
+                    @Param("eventCount") long eventCount,
+                    @Param("totalDuration") double totalDuration,
+                    @Param("earSum") double earSum,
+                    @Param("earCount") long earCount,
+                    @Param("earMin") Float earMin,
+                    @Param("blinkCount") long blinkCount,
+                    @Param("blinkRateSum") double blinkRateSum);
+}
@@ -0,0 +1,12 @@
+// What is this file?
+// Repository interface for accessing JobCheckpoint data from the database.
+// Why is this needed?
+// It lets background jobs read and store their progress.
+
+package com.drivermonitoring.repository;
+
+import com.drivermonitoring.model.JobCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface JobCheckpointRepository extends JpaRepository<JobCheckpoint, String> {
+}
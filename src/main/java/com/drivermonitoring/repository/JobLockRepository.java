@@ -0,0 +1,38 @@
+// What is this file?
+// Repository interface for the cluster-wide job locks.
+// Why is this needed?
+// Acquiring and releasing a lock are single conditional UPDATEs, so two instances can never both hold it.
+// Lock times use the database clock, so clock differences between the instances do not matter.
+
+package com.drivermonitoring.repository;
+
+import com.drivermonitoring.model.JobLock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface JobLockRepository extends JpaRepository<JobLock, String> {
+
+    // Creates the lock row, free; a concurrent insert of another instance fails on the primary key
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO job_locks (job_name, locked_by, locked_until) " +
+            "SELECT :jobName, NULL, LOCALTIMESTAMP WHERE NOT EXISTS (SELECT 1 FROM job_locks WHERE job_name = :jobName)",
+            nativeQuery = true)
+    int createIfMissing(@Param("jobName") String jobName);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE job_locks SET locked_by = :node, locked_until = DATEADD('MILLISECOND', :lockMillis, LOCALTIMESTAMP) " +
+            "WHERE job_name = :jobName AND locked_until <= LOCALTIMESTAMP", nativeQuery = true)
+    int acquire(@Param("jobName") String jobName, @Param("node") String node, @Param("lockMillis") long lockMillis);
+
+    // Frees the lock after holdMillis more (0 = right away), so other instances do not repeat a run that just finished
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE job_locks SET locked_until = DATEADD('MILLISECOND', :holdMillis, LOCALTIMESTAMP) " +
+            "WHERE job_name = :jobName AND locked_by = :node", nativeQuery = true)
+    int release(@Param("jobName") String jobName, @Param("node") String node, @Param("holdMillis") long holdMillis);
+}
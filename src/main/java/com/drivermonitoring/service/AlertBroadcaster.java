@@ -0,0 +1,241 @@
+// What is this file?
+// Delivers fired alerts to the dispatchers subscribed to /api/alerts/stream (Server-Sent Events) and keeps
+// the latest alerts for /api/alerts/recent and for browsers that reconnect (Last-Event-ID).
+// Every subscriber has a bounded buffer; a few delivery threads drain the buffers and write to the browsers.
+// Why is this needed?
+// Writing to a browser blocks while its connection is slow. Publishing only puts the alert into the buffers
+// and never waits: a subscriber that falls behind loses its oldest alerts (counted), not the engine its time.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.dto.AlertDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class AlertBroadcaster {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlertBroadcaster.class);
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Alerts waiting per subscriber; when full, the oldest is dropped
+    @Value("${alerts.subscriber-buffer:100}")
+    private int subscriberBuffer;
+
+    // Latest alerts kept for /api/alerts/recent and for replay to reconnecting browsers
+    @Value("${alerts.history-size:200}")
+    private int historySize;
+
+    // Threads writing to the browsers; a slow browser occupies one of them only while its buffer is not empty
+    @Value("${alerts.delivery-threads:2}")
+    private int deliveryThreads;
+
+    // A stream is closed after this time; EventSource reconnects on its own and gets what it missed
+    @Value("${alerts.stream-timeout-ms:1800000}")
+    private long streamTimeoutMs;
+
+    private final Map<Long, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private final Deque<AlertDTO> history = new ArrayDeque<>();
+    private final AtomicLong alertIds = new AtomicLong();
+    private final AtomicLong subscriberIds = new AtomicLong();
+    private ExecutorService delivery;
+    private Counter droppedAlerts;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        delivery = Executors.newFixedThreadPool(deliveryThreads, runnable -> {
+            Thread thread = new Thread(runnable, "alert-delivery-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        droppedAlerts = Counter.builder("drivermonitoring.alerts.dropped")
+                .description("Alerts dropped from the buffer of a subscriber that fell behind")
+                .register(meterRegistry);
+        Gauge.builder("drivermonitoring.alerts.subscribers", subscribers, Map::size)
+                .description("Dispatchers subscribed to the alert stream")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Subscriber subscriber : subscribers.values()) {
+            complete(subscriber);
+        }
+        subscribers.clear();
+        delivery.shutdownNow();
+    }
+
+    /**
+     * Records an alert and hands it to every subscriber. Never blocks on a subscriber.
+     * @return The published alert with its ID.
+     */
+    public AlertDTO publish(String driverId, String rule, String message) {
+        AlertDTO alert;
+        synchronized (history) {
+            // IDs are assigned in history order, so a replay by ID never skips an alert
+            alert = new AlertDTO(alertIds.incrementAndGet(), driverId, rule, message, LocalDateTime.now());
+            history.addLast(alert);
+            while (history.size() > historySize) {
+                history.removeFirst();
+            }
+            // Enqueueing never blocks, so the lock is held only briefly
+            for (Subscriber subscriber : subscribers.values()) {
+                enqueue(subscriber, alert);
+            }
+        }
+        return alert;
+    }
+
+    /**
+     * Latest alerts, newest first.
+     */
+    public List<AlertDTO> recent(int limit) {
+        List<AlertDTO> result = new ArrayList<>();
+        synchronized (history) {
+            Iterator<AlertDTO> iterator = history.descendingIterator();
+            while (iterator.hasNext() && result.size() < limit) {
+                result.add(iterator.next());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Opens an alert stream.
+     * @param lastEventId ID of the last alert the browser received before reconnecting, or null;
+     *                    the kept alerts after it are sent first.
+     */
+    public SseEmitter subscribe(Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        Subscriber subscriber = new Subscriber(subscriberIds.incrementAndGet(), emitter,
+                new ArrayBlockingQueue<>(subscriberBuffer));
+        emitter.onCompletion(() -> subscribers.remove(subscriber.id));
+        emitter.onTimeout(() -> subscribers.remove(subscriber.id));
+        emitter.onError(error -> subscribers.remove(subscriber.id));
+        synchronized (history) {
+            // Registered under the history lock: every alert is either replayed or published to it, not both
+            if (lastEventId != null) {
+                for (AlertDTO alert : history) {
+                    if (alert.getId() > lastEventId) {
+                        enqueue(subscriber, alert);
+                    }
+                }
+            }
+            subscribers.put(subscriber.id, subscriber);
+        }
+        logger.debug("Alert subscriber {} connected ({} subscribed)", subscriber.id, subscribers.size());
+        return emitter;
+    }
+
+    // Comment lines keep proxies from closing idle streams and detect browsers that are gone
+    @Scheduled(fixedDelayString = "${alerts.heartbeat-ms:15000}")
+    public void sendHeartbeats() {
+        for (Subscriber subscriber : subscribers.values()) {
+            subscriber.heartbeatDue.set(true);
+            schedule(subscriber);
+        }
+    }
+
+    private void enqueue(Subscriber subscriber, AlertDTO alert) {
+        while (!subscriber.buffer.offer(alert)) {
+            if (subscriber.buffer.poll() != null) {
+                droppedAlerts.increment();
+            }
+        }
+        schedule(subscriber);
+    }
+
+    // At most one drain task per subscriber is queued or running
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.draining.compareAndSet(false, true)) {
+            try {
+                delivery.execute(() -> drain(subscriber));
+            } catch (Exception e) {
+                // Shutting down
+                subscriber.draining.set(false);
+            }
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            while (true) {
+                AlertDTO alert = subscriber.buffer.poll();
+                if (alert != null) {
+                    subscriber.emitter.send(SseEmitter.event()
+                            .id(String.valueOf(alert.getId()))
+                            .name("alert")
+                            .data(alert, MediaType.APPLICATION_JSON));
+                } else if (subscriber.heartbeatDue.getAndSet(false)) {
+                    subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+                } else {
+                    subscriber.draining.set(false);
+                    // Whatever was added after the last poll found draining still set: take it over, unless
+                    // a new task already did
+                    if ((subscriber.buffer.isEmpty() && !subscriber.heartbeatDue.get())
+                            || !subscriber.draining.compareAndSet(false, true)) {
+                        return;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            // The browser is gone (or the stream timed out): the subscriber is dropped, EventSource reconnects
+            subscribers.remove(subscriber.id);
+            subscriber.draining.set(false);
+            logger.debug("Alert subscriber {} disconnected: {}", subscriber.id, e.getMessage());
+            complete(subscriber);
+        }
+    }
+
+    private static void complete(Subscriber subscriber) {
+        try {
+            subscriber.emitter.complete();
+        } catch (Exception ignored) {
+            // Already completed, or the connection is gone
+        }
+    }
+
+    private static class Subscriber {
+        final long id;
+        final SseEmitter emitter;
+        final BlockingQueue<AlertDTO> buffer;
+        final AtomicBoolean draining = new AtomicBoolean();
+        final AtomicBoolean heartbeatDue = new AtomicBoolean();
+
+        Subscriber(long id, SseEmitter emitter, BlockingQueue<AlertDTO> buffer) {
+            this.id = id;
+            this.emitter = emitter;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+// What is this file?
+// Server-side alert engine: evaluates the alert rules incrementally over the detection reports coming out of
+// EventLoggingService and the periodic fatigue predictions, and publishes fired alerts to the dispatchers
+// (AlertBroadcaster). Configured rules (alerts.*, a count or threshold of 0 disables a rule):
+//   drowsy-episodes   at least N DROWSY episodes within a window
+//   distraction       more than S seconds DISTRACTED within a window
+//   high-risk         N predictions in a row with risk HIGH
+// Why is this needed?
+// Until now alerts were only colour changes on the driver's own page; the server raised nothing and a
+// dispatcher had to watch every driver. The state per driver and rule has a fixed size, so evaluating
+// a report costs the same for every driver and the rules can run on the ingest path.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.ai.FatiguePrediction;
+import com.drivermonitoring.dto.AlertDTO;
+import com.drivermonitoring.model.DriverState;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+@Service
+public class AlertEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlertEngine.class);
+
+    @Autowired
+    private AlertBroadcaster alertBroadcaster;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${alerts.enabled:true}")
+    private boolean enabled;
+
+    @Value("${alerts.drowsy-episodes.count:3}")
+    private int drowsyEpisodes;
+
+    @Value("${alerts.drowsy-episodes.window-seconds:300}")
+    private long drowsyWindowSeconds;
+
+    @Value("${alerts.distraction.seconds:20}")
+    private float distractedSeconds;
+
+    @Value("${alerts.distraction.window-seconds:120}")
+    private long distractedWindowSeconds;
+
+    @Value("${alerts.high-risk.consecutive:2}")
+    private int highRiskPredictions;
+
+    // A rule that fired for a driver does not fire for them again within this time
+    @Value("${alerts.cooldown-seconds:60}")
+    private long cooldownSeconds;
+
+    // Reports of the same state within this gap belong to one episode (same tolerance as coalescing)
+    @Value("${ingest.coalesce.gap-ms:2000}")
+    private long episodeGapMillis;
+
+    private final List<AlertRule> rules = new ArrayList<>();
+    private final List<Counter> firedCounters = new ArrayList<>();
+    private final Map<String, DriverAlerts> drivers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        if (drowsyEpisodes > 0) {
+            rules.add(AlertRules.episodeCount("drowsy-episodes", DriverState.DROWSY, drowsyEpisodes,
+                    drowsyWindowSeconds * 1000, episodeGapMillis));
+        }
+        if (distractedSeconds > 0) {
+            rules.add(AlertRules.cumulativeDuration("distraction", DriverState.DISTRACTED, distractedSeconds,
+                    distractedWindowSeconds * 1000));
+        }
+        if (highRiskPredictions > 0) {
+            rules.add(AlertRules.consecutiveRisk("high-risk", FatiguePrediction.RiskLevel.HIGH, highRiskPredictions));
+        }
+        for (AlertRule rule : rules) {
+            firedCounters.add(Counter.builder("drivermonitoring.alerts.fired")
+                    .description("Alerts fired by the server-side alert engine")
+                    .tag("rule", rule.getName())
+                    .register(meterRegistry));
+        }
+        logger.info("Alert engine {} with rules {}", enabled ? "enabled" : "disabled",
+                rules.stream().map(AlertRule::getName).toList());
+    }
+
+    /**
+     * A DROWSY or DISTRACTED report was accepted for the driver.
+     * @param duration Seconds covered by the report.
+     * @param addedSeconds Seconds the report added to the driver's episode.
+     * @param arrivedAt Arrival of the report.
+     */
+    public void recordReport(String driverId, DriverState state, float duration, float addedSeconds, LocalDateTime arrivedAt) {
+        if (!enabled || driverId == null || state == null || state == DriverState.NORMAL || arrivedAt == null) {
+            return;
+        }
+        long endMillis = arrivedAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long startMillis = endMillis - (long) (Math.max(0f, duration) * 1000);
+        evaluate(driverId, endMillis, ruleState -> ruleState.onReport(state, startMillis, endMillis, addedSeconds));
+    }
+
+    /**
+     * A fatigue prediction was computed for the driver's active session.
+     */
+    public void recordPrediction(String driverId, FatiguePrediction.RiskLevel riskLevel) {
+        if (!enabled || driverId == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        evaluate(driverId, now, ruleState -> ruleState.onPrediction(riskLevel, now));
+    }
+
+    /**
+     * Forgets the windows of a driver (called when a session starts or ends).
+     */
+    public void reset(String driverId) {
+        if (driverId != null) {
+            drivers.remove(driverId);
+        }
+    }
+
+    // Feeds the input to every rule of the driver; alerts are published after the driver's lock is released
+    private void evaluate(String driverId, long nowMillis, Function<AlertRule.State, String> input) {
+        if (rules.isEmpty()) {
+            return;
+        }
+        DriverAlerts driver = drivers.computeIfAbsent(driverId, id -> new DriverAlerts(rules));
+        List<Integer> fired = null;
+        List<String> messages = null;
+        synchronized (driver) {
+            for (int i = 0; i < rules.size(); i++) {
+                String message = input.apply(driver.states[i]);
+                if (message == null || nowMillis - driver.lastFired[i] < cooldownSeconds * 1000) {
+                    continue;
+                }
+                driver.lastFired[i] = nowMillis;
+                if (fired == null) {
+                    fired = new ArrayList<>(2);
+                    messages = new ArrayList<>(2);
+                }
+                fired.add(i);
+                messages.add(message);
+            }
+        }
+        if (fired == null) {
+            return;
+        }
+        for (int i = 0; i < fired.size(); i++) {
+            int rule = fired.get(i);
+            firedCounters.get(rule).increment();
+            AlertDTO alert = alertBroadcaster.publish(driverId, rules.get(rule).getName(), messages.get(i));
+            logger.info("Alert {} for driver {}: {}", alert.getRule(), driverId, alert.getMessage());
+        }
+    }
+
+    private static class DriverAlerts {
+        final AlertRule.State[] states;
+        final long[] lastFired;
+
+        DriverAlerts(List<AlertRule> rules) {
+            states = new AlertRule.State[rules.size()];
+            lastFired = new long[rules.size()];
+            for (int i = 0; i < states.length; i++) {
+                states[i] = rules.get(i).newState();
+                lastFired[i] = Long.MIN_VALUE / 2;
+            }
+        }
+    }
+}
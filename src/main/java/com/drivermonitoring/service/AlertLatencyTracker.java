@@ -0,0 +1,263 @@
+// What is this file?
+// Measures the detection-to-alert chain per driver: client timestamp -> request received -> event durable
+// -> a fatigue prediction that includes the event. The stage latencies are aggregated fleet-wide
+// (Micrometer timers with percentiles, also on /actuator/prometheus) and reported by /api/fleet/alert-latency.
+// Why is this needed?
+// The safety SLA is about how long it takes from the moment a driver closes their eyes until the risk is on
+// screen. Each driver's browser clock is off by some amount, so client timestamps are corrected with a
+// per-driver offset estimate (minimum observed delay, slowly aged so clock drift is followed).
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.dto.AlertLatencyReportDTO;
+import com.drivermonitoring.dto.ClockSkewDTO;
+import com.drivermonitoring.dto.LatencyStageDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+@Service
+public class AlertLatencyTracker {
+
+    /** Stages of the detection-to-alert chain (tag stage=...). */
+    public enum Stage {
+        CLIENT_TO_RECEIVE, RECEIVE_TO_COMMIT, COMMIT_TO_PREDICTION, END_TO_END;
+
+        String tag() {
+            return name().toLowerCase();
+        }
+    }
+
+    // The offset estimate may grow by this much per second without a faster sample (clock drift, stale minimum)
+    private static final double OFFSET_AGING_MS_PER_SECOND = 1.0;
+    // A jump larger than this is a clock step on the client: the estimate restarts
+    private static final long CLOCK_STEP_MS = 60_000;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Number of drivers listed in the clock skew part of the report
+    @Value("${latency.report.skew-drivers:10}")
+    private int reportedSkewDrivers;
+
+    private final Map<Stage, Timer> timers = new EnumMap<>(Stage.class);
+    private final Map<String, DriverLatency> drivers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        for (Stage stage : Stage.values()) {
+            timers.put(stage, Timer.builder("drivermonitoring.alert.latency")
+                    .description("Latency of one stage of the detection-to-alert chain")
+                    .tag("stage", stage.tag())
+                    .publishPercentiles(0.5, 0.9, 0.99)
+                    .percentilePrecision(2)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(1))
+                    .maximumExpectedValue(Duration.ofMinutes(5))
+                    .distributionStatisticExpiry(Duration.ofMinutes(5))
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * A detection report arrived. Starts the chain of the driver unless an earlier detection is still in it.
+     * @param clientTimestamp metadata.timestamp of the report (client clock, epoch ms), or null.
+     * @param receivedAt Server time the request arrived (epoch ms).
+     */
+    public void received(String driverId, Number clientTimestamp, long receivedAt) {
+        DriverLatency state = drivers.computeIfAbsent(driverId, id -> new DriverLatency());
+        synchronized (state) {
+            long detectedAt = receivedAt;
+            if (clientTimestamp != null) {
+                long offset = receivedAt - clientTimestamp.longValue();
+                state.updateOffset(offset, receivedAt);
+                long delay = Math.max(0, offset - state.offsetMillis);
+                record(Stage.CLIENT_TO_RECEIVE, delay);
+                detectedAt = receivedAt - delay;
+            }
+            if (state.receivedAt < 0) {
+                state.detectedAt = detectedAt;
+                state.receivedAt = receivedAt;
+            }
+        }
+    }
+
+    /**
+     * The report received at receivedAt was rejected: it does not start a chain.
+     */
+    public void abandon(String driverId, long receivedAt) {
+        DriverLatency state = drivers.get(driverId);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            if (state.receivedAt == receivedAt && state.committedAt < 0) {
+                state.resetChain();
+            }
+        }
+    }
+
+    /**
+     * An event of the driver is durable (inserted, or fsynced to the journal).
+     * With coalescing this is when the episode is written, so the stage includes the episode length.
+     */
+    public void committed(String driverId) {
+        DriverLatency state = drivers.get(driverId);
+        if (state == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (state) {
+            if (state.receivedAt >= 0 && state.committedAt < 0) {
+                state.committedAt = now;
+                record(Stage.RECEIVE_TO_COMMIT, now - state.receivedAt);
+            }
+        }
+    }
+
+    /**
+     * The rollups that predictions read include the driver's committed events.
+     */
+    public void analyticsUpdated(String driverId) {
+        DriverLatency state = drivers.get(driverId);
+        if (state == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (state) {
+            if (state.committedAt >= 0 && state.visibleAt < 0) {
+                state.visibleAt = now;
+            }
+        }
+    }
+
+    /**
+     * A prediction was computed for the driver; it closes the chain if it started after the event became visible.
+     * @param startedAt When the prediction started reading the rollups (epoch ms).
+     */
+    public void predictionUpdated(String driverId, long startedAt) {
+        DriverLatency state = drivers.get(driverId);
+        if (state == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (state) {
+            if (state.visibleAt >= 0 && state.visibleAt <= startedAt) {
+                record(Stage.COMMIT_TO_PREDICTION, now - state.committedAt);
+                record(Stage.END_TO_END, now - state.detectedAt);
+                state.resetChain();
+            }
+        }
+    }
+
+    public AlertLatencyReportDTO getReport() {
+        List<LatencyStageDTO> stages = new ArrayList<>();
+        for (Stage stage : Stage.values()) {
+            Timer timer = timers.get(stage);
+            HistogramSnapshot snapshot = timer.takeSnapshot();
+            LatencyStageDTO dto = new LatencyStageDTO();
+            dto.setStage(stage.tag());
+            dto.setCount(timer.count());
+            dto.setMaxMillis(snapshot.max(TimeUnit.MILLISECONDS));
+            for (ValueAtPercentile value : snapshot.percentileValues()) {
+                double millis = value.value(TimeUnit.MILLISECONDS);
+                if (value.percentile() == 0.5) {
+                    dto.setP50Millis(millis);
+                } else if (value.percentile() == 0.9) {
+                    dto.setP90Millis(millis);
+                } else if (value.percentile() == 0.99) {
+                    dto.setP99Millis(millis);
+                }
+            }
+            stages.add(dto);
+        }
+        List<ClockSkewDTO> skew = new ArrayList<>();
+        drivers.forEach((driverId, state) -> {
+            ClockSkewDTO dto = toSkew(driverId, state);
+            if (dto != null) {
+                skew.add(dto);
+            }
+        });
+        skew.sort(Comparator.comparingLong((ClockSkewDTO dto) -> Math.abs(dto.getOffsetMillis())).reversed());
+        return new AlertLatencyReportDTO(stages, drivers.size(),
+                new ArrayList<>(skew.subList(0, Math.min(reportedSkewDrivers, skew.size()))));
+    }
+
+    /**
+     * @return The clock offset estimate of one driver, or null if no client timestamp was seen yet.
+     */
+    public ClockSkewDTO getClockSkew(String driverId) {
+        DriverLatency state = drivers.get(driverId);
+        return state != null ? toSkew(driverId, state) : null;
+    }
+
+    /**
+     * Drops the state of a driver whose session ended.
+     */
+    public void forget(String driverId) {
+        drivers.remove(driverId);
+    }
+
+    private ClockSkewDTO toSkew(String driverId, DriverLatency state) {
+        synchronized (state) {
+            if (state.samples == 0) {
+                return null;
+            }
+            LocalDateTime lastSample = LocalDateTime.ofInstant(Instant.ofEpochMilli(state.lastSampleAt), ZoneId.systemDefault());
+            return new ClockSkewDTO(driverId, state.offsetMillis, state.samples, lastSample);
+        }
+    }
+
+    private void record(Stage stage, long millis) {
+        timers.get(stage).record(Math.max(0, millis), TimeUnit.MILLISECONDS);
+    }
+
+    // Per-driver state: clock offset estimate and the chain of the oldest detection not yet in a prediction
+    private static class DriverLatency {
+        long offsetMillis;
+        long samples;
+        long lastSampleAt;
+        // -1: not reached yet
+        long detectedAt = -1;
+        long receivedAt = -1;
+        long committedAt = -1;
+        long visibleAt = -1;
+
+        // Minimum filter: the fastest delivery is the closest to the pure clock offset.
+        // The minimum ages upwards so a stale fast sample or client clock drift does not pin it forever.
+        void updateOffset(long offset, long now) {
+            if (samples == 0 || Math.abs(offset - offsetMillis) > CLOCK_STEP_MS) {
+                offsetMillis = offset;
+            } else {
+                long aged = offsetMillis + (long) ((now - lastSampleAt) / 1000.0 * OFFSET_AGING_MS_PER_SECOND);
+                offsetMillis = Math.min(offset, aged);
+            }
+            samples++;
+            lastSampleAt = now;
+        }
+
+        void resetChain() {
+            detectedAt = -1;
+            receivedAt = -1;
+            committedAt = -1;
+            visibleAt = -1;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+// What is this file?
+// A rule of the alert engine, evaluated incrementally: every driver has one State per rule, fed with
+// each detection report and each fatigue prediction of the driver. The rules themselves are in AlertRules.
+// Why is this needed?
+// The engine only knows this interface, so a new kind of rule is one more implementation. Each State has a
+// fixed size and handles an input in O(1), no matter how many reports the driver sends.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.ai.FatiguePrediction;
+import com.drivermonitoring.model.DriverState;
+
+public interface AlertRule {
+
+    /** Name of the rule, reported with its alerts (and as the metric tag rule=...). */
+    String getName();
+
+    /** Creates the empty window state of one driver. */
+    State newState();
+
+    /**
+     * Per-driver state of a rule. Calls of one driver are serialized by the engine.
+     * Each method returns the alert message when the rule fires, otherwise null; after firing
+     * the state starts over, so the same observations do not fire twice.
+     */
+    interface State {
+
+        /**
+         * A DROWSY or DISTRACTED report.
+         * @param startMillis Start of the time the report covers (arrival minus its duration).
+         * @param endMillis Arrival of the report.
+         * @param addedSeconds Part of the report not covered by earlier reports of the driver in that state
+         *                     (ReportedTimeTracker): the page resends the growing episode duration on every frame.
+         */
+        default String onReport(DriverState state, long startMillis, long endMillis, float addedSeconds) {
+            return null;
+        }
+
+        /**
+         * A fatigue prediction (the periodic dispatcher refresh).
+         */
+        default String onPrediction(FatiguePrediction.RiskLevel riskLevel, long nowMillis) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+// What is this file?
+// The kinds of alert rules, each with a fixed-size per-driver window:
+//   episodeCount        N episodes of a state within a window (ring of the last N episode starts)
+//   cumulativeDuration  more than S seconds of a state within a window (ring of time buckets)
+//   consecutiveRisk     the risk level of N predictions in a row at or above a level (a counter)
+// Why is this needed?
+// The engine evaluates the rules on the ingest path for every report, so no rule may keep a list of events
+// or look at the database: memory and work per driver and input are constant.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.ai.FatiguePrediction;
+import com.drivermonitoring.model.DriverState;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+public final class AlertRules {
+
+    private AlertRules() {
+    }
+
+    /**
+     * Fires when `count` episodes of `state` started within `windowMillis`. Reports of the same state that
+     * follow each other within `gapMillis` belong to one episode (the same tolerance as EventCoalescer),
+     * so a driver reporting an episode on every frame counts once.
+     */
+    public static AlertRule episodeCount(String name, DriverState state, int count, long windowMillis, long gapMillis) {
+        return new AlertRule() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public State newState() {
+                return new EpisodeCountState(state, count, windowMillis, gapMillis);
+            }
+        };
+    }
+
+    /**
+     * Fires when the time spent in `state` within the last `windowMillis` exceeds `seconds`.
+     * The window moves in steps of a twelfth of its length.
+     */
+    public static AlertRule cumulativeDuration(String name, DriverState state, float seconds, long windowMillis) {
+        return new AlertRule() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public State newState() {
+                return new CumulativeDurationState(state, seconds, windowMillis);
+            }
+        };
+    }
+
+    /**
+     * Fires when `count` predictions in a row have a risk level of at least `level`.
+     */
+    public static AlertRule consecutiveRisk(String name, FatiguePrediction.RiskLevel level, int count) {
+        return new AlertRule() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public State newState() {
+                return new ConsecutiveRiskState(level, count);
+            }
+        };
+    }
+
+    // 300000 -> "5 мин", 90000 -> "90 с"
+    static String formatWindow(long windowMillis) {
+        long seconds = windowMillis / 1000;
+        return seconds % 60 == 0 ? (seconds / 60) + " мин" : seconds + " с";
+    }
+
+    private static final class EpisodeCountState implements AlertRule.State {
+        private final DriverState state;
+        private final long windowMillis;
+        private final long gapMillis;
+        // Starts of the last `count` episodes; next is the oldest once the ring is full
+        private final long[] starts;
+        private int next;
+        private int filled;
+        private DriverState lastState;
+        private long lastEndMillis = Long.MIN_VALUE;
+
+        EpisodeCountState(DriverState state, int count, long windowMillis, long gapMillis) {
+            this.state = state;
+            this.windowMillis = windowMillis;
+            this.gapMillis = gapMillis;
+            this.starts = new long[count];
+        }
+
+        @Override
+        public String onReport(DriverState reported, long startMillis, long endMillis, float addedSeconds) {
+            boolean continues = reported == lastState && lastEndMillis != Long.MIN_VALUE
+                    && startMillis <= lastEndMillis + gapMillis;
+            lastState = reported;
+            lastEndMillis = continues ? Math.max(lastEndMillis, endMillis) : endMillis;
+            if (reported != state || continues) {
+                return null;
+            }
+            starts[next] = startMillis;
+            next = (next + 1) % starts.length;
+            filled = Math.min(filled + 1, starts.length);
+            if (filled < starts.length || endMillis - starts[next] > windowMillis) {
+                return null;
+            }
+            filled = 0;
+            return String.format(Locale.ROOT, "Эпизоды %s: %d за %s", state, starts.length, formatWindow(windowMillis));
+        }
+    }
+
+    private static final class CumulativeDurationState implements AlertRule.State {
+        private static final int BUCKETS = 12;
+
+        private final DriverState state;
+        private final float thresholdSeconds;
+        private final long windowMillis;
+        private final long bucketMillis;
+        private final float[] seconds = new float[BUCKETS];
+        private long currentBucket = Long.MIN_VALUE;
+
+        CumulativeDurationState(DriverState state, float thresholdSeconds, long windowMillis) {
+            this.state = state;
+            this.thresholdSeconds = thresholdSeconds;
+            this.windowMillis = windowMillis;
+            this.bucketMillis = Math.max(1, windowMillis / BUCKETS);
+        }
+
+        @Override
+        public String onReport(DriverState reported, long startMillis, long endMillis, float addedSeconds) {
+            if (reported != state || addedSeconds <= 0f) {
+                return null;
+            }
+            advance(endMillis / bucketMillis);
+            seconds[(int) Math.floorMod(currentBucket, (long) BUCKETS)] += addedSeconds;
+            float total = 0f;
+            for (float bucket : seconds) {
+                total += bucket;
+            }
+            if (total <= thresholdSeconds) {
+                return null;
+            }
+            Arrays.fill(seconds, 0f);
+            return String.format(Locale.ROOT, "%s %.0f с за последние %s", state, total, formatWindow(windowMillis));
+        }
+
+        // Clears the buckets that left the window; a late report is added to the current bucket
+        private void advance(long bucket) {
+            if (currentBucket == Long.MIN_VALUE || bucket - currentBucket >= BUCKETS) {
+                Arrays.fill(seconds, 0f);
+                currentBucket = bucket;
+                return;
+            }
+            while (currentBucket < bucket) {
+                currentBucket++;
+                seconds[(int) Math.floorMod(currentBucket, (long) BUCKETS)] = 0f;
+            }
+        }
+    }
+
+    private static final class ConsecutiveRiskState implements AlertRule.State {
+        private final FatiguePrediction.RiskLevel level;
+        private final int count;
+        private int streak;
+
+        ConsecutiveRiskState(FatiguePrediction.RiskLevel level, int count) {
+            this.level = level;
+            this.count = count;
+        }
+
+        @Override
+        public String onPrediction(FatiguePrediction.RiskLevel riskLevel, long nowMillis) {
+            streak = riskLevel != null && riskLevel.compareTo(level) >= 0 ? streak + 1 : 0;
+            if (streak < count) {
+                return null;
+            }
+            streak = 0;
+            return String.format(Locale.ROOT, "Риск %s в %d прогнозах подряд", level, count);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+// What is this file?
+// Read path over archived event segments: event listings and summaries for old date ranges.
+// It keeps an in-memory catalog of segments (driver, min/max time) to skip irrelevant files.
+// Why is this needed?
+// Events moved out of driver_events by the retention job stay visible to dispatchers,
+// without ever loading archives back into the database.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.model.ArchiveSegment;
+import com.drivermonitoring.model.Event;
+import com.drivermonitoring.util.EventSegmentFiles;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Service
+public class ArchivedEventQueryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArchivedEventQueryService.class);
+
+    @Value("${archive.directory:./data/archive}")
+    private String archiveDirectory;
+
+    // driverId -> segments sorted by minTime (one entry per file)
+    private final Map<String, ConcurrentSkipListMap<SegmentKey, ArchiveSegment>> catalog = new ConcurrentHashMap<>();
+
+    /**
+     * Builds the catalog from the segment index files on disk.
+     */
+    @PostConstruct
+    public void rescan() {
+        Path root = Paths.get(archiveDirectory);
+        catalog.clear();
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        int segments = 0;
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path segment : files.filter(p -> p.toString().endsWith(EventSegmentFiles.SEGMENT_SUFFIX)).collect(Collectors.toList())) {
+                register(describeSegment(segment));
+                segments++;
+            }
+            logger.info("Archive catalog loaded: {} segment(s) under {}", segments, root.toAbsolutePath());
+        } catch (IOException e) {
+            logger.error("Failed to scan archive directory {}: {}", root, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Adds a segment to the catalog (called by the archival job after writing it).
+     * @param segment Segment description.
+     */
+    public void register(ArchiveSegment segment) {
+        if (segment == null || segment.getDriverId() == null || segment.getMinTime() == null) {
+            return;
+        }
+        catalog.computeIfAbsent(segment.getDriverId(), id -> new ConcurrentSkipListMap<>())
+                .put(new SegmentKey(segment.getMinTime(), segment.getPath()), segment);
+    }
+
+    /**
+     * Checks whether any archived segment of the driver overlaps [from, to).
+     * This is a pure in-memory check, cheap enough to run before every raw event query.
+     */
+    public boolean hasArchivedEvents(String driverId, LocalDateTime from, LocalDateTime to) {
+        return !findSegments(driverId, from, to).isEmpty();
+    }
+
+    /**
+     * Lists archived events of a driver with startTime in [from, to), latest first.
+     * @param driverId The ID of the driver.
+     * @param from Range start (inclusive).
+     * @param to Range end (exclusive).
+     * @return Matching archived events (empty if none or on error).
+     */
+    public List<Event> findEvents(String driverId, LocalDateTime from, LocalDateTime to) {
+        List<Event> result = new ArrayList<>();
+        Set<Long> seenIds = new HashSet<>();
+        for (ArchiveSegment segment : findSegments(driverId, from, to)) {
+            try {
+                for (Event event : EventSegmentFiles.readSegment(Paths.get(segment.getPath()))) {
+                    LocalDateTime time = event.getStartTime();
+                    // A chunk rewritten after a crash may exist in two segments: keep one copy
+                    if (time != null && !time.isBefore(from) && time.isBefore(to) && seenIds.add(event.getEventId())) {
+                        result.add(event);
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Failed to read archive segment {}: {}", segment.getPath(), e.getMessage());
+            }
+        }
+        result.sort(Comparator.comparing(Event::getStartTime).reversed());
+        return result;
+    }
+
+    /**
+     * Latest archived events of a driver with startTime in [from, to), latest first, at most `limit` of them.
+     * Segments are read newest first (by their latest event) and reading stops once no unread segment can
+     * hold an event newer than the oldest one kept, so a page of a long range reads a few segments.
+     * @param driverId The ID of the driver.
+     * @param from Range start (inclusive).
+     * @param to Range end (exclusive).
+     * @param limit Maximum number of events.
+     * @param excludedIds IDs to skip (events already read from the database).
+     * @return Matching archived events (empty if none or on error).
+     */
+    public List<Event> findLatestEvents(String driverId, LocalDateTime from, LocalDateTime to, int limit, Set<Long> excludedIds) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        List<ArchiveSegment> segments = new ArrayList<>(findSegments(driverId, from, to));
+        segments.sort(Comparator.comparing(ArchiveSegment::getMaxTime).reversed());
+        // Oldest kept event on top, evicted when a newer one arrives
+        PriorityQueue<Event> latest = new PriorityQueue<>(Comparator.comparing(Event::getStartTime));
+        Set<Long> seenIds = new HashSet<>(excludedIds);
+        for (ArchiveSegment segment : segments) {
+            if (latest.size() >= limit && segment.getMaxTime().isBefore(latest.peek().getStartTime())) {
+                break;
+            }
+            try {
+                for (Event event : EventSegmentFiles.readSegment(Paths.get(segment.getPath()))) {
+                    LocalDateTime time = event.getStartTime();
+                    if (time == null || time.isBefore(from) || !time.isBefore(to) || !seenIds.add(event.getEventId())) {
+                        continue;
+                    }
+                    latest.add(event);
+                    if (latest.size() > limit) {
+                        latest.poll();
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Failed to read archive segment {}: {}", segment.getPath(), e.getMessage());
+            }
+        }
+        List<Event> result = new ArrayList<>(latest);
+        result.sort(Comparator.comparing(Event::getStartTime).reversed());
+        return result;
+    }
+
+    /**
+     * Archived segments overlapping [from, to), oldest first (by their earliest event).
+     * Only the catalog is read; the caller reads one segment at a time (exports).
+     * @param driverId The ID of the driver, or null for the segments of all drivers.
+     */
+    public List<ArchiveSegment> findSegmentsOverlapping(String driverId, LocalDateTime from, LocalDateTime to) {
+        List<ArchiveSegment> result = new ArrayList<>();
+        if (driverId != null) {
+            result.addAll(findSegments(driverId, from, to));
+        } else {
+            for (String catalogDriverId : catalog.keySet()) {
+                result.addAll(findSegments(catalogDriverId, from, to));
+            }
+            result.sort(Comparator.comparing(ArchiveSegment::getMinTime));
+        }
+        return result;
+    }
+
+    /**
+     * Merges live database events with archived events of the same range, latest first.
+     * Events present in both (archived but not yet deleted) are returned once.
+     * @param driverId The ID of the driver.
+     * @param from Range start (inclusive).
+     * @param to Range end (exclusive).
+     * @param liveEvents Events read from the database for the same range.
+     * @return The merged list.
+     */
+    public List<Event> mergeWithArchive(String driverId, LocalDateTime from, LocalDateTime to, List<Event> liveEvents) {
+        if (!hasArchivedEvents(driverId, from, to)) {
+            return liveEvents;
+        }
+        Set<Long> liveIds = liveEvents.stream().map(Event::getEventId).collect(Collectors.toSet());
+        List<Event> merged = new ArrayList<>(liveEvents);
+        for (Event archived : findEvents(driverId, from, to)) {
+            if (!liveIds.contains(archived.getEventId())) {
+                merged.add(archived);
+            }
+        }
+        merged.sort(Comparator.comparing(Event::getStartTime).reversed());
+        return merged;
+    }
+
+    // Segments of the driver whose [minTime, maxTime] overlaps [from, to)
+    private List<ArchiveSegment> findSegments(String driverId, LocalDateTime from, LocalDateTime to) {
+        ConcurrentSkipListMap<SegmentKey, ArchiveSegment> segments = (driverId != null) ? catalog.get(driverId) : null;
+        if (segments == null || from == null || to == null || !from.isBefore(to)) {
+            return Collections.emptyList();
+        }
+        List<ArchiveSegment> result = new ArrayList<>();
+        // Keys are sorted by minTime, so segments starting at or after "to" are never visited
+        for (ArchiveSegment segment : segments.headMap(new SegmentKey(to, "")).values()) {
+            if (!segment.getMaxTime().isBefore(from) && segment.getMinTime().isBefore(to)) {
+                result.add(segment);
+            }
+        }
+        return result;
+    }
+
+    // Reads the segment's index file; without one, the whole day of the partition is assumed
+    private ArchiveSegment describeSegment(Path segment) throws IOException {
+        Path index = EventSegmentFiles.indexPath(segment);
+        if (Files.exists(index)) {
+            ArchiveSegment info = EventSegmentFiles.readIndex(index);
+            info.setPath(segment.toString());
+            return info;
+        }
+        String driverId = segment.getParent().getFileName().toString();
+        LocalDate day = LocalDate.parse(segment.getParent().getParent().getFileName().toString());
+        return new ArchiveSegment(segment.toString(), driverId, day.atStartOfDay(),
+                day.plusDays(1).atStartOfDay().minusNanos(1), 0, 0, 0);
+    }
+
+    // Catalog key: segments ordered by their earliest event, path keeps keys unique
+    private record SegmentKey(LocalDateTime minTime, String path) implements Comparable<SegmentKey> {
+        @Override
+        public int compareTo(SegmentKey other) {
+            int byTime = minTime.compareTo(other.minTime);
+            return byTime != 0 ? byTime : path.compareTo(other.path);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+// What is this file?
+// Background job that recomputes the fatigue prediction of drivers with an active session and stores it
+// in the dispatcher read model.
+// Why is this needed?
+// The dispatcher prediction page reads the stored prediction instead of computing features per request.
+// A prediction is recomputed when new events arrived for the driver, or when it gets old (the time-of-day
+// and session-length features change even without events).
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.ai.FatiguePrediction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+
+@Service
+public class DispatcherPredictionRefresher {
+
+    private static final Logger logger = LoggerFactory.getLogger(DispatcherPredictionRefresher.class);
+
+    @Autowired
+    private DispatcherReadModel dispatcherReadModel;
+
+    @Autowired
+    private DriverAnalyticsService driverAnalyticsService;
+
+    @Autowired
+    private AlertEngine alertEngine;
+
+    @Autowired
+    private SessionLeaseService sessionLeaseService;
+
+    // Predictions without new events are recomputed after this age
+    @Value("${readmodel.prediction-max-age-ms:30000}")
+    private long maxAgeMs;
+
+    @Scheduled(fixedDelayString = "${readmodel.prediction-refresh-ms:5000}")
+    public void refreshPredictions() {
+        Map<String, DispatcherReadModel.PredictionDue> due = dispatcherReadModel.sessionsNeedingPrediction(maxAgeMs);
+        for (Map.Entry<String, DispatcherReadModel.PredictionDue> entry : due.entrySet()) {
+            try {
+                FatiguePrediction prediction = driverAnalyticsService.getFatiguePrediction(entry.getKey());
+                dispatcherReadModel.updatePrediction(entry.getKey(), entry.getValue(), prediction);
+                // The refresh gives the alert rules one score per driver and interval; in a cluster
+                // only the owner of the session alerts, the other instances just show the prediction
+                if (sessionLeaseService.isOwned(entry.getKey())) {
+                    alertEngine.recordPrediction(entry.getKey(), prediction.getRiskLevel());
+                }
+            } catch (Exception e) {
+                // The previous prediction stays visible and is retried on the next run
+                logger.warn("Failed to refresh prediction for driver {}: {}", entry.getKey(), e.getMessage());
+            }
+        }
+        if (!due.isEmpty()) {
+            logger.debug("Refreshed predictions of {} driver(s)", due.size());
+        }
+    }
+}
@@ -0,0 +1,562 @@
+// What is this file?
+// Denormalized read model behind the dispatcher pages: a summary per driver, a summary per recent session,
+// the recent-events feed of every driver and the latest fatigue prediction.
+// Ingest and session changes are published into a bounded queue and applied by one projector thread.
+// Why is this needed?
+// Dispatcher pages used to aggregate rollups and query events on every request, competing with ingest
+// for the database. Now a page costs O(rows shown) in memory and never touches the database, and a burst
+// of dispatcher traffic cannot slow down ingest (publishing never blocks; on overflow the driver is
+// reloaded from the database once the queue has drained).
+// In a cluster only the owner of a driver's session publishes its updates: the drivers active on other
+// instances are reloaded from the database every readmodel.cluster-refresh-ms instead.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.ai.FatiguePrediction;
+import com.drivermonitoring.dto.DriverSummaryDTO;
+import com.drivermonitoring.dto.SessionSummaryDTO;
+import com.drivermonitoring.model.Driver;
+import com.drivermonitoring.model.DriverSession;
+import com.drivermonitoring.model.Event;
+import com.drivermonitoring.model.EventSummary;
+import com.drivermonitoring.repository.DriverRepository;
+import com.drivermonitoring.repository.DriverSessionRepository;
+import com.drivermonitoring.repository.EventRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class DispatcherReadModel {
+
+    private static final Logger logger = LoggerFactory.getLogger(DispatcherReadModel.class);
+
+    @Autowired
+    private DriverRepository driverRepository;
+
+    @Autowired
+    private DriverSessionRepository sessionRepository;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private EventRollupService eventRollupService;
+
+    @Autowired
+    private DriverRatingService driverRatingService;
+
+    @Autowired
+    private SessionLeaseService sessionLeaseService;
+
+    // Updates waiting for the projector; publishers never wait for a free slot
+    @Value("${readmodel.queue-capacity:10000}")
+    private int queueCapacity;
+
+    // Size of the recent-events feed kept per driver
+    @Value("${readmodel.recent-events:100}")
+    private int recentEventsLimit;
+
+    // Number of latest sessions kept per driver
+    @Value("${readmodel.recent-sessions:10}")
+    private int recentSessionsLimit;
+
+    private final Map<String, DriverView> drivers = new ConcurrentHashMap<>();
+    private final Map<Long, SessionSummaryDTO> sessions = new ConcurrentHashMap<>();
+    // Drivers whose updates were dropped on overflow: reloaded from the database by the projector
+    private final Set<String> resyncDrivers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong appliedUpdates = new AtomicLong();
+    private final AtomicLong droppedUpdates = new AtomicLong();
+    private BlockingQueue<Update> queue;
+    private Thread projector;
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        // Loaded before the web server and the schedulers start, so no update can race the initial load
+        long started = System.currentTimeMillis();
+        for (Driver driver : driverRepository.findAll()) {
+            loadDriver(driver.getDriverId(), driver.getDriverName());
+        }
+        logger.info("Dispatcher read model loaded {} driver(s) and {} session(s) in {} ms",
+                drivers.size(), sessions.size(), System.currentTimeMillis() - started);
+
+        projector = new Thread(this::runProjector, "dispatcher-read-model");
+        projector.setDaemon(true);
+        projector.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (projector != null) {
+            projector.interrupt();
+        }
+    }
+
+    // --- Publishing (called by ingest and session services, never blocks) ---
+
+    public void driverRegistered(String driverId, String driverName) {
+        publish(driverId, () -> {
+            DriverView view = view(driverId);
+            synchronized (view) {
+                view.driverName = driverName;
+            }
+        });
+    }
+
+    public void eventRecorded(Event event) {
+        if (event == null || event.getDriverId() == null) {
+            return;
+        }
+        Event compact = compactCopy(event);
+        Double blinkRate = EventRollupService.extractBlinkRate(event.getMetadata());
+        publish(event.getDriverId(), () -> applyEvent(compact, blinkRate));
+    }
+
+    public void sessionStarted(DriverSession session) {
+        SessionSummaryDTO summary = new SessionSummaryDTO(session.getSessionId(), session.getDriverId(),
+                session.getStartTime(), null, true, 0, 0, 0.0, 0.0);
+        publish(session.getDriverId(), () -> applySessionStarted(summary));
+    }
+
+    public void sessionEnded(DriverSession session) {
+        Long sessionId = session.getSessionId();
+        LocalDateTime endTime = session.getEndTime();
+        publish(session.getDriverId(), () -> applySessionEnded(session.getDriverId(), sessionId, endTime));
+    }
+
+    // Sessions closed in bulk (idle or stale): the active session of each driver ends at endTime
+    public void sessionsClosed(Collection<String> driverIds, LocalDateTime endTime) {
+        for (String driverId : driverIds) {
+            publish(driverId, () -> {
+                DriverView view = drivers.get(driverId);
+                Long sessionId = view != null ? view.activeSessionId : null;
+                if (sessionId != null) {
+                    SessionSummaryDTO session = sessions.get(sessionId);
+                    // A session started after endTime was not closed by the bulk update
+                    if (session == null || session.getStartTime() == null || !session.getStartTime().isAfter(endTime)) {
+                        applySessionEnded(driverId, sessionId, endTime);
+                    }
+                }
+            });
+        }
+    }
+
+    // Set directly by DispatcherPredictionRefresher; a prediction is only kept for the session it was made in.
+    // It stays outdated if events arrived after sessionsNeedingPrediction (they may not be in it)
+    public void updatePrediction(String driverId, PredictionDue due, FatiguePrediction prediction) {
+        DriverView view = drivers.get(driverId);
+        if (view == null) {
+            return;
+        }
+        synchronized (view) {
+            if (due.sessionId() != null && due.sessionId().equals(view.activeSessionId)) {
+                view.prediction = prediction;
+                view.predictionAt = System.currentTimeMillis();
+                if (view.eventCount == due.eventCount()) {
+                    view.predictionDirty = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Cluster mode: schedules a reload of the drivers whose updates are published on other instances, i.e.
+     * the drivers active elsewhere and those this model still shows active but this instance does not own.
+     */
+    @Scheduled(fixedDelayString = "${readmodel.cluster-refresh-ms:10000}")
+    public void refreshRemoteDrivers() {
+        if (!sessionLeaseService.isEnabled()) {
+            return;
+        }
+        try {
+            Set<String> remote = new HashSet<>(sessionRepository.findActiveDriverIdsNotOwnedBy(sessionLeaseService.getNodeId()));
+            for (DriverView view : drivers.values()) {
+                if (view.activeSessionId != null) {
+                    remote.add(view.driverId);
+                }
+            }
+            remote.removeIf(sessionLeaseService::isOwned);
+            resyncDrivers.addAll(remote);
+        } catch (Exception e) {
+            logger.warn("Failed to list the drivers of other instances: {}", e.getMessage());
+        }
+    }
+
+    // --- Queries (dispatcher pages) ---
+
+    /**
+     * @return Summaries of all drivers, sorted by name.
+     */
+    public List<DriverSummaryDTO> getDriverSummaries() {
+        List<DriverSummaryDTO> result = new ArrayList<>(drivers.size());
+        for (DriverView view : drivers.values()) {
+            result.add(toSummary(view));
+        }
+        result.sort(Comparator.comparing(DriverSummaryDTO::getDriverName, Comparator.nullsLast(String::compareToIgnoreCase)));
+        return result;
+    }
+
+    /**
+     * @return Summary of the driver, or null if the driver is unknown.
+     */
+    public DriverSummaryDTO getDriverSummary(String driverId) {
+        DriverView view = driverId != null ? drivers.get(driverId) : null;
+        return view != null ? toSummary(view) : null;
+    }
+
+    /**
+     * @return Latest events of the driver, newest first (compact copies without metadata JSON).
+     */
+    public List<Event> getRecentEvents(String driverId) {
+        DriverView view = driverId != null ? drivers.get(driverId) : null;
+        if (view == null) {
+            return List.of();
+        }
+        synchronized (view) {
+            return new ArrayList<>(view.recentEvents);
+        }
+    }
+
+    /**
+     * @return Latest sessions of the driver, newest first.
+     */
+    public List<SessionSummaryDTO> getRecentSessions(String driverId) {
+        DriverView view = driverId != null ? drivers.get(driverId) : null;
+        if (view == null) {
+            return List.of();
+        }
+        List<SessionSummaryDTO> result = new ArrayList<>();
+        synchronized (view) {
+            for (Long sessionId : view.recentSessionIds) {
+                SessionSummaryDTO session = sessions.get(sessionId);
+                if (session != null) {
+                    result.add(copy(session));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The latest prediction of the driver's active session; a placeholder while it is computed.
+     */
+    public FatiguePrediction getPrediction(String driverId) {
+        DriverView view = driverId != null ? drivers.get(driverId) : null;
+        if (view == null) {
+            return new FatiguePrediction(FatiguePrediction.RiskLevel.LOW, 0f, 120, "Нет активной сессии");
+        }
+        synchronized (view) {
+            if (view.activeSessionId == null) {
+                return new FatiguePrediction(FatiguePrediction.RiskLevel.LOW, 0f, 120, "Нет активной сессии");
+            }
+            if (view.prediction == null) {
+                return new FatiguePrediction(FatiguePrediction.RiskLevel.LOW, 0f, 120, "Прогноз рассчитывается, обновите страницу через несколько секунд");
+            }
+            FatiguePrediction p = view.prediction;
+            return new FatiguePrediction(p.getRiskLevel(), p.getProbability(), p.getMinutesUntilHigh(), p.getRecommendation());
+        }
+    }
+
+    /**
+     * @param maxAgeMillis Predictions older than this are refreshed even without new events.
+     * @return Active session (and events applied so far) per driver whose prediction is missing, outdated by
+     *         new events or too old; passed back to updatePrediction with the new prediction.
+     */
+    public Map<String, PredictionDue> sessionsNeedingPrediction(long maxAgeMillis) {
+        long now = System.currentTimeMillis();
+        Map<String, PredictionDue> result = new LinkedHashMap<>();
+        for (DriverView view : drivers.values()) {
+            synchronized (view) {
+                if (view.activeSessionId != null
+                        && (view.prediction == null || view.predictionDirty || now - view.predictionAt >= maxAgeMillis)) {
+                    result.put(view.driverId, new PredictionDue(view.activeSessionId, view.eventCount));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return Queue and projection metrics.
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("drivers", drivers.size());
+        status.put("sessions", sessions.size());
+        status.put("queued", queue.size());
+        status.put("appliedUpdates", appliedUpdates.get());
+        status.put("droppedUpdates", droppedUpdates.get());
+        status.put("pendingResync", resyncDrivers.size());
+        return status;
+    }
+
+    // --- Projection (projector thread only) ---
+
+    private void publish(String driverId, Runnable change) {
+        if (driverId == null) {
+            return;
+        }
+        if (!queue.offer(new Update(driverId, change))) {
+            // Ingest is never slowed down by the read model: the driver is reloaded later instead
+            droppedUpdates.incrementAndGet();
+            resyncDrivers.add(driverId);
+        }
+    }
+
+    private void runProjector() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Update update = queue.poll(1, TimeUnit.SECONDS);
+                if (update != null) {
+                    apply(update);
+                }
+                // Reload only when the queue has drained, so no older update is applied on top of the reload
+                if (queue.isEmpty() && !resyncDrivers.isEmpty()) {
+                    resync();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void apply(Update update) {
+        // Updates queued before a pending reload are already covered by it
+        if (resyncDrivers.contains(update.driverId)) {
+            return;
+        }
+        try {
+            update.change.run();
+            appliedUpdates.incrementAndGet();
+        } catch (Exception e) {
+            logger.warn("Failed to apply read model update for driver {}: {}", update.driverId, e.getMessage());
+            resyncDrivers.add(update.driverId);
+        }
+    }
+
+    private void resync() {
+        for (String driverId : new ArrayList<>(resyncDrivers)) {
+            resyncDrivers.remove(driverId);
+            try {
+                String name = driverRepository.findById(driverId).map(Driver::getDriverName).orElse(driverId);
+                loadDriver(driverId, name);
+                logger.debug("Reloaded read model of driver {}", driverId);
+            } catch (Exception e) {
+                logger.warn("Failed to reload read model of driver {}: {}", driverId, e.getMessage());
+                resyncDrivers.add(driverId);
+            }
+        }
+    }
+
+    // Builds the driver's view from rollups, the latest events and sessions and swaps it in
+    private void loadDriver(String driverId, String driverName) {
+        DriverView view = new DriverView(driverId, driverName);
+        view.summary = eventRollupService.summarizeAll(driverId);
+        view.sessionCount = eventRepository.countDistinctSessionsByDriverId(driverId);
+        for (Event event : eventRepository.findTop100ByDriverIdOrderByStartTimeDesc(driverId)) {
+            if (view.recentEvents.size() >= recentEventsLimit) {
+                break;
+            }
+            view.recentEvents.addLast(compactCopy(event));
+            if (event.getSessionId() != null) {
+                view.lastCountedSessionId = Math.max(view.lastCountedSessionId, event.getSessionId());
+            }
+            if (view.lastEventTime == null) {
+                view.lastEventTime = event.getStartTime();
+            }
+        }
+
+        List<SessionSummaryDTO> loaded = new ArrayList<>();
+        for (DriverSession session : sessionRepository.findTop10ByDriverIdOrderByStartTimeDesc(driverId)) {
+            if (loaded.size() >= recentSessionsLimit) {
+                break;
+            }
+            SessionSummaryDTO summary = new SessionSummaryDTO(session.getSessionId(), driverId,
+                    session.getStartTime(), session.getEndTime(), session.isActive(), 0, 0, 0.0, 0.0);
+            for (Object[] row : eventRepository.sumEventsBySessionIdGroupedByType(session.getSessionId())) {
+                addTotals(summary, (String) row[0], ((Number) row[1]).longValue(), row[2] != null ? ((Number) row[2]).doubleValue() : 0.0);
+            }
+            loaded.add(summary);
+            view.recentSessionIds.addLast(session.getSessionId());
+            if (session.isActive() && view.activeSessionId == null) {
+                view.activeSessionId = session.getSessionId();
+            }
+        }
+
+        DriverView previous = drivers.put(driverId, view);
+        if (previous != null) {
+            synchronized (previous) {
+                previous.recentSessionIds.forEach(sessions::remove);
+            }
+        }
+        loaded.forEach(summary -> sessions.put(summary.getSessionId(), summary));
+    }
+
+    private void applyEvent(Event event, Double blinkRate) {
+        DriverView view = view(event.getDriverId());
+        synchronized (view) {
+            view.summary.addEvent(event, blinkRate);
+            view.ratingValid = false;
+            view.predictionDirty = true;
+            view.eventCount++;
+            view.recentEvents.addFirst(event);
+            while (view.recentEvents.size() > recentEventsLimit) {
+                view.recentEvents.removeLast();
+            }
+            if (event.getStartTime() != null && (view.lastEventTime == null || event.getStartTime().isAfter(view.lastEventTime))) {
+                view.lastEventTime = event.getStartTime();
+            }
+            // Session IDs only grow and events only arrive for the active session
+            Long sessionId = event.getSessionId();
+            if (sessionId != null && sessionId > view.lastCountedSessionId) {
+                view.lastCountedSessionId = sessionId;
+                view.sessionCount++;
+            }
+            if (sessionId != null) {
+                SessionSummaryDTO session = sessions.get(sessionId);
+                if (session != null) {
+                    addTotals(session, event.getEventType(), 1, event.getDuration());
+                }
+            }
+        }
+    }
+
+    private void applySessionStarted(SessionSummaryDTO summary) {
+        DriverView view = view(summary.getDriverId());
+        synchronized (view) {
+            if (view.activeSessionId != null && !view.activeSessionId.equals(summary.getSessionId())) {
+                SessionSummaryDTO previous = sessions.get(view.activeSessionId);
+                if (previous != null && previous.isActive()) {
+                    previous.setActive(false);
+                    previous.setEndTime(summary.getStartTime());
+                }
+            }
+            sessions.put(summary.getSessionId(), summary);
+            view.recentSessionIds.remove(summary.getSessionId());
+            view.recentSessionIds.addFirst(summary.getSessionId());
+            while (view.recentSessionIds.size() > recentSessionsLimit) {
+                sessions.remove(view.recentSessionIds.removeLast());
+            }
+            view.activeSessionId = summary.getSessionId();
+            view.prediction = null;
+        }
+    }
+
+    private void applySessionEnded(String driverId, Long sessionId, LocalDateTime endTime) {
+        DriverView view = view(driverId);
+        synchronized (view) {
+            SessionSummaryDTO session = sessionId != null ? sessions.get(sessionId) : null;
+            if (session != null) {
+                session.setActive(false);
+                session.setEndTime(endTime);
+            }
+            if (sessionId != null && sessionId.equals(view.activeSessionId)) {
+                view.activeSessionId = null;
+                view.prediction = null;
+            }
+        }
+    }
+
+    // Drivers that appear before their registration (e.g. via the API) are shown by ID
+    private DriverView view(String driverId) {
+        return drivers.computeIfAbsent(driverId, id -> new DriverView(id, id));
+    }
+
+    private DriverSummaryDTO toSummary(DriverView view) {
+        synchronized (view) {
+            if (!view.ratingValid) {
+                view.rating = driverRatingService.ratingFor(view.summary);
+                view.ratingValid = true;
+            }
+            EventSummary summary = view.summary;
+            return new DriverSummaryDTO(view.driverId, view.driverName, view.rating, summary.getTotalCount(),
+                    view.sessionCount, summary.getTotalDuration(), summary.getDuration("DROWSY"),
+                    summary.getDuration("DISTRACTED"), summary.getAverageEar(), summary.getAverageBlinkRate(),
+                    view.activeSessionId, view.lastEventTime);
+        }
+    }
+
+    private static void addTotals(SessionSummaryDTO session, String eventType, long count, double duration) {
+        if ("DROWSY".equalsIgnoreCase(eventType)) {
+            session.setDrowsyCount(session.getDrowsyCount() + count);
+            session.setDrowsyDuration(session.getDrowsyDuration() + duration);
+        } else if ("DISTRACTED".equalsIgnoreCase(eventType)) {
+            session.setDistractedCount(session.getDistractedCount() + count);
+            session.setDistractedDuration(session.getDistractedDuration() + duration);
+        }
+    }
+
+    private static SessionSummaryDTO copy(SessionSummaryDTO s) {
+        return new SessionSummaryDTO(s.getSessionId(), s.getDriverId(), s.getStartTime(), s.getEndTime(), s.isActive(),
+                s.getDrowsyCount(), s.getDistractedCount(), s.getDrowsyDuration(), s.getDistractedDuration());
+    }
+
+    // Only the fields shown in the feed: metadata JSON stays in the database
+    private static Event compactCopy(Event event) {
+        Event copy = new Event();
+        copy.setEventId(event.getEventId());
+        copy.setSessionId(event.getSessionId());
+        copy.setDriverId(event.getDriverId());
+        copy.setStartTime(event.getStartTime());
+        copy.setEndTime(event.getEndTime());
+        copy.setDuration(event.getDuration());
+        copy.setEventType(event.getEventType());
+        copy.setEarValue(event.getEarValue());
+        return copy;
+    }
+
+    private record Update(String driverId, Runnable change) {
+    }
+
+    // A prediction to recompute: the driver's active session and the number of events the view had applied
+    public record PredictionDue(Long sessionId, long eventCount) {
+    }
+
+    // Mutable per-driver state, guarded by its own monitor
+    private static class DriverView {
+        final String driverId;
+        String driverName;
+        EventSummary summary = new EventSummary();
+        String rating;
+        boolean ratingValid;
+        long sessionCount;
+        long lastCountedSessionId;
+        Long activeSessionId;
+        LocalDateTime lastEventTime;
+        final Deque<Event> recentEvents = new ArrayDeque<>();
+        final Deque<Long> recentSessionIds = new ArrayDeque<>();
+        FatiguePrediction prediction;
+        long predictionAt;
+        boolean predictionDirty;
+        // Events applied to the view, to tell whether any arrived while a prediction was computed
+        long eventCount;
+
+        DriverView(String driverId, String driverName) {
+            this.driverId = driverId;
+            this.driverName = driverName;
+        }
+    }
+}
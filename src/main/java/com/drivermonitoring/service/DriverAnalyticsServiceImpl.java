@@ -2,11 +2,14 @@ package com.drivermonitoring.service;
 
 import com.drivermonitoring.ai.FatiguePrediction;
 import com.drivermonitoring.ai.MockAIFatiguePredictionModel;
+import com.drivermonitoring.jfr.PredictionEvent;
 import com.drivermonitoring.model.DriverSession;
+import com.drivermonitoring.service.PipelineMetrics.Stage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 
 @Service
 public class DriverAnalyticsServiceImpl implements DriverAnalyticsService {
@@ -14,6 +17,12 @@ public class DriverAnalyticsServiceImpl implements DriverAnalyticsService {
     private SessionService sessionService;
     @Autowired
     private DriverFeatureExtractor featureExtractor;
+    @Autowired
+    private RiskTrendForecaster riskTrendForecaster;
+    @Autowired
+    private PipelineMetrics pipelineMetrics;
+    @Autowired
+    private AlertLatencyTracker alertLatencyTracker;
 
     private final MockAIFatiguePredictionModel aiModel = new MockAIFatiguePredictionModel();
 
@@ -22,8 +31,12 @@ public class DriverAnalyticsServiceImpl implements DriverAnalyticsService {
         DriverSession session = sessionService.getActiveSession(driverId);
         if (session == null) return new FatiguePrediction(FatiguePrediction.RiskLevel.LOW, 0f, 120, "Нет активной сессии");
         LocalDateTime now = LocalDateTime.now();
-        var features = featureExtractor.extractFeatures(driverId, session.getStartTime(), now);
-        return aiModel.predict(features);
+        long startedAt = System.currentTimeMillis();
+        var features = pipelineMetrics.time(Stage.FEATURES, () -> featureExtractor.extractFeatures(driverId, session.getStartTime(), now));
+        FatiguePrediction prediction = applyTrendForecast(driverId, pipelineMetrics.time(Stage.PREDICT, () -> predict(driverId, features)), now);
+        // The prediction includes everything visible when it started: closes the driver's latency chain
+        alertLatencyTracker.predictionUpdated(driverId, startedAt);
+        return prediction;
     }
 
     @Override
@@ -31,7 +44,39 @@ public class DriverAnalyticsServiceImpl implements DriverAnalyticsService {
         DriverSession session = sessionService.getActiveSession(driverId);
         if (session == null) return new FatiguePrediction(FatiguePrediction.RiskLevel.LOW, 0f, 120, "Нет активной сессии");
         LocalDateTime now = LocalDateTime.now();
-        var features = featureExtractor.extractFeatures(driverId, session.getStartTime(), now, periodMinutes);
-        return aiModel.predict(features);
+        long startedAt = System.currentTimeMillis();
+        var features = pipelineMetrics.time(Stage.FEATURES, () -> featureExtractor.extractFeatures(driverId, session.getStartTime(), now, periodMinutes));
+        FatiguePrediction prediction = applyTrendForecast(driverId, pipelineMetrics.time(Stage.PREDICT, () -> predict(driverId, features)), now);
+        alertLatencyTracker.predictionUpdated(driverId, startedAt);
+        return prediction;
+    }
+
+    // Evaluates the model; each evaluation is also a JFR event
+    private FatiguePrediction predict(String driverId, Map<String, Float> features) {
+        PredictionEvent jfrEvent = new PredictionEvent();
+        jfrEvent.begin();
+        FatiguePrediction prediction = aiModel.predict(features);
+        if (jfrEvent.shouldCommit()) {
+            jfrEvent.driverId = driverId;
+            jfrEvent.featureCount = features.size();
+            jfrEvent.riskLevel = prediction.getRiskLevel().name();
+            jfrEvent.commit();
+        }
+        return prediction;
+    }
+
+    // Время до высокого риска берём из инкрементального прогноза тренда (без сканирования событий)
+    private FatiguePrediction applyTrendForecast(String driverId, FatiguePrediction prediction, LocalDateTime now) {
+        if (prediction.getRiskLevel() == FatiguePrediction.RiskLevel.HIGH) {
+            prediction.setMinutesUntilHigh(0);
+            return prediction;
+        }
+        int minutes = riskTrendForecaster.estimateMinutesUntilHigh(driverId, now);
+        if (minutes >= 0) {
+            // Уровень задаёт модель: если тренд уже пересёк порог, а модель ещё не HIGH, высокий риск
+            // ожидается в ближайшую минуту, а не "через 0 минут" при уровне MEDIUM
+            prediction.setMinutesUntilHigh(Math.max(1, minutes));
+        }
+        return prediction;
     }
 }
@@ -1,43 +1,46 @@
 package com.drivermonitoring.service;
 
-import com.drivermonitoring.model.Event;
-import com.drivermonitoring.repository.EventRepository;
+import com.drivermonitoring.jfr.FeatureExtractionEvent;
+import com.drivermonitoring.model.EventSummary;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.HashMap;
+import java.util.Map;
 
 @Service
 public class DriverFeatureExtractor {
     @Autowired
-    private EventRepository eventRepository;
+    private EventRollupService eventRollupService;
 
-    // Извлекает признаки для анализа за последние 30 минут
+    // Извлекает признаки для анализа за последние periodMinutes минут
     public Map<String, Float> extractFeatures(String driverId, LocalDateTime sessionStart, LocalDateTime now, int periodMinutes) {
-        List<Event> recentEvents = eventRepository.findByDriverIdOrderByStartTimeDesc(driverId)
-                .stream()
-                .filter(e -> e.getStartTime() != null && e.getStartTime().isAfter(now.minusMinutes(periodMinutes)))
-                .collect(Collectors.toList());
+        // Итоги за период собираются из минутных/часовых агрегатов и «сырых» краёв интервала
+        FeatureExtractionEvent jfrEvent = new FeatureExtractionEvent();
+        jfrEvent.begin();
+        EventSummary summary = eventRollupService.summarize(driverId, now.minusMinutes(periodMinutes), now);
+        Map<String, Float> features = buildFeatures(summary, sessionStart, now, periodMinutes);
+        if (jfrEvent.shouldCommit()) {
+            jfrEvent.driverId = driverId;
+            jfrEvent.periodMinutes = periodMinutes;
+            jfrEvent.eventsScanned = summary.getTotalCount();
+            jfrEvent.commit();
+        }
+        return features;
+    }
 
+    // Строит признаки из готовых итогов за период
+    public Map<String, Float> buildFeatures(EventSummary summary, LocalDateTime sessionStart, LocalDateTime now, int periodMinutes) {
         // EAR
-        List<Float> earValues = recentEvents.stream()
-                .map(Event::getEarValue)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
-        float avgEar = earValues.isEmpty() ? 0.3f : (float) earValues.stream().mapToDouble(f -> f).average().orElse(0.3);
-        float minEar = earValues.isEmpty() ? 0.3f : Collections.min(earValues);
+        float avgEar = summary.getAverageEar() != null ? summary.getAverageEar() : 0.3f;
+        float minEar = summary.getMinEar() != null ? summary.getMinEar() : 0.3f;
 
         // Количество событий сонливости
-        long drowsyEvents = recentEvents.stream()
-                .filter(e -> "DROWSY".equalsIgnoreCase(e.getEventType()))
-                .count();
+        long drowsyEvents = summary.getCount("DROWSY");
         // Количество событий отвлечения
-        long distractionEvents = recentEvents.stream()
-                .filter(e -> "DISTRACTED".equalsIgnoreCase(e.getEventType()))
-                .count();
+        long distractionEvents = summary.getCount("DISTRACTED");
 
         // Продолжительность текущей сессии (в минутах)
         float drivingDuration = sessionStart != null ? (float) Duration.between(sessionStart, now).toMinutes() : 0f;
@@ -46,23 +49,13 @@ public class DriverFeatureExtractor {
         float timeOfDayFactor = calculateTimeOfDayFactor(now);
 
         // Имитация частоты моргания (количество событий blink за 30 мин)
-        long blinkEvents = recentEvents.stream()
-                .filter(e -> e.getMetadata() != null && e.getMetadata().contains("blink"))
-                .count();
+        long blinkEvents = summary.getBlinkCount();
         float blinkRate = blinkEvents / 30.0f; // в мин-1
 
         // Доля времени в тревожном состоянии
         float periodSeconds = periodMinutes * 60f;
-        float drowsyTime = recentEvents.stream()
-            .filter(e -> "DROWSY".equalsIgnoreCase(e.getEventType()))
-            .map(Event::getDuration)
-            .filter(Objects::nonNull)
-            .reduce(0f, Float::sum);
-        float distractedTime = recentEvents.stream()
-            .filter(e -> "DISTRACTED".equalsIgnoreCase(e.getEventType()))
-            .map(Event::getDuration)
-            .filter(Objects::nonNull)
-            .reduce(0f, Float::sum);
+        float drowsyTime = (float) summary.getDuration("DROWSY");
+        float distractedTime = (float) summary.getDuration("DISTRACTED");
         float drowsyTimeFraction = periodSeconds > 0 ? drowsyTime / periodSeconds : 0f;
         float distractedTimeFraction = periodSeconds > 0 ? distractedTime / periodSeconds : 0f;
 
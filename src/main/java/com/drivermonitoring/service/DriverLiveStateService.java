@@ -0,0 +1,77 @@
+// What is this file?
+// Drops the in-memory state kept per driver during a session (risk trend, risk ranking, alert windows,
+// latency stamps, reported time) when the driver's session is closed, by whichever path closes it:
+// ended by the driver, replaced by a new session, expired as idle, closed as stale, or lost to another instance.
+// Why is this needed?
+// Every close path used to reset its own, slightly different, list of these views, and did it inside the
+// transaction that closes the session: a rollback left a live session without its state, and windows
+// forgotten by one path (the alert engine on a normal end) survived into the next session.
+
+package com.drivermonitoring.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.List;
+
+@Service
+public class DriverLiveStateService {
+
+    @Autowired
+    private RiskTrendForecaster riskTrendForecaster;
+
+    @Autowired
+    private FleetRiskIndex fleetRiskIndex;
+
+    @Autowired
+    private AlertEngine alertEngine;
+
+    @Autowired
+    private AlertLatencyTracker alertLatencyTracker;
+
+    @Autowired
+    private ReportedTimeTracker reportedTimeTracker;
+
+    /**
+     * The driver's session was closed (or is about to be replaced by a new one). Runs after the surrounding
+     * transaction commits, and not at all if it rolls back; without a transaction it runs right away.
+     * @param driverId The ID of the driver.
+     */
+    public void driverSessionClosed(String driverId) {
+        if (driverId != null) {
+            driverSessionsClosed(List.of(driverId));
+        }
+    }
+
+    /**
+     * Same as driverSessionClosed, for the drivers of a bulk close.
+     * @param driverIds The IDs of the drivers.
+     */
+    public void driverSessionsClosed(Collection<String> driverIds) {
+        if (driverIds.isEmpty()) {
+            return;
+        }
+        List<String> closed = List.copyOf(driverIds);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            closed.forEach(this::reset);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                closed.forEach(DriverLiveStateService.this::reset);
+            }
+        });
+    }
+
+    private void reset(String driverId) {
+        riskTrendForecaster.reset(driverId);
+        fleetRiskIndex.remove(driverId);
+        alertEngine.reset(driverId);
+        alertLatencyTracker.forget(driverId);
+        reportedTimeTracker.reset(driverId);
+    }
+}
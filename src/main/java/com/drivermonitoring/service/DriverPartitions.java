@@ -0,0 +1,167 @@
+// What is this file?
+// Routes per-driver work (detection reports, session start and end) to a fixed number of partitions by the
+// hash of the driver ID. Each partition has a bounded queue and exactly one thread that runs its tasks in
+// order, so the work of one driver never runs concurrently and is applied in arrival order.
+// Why is this needed?
+// Concurrent requests of the same driver raced: two /driver/start could both find no active session and
+// open two, and a report could interleave with the session change it depends on. With one writer per
+// driver these races cannot happen, and drivers are spread over the partitions.
+// The partition threads mostly wait (JDBC, the journal fsync), so their number is not tied to the cores.
+// A full partition queue rejects new work (the caller answers 503) instead of piling up request threads.
+
+package com.drivermonitoring.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+@Service
+public class DriverPartitions {
+
+    private static final Logger logger = LoggerFactory.getLogger(DriverPartitions.class);
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Disabled: the work runs on the calling thread (previous behaviour).
+    // Off by default until the fleet load test shows no throughput loss against the request threads
+    @Value("${ingest.partitions.enabled:false}")
+    private boolean enabled;
+
+    // Number of partitions (threads). Sized for blocking work, not for the cores: a partition waiting for
+    // a connection or an fsync holds up its drivers, so keep it at least the connection pool size
+    @Value("${ingest.partitions.count:16}")
+    private int partitionCount;
+
+    // Tasks waiting per partition; a full queue rejects new tasks
+    @Value("${ingest.partitions.queue-capacity:1024}")
+    private int queueCapacity;
+
+    // Longest wait of a caller for its task (covers the queue and the journal fsync)
+    @Value("${ingest.partitions.timeout-ms:10000}")
+    private long timeoutMs;
+
+    private Partition[] partitions;
+    private Counter rejected;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            logger.info("Driver partitions disabled: per-driver work runs on the request threads");
+            return;
+        }
+        int count = Math.max(1, partitionCount);
+        partitions = new Partition[count];
+        for (int i = 0; i < count; i++) {
+            Partition partition = new Partition(new ArrayBlockingQueue<>(queueCapacity));
+            partition.thread = new Thread(() -> runPartition(partition), "driver-partition-" + i);
+            partition.thread.setDaemon(true);
+            partitions[i] = partition;
+            Gauge.builder("drivermonitoring.partition.queue", partition.queue, BlockingQueue::size)
+                    .description("Tasks waiting in a driver partition")
+                    .tag("partition", String.valueOf(i))
+                    .register(meterRegistry);
+            partition.thread.start();
+        }
+        rejected = Counter.builder("drivermonitoring.partition.rejected")
+                .description("Per-driver tasks rejected because their partition queue was full")
+                .register(meterRegistry);
+        logger.info("Started {} driver partition(s) with queues of {}", count, queueCapacity);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (partitions == null) {
+            return;
+        }
+        for (Partition partition : partitions) {
+            partition.thread.interrupt();
+            // Waiting callers get a CancellationException instead of waiting for their timeout
+            Runnable task;
+            while ((task = partition.queue.poll()) != null) {
+                ((FutureTask<?>) task).cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Runs the task on the driver's partition and waits for its result.
+     * Called on the partition thread itself (nested work of the same driver), the task runs right away.
+     * @throws RejectedExecutionException The partition queue is full.
+     * @throws TimeoutException The task did not finish within ingest.partitions.timeout-ms. It is not cancelled:
+     *         once queued it still runs later, in order with the driver's other tasks, so the caller must treat
+     *         its effect as unknown (a retried report is answered by the dedupe check, not stored twice).
+     * @throws Exception Whatever the task threw.
+     */
+    public <T> T execute(String driverId, Callable<T> task) throws Exception {
+        if (partitions == null) {
+            return task.call();
+        }
+        Partition partition = partitions[partitionOf(driverId)];
+        if (Thread.currentThread() == partition.thread) {
+            return task.call();
+        }
+        FutureTask<T> future = new FutureTask<>(task);
+        if (!partition.queue.offer(future)) {
+            rejected.increment();
+            throw new RejectedExecutionException("Partition of driver " + driverId + " is full");
+        }
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public int getPartitionCount() {
+        return partitions != null ? partitions.length : 0;
+    }
+
+    // The spread keeps consecutive driver IDs (hash codes differing in the last digit) on different partitions
+    int partitionOf(String driverId) {
+        int hash = driverId != null ? driverId.hashCode() : 0;
+        return Math.floorMod(hash ^ (hash >>> 16), partitions.length);
+    }
+
+    private void runPartition(Partition partition) {
+        while (!Thread.currentThread().isInterrupted()) {
+            Runnable task;
+            try {
+                task = partition.queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            // FutureTask keeps the task's exception for the caller; the partition goes on with the next task
+            task.run();
+        }
+    }
+
+    private static class Partition {
+        final BlockingQueue<Runnable> queue;
+        Thread thread;
+
+        Partition(BlockingQueue<Runnable> queue) {
+            this.queue = queue;
+        }
+    }
+}
@@ -0,0 +1,324 @@
+// What is this file?
+// Retention job that moves old events from the database into compressed segment files on disk.
+// Why is this needed?
+// Old events are kept for audits instead of being thrown away, and the table is never locked by one
+// huge delete: fully expired monthly partitions are copied out and dropped, the rest of the
+// expired events are archived in small chunks, each deleted in its own short transaction.
+// Progress is exported as drivermonitoring.archive.* meters (events, segments, bytes, failed runs, running,
+// events of the last run and the time of the last successful run).
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.model.ArchiveSegment;
+import com.drivermonitoring.model.Event;
+import com.drivermonitoring.repository.EventPartitionManager;
+import com.drivermonitoring.repository.EventRepository;
+import com.drivermonitoring.util.EventSegmentFiles;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Service
+public class EventArchiveService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventArchiveService.class);
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private ArchivedEventQueryService archivedEventQueryService;
+
+    @Autowired
+    private EventPartitionManager partitionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${archive.directory:./data/archive}")
+    private String archiveDirectory;
+
+    // Number of events read, written and deleted per chunk
+    @Value("${archive.chunk-size:1000}")
+    private int chunkSize;
+
+    // Pause between chunks so archival never saturates the database
+    @Value("${archive.chunk-pause-ms:200}")
+    private long chunkPauseMs;
+
+    // Safety limit per run (0 = no limit); the next run continues where this one stopped
+    @Value("${archive.max-chunks-per-run:0}")
+    private int maxChunksPerRun;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final ArchiveProgress progress = new ArchiveProgress();
+    private Counter failedRuns;
+
+    // Totals are counters (rates in Prometheus), the state of the current/last run gauges
+    @PostConstruct
+    public void init() {
+        FunctionCounter.builder("drivermonitoring.archive.events", progress, p -> p.totalEvents())
+                .description("Events moved from the database into archive segments")
+                .register(meterRegistry);
+        FunctionCounter.builder("drivermonitoring.archive.segments", progress, p -> p.totalSegments())
+                .description("Archive segment files written (a chunk rewritten after a crash counts again)")
+                .register(meterRegistry);
+        FunctionCounter.builder("drivermonitoring.archive.bytes", progress, p -> p.totalBytes())
+                .description("Compressed bytes written to archive segments")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        failedRuns = Counter.builder("drivermonitoring.archive.failures")
+                .description("Archival runs that stopped on an error (retried by the next run)")
+                .register(meterRegistry);
+        Gauge.builder("drivermonitoring.archive.running", running, r -> r.get() ? 1 : 0)
+                .description("1 while an archival run is in progress")
+                .register(meterRegistry);
+        Gauge.builder("drivermonitoring.archive.run.events", progress, p -> p.runEvents())
+                .description("Events archived by the current or last run")
+                .register(meterRegistry);
+        Gauge.builder("drivermonitoring.archive.last.success", progress, p -> p.lastSuccessEpochSeconds())
+                .description("Time of the last archival run that finished without error (epoch seconds, 0 if none)")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Archives and deletes all events with startTime before the threshold, chunk by chunk.
+     * The job is resumable: it always continues with the oldest remaining event, and a chunk that was
+     * written but not deleted before a crash is written again to the same segment files.
+     * @param threshold Events older than this are archived.
+     * @return Number of events archived in this run.
+     */
+    public long archiveEventsBefore(LocalDateTime threshold) {
+        if (threshold == null) {
+            logger.warn("Cannot archive events: threshold is null");
+            return 0;
+        }
+        if (!running.compareAndSet(false, true)) {
+            logger.warn("Event archival is already running, skipping this run");
+            return 0;
+        }
+
+        Path root = Paths.get(archiveDirectory);
+        progress.startRun(threshold);
+        long archivedThisRun = 0;
+        try {
+            removeTempFiles(root);
+            int chunks = 0;
+
+            // Months that are entirely expired: stream the partition to segments, then drop it at once
+            for (YearMonth month : partitionManager.partitionsEndingBefore(threshold)) {
+                long afterEventId = 0;
+                boolean complete = false;
+                while (maxChunksPerRun <= 0 || chunks < maxChunksPerRun) {
+                    List<Event> chunk = eventRepository.findPartitionChunk(month, afterEventId, chunkSize);
+                    if (chunk.isEmpty()) {
+                        complete = true;
+                        break;
+                    }
+                    writeSegments(root, chunk);
+                    afterEventId = chunk.get(chunk.size() - 1).getEventId();
+                    archivedThisRun += chunk.size();
+                    chunks++;
+                    progress.chunkDone(chunk.size());
+                    Thread.sleep(chunkPauseMs);
+                }
+                if (!complete) {
+                    // Stopped by the per-run limit: the partition is re-read from its start next run,
+                    // which rewrites the same segment files
+                    break;
+                }
+                partitionManager.dropPartition(month);
+                logger.info("Archived and dropped event partition {}", EventPartitionManager.tableName(month));
+            }
+
+            // The month containing the threshold: archive and delete row chunks
+            while (maxChunksPerRun <= 0 || chunks < maxChunksPerRun) {
+                // Always read the first page: archived rows are deleted, so the next chunk moves up
+                List<Event> chunk = eventRepository.findByStartTimeBeforeOrderByEventIdAsc(threshold, PageRequest.of(0, chunkSize));
+                if (chunk.isEmpty()) {
+                    break;
+                }
+
+                archiveChunk(root, chunk);
+                archivedThisRun += chunk.size();
+                chunks++;
+                progress.chunkDone(chunk.size());
+                logger.debug("Archived chunk {} ({} events, {} in this run)", chunks, chunk.size(), archivedThisRun);
+
+                if (chunk.size() < chunkSize) {
+                    break;
+                }
+                Thread.sleep(chunkPauseMs);
+            }
+            progress.finishRun(null);
+            logger.info("Archived {} events from before {} into {}", archivedThisRun, threshold, root.toAbsolutePath());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            progress.finishRun("interrupted");
+            logger.warn("Event archival interrupted after {} events", archivedThisRun);
+        } catch (Exception e) {
+            // Nothing is lost: rows of the failed chunk are still in the database and retried next run
+            progress.finishRun(e.getMessage());
+            failedRuns.increment();
+            logger.error("Event archival failed after {} events: {}", archivedThisRun, e.getMessage(), e);
+        } finally {
+            running.set(false);
+        }
+        return archivedThisRun;
+    }
+
+    /**
+     * @return A snapshot of the archival progress metrics.
+     */
+    public Map<String, Object> getProgress() {
+        return progress.snapshot(running.get());
+    }
+
+    // Writes one chunk to segments partitioned by day and driver, then deletes its rows
+    private void archiveChunk(Path root, List<Event> chunk) throws IOException {
+        writeSegments(root, chunk);
+
+        // Short transaction per chunk: a single DELETE ... WHERE id IN (...)
+        List<Long> ids = chunk.stream().map(Event::getEventId).collect(Collectors.toList());
+        eventRepository.deleteAllByIdInBatch(ids);
+    }
+
+    // Writes one chunk to segment files partitioned by day and driver and registers them in the catalog
+    private void writeSegments(Path root, List<Event> chunk) throws IOException {
+        Map<String, List<Event>> partitions = new LinkedHashMap<>();
+        for (Event event : chunk) {
+            LocalDate day = event.getStartTime().toLocalDate();
+            String driverId = event.getDriverId() != null ? event.getDriverId() : "unknown";
+            partitions.computeIfAbsent(day + "/" + driverId, key -> new ArrayList<>()).add(event);
+        }
+
+        for (List<Event> events : partitions.values()) {
+            Event first = events.get(0);
+            Event last = events.get(events.size() - 1);
+            Path segment = EventSegmentFiles.segmentPath(root, first.getStartTime().toLocalDate(),
+                    first.getDriverId() != null ? first.getDriverId() : "unknown",
+                    first.getEventId(), last.getEventId());
+            long bytes = EventSegmentFiles.writeSegment(segment, events);
+            // Index with driver and min/max time so readers can skip the segment without opening it
+            ArchiveSegment info = EventSegmentFiles.describe(segment, events);
+            EventSegmentFiles.writeIndex(segment, info);
+            archivedEventQueryService.register(info);
+            progress.segmentWritten(bytes);
+        }
+    }
+
+    // Leftovers of a crash in the middle of writing a segment
+    private void removeTempFiles(Path root) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : files.filter(path -> path.toString().endsWith(EventSegmentFiles.TEMP_SUFFIX)).collect(Collectors.toList())) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    // Progress metrics of the current/last run plus totals since application start
+    private static class ArchiveProgress {
+        private LocalDateTime runStartedAt;
+        private LocalDateTime runFinishedAt;
+        private LocalDateTime threshold;
+        private long runEvents;
+        private long runChunks;
+        private long totalEvents;
+        private long totalSegments;
+        private long totalBytes;
+        private String lastError;
+        private LocalDateTime lastSuccessAt;
+
+        synchronized void startRun(LocalDateTime threshold) {
+            this.runStartedAt = LocalDateTime.now();
+            this.runFinishedAt = null;
+            this.threshold = threshold;
+            this.runEvents = 0;
+            this.runChunks = 0;
+            this.lastError = null;
+        }
+
+        synchronized void chunkDone(int events) {
+            runEvents += events;
+            runChunks++;
+            totalEvents += events;
+        }
+
+        synchronized void segmentWritten(long bytes) {
+            totalSegments++;
+            totalBytes += bytes;
+        }
+
+        synchronized void finishRun(String error) {
+            this.runFinishedAt = LocalDateTime.now();
+            this.lastError = error;
+            if (error == null) {
+                this.lastSuccessAt = runFinishedAt;
+            }
+        }
+
+        synchronized long totalEvents() {
+            return totalEvents;
+        }
+
+        synchronized long totalSegments() {
+            return totalSegments;
+        }
+
+        synchronized long totalBytes() {
+            return totalBytes;
+        }
+
+        synchronized long runEvents() {
+            return runEvents;
+        }
+
+        synchronized long lastSuccessEpochSeconds() {
+            return lastSuccessAt != null ? lastSuccessAt.atZone(ZoneId.systemDefault()).toEpochSecond() : 0;
+        }
+
+        synchronized Map<String, Object> snapshot(boolean running) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("running", running);
+            result.put("runStartedAt", runStartedAt);
+            result.put("runFinishedAt", runFinishedAt);
+            result.put("threshold", threshold);
+            result.put("runEvents", runEvents);
+            result.put("runChunks", runChunks);
+            result.put("totalEvents", totalEvents);
+            result.put("totalSegments", totalSegments);
+            result.put("totalBytes", totalBytes);
+            result.put("lastError", lastError);
+            result.put("lastSuccessAt", lastSuccessAt);
+            return result;
+        }
+    }
+}
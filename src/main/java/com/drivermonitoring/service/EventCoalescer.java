@@ -0,0 +1,265 @@
+// What is this file?
+// Merges consecutive detection events of the same type into one open event per driver.
+// Each incoming event covers [arrival - duration, arrival]; an event of the same session and type that
+// starts within the gap tolerance of the open event extends it (end time, duration, EAR min/mean).
+// The open event is completed when the state changes, the gap passes or it reaches the maximum length.
+// Why is this needed?
+// The client reports a continuous episode on every frame (e.g. DROWSY with the growing eye-closure time,
+// or a one-second DROWSY per frame while the blink rate is too high); storing each report wrote
+// thousands of rows per episode. Now an episode is written once, when it is complete.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.model.Event;
+import com.drivermonitoring.util.HierarchicalTimingWheel;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+@Service
+public class EventCoalescer {
+
+    private static final long TICK_MILLIS = 100;
+
+    // Disabled: every report is stored as its own event (previous behaviour).
+    // Open episodes are kept in memory only, so this is refused with ingest.mode=journal
+    @Value("${ingest.coalesce.enabled:false}")
+    private boolean enabled;
+
+    // A report of the same type that starts within this time of the open event's end extends it
+    @Value("${ingest.coalesce.gap-ms:2000}")
+    private long gapMillis;
+
+    // Longer episodes are split, so an open event is never older than this when written
+    // (must stay below the one-minute lag of the rollup catch-up job)
+    @Value("${ingest.coalesce.max-duration-seconds:30}")
+    private long maxDurationSeconds;
+
+    private final Map<String, OpenEvent> open = new ConcurrentHashMap<>();
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+    // Gap deadline per driver, pushed back on every merged report
+    private final HierarchicalTimingWheel<String> deadlines =
+            new HierarchicalTimingWheel<>(TICK_MILLIS, 64, 3, System.currentTimeMillis());
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Adds a report to the driver's open event or opens a new one.
+     * @param report The incoming event (startTime = arrival time, duration = seconds covered by the report).
+     * @return The events completed by this report, to be stored.
+     */
+    public List<Event> offer(Event report) {
+        String driverId = report.getDriverId();
+        List<Event> completed = new ArrayList<>();
+        withLock(driverId, () -> {
+            LocalDateTime end = report.getStartTime();
+            LocalDateTime start = end.minusNanos((long) (Math.max(0f, report.getDuration()) * 1_000_000_000L));
+            LocalDateTime floor = null;
+            OpenEvent current = open.get(driverId);
+            if (current != null && !current.accepts(report, start, gapMillis, maxDurationSeconds)) {
+                open.remove(driverId);
+                completed.add(current.complete(objectMapper));
+                // An episode split at the maximum length continues where the stored part ends
+                if (current.sameEpisode(report)) {
+                    floor = current.end.isAfter(end) ? end : current.end;
+                    start = start.isBefore(floor) ? floor : start;
+                }
+                current = null;
+            }
+            if (current == null) {
+                current = new OpenEvent(report, start, end, floor);
+                open.put(driverId, current);
+            } else {
+                current.merge(report, start, end);
+            }
+            deadlines.schedule(driverId, toMillis(current.end) + gapMillis);
+            return null;
+        });
+        return completed;
+    }
+
+    /**
+     * Completes the driver's open event right away (the driver returned to NORMAL or left).
+     * @return The completed event, or null if none was open.
+     */
+    public Event close(String driverId) {
+        return withLock(driverId, () -> {
+            OpenEvent current = open.remove(driverId);
+            deadlines.cancel(driverId);
+            return current != null ? current.complete(objectMapper) : null;
+        });
+    }
+
+    /**
+     * Completes the open events whose gap has passed.
+     * @param nowMillis Current time.
+     * @return Completed events.
+     */
+    public List<Event> expire(long nowMillis) {
+        List<Event> completed = new ArrayList<>();
+        for (String driverId : deadlines.advance(nowMillis)) {
+            Event event = withLock(driverId, () -> {
+                OpenEvent current = open.get(driverId);
+                if (current == null) {
+                    return null;
+                }
+                // A report may have arrived between advance() and taking the lock
+                if (toMillis(current.end) + gapMillis > nowMillis) {
+                    deadlines.schedule(driverId, toMillis(current.end) + gapMillis);
+                    return null;
+                }
+                open.remove(driverId);
+                return current.complete(objectMapper);
+            });
+            if (event != null) {
+                completed.add(event);
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * Completes every open event (shutdown).
+     */
+    public List<Event> closeAll() {
+        List<Event> completed = new ArrayList<>();
+        for (String driverId : new ArrayList<>(open.keySet())) {
+            Event event = close(driverId);
+            if (event != null) {
+                completed.add(event);
+            }
+        }
+        return completed;
+    }
+
+    public int getOpenCount() {
+        return open.size();
+    }
+
+    // Runs the action under the driver's monitor: reports of different drivers never wait for each other.
+    // The monitor lives as long as the driver's open event (drivers come and go for good); a thread that
+    // waited on a monitor dropped meanwhile takes the current one instead
+    private <T> T withLock(String driverId, Supplier<T> action) {
+        while (true) {
+            Object lock = locks.computeIfAbsent(driverId, id -> new Object());
+            synchronized (lock) {
+                if (locks.get(driverId) != lock) {
+                    continue;
+                }
+                try {
+                    return action.get();
+                } finally {
+                    if (!open.containsKey(driverId)) {
+                        locks.remove(driverId, lock);
+                    }
+                }
+            }
+        }
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    // An episode being accumulated: the first report carries the session, type and context fields
+    private static class OpenEvent {
+        final Event first;
+        // Set when the episode continues a part already stored: reports never reach back before it
+        final LocalDateTime floor;
+        LocalDateTime start;
+        LocalDateTime end;
+        int reports;
+        Float earMin;
+        double earSum;
+        int earCount;
+
+        OpenEvent(Event report, LocalDateTime start, LocalDateTime end, LocalDateTime floor) {
+            this.first = report;
+            this.floor = floor;
+            this.start = start;
+            this.end = end;
+            addReport(report);
+        }
+
+        boolean sameEpisode(Event report) {
+            return report.getEventType().equals(first.getEventType())
+                    && Objects.equals(report.getSessionId(), first.getSessionId());
+        }
+
+        boolean accepts(Event report, LocalDateTime reportStart, long gapMillis, long maxDurationSeconds) {
+            return sameEpisode(report)
+                    && !reportStart.isAfter(end.plusNanos(gapMillis * 1_000_000L))
+                    && Duration.between(start, end).getSeconds() < maxDurationSeconds;
+        }
+
+        void merge(Event report, LocalDateTime reportStart, LocalDateTime reportEnd) {
+            if (floor != null && reportStart.isBefore(floor)) {
+                reportStart = floor;
+            }
+            if (reportStart.isBefore(start)) {
+                start = reportStart;
+            }
+            if (reportEnd.isAfter(end)) {
+                end = reportEnd;
+            }
+            addReport(report);
+        }
+
+        float durationSeconds() {
+            return Duration.between(start, end).toNanos() / 1_000_000_000f;
+        }
+
+        private void addReport(Event report) {
+            reports++;
+            Float ear = report.getEarValue();
+            if (ear != null) {
+                earSum += ear;
+                earCount++;
+                if (earMin == null || ear < earMin) {
+                    earMin = ear;
+                }
+            }
+        }
+
+        // The stored row: interval of the whole episode, mean EAR, EAR min and report count in the metadata
+        Event complete(ObjectMapper objectMapper) {
+            first.setStartTime(start);
+            first.setEndTime(end);
+            first.setDuration(durationSeconds());
+            if (earCount > 0) {
+                first.setEarValue((float) (earSum / earCount));
+            }
+            if (reports > 1) {
+                Map<String, Object> metadata = new HashMap<>();
+                try {
+                    if (first.getMetadata() != null) {
+                        metadata.putAll(objectMapper.readValue(first.getMetadata(), new TypeReference<Map<String, Object>>() {}));
+                    }
+                    metadata.put("coalescedReports", reports);
+                    if (earMin != null) {
+                        metadata.put("earMin", earMin);
+                    }
+                    first.setMetadata(objectMapper.writeValueAsString(metadata));
+                } catch (Exception e) {
+                    // Metadata is informational; the merged interval and EAR are kept anyway
+                }
+            }
+            return first;
+        }
+    }
+}
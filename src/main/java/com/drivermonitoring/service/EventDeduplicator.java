@@ -0,0 +1,122 @@
+// What is this file?
+// Bounded per-driver window of recently seen client event IDs, used to make event ingest idempotent.
+// An ID is claimed when a request starts processing it, marked done when the event was accepted
+// and released again when processing failed, so only a failed attempt can be retried.
+// Why is this needed?
+// The monitoring page retries a report after network errors and 5xx answers; without deduplication
+// every copy became its own event row and inflated the drowsy/distracted time of the driver.
+
+package com.drivermonitoring.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+public class EventDeduplicator {
+
+    public enum Claim {
+        // First copy: process it
+        NEW,
+        // Already accepted: answer without processing
+        DUPLICATE,
+        // Another copy is being processed right now: the client should retry later
+        IN_PROGRESS
+    }
+
+    // Most recent IDs remembered per driver (oldest are forgotten first)
+    @Value("${ingest.dedupe.max-ids-per-driver:1024}")
+    private int maxIdsPerDriver;
+
+    // IDs older than this are forgotten even if the window is not full
+    @Value("${ingest.dedupe.window-seconds:600}")
+    private long windowSeconds;
+
+    private final Map<String, DriverWindow> windows = new ConcurrentHashMap<>();
+
+    /**
+     * Claims a client event ID for processing.
+     * @param driverId The ID of the driver.
+     * @param clientEventId The ID generated by the client for the report.
+     * @return NEW if the caller must process the report, otherwise why it must not.
+     */
+    public Claim claim(String driverId, String clientEventId) {
+        DriverWindow window = windows.computeIfAbsent(driverId, id -> new DriverWindow(maxIdsPerDriver));
+        long now = System.currentTimeMillis();
+        synchronized (window) {
+            window.expire(now - windowSeconds * 1000);
+            Entry entry = window.ids.get(clientEventId);
+            if (entry != null) {
+                return entry.done ? Claim.DUPLICATE : Claim.IN_PROGRESS;
+            }
+            window.ids.put(clientEventId, new Entry(now));
+            return Claim.NEW;
+        }
+    }
+
+    /**
+     * Marks a claimed ID as accepted: later copies are answered as duplicates.
+     */
+    public void complete(String driverId, String clientEventId) {
+        DriverWindow window = windows.get(driverId);
+        if (window == null) {
+            return;
+        }
+        synchronized (window) {
+            Entry entry = window.ids.get(clientEventId);
+            if (entry != null) {
+                entry.done = true;
+            }
+        }
+    }
+
+    /**
+     * Forgets a claimed ID whose processing failed, so a retry is processed again.
+     */
+    public void release(String driverId, String clientEventId) {
+        DriverWindow window = windows.get(driverId);
+        if (window == null) {
+            return;
+        }
+        synchronized (window) {
+            Entry entry = window.ids.get(clientEventId);
+            if (entry != null && !entry.done) {
+                window.ids.remove(clientEventId);
+            }
+        }
+    }
+
+    // Insertion-ordered IDs of one driver, oldest first, capped at maxIds
+    private static class DriverWindow {
+        final Map<String, Entry> ids;
+
+        DriverWindow(int maxIds) {
+            this.ids = new LinkedHashMap<>(16, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > maxIds;
+                }
+            };
+        }
+
+        // Drops IDs seen before the cutoff; insertion order makes this O(expired)
+        void expire(long cutoffMillis) {
+            var iterator = ids.values().iterator();
+            while (iterator.hasNext() && iterator.next().seenAt < cutoffMillis) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static class Entry {
+        final long seenAt;
+        boolean done;
+
+        Entry(long seenAt) {
+            this.seenAt = seenAt;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+// What is this file?
+// Writes raw events of a driver (or of the whole fleet) for a date range as CSV or NDJSON to an output stream:
+// first the archived segments of the range, one segment at a time, then the database partitions through a
+// forward-only cursor in start time order. Every event is written as soon as it is read and then dropped.
+// Why is this needed?
+// Dispatch and safety audits need raw event dumps. Loading them as a List<Event> first needs heap in
+// proportion to the range; streamed, years of events take the memory of one fetch and one segment, and
+// the export runs as fast as the disk and the network allow.
+// Events that are archived but not yet deleted from the database are written once, from the database; if the
+// archiver deletes them before the cursor gets there, they are written from the segment after the cursor.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.model.ArchiveSegment;
+import com.drivermonitoring.model.Event;
+import com.drivermonitoring.repository.EventRepository;
+import com.drivermonitoring.util.EventSegmentFiles;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+@Service
+public class EventExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventExportService.class);
+
+    private static final String CSV_HEADER = "eventId,sessionId,driverId,startTime,endTime,duration,eventType," +
+            "earValue,leftEar,rightEar,headDirection,faceDetected,featureSource,metadata";
+
+    public enum Format {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private ArchivedEventQueryService archivedEventQueryService;
+
+    // Rows the database cursor fetches at a time
+    @Value("${export.fetch-size:1000}")
+    private int fetchSize;
+
+    // Exports running at once; each one holds a database connection while it streams
+    @Value("${export.max-concurrent:2}")
+    private int maxConcurrent;
+
+    private Semaphore running;
+
+    @PostConstruct
+    public void init() {
+        running = new Semaphore(Math.max(1, maxConcurrent));
+    }
+
+    /**
+     * Reserves one of the export slots.
+     * @return The slot, to be released when the export is over, or null if export.max-concurrent exports are running.
+     */
+    public Slot tryStart() {
+        return running.tryAcquire() ? new Slot() : null;
+    }
+
+    /**
+     * An export slot. Releasing it more than once has no effect, so every path that can end an export
+     * (the export itself, the request's completion, error or timeout) may release it.
+     */
+    public class Slot {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                running.release();
+            }
+        }
+    }
+
+    /**
+     * Writes the events with startTime in [from, to) to the stream (not closed).
+     * @param driverId The ID of the driver, or null for every driver.
+     * @return Number of events written.
+     * @throws IOException Writing failed, e.g. the client disconnected.
+     */
+    public long export(String driverId, LocalDateTime from, LocalDateTime to, Format format, OutputStream out) throws IOException {
+        long started = System.currentTimeMillis();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        long[] count = {0};
+        if (format == Format.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+        // Segment events left to the cursor because they were still in the database (normally one chunk being archived)
+        Map<Long, Event> leftToDatabase = new LinkedHashMap<>();
+        try {
+            for (ArchiveSegment segment : archivedEventQueryService.findSegmentsOverlapping(driverId, from, to)) {
+                count[0] += exportSegment(segment, driverId, from, to, format, writer, leftToDatabase);
+            }
+            eventRepository.streamByStartTime(driverId, from, to, fetchSize, event -> {
+                leftToDatabase.remove(event.getEventId());
+                write(event, format, writer);
+                count[0]++;
+            });
+            // Deleted by the archiver between the segment check and the cursor: the segment copy is the only one
+            for (Event event : leftToDatabase.values()) {
+                write(event, format, writer);
+                count[0]++;
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+        logger.info("Exported {} event(s) of {} in [{}, {}) as {} in {} ms", count[0],
+                driverId != null ? "driver " + driverId : "all drivers", from, to, format, System.currentTimeMillis() - started);
+        return count[0];
+    }
+
+    // A segment holds one archive chunk of a driver's day, so reading it whole keeps memory bounded
+    private long exportSegment(ArchiveSegment segment, String driverId, LocalDateTime from, LocalDateTime to,
+                               Format format, Writer writer, Map<Long, Event> leftToDatabase) throws IOException {
+        List<Event> events;
+        try {
+            events = EventSegmentFiles.readSegment(Paths.get(segment.getPath()));
+        } catch (IOException e) {
+            // Same as the archive read path: a broken segment is skipped, not the whole export
+            logger.error("Failed to read archive segment {} for export: {}", segment.getPath(), e.getMessage());
+            return 0;
+        }
+        List<Event> inRange = events.stream()
+                .filter(event -> event.getStartTime() != null && !event.getStartTime().isBefore(from) && event.getStartTime().isBefore(to))
+                .filter(event -> driverId == null || driverId.equals(event.getDriverId()))
+                .collect(Collectors.toList());
+        if (inRange.isEmpty()) {
+            return 0;
+        }
+        // A chunk being archived right now is still in the database too: those events come from the cursor
+        Set<Long> stored = eventRepository.findStoredEventIds(
+                inRange.stream().map(Event::getEventId).collect(Collectors.toList()),
+                segment.getMinTime(), segment.getMaxTime().plusNanos(1));
+        long written = 0;
+        for (Event event : inRange) {
+            if (stored.contains(event.getEventId())) {
+                leftToDatabase.put(event.getEventId(), event);
+            } else {
+                write(event, format, writer);
+                written++;
+            }
+        }
+        return written;
+    }
+
+    private static void write(Event event, Format format, Writer writer) {
+        try {
+            if (format == Format.NDJSON) {
+                // Same line format as the archive segments
+                writer.write(EventSegmentFiles.getObjectMapper().writeValueAsString(event));
+            } else {
+                writer.write(String.valueOf(event.getEventId()));
+                writeCsvField(writer, event.getSessionId());
+                writeCsvField(writer, event.getDriverId());
+                writeCsvField(writer, event.getStartTime());
+                writeCsvField(writer, event.getEndTime());
+                writeCsvField(writer, event.getDuration());
+                writeCsvField(writer, event.getEventType());
+                writeCsvField(writer, event.getEarValue());
+                writeCsvField(writer, event.getLeftEar());
+                writeCsvField(writer, event.getRightEar());
+                writeCsvField(writer, event.getHeadDirection());
+                writeCsvField(writer, event.getFaceDetected());
+                writeCsvField(writer, event.getFeatureSource());
+                writeCsvField(writer, event.getMetadata());
+            }
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // RFC 4180: fields with separators, quotes or line breaks are quoted, quotes doubled; null is empty
+    private static void writeCsvField(Writer writer, Object value) throws IOException {
+        writer.write(',');
+        if (value == null) {
+            return;
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            writer.write(text);
+            return;
+        }
+        writer.write('"');
+        writer.write(text.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
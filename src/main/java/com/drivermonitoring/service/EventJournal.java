@@ -0,0 +1,424 @@
+// What is this file?
+// Local append-only journal of accepted detection events (ingest.mode=journal).
+// Events are appended to segment files by a single writer thread that fsyncs whole batches at once
+// (group commit); an append completes only after its batch is on disk.
+// Why is this needed?
+// Acknowledging an event to the cab then depends on a sequential disk write instead of an H2 commit,
+// and an acknowledged event is never lost: JournalProjector copies it into the database later,
+// and replays the journal from its checkpoint after a crash or a database outage.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.model.Event;
+import com.drivermonitoring.util.EventSegmentFiles;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+@Service
+public class EventJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventJournal.class);
+
+    public static final String MODE_JOURNAL = "journal";
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    // Record layout: [int payload length][int CRC32 of payload][payload: Event as JSON]
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 1024 * 1024;
+
+    @Value("${ingest.mode:direct}")
+    private String ingestMode;
+
+    @Value("${journal.directory:./data/journal}")
+    private String journalDirectory;
+
+    // A new segment file is started once the current one reaches this size
+    @Value("${journal.segment-size-bytes:67108864}")
+    private long segmentSizeBytes;
+
+    // Maximum number of records written with one fsync
+    @Value("${journal.max-batch:1024}")
+    private int maxBatch;
+
+    // Appends waiting for the writer; a full queue rejects new events instead of growing without bound
+    @Value("${journal.queue-capacity:10000}")
+    private int queueCapacity;
+
+    private Path root;
+    // Base offset (offset of the first record) -> segment file
+    private final NavigableMap<Long, Path> segments = new ConcurrentSkipListMap<>();
+    private BlockingQueue<PendingAppend> queue;
+    private Thread writerThread;
+    private volatile boolean stopping;
+
+    // Writer state, only touched by the writer thread (and by recovery before it starts)
+    private FileChannel activeChannel;
+    private long activeBase;
+    private long nextOffset;
+
+    // What readers may see: everything before durableOffset is on disk
+    private volatile DurablePoint durable = new DurablePoint(0, 0, 0);
+
+    /**
+     * Recovers existing segments (a torn record at the end of the last one is cut off)
+     * and starts the writer thread when ingest.mode=journal.
+     */
+    @PostConstruct
+    public void init() throws IOException {
+        root = Paths.get(journalDirectory);
+        if (Files.isDirectory(root)) {
+            try (Stream<Path> files = Files.list(root)) {
+                files.filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                                && path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                        .forEach(path -> segments.put(baseOffsetOf(path), path));
+            }
+        }
+        if (!segments.isEmpty()) {
+            Map.Entry<Long, Path> last = segments.lastEntry();
+            Scan scan = scan(last.getValue(), last.getKey(), 0, Long.MAX_VALUE, null);
+            try (FileChannel channel = FileChannel.open(last.getValue(), StandardOpenOption.WRITE)) {
+                if (channel.size() > scan.position) {
+                    logger.warn("Journal segment {} has a torn tail, truncating {} bytes", last.getValue(), channel.size() - scan.position);
+                    channel.truncate(scan.position);
+                    channel.force(true);
+                }
+            }
+            nextOffset = scan.offset;
+            durable = new DurablePoint(nextOffset, last.getKey(), scan.position);
+            logger.info("Event journal recovered: {} segment(s), next offset {}", segments.size(), nextOffset);
+        }
+
+        if (isEnabled()) {
+            queue = new ArrayBlockingQueue<>(queueCapacity);
+            writerThread = new Thread(this::writeLoop, "event-journal-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+    }
+
+    /**
+     * @return true if detection events are acknowledged after the journal write (ingest.mode=journal).
+     */
+    public boolean isEnabled() {
+        return MODE_JOURNAL.equalsIgnoreCase(ingestMode);
+    }
+
+    /**
+     * Appends an event; the future completes with its offset once the event is fsynced.
+     * @param event The event to append (not yet stored in the database).
+     * @return Future of the offset, completed exceptionally if the journal cannot take the event.
+     */
+    public CompletableFuture<Long> append(Event event) {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        if (queue == null || stopping) {
+            future.completeExceptionally(new IllegalStateException("Event journal is not running"));
+            return future;
+        }
+        try {
+            byte[] payload = EventSegmentFiles.getObjectMapper().writeValueAsBytes(event);
+            if (!queue.offer(new PendingAppend(payload, future))) {
+                future.completeExceptionally(new IllegalStateException("Event journal queue is full"));
+            }
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Reads durable records starting at the cursor.
+     * @param cursor Where to start (see {@link #cursorAt(long)}).
+     * @param maxRecords Maximum number of records to return.
+     * @return The records read and the cursor after the last one.
+     */
+    public ReadResult read(Cursor cursor, int maxRecords) throws IOException {
+        DurablePoint limit = durable;
+        List<JournalEntry> entries = new ArrayList<>();
+        Cursor position = cursor;
+        while (entries.size() < maxRecords && position.offset() < limit.offset()) {
+            Path segment = segments.get(position.segmentBase());
+            if (segment == null) {
+                // The cursor's segment was removed (fully projected); continue with the next one
+                Map.Entry<Long, Path> next = segments.higherEntry(position.segmentBase());
+                if (next == null) {
+                    break;
+                }
+                position = new Cursor(next.getKey(), next.getKey(), 0);
+                continue;
+            }
+            long endPosition = position.segmentBase() == limit.segmentBase() ? limit.position() : Long.MAX_VALUE;
+            Scan scan = scan(segment, position.offset(), position.position(), endPosition, new ScanTarget(entries, maxRecords));
+            position = new Cursor(scan.offset, position.segmentBase(), scan.position);
+            if (entries.size() < maxRecords && position.offset() < limit.offset()) {
+                // End of this segment: move to the next one
+                Map.Entry<Long, Path> next = segments.higherEntry(position.segmentBase());
+                if (next == null || next.getKey() != position.offset()) {
+                    logger.warn("Journal segment {} ends at offset {} but the next segment does not continue there",
+                            segment, position.offset());
+                    break;
+                }
+                position = new Cursor(next.getKey(), next.getKey(), 0);
+            }
+        }
+        return new ReadResult(entries, position);
+    }
+
+    /**
+     * Finds the read position of an offset (used once at startup to resume from a checkpoint).
+     */
+    public Cursor cursorAt(long offset) throws IOException {
+        Map.Entry<Long, Path> segment = segments.floorEntry(offset);
+        if (segment == null) {
+            Map.Entry<Long, Path> first = segments.firstEntry();
+            return first != null ? new Cursor(first.getKey(), first.getKey(), 0) : new Cursor(offset, offset, 0);
+        }
+        Scan scan = scan(segment.getValue(), segment.getKey(), 0, Long.MAX_VALUE, new ScanTarget(null, offset - segment.getKey()));
+        return new Cursor(scan.offset, segment.getKey(), scan.position);
+    }
+
+    /**
+     * Deletes segments whose records are all before the offset (already projected).
+     * The active segment is always kept.
+     */
+    public void deleteSegmentsBefore(long offset) {
+        for (Map.Entry<Long, Path> entry : new ArrayList<>(segments.entrySet())) {
+            Map.Entry<Long, Path> next = segments.higherEntry(entry.getKey());
+            if (next == null || next.getKey() > offset) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(entry.getValue());
+                segments.remove(entry.getKey());
+                logger.debug("Deleted projected journal segment {}", entry.getValue());
+            } catch (IOException e) {
+                logger.warn("Failed to delete journal segment {}: {}", entry.getValue(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return Offset of the next record that will be written (everything before it is durable).
+     */
+    public long getDurableOffset() {
+        return durable.offset();
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("mode", ingestMode);
+        status.put("durableOffset", durable.offset());
+        status.put("segments", segments.size());
+        status.put("queued", queue != null ? queue.size() : 0);
+        return status;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        stopping = true;
+        if (writerThread != null) {
+            writerThread.interrupt();
+            writerThread.join(5000);
+        }
+    }
+
+    // Group commit: take everything queued, write it, fsync once, then complete all futures
+    private void writeLoop() {
+        List<PendingAppend> batch = new ArrayList<>(maxBatch);
+        while (true) {
+            try {
+                PendingAppend first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (stopping) {
+                        break;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                if (queue.isEmpty()) {
+                    break;
+                }
+                // Shutdown: finish what is already queued
+                queue.drainTo(batch, maxBatch);
+                writeBatch(batch);
+            } finally {
+                batch.clear();
+            }
+        }
+        closeActive();
+    }
+
+    private void writeBatch(List<PendingAppend> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long firstOffset = nextOffset;
+        try {
+            for (PendingAppend append : batch) {
+                int recordBytes = HEADER_BYTES + append.payload.length;
+                if (activeChannel == null || activeChannel.position() + recordBytes > segmentSizeBytes && activeChannel.position() > 0) {
+                    rollSegment();
+                }
+                CRC32 crc = new CRC32();
+                crc.update(append.payload);
+                ByteBuffer buffer = ByteBuffer.allocate(recordBytes);
+                buffer.putInt(append.payload.length).putInt((int) crc.getValue()).put(append.payload).flip();
+                while (buffer.hasRemaining()) {
+                    activeChannel.write(buffer);
+                }
+                nextOffset++;
+            }
+            activeChannel.force(false);
+            durable = new DurablePoint(nextOffset, activeBase, activeChannel.position());
+            long offset = firstOffset;
+            for (PendingAppend append : batch) {
+                append.future.complete(offset++);
+            }
+        } catch (IOException e) {
+            logger.error("Event journal write failed, {} event(s) rejected: {}", batch.size(), e.getMessage(), e);
+            // Nothing of this batch was acknowledged: cut the segment back to the last durable record
+            recoverActive();
+            for (PendingAppend append : batch) {
+                append.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        if (activeChannel != null) {
+            activeChannel.force(true);
+            activeChannel.close();
+        }
+        Files.createDirectories(root);
+        Map.Entry<Long, Path> last = segments.lastEntry();
+        // Continue in the last segment after a restart if it still has room
+        if (activeChannel == null && last != null && Files.size(last.getValue()) < segmentSizeBytes) {
+            activeBase = last.getKey();
+            activeChannel = FileChannel.open(last.getValue(), StandardOpenOption.WRITE);
+            activeChannel.position(activeChannel.size());
+            return;
+        }
+        activeBase = nextOffset;
+        Path segment = root.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, activeBase, SEGMENT_SUFFIX));
+        activeChannel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        segments.put(activeBase, segment);
+        logger.debug("Started journal segment {}", segment);
+    }
+
+    private void recoverActive() {
+        DurablePoint point = durable;
+        try {
+            if (activeChannel != null && point.segmentBase() == activeBase) {
+                activeChannel.truncate(point.position());
+                activeChannel.position(point.position());
+            } else {
+                closeActive();
+            }
+        } catch (IOException e) {
+            closeActive();
+        }
+        nextOffset = point.offset();
+    }
+
+    private void closeActive() {
+        if (activeChannel != null) {
+            try {
+                activeChannel.force(true);
+                activeChannel.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close journal segment: {}", e.getMessage());
+            }
+            activeChannel = null;
+        }
+    }
+
+    // Walks records from a position; stops at endPosition, at a torn/corrupt record, or when the target is full
+    private Scan scan(Path segment, long offset, long position, long endPosition, ScanTarget target) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            long end = Math.min(endPosition, channel.size());
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            long records = 0;
+            while (position + HEADER_BYTES <= end && (target == null || !target.isFull(records))) {
+                header.clear();
+                channel.read(header, position);
+                header.flip();
+                int length = header.getInt();
+                int checksum = header.getInt();
+                if (length <= 0 || length > MAX_RECORD_BYTES || position + HEADER_BYTES + length > end) {
+                    break;
+                }
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                channel.read(payload, position + HEADER_BYTES);
+                CRC32 crc = new CRC32();
+                crc.update(payload.array());
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                if (target != null && target.entries != null) {
+                    Event event = EventSegmentFiles.getObjectMapper().readValue(payload.array(), Event.class);
+                    target.entries.add(new JournalEntry(offset, event));
+                }
+                position += HEADER_BYTES + length;
+                offset++;
+                records++;
+            }
+            return new Scan(offset, position);
+        }
+    }
+
+    private static long baseOffsetOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Read position in the journal: next offset, its segment and byte position in the segment.
+     */
+    public record Cursor(long offset, long segmentBase, long position) {}
+
+    /**
+     * One journaled event with its offset.
+     */
+    public record JournalEntry(long offset, Event event) {}
+
+    public record ReadResult(List<JournalEntry> entries, Cursor next) {}
+
+    private record DurablePoint(long offset, long segmentBase, long position) {}
+
+    private record Scan(long offset, long position) {}
+
+    private record PendingAppend(byte[] payload, CompletableFuture<Long> future) {}
+
+    // Collects entries (or only counts records when entries is null) up to a limit
+    private record ScanTarget(List<JournalEntry> entries, long limit) {
+        boolean isFull(long records) {
+            return entries != null ? entries.size() >= limit : records >= limit;
+        }
+    }
+}
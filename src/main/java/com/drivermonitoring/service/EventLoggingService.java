@@ -8,6 +8,7 @@ package com.drivermonitoring.service;
 
 import com.drivermonitoring.model.DriverState;
 import com.drivermonitoring.model.Event;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 
@@ -32,6 +33,13 @@ public interface EventLoggingService {
      */
     Event logEventWithMetadata(String driverId, DriverState driverState, float duration, Map<String, Object> metadata);
 
+    /**
+     * Completes and stores the driver's open coalesced event (the driver returned to NORMAL).
+     * Does nothing when coalescing is disabled or no event is open.
+     * @param driverId The ID of the driver.
+     */
+    void closeOpenEvent(String driverId);
+
     /**
      * Retrieves events for a specific driver session.
      * @param sessionId The ID of the session.
@@ -46,4 +54,14 @@ public interface EventLoggingService {
      * @return List of recent events for the driver.
      */
     List<Event> getRecentEventsForDriver(String driverId, int limit);
+
+    /**
+     * Retrieves the latest events of a driver in a time range, including events already moved to the archive.
+     * @param driverId The ID of the driver.
+     * @param from Range start (inclusive).
+     * @param to Range end (exclusive).
+     * @param limit Maximum number of events.
+     * @return Up to `limit` events of the range, latest first.
+     */
+    List<Event> getEventsForDriver(String driverId, LocalDateTime from, LocalDateTime to, int limit);
 }
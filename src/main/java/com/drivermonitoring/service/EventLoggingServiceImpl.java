@@ -6,22 +6,36 @@
 
 package com.drivermonitoring.service;
 
+import com.drivermonitoring.jfr.EventIngestEvent;
 import com.drivermonitoring.model.DriverSession;
 import com.drivermonitoring.model.DriverState;
 import com.drivermonitoring.model.Event;
 import com.drivermonitoring.repository.EventRepository;
+import com.drivermonitoring.service.PipelineMetrics.Stage;
+import com.drivermonitoring.util.SampledLogger;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Service
@@ -35,10 +49,73 @@ public class EventLoggingServiceImpl implements EventLoggingService {
     @Autowired
     private SessionService sessionService; // Assuming SessionService exists and provides getActiveSession
 
+    @Autowired
+    private RiskTrendForecaster riskTrendForecaster;
+
+    @Autowired
+    private EventRollupService eventRollupService;
+
+    @Autowired
+    private FleetRiskIndex fleetRiskIndex;
+
+    @Autowired
+    private ArchivedEventQueryService archivedEventQueryService;
+
+    @Autowired
+    private EventJournal eventJournal;
+
+    @Autowired
+    private DispatcherReadModel dispatcherReadModel;
+
+    @Autowired
+    private EventCoalescer eventCoalescer;
+
+    @Autowired
+    private PipelineMetrics pipelineMetrics;
+
+    @Autowired
+    private AlertLatencyTracker alertLatencyTracker;
+
+    @Autowired
+    private AlertEngine alertEngine;
+
+    @Autowired
+    private ReportedTimeTracker reportedTimeTracker;
+
+    // How long an ingest request waits for the journal fsync before the event is rejected
+    @Value("${journal.append-timeout-ms:5000}")
+    private long journalAppendTimeoutMs;
+
+    // Completed events waiting for a retry while the database is unavailable; at this size new reports
+    // are refused (503) until the retries get through, completed events are never dropped
+    @Value("${ingest.coalesce.max-unstored:10000}")
+    private int maxUnstored;
+
+    // Per-event messages: first N per driver and window are logged, the rest only counted
+    @Value("${ingest.log-sampling.per-driver-limit:5}")
+    private int logSamplingLimit;
+
+    @Value("${ingest.log-sampling.window-seconds:60}")
+    private int logSamplingWindowSeconds;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private SampledLogger eventLog;
+    // Completed coalesced events whose write failed; retried by flushCoalescedEvents
+    private final Queue<Event> unstored = new ConcurrentLinkedQueue<>();
+
+    @PostConstruct
+    public void init() {
+        eventLog = new SampledLogger(logger, logSamplingLimit, Duration.ofSeconds(logSamplingWindowSeconds));
+        // The open episodes only live in memory: acknowledged reports would be lost on a crash,
+        // which is exactly what the journal mode promises not to do
+        if (eventCoalescer.isEnabled() && eventJournal.isEnabled()) {
+            throw new IllegalStateException("ingest.coalesce.enabled=true cannot be used with ingest.mode=journal");
+        }
+    }
 
+    // No surrounding transaction: the insert commits on its own, and the rollups and read models are
+    // updated only after it did (a failed insert inside an outer transaction would roll back the request)
     @Override
-    @Transactional
     public Event logEvent(String driverId, DriverState driverState, float duration) {
         // Validate input parameters
         if (driverId == null || driverState == null) {
@@ -48,16 +125,16 @@ public class EventLoggingServiceImpl implements EventLoggingService {
 
         // Skip logging for NORMAL state
         if (driverState == DriverState.NORMAL) {
-            logger.debug("Skipping NORMAL state event logging for driver {}", driverId);
+            eventLog.debug(driverId, "Skipping NORMAL state event logging for driver {}", driverId);
             return null;
         }
 
         try {
             // Get active session for the driver
-            DriverSession session = sessionService.getActiveSession(driverId);
+            DriverSession session = pipelineMetrics.time(Stage.SESSION_LOOKUP, () -> sessionService.getActiveSession(driverId));
             if (session == null) {
                 // Cannot log event without an active session
-                logger.warn("Cannot log event: No active session for driver {}", driverId);
+                eventLog.warn(driverId, "Cannot log event: No active session for driver {}", driverId);
                 return null;
             }
 
@@ -68,8 +145,8 @@ public class EventLoggingServiceImpl implements EventLoggingService {
                 duration
             );
 
-            Event savedEvent = eventRepository.save(event);
-            logger.info("Logged {} event for driver {}, duration: {}s, session: {}",
+            Event savedEvent = ingest(event, driverState);
+            eventLog.info(driverId, "Logged {} event for driver {}, duration: {}s, session: {}",
                         driverState, driverId, duration, session.getSessionId());
 
             return savedEvent;
@@ -79,9 +156,23 @@ public class EventLoggingServiceImpl implements EventLoggingService {
         }
     }
 
+    // Not transactional, see logEvent
     @Override
-    @Transactional
     public Event logEventWithMetadata(String driverId, DriverState driverState, float duration, Map<String, Object> metadata) {
+        EventIngestEvent jfrEvent = new EventIngestEvent();
+        jfrEvent.begin();
+        Event logged = logWithMetadata(driverId, driverState, duration, metadata);
+        if (jfrEvent.shouldCommit()) {
+            jfrEvent.driverId = driverId;
+            jfrEvent.state = driverState != null ? driverState.name() : null;
+            jfrEvent.reportSeconds = duration;
+            jfrEvent.accepted = logged != null;
+            jfrEvent.commit();
+        }
+        return logged;
+    }
+
+    private Event logWithMetadata(String driverId, DriverState driverState, float duration, Map<String, Object> metadata) {
         // Validate input parameters
         if (driverId == null || driverState == null) {
             logger.error("Invalid parameters: driverId or driverState is null");
@@ -90,71 +181,24 @@ public class EventLoggingServiceImpl implements EventLoggingService {
 
         // Skip logging for NORMAL state
         if (driverState == DriverState.NORMAL) {
-             logger.debug("Skipping NORMAL state event logging with metadata for driver {}", driverId);
+             eventLog.debug(driverId, "Skipping NORMAL state event logging with metadata for driver {}", driverId);
             return null;
         }
 
         try {
             // Get active session for the driver
-            DriverSession session = sessionService.getActiveSession(driverId);
+            DriverSession session = pipelineMetrics.time(Stage.SESSION_LOOKUP, () -> sessionService.getActiveSession(driverId));
             if (session == null) {
-                logger.warn("Cannot log event with metadata: No active session for driver {}", driverId);
+                eventLog.warn(driverId, "Cannot log event with metadata: No active session for driver {}", driverId);
                 return null;
             }
 
-            // Ensure metadata is not null and create a mutable copy
-            Map<String, Object> safeMetadata = (metadata != null) ? new HashMap<>(metadata) : new HashMap<>();
-
-            // Извлекаем ключевые признаки для отдельных полей
-            Float earValue = safeMetadata.containsKey("earValue") ? parseFloatSafe(safeMetadata.get("earValue")) : null;
-            Float leftEar = safeMetadata.containsKey("leftEar") ? parseFloatSafe(safeMetadata.get("leftEar")) : null;
-            Float rightEar = safeMetadata.containsKey("rightEar") ? parseFloatSafe(safeMetadata.get("rightEar")) : null;
-            String headDirection = safeMetadata.containsKey("headDirection") ? String.valueOf(safeMetadata.get("headDirection")) : null;
-            Boolean faceDetected = safeMetadata.containsKey("faceDetected") ? parseBooleanSafe(safeMetadata.get("faceDetected")) : null;
-            String featureSource = safeMetadata.containsKey("featureSource") ? String.valueOf(safeMetadata.get("featureSource")) : null;
-
-            // Удаляем эти признаки из JSON, чтобы не дублировать
-            safeMetadata.remove("earValue");
-            safeMetadata.remove("leftEar");
-            safeMetadata.remove("rightEar");
-            safeMetadata.remove("headDirection");
-            safeMetadata.remove("faceDetected");
-            safeMetadata.remove("featureSource");
-
-            // Add timestamp if not present
-            safeMetadata.putIfAbsent("timestamp", System.currentTimeMillis());
-            // Add event context (can be useful for analysis)
-            safeMetadata.putIfAbsent("sessionId", session.getSessionId());
-            safeMetadata.putIfAbsent("eventType", driverState.name());
-            safeMetadata.putIfAbsent("source", "MediaPipe");
-
-            // Convert metadata map to JSON string
-            String metadataJson;
-            try {
-                metadataJson = objectMapper.writeValueAsString(safeMetadata);
-            } catch (JsonProcessingException e) {
-                logger.error("Failed to convert metadata to JSON for driver {}: {}", driverId, e.getMessage());
-                metadataJson = "{}";
-            }
-
-            // Создаем Event с новыми полями
-            Event event = new Event(
-                session.getSessionId(),
-                driverId,
-                driverState.name(),
-                duration,
-                metadataJson
-            );
-            event.setEarValue(earValue);
-            event.setLeftEar(leftEar);
-            event.setRightEar(rightEar);
-            event.setHeadDirection(headDirection);
-            event.setFaceDetected(faceDetected);
-            event.setFeatureSource(featureSource);
+            Event event = pipelineMetrics.time(Stage.METADATA,
+                    () -> buildEvent(session.getSessionId(), driverId, driverState, duration, metadata));
 
-            Event savedEvent = eventRepository.save(event);
-            logger.info("Logged {} event with metadata from {} for driver {}, duration: {}s, session: {}",
-                    driverState, featureSource != null ? featureSource : safeMetadata.getOrDefault("source", "unknown"), driverId, duration, session.getSessionId());
+            Event savedEvent = ingest(event, driverState);
+            eventLog.info(driverId, "Logged {} event with metadata from {} for driver {}, duration: {}s, session: {}",
+                    driverState, event.getFeatureSource() != null ? event.getFeatureSource() : "MediaPipe", driverId, duration, session.getSessionId());
 
             return savedEvent;
         } catch (Exception e) {
@@ -201,6 +245,206 @@ public class EventLoggingServiceImpl implements EventLoggingService {
         }
     }
 
+    @Override
+    public List<Event> getEventsForDriver(String driverId, LocalDateTime from, LocalDateTime to, int limit) {
+        if (driverId == null || from == null || to == null || !from.isBefore(to) || limit <= 0) {
+            logger.warn("Cannot get events: invalid driverId, time range {} - {} or limit {}", from, to, limit);
+            return Collections.emptyList();
+        }
+
+        try {
+            List<Event> events = new ArrayList<>(eventRepository.findLatestByDriverIdAndStartTime(driverId, from, to, limit));
+            // Archived events are older than the live rows (the archiver moves the oldest ones), so segments are
+            // read only when the database could not fill the page; events in both are kept once
+            if (events.size() < limit && archivedEventQueryService.hasArchivedEvents(driverId, from, to)) {
+                Set<Long> liveIds = events.stream().map(Event::getEventId).collect(Collectors.toSet());
+                events.addAll(archivedEventQueryService.findLatestEvents(driverId, from, to, limit - events.size(), liveIds));
+                events.sort(Comparator.comparing(Event::getStartTime).reversed());
+            }
+            return events;
+        } catch (Exception e) {
+            logger.error("Error retrieving events for driver {} between {} and {}: {}", driverId, from, to, e.getMessage(), e);
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public void closeOpenEvent(String driverId) {
+        if (driverId == null || !eventCoalescer.isEnabled()) {
+            return;
+        }
+        Event completed = eventCoalescer.close(driverId);
+        if (completed != null) {
+            storeCompleted(completed);
+        }
+    }
+
+    // Writes the coalesced events whose gap has passed and retries failed writes
+    @Scheduled(fixedDelayString = "${ingest.coalesce.flush-interval-ms:200}")
+    public void flushCoalescedEvents() {
+        if (!eventCoalescer.isEnabled()) {
+            return;
+        }
+        for (int retries = unstored.size(); retries > 0; retries--) {
+            Event event = unstored.poll();
+            if (event == null) {
+                break;
+            }
+            storeCompleted(event);
+        }
+        for (Event completed : eventCoalescer.expire(System.currentTimeMillis())) {
+            storeCompleted(completed);
+        }
+    }
+
+    // Open episodes are written on shutdown instead of being lost
+    @PreDestroy
+    public void closeAllOpenEvents() {
+        if (!eventCoalescer.isEnabled()) {
+            return;
+        }
+        List<Event> completed = eventCoalescer.closeAll();
+        completed.addAll(unstored);
+        unstored.clear();
+        completed.forEach(this::storeCompleted);
+        logger.info("Stored {} open coalesced event(s) on shutdown", completed.size());
+    }
+
+    // Without coalescing every report is stored. With coalescing the report extends the driver's open
+    // event (returned unsaved, it is written when complete) and only completed events are stored here
+    private Event ingest(Event event, DriverState driverState) throws Exception {
+        // Taken before the coalescer may rewrite the event's interval
+        LocalDateTime arrivedAt = event.getStartTime();
+        float duration = event.getDuration();
+        if (!eventCoalescer.isEnabled()) {
+            Event savedEvent = storeEvent(event);
+            recordRealtime(event.getDriverId(), driverState, duration, arrivedAt);
+            afterEventStored(savedEvent);
+            return savedEvent;
+        }
+        // Back-pressure: while completed events cannot be written, no new report is acknowledged
+        if (unstored.size() >= maxUnstored) {
+            eventLog.warn(event.getDriverId(), "Refused {} report of driver {}: {} completed event(s) waiting to be stored",
+                    driverState, event.getDriverId(), unstored.size());
+            return null;
+        }
+        for (Event completed : eventCoalescer.offer(event)) {
+            storeCompleted(completed);
+        }
+        recordRealtime(event.getDriverId(), driverState, duration, arrivedAt);
+        return event;
+    }
+
+    private void storeCompleted(Event completed) {
+        try {
+            afterEventStored(storeEvent(completed));
+        } catch (Exception e) {
+            // Kept even above ingest.coalesce.max-unstored: the events were acknowledged. The buffer can only
+            // grow past it by the episodes still open, since ingest refuses new reports at that size
+            unstored.add(completed);
+            logger.warn("Failed to store coalesced {} event of driver {}, will retry ({} waiting): {}",
+                    completed.getEventType(), completed.getDriverId(), unstored.size(), e.getMessage());
+        }
+    }
+
+    // Direct mode: insert now. Journal mode: the event is durable once fsynced in the journal,
+    // JournalProjector inserts it into the database shortly after (the returned event has no ID yet)
+    private Event storeEvent(Event event) throws Exception {
+        return pipelineMetrics.timeChecked(Stage.SAVE, () -> {
+            if (!eventJournal.isEnabled()) {
+                return eventRepository.save(event);
+            }
+            eventJournal.append(event).get(journalAppendTimeoutMs, TimeUnit.MILLISECONDS);
+            return event;
+        });
+    }
+
+    // Real-time analytics and alert rules are fed on every report, with the time the report added: the client
+    // resends the growing duration of an episode on every frame, so an episode is counted once
+    private void recordRealtime(String driverId, DriverState driverState, float duration, LocalDateTime arrivedAt) {
+        float added = reportedTimeTracker.addedSeconds(driverId, driverState, duration, arrivedAt);
+        riskTrendForecaster.recordEvent(driverId, driverState, added, arrivedAt);
+        fleetRiskIndex.recordEvent(driverId, driverState, added, arrivedAt);
+        // Alert rules see the whole report (episode boundaries) and the time it added
+        alertEngine.recordReport(driverId, driverState, duration, added, arrivedAt);
+    }
+
+    // Feeds a stored event into the views that mirror the stored events
+    private void afterEventStored(Event event) {
+        // Dispatcher pages see the event once it is durable (in journal mode before it reaches the table)
+        dispatcherReadModel.eventRecorded(event);
+        alertLatencyTracker.committed(event.getDriverId());
+        if (eventJournal.isEnabled()) {
+            // Rollups are stored in the database: JournalProjector updates them when it inserts the event
+            return;
+        }
+        try {
+            eventRollupService.recordEvent(event);
+            alertLatencyTracker.analyticsUpdated(event.getDriverId());
+        } catch (Exception e) {
+            // The event itself is kept; the rollup catch-up job will repair the bucket
+            logger.warn("Failed to update rollups for event of driver {}: {}", event.getDriverId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Builds the event row from the client metadata: the key features go to their own columns,
+     * the rest (with the event context added) is stored as the metadata JSON.
+     * Pure function of its arguments (no database access), so it is benchmarked on its own.
+     */
+    public Event buildEvent(Long sessionId, String driverId, DriverState driverState, float duration, Map<String, Object> metadata) {
+        // Ensure metadata is not null and create a mutable copy
+        Map<String, Object> safeMetadata = (metadata != null) ? new HashMap<>(metadata) : new HashMap<>();
+
+        // Извлекаем ключевые признаки для отдельных полей
+        Float earValue = safeMetadata.containsKey("earValue") ? parseFloatSafe(safeMetadata.get("earValue")) : null;
+        Float leftEar = safeMetadata.containsKey("leftEar") ? parseFloatSafe(safeMetadata.get("leftEar")) : null;
+        Float rightEar = safeMetadata.containsKey("rightEar") ? parseFloatSafe(safeMetadata.get("rightEar")) : null;
+        String headDirection = safeMetadata.containsKey("headDirection") ? String.valueOf(safeMetadata.get("headDirection")) : null;
+        Boolean faceDetected = safeMetadata.containsKey("faceDetected") ? parseBooleanSafe(safeMetadata.get("faceDetected")) : null;
+        String featureSource = safeMetadata.containsKey("featureSource") ? String.valueOf(safeMetadata.get("featureSource")) : null;
+
+        // Удаляем эти признаки из JSON, чтобы не дублировать
+        safeMetadata.remove("earValue");
+        safeMetadata.remove("leftEar");
+        safeMetadata.remove("rightEar");
+        safeMetadata.remove("headDirection");
+        safeMetadata.remove("faceDetected");
+        safeMetadata.remove("featureSource");
+
+        // Add timestamp if not present
+        safeMetadata.putIfAbsent("timestamp", System.currentTimeMillis());
+        // Add event context (can be useful for analysis)
+        safeMetadata.putIfAbsent("sessionId", sessionId);
+        safeMetadata.putIfAbsent("eventType", driverState.name());
+        safeMetadata.putIfAbsent("source", "MediaPipe");
+
+        // Convert metadata map to JSON string
+        String metadataJson;
+        try {
+            metadataJson = objectMapper.writeValueAsString(safeMetadata);
+        } catch (JsonProcessingException e) {
+            logger.error("Failed to convert metadata to JSON for driver {}: {}", driverId, e.getMessage());
+            metadataJson = "{}";
+        }
+
+        // Создаем Event с новыми полями
+        Event event = new Event(
+            sessionId,
+            driverId,
+            driverState.name(),
+            duration,
+            metadataJson
+        );
+        event.setEarValue(earValue);
+        event.setLeftEar(leftEar);
+        event.setRightEar(rightEar);
+        event.setHeadDirection(headDirection);
+        event.setFaceDetected(faceDetected);
+        event.setFeatureSource(featureSource);
+        return event;
+    }
+
     // Вспомогательные методы для безопасного парсинга
     private Float parseFloatSafe(Object value) {
         if (value == null) return null;
@@ -15,6 +15,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -139,12 +140,12 @@ public class EventMetadataService {
         }
 
         try {
-            // Use the repository method for potentially better performance if available
-            // return eventRepository.countEventsBySessionIdGroupedByType(sessionId);
-            // Or use stream processing if repository method doesn't exist:
-            List<Event> events = eventRepository.findBySessionId(sessionId);
-            return events.stream()
-                .collect(Collectors.groupingBy(Event::getEventType, Collectors.counting()));
+            // Count in the database grouped by type instead of loading every event of the session
+            Map<String, Long> distribution = new HashMap<>();
+            for (Object[] row : eventRepository.countEventsBySessionIdGroupedByType(sessionId)) {
+                distribution.put((String) row[0], (Long) row[1]);
+            }
+            return distribution;
         } catch (Exception e) {
             logger.error("Error calculating event type distribution for session {}: {}",
                         sessionId, e.getMessage(), e);
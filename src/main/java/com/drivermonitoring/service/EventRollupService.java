@@ -0,0 +1,292 @@
+// What is this file?
+// Maintains per-driver minute and hour rollups of events and answers time range summaries from them.
+// Why is this needed?
+// Analytics (features, ratings, dispatcher statistics) combine a handful of buckets with the raw
+// edges of the range instead of re-reading every raw event row of the driver.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.model.Event;
+import com.drivermonitoring.model.EventRollup;
+import com.drivermonitoring.model.EventRollupId;
+import com.drivermonitoring.model.EventSummary;
+import com.drivermonitoring.model.JobCheckpoint;
+import com.drivermonitoring.repository.EventRepository;
+import com.drivermonitoring.repository.EventRollupRepository;
+import com.drivermonitoring.repository.JobCheckpointRepository;
+import com.drivermonitoring.util.JsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Service
+public class EventRollupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventRollupService.class);
+
+    static final String CATCH_UP_JOB = "event-rollup-catch-up";
+
+    @Autowired
+    private EventRollupRepository rollupRepository;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private JobCheckpointRepository checkpointRepository;
+
+    @Autowired
+    private ArchivedEventQueryService archivedEventQueryService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JobLockService jobLockService;
+
+    // How many hours the catch-up job rebuilds per run (keeps each run short)
+    @Value("${rollup.catch-up.max-hours-per-run:24}")
+    private int maxHoursPerRun;
+
+    /**
+     * Adds a freshly saved event to its minute and hour buckets.
+     * Runs in its own transaction so a failed rollup update never loses the event itself;
+     * the catch-up job repairs any bucket that missed an update.
+     * @param event The saved event.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void recordEvent(Event event) {
+        if (event == null || event.getDriverId() == null || event.getStartTime() == null) {
+            return;
+        }
+        Double blinkRate = extractBlinkRate(event.getMetadata());
+        addDelta(event, 1, event.getDuration(), blinkRate);
+    }
+
+    /**
+     * Adds an extra duration to the buckets of an event that is already counted
+     * (used when an open event is extended instead of a new row being written).
+     * @param event The event whose duration grew.
+     * @param extraDuration Additional seconds to add.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void recordExtraDuration(Event event, float extraDuration) {
+        if (event == null || event.getDriverId() == null || event.getStartTime() == null || extraDuration == 0f) {
+            return;
+        }
+        addDelta(event, 0, extraDuration, null);
+    }
+
+    /**
+     * Summarizes a driver's events with startTime in [from, to).
+     * Whole hours come from hour buckets, whole minutes from minute buckets and only the
+     * partial minutes at both ends are read from raw events.
+     * @param driverId The ID of the driver.
+     * @param from Range start (inclusive).
+     * @param to Range end (exclusive).
+     * @return The combined summary (empty if the range is empty).
+     */
+    public EventSummary summarize(String driverId, LocalDateTime from, LocalDateTime to) {
+        EventSummary summary = new EventSummary();
+        if (driverId == null || from == null || to == null || !from.isBefore(to)) {
+            return summary;
+        }
+
+        LocalDateTime minuteStart = ceil(from, ChronoUnit.MINUTES);
+        LocalDateTime minuteEnd = to.truncatedTo(ChronoUnit.MINUTES);
+
+        // Range shorter than one whole minute: read raw events only
+        if (!minuteStart.isBefore(minuteEnd)) {
+            addRawEvents(summary, driverId, from, to);
+            return summary;
+        }
+
+        // Raw edges before the first and after the last whole minute
+        addRawEvents(summary, driverId, from, minuteStart);
+        addRawEvents(summary, driverId, minuteEnd, to);
+
+        LocalDateTime hourStart = ceil(minuteStart, ChronoUnit.HOURS);
+        LocalDateTime hourEnd = minuteEnd.truncatedTo(ChronoUnit.HOURS);
+        if (hourStart.isBefore(hourEnd)) {
+            // Minutes before the first whole hour, whole hours, minutes after the last whole hour
+            addBuckets(summary, driverId, EventRollup.MINUTE_BUCKET, minuteStart, hourStart);
+            addBuckets(summary, driverId, EventRollup.HOUR_BUCKET, hourStart, hourEnd);
+            addBuckets(summary, driverId, EventRollup.MINUTE_BUCKET, hourEnd, minuteEnd);
+        } else {
+            addBuckets(summary, driverId, EventRollup.MINUTE_BUCKET, minuteStart, minuteEnd);
+        }
+        return summary;
+    }
+
+    /**
+     * Summarizes all events ever recorded for a driver using hour buckets only.
+     * @param driverId The ID of the driver.
+     * @return The all-time summary.
+     */
+    public EventSummary summarizeAll(String driverId) {
+        EventSummary summary = new EventSummary();
+        if (driverId == null) {
+            return summary;
+        }
+        for (EventRollup rollup : rollupRepository.findAllBuckets(driverId, EventRollup.HOUR_BUCKET)) {
+            summary.addRollup(rollup);
+        }
+        return summary;
+    }
+
+    /**
+     * Catch-up job: rebuilds the buckets of closed hours from raw events.
+     * It backfills history on first start and repairs buckets that missed an ingest update.
+     * The open hour is left to the incremental updates made at ingest.
+     */
+    @Scheduled(fixedDelayString = "${rollup.catch-up.delay-ms:60000}", initialDelayString = "${rollup.catch-up.initial-delay-ms:30000}")
+    public void catchUp() {
+        // In a cluster one instance rebuilds at a time; the checkpoint is shared, so it continues where another left off
+        jobLockService.runExclusively("rollup-catch-up", Duration.ofMinutes(30), Duration.ofSeconds(30), this::runCatchUp);
+    }
+
+    private void runCatchUp() {
+        try {
+            LocalDateTime position = loadCatchUpPosition();
+            if (position == null) {
+                logger.debug("Rollup catch-up: no events stored yet.");
+                return;
+            }
+            // One minute of lag so transactions that started in the previous hour have committed
+            LocalDateTime closedUntil = LocalDateTime.now().minusMinutes(1).truncatedTo(ChronoUnit.HOURS);
+
+            int rebuiltHours = 0;
+            while (position.isBefore(closedUntil) && rebuiltHours < maxHoursPerRun) {
+                LocalDateTime hour = position;
+                transactionTemplate.executeWithoutResult(status -> rebuildHour(hour));
+                position = hour.plusHours(1);
+                rebuiltHours++;
+            }
+            if (rebuiltHours > 0) {
+                logger.info("Rollup catch-up rebuilt {} hour(s), now complete until {}", rebuiltHours, position);
+            }
+        } catch (Exception e) {
+            logger.error("Rollup catch-up failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the blinkRate value from event metadata JSON, if present.
+     * @param metadataJson The metadata JSON string.
+     * @return The blinkRate value or null.
+     */
+    public static Double extractBlinkRate(String metadataJson) {
+        // Cheap text check first so most events skip JSON parsing
+        if (metadataJson == null || !metadataJson.contains("blinkRate")) {
+            return null;
+        }
+        return JsonUtils.getTypedValueFromJson(metadataJson, "blinkRate", Double.class).orElse(null);
+    }
+
+    // Applies the same delta to the minute and hour bucket of the event
+    private void addDelta(Event event, long countDelta, double durationDelta, Double blinkRate) {
+        Float ear = (countDelta > 0) ? event.getEarValue() : null;
+        double earSum = (ear != null) ? ear : 0.0;
+        long earCount = (ear != null) ? 1 : 0;
+        long blinkCount = (blinkRate != null) ? 1 : 0;
+        double blinkRateSum = (blinkRate != null) ? blinkRate : 0.0;
+        LocalDateTime time = event.getStartTime();
+
+        rollupRepository.addToBucket(event.getDriverId(), EventRollup.MINUTE_BUCKET, time.truncatedTo(ChronoUnit.MINUTES),
+                event.getEventType(), countDelta, durationDelta, earSum, earCount, ear, blinkCount, blinkRateSum);
+        rollupRepository.addToBucket(event.getDriverId(), EventRollup.HOUR_BUCKET, time.truncatedTo(ChronoUnit.HOURS),
+                event.getEventType(), countDelta, durationDelta, earSum, earCount, ear, blinkCount, blinkRateSum);
+    }
+
+    // Replaces the minute buckets and the hour bucket of one hour with totals computed from raw events
+    private void rebuildHour(LocalDateTime hour) {
+        LocalDateTime nextHour = hour.plusHours(1);
+        List<Event> events = eventRepository.findByStartTimeGreaterThanEqualAndStartTimeLessThan(hour, nextHour);
+
+        Map<EventRollupId, EventRollup> buckets = new HashMap<>();
+        for (Event event : events) {
+            if (event.getDriverId() == null) {
+                continue;
+            }
+            Double blinkRate = extractBlinkRate(event.getMetadata());
+            addToMap(buckets, event, EventRollup.MINUTE_BUCKET, event.getStartTime().truncatedTo(ChronoUnit.MINUTES), blinkRate);
+            addToMap(buckets, event, EventRollup.HOUR_BUCKET, hour, blinkRate);
+        }
+
+        rollupRepository.deleteBuckets(EventRollup.MINUTE_BUCKET, hour, nextHour);
+        rollupRepository.deleteBuckets(EventRollup.HOUR_BUCKET, hour, nextHour);
+        rollupRepository.flush();
+        rollupRepository.saveAll(buckets.values());
+
+        checkpointRepository.save(new JobCheckpoint(CATCH_UP_JOB, nextHour, LocalDateTime.now(), null));
+    }
+
+    private void addToMap(Map<EventRollupId, EventRollup> buckets, Event event, int bucketMinutes,
+                          LocalDateTime bucketStart, Double blinkRate) {
+        EventRollupId id = new EventRollupId(event.getDriverId(), bucketMinutes, bucketStart, event.getEventType());
+        EventRollup rollup = buckets.computeIfAbsent(id, EventRollup::new);
+        rollup.setEventCount(rollup.getEventCount() + 1);
+        rollup.setTotalDuration(rollup.getTotalDuration() + event.getDuration());
+        Float ear = event.getEarValue();
+        if (ear != null) {
+            rollup.setEarSum(rollup.getEarSum() + ear);
+            rollup.setEarCount(rollup.getEarCount() + 1);
+            if (rollup.getEarMin() == null || ear < rollup.getEarMin()) {
+                rollup.setEarMin(ear);
+            }
+        }
+        if (blinkRate != null) {
+            rollup.setBlinkCount(rollup.getBlinkCount() + 1);
+            rollup.setBlinkRateSum(rollup.getBlinkRateSum() + blinkRate);
+        }
+    }
+
+    // Stored checkpoint, or the hour of the oldest event when the job runs for the first time
+    private LocalDateTime loadCatchUpPosition() {
+        return checkpointRepository.findById(CATCH_UP_JOB)
+                .map(JobCheckpoint::getPosition)
+                .orElseGet(() -> {
+                    LocalDateTime oldest = eventRepository.findMinStartTime();
+                    return oldest != null ? oldest.truncatedTo(ChronoUnit.HOURS) : null;
+                });
+    }
+
+    private void addBuckets(EventSummary summary, String driverId, int bucketMinutes, LocalDateTime from, LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+        for (EventRollup rollup : rollupRepository.findBuckets(driverId, bucketMinutes, from, to)) {
+            summary.addRollup(rollup);
+        }
+    }
+
+    private void addRawEvents(EventSummary summary, String driverId, LocalDateTime from, LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+        List<Event> events = eventRepository.findByDriverIdAndStartTimeGreaterThanEqualAndStartTimeLessThan(driverId, from, to);
+        // Edges of old ranges may already have been moved to the archive
+        for (Event event : archivedEventQueryService.mergeWithArchive(driverId, from, to, events)) {
+            summary.addEvent(event, extractBlinkRate(event.getMetadata()));
+        }
+    }
+
+    // Rounds a time up to the next whole unit (unchanged if already aligned)
+    private static LocalDateTime ceil(LocalDateTime time, ChronoUnit unit) {
+        LocalDateTime truncated = time.truncatedTo(unit);
+        return truncated.equals(time) ? truncated : truncated.plus(1, unit);
+    }
+}
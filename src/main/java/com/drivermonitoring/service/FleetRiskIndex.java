@@ -0,0 +1,199 @@
+// What is this file?
+// Keeps every active driver ranked by their recent drowsy/distracted time fraction, for a few fixed windows.
+// It is updated by EventLoggingService with the time each report adds and answers "top N riskiest drivers" queries.
+// Why is this needed?
+// Dispatchers need the handful of drivers at risk right now; reading a sorted index costs O(N log N)
+// for the N drivers shown, no matter how many drivers are in the fleet.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.dto.DriverRiskDTO;
+import com.drivermonitoring.model.DriverState;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+@Service
+public class FleetRiskIndex {
+
+    // Windows (in minutes) that can be queried
+    public static final int[] SUPPORTED_WINDOWS = {1, 5, 15, 30};
+
+    private final Map<String, DriverRisk> drivers = new ConcurrentHashMap<>();
+    // One sorted index per supported window, highest risk first
+    private final List<ConcurrentSkipListSet<RankKey>> rankings = new ArrayList<>();
+
+    public FleetRiskIndex() {
+        for (int i = 0; i < SUPPORTED_WINDOWS.length; i++) {
+            rankings.add(new ConcurrentSkipListSet<>());
+        }
+    }
+
+    /**
+     * Adds an event to the driver's decayed risk totals and re-ranks the driver.
+     * Risk time decays exponentially with the window as time constant, so the stored sort key
+     * ln(value) + time / window never changes between events and the index stays ordered on its own.
+     * @param driverId The ID of the driver.
+     * @param driverState The state of the event (NORMAL events are ignored).
+     * @param duration Duration of the event in seconds.
+     * @param time When the event happened.
+     */
+    public void recordEvent(String driverId, DriverState driverState, float duration, LocalDateTime time) {
+        if (driverId == null || driverState == null || driverState == DriverState.NORMAL || time == null || duration <= 0f) {
+            return;
+        }
+        double seconds = toEpochSeconds(time);
+        DriverRisk risk = drivers.computeIfAbsent(driverId, id -> new DriverRisk(id, seconds));
+        synchronized (risk) {
+            // The driver was removed while this event was in flight
+            if (risk.removed) {
+                return;
+            }
+            for (int i = 0; i < SUPPORTED_WINDOWS.length; i++) {
+                double tau = SUPPORTED_WINDOWS[i] * 60.0;
+                // Bring the stored totals to the newer of the two times, then add the event
+                double eventWeight = 1.0;
+                if (seconds > risk.time) {
+                    double factor = Math.exp(-(seconds - risk.time) / tau);
+                    risk.drowsy[i] *= factor;
+                    risk.distracted[i] *= factor;
+                } else {
+                    eventWeight = Math.exp(-(risk.time - seconds) / tau);
+                }
+                if (driverState == DriverState.DROWSY) {
+                    risk.drowsy[i] += duration * eventWeight;
+                } else {
+                    risk.distracted[i] += duration * eventWeight;
+                }
+            }
+            risk.time = Math.max(risk.time, seconds);
+            risk.lastEventTime = (risk.lastEventTime == null || time.isAfter(risk.lastEventTime)) ? time : risk.lastEventTime;
+            reindex(risk);
+        }
+    }
+
+    /**
+     * Returns the N drivers with the highest risk time fraction in the window.
+     * @param n Number of drivers to return.
+     * @param windowMinutes One of SUPPORTED_WINDOWS.
+     * @param now Current time (used to decay the values).
+     * @return Up to n entries, highest risk first.
+     */
+    public List<DriverRiskDTO> topRisk(int n, int windowMinutes, LocalDateTime now) {
+        int windowIndex = windowIndex(windowMinutes);
+        if (windowIndex < 0) {
+            throw new IllegalArgumentException("Unsupported window: " + windowMinutes);
+        }
+        double nowSeconds = toEpochSeconds(now);
+        double tau = windowMinutes * 60.0;
+
+        List<DriverRiskDTO> result = new ArrayList<>();
+        Iterator<RankKey> iterator = rankings.get(windowIndex).iterator();
+        while (iterator.hasNext() && result.size() < n) {
+            RankKey key = iterator.next();
+            DriverRisk risk = drivers.get(key.driverId);
+            if (risk == null) {
+                continue;
+            }
+            synchronized (risk) {
+                if (risk.removed) {
+                    continue;
+                }
+                double factor = Math.exp(-Math.max(0.0, nowSeconds - risk.time) / tau);
+                float drowsyFraction = (float) Math.min(1.0, risk.drowsy[windowIndex] * factor / tau);
+                float distractedFraction = (float) Math.min(1.0, risk.distracted[windowIndex] * factor / tau);
+                result.add(new DriverRiskDTO(risk.driverId, null, Math.min(1f, drowsyFraction + distractedFraction),
+                        drowsyFraction, distractedFraction, risk.lastEventTime));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes a driver from the index (called when a session starts or ends).
+     * @param driverId The ID of the driver.
+     */
+    public void remove(String driverId) {
+        if (driverId == null) {
+            return;
+        }
+        DriverRisk risk = drivers.remove(driverId);
+        if (risk != null) {
+            synchronized (risk) {
+                risk.removed = true;
+                for (int i = 0; i < SUPPORTED_WINDOWS.length; i++) {
+                    if (risk.keys[i] != null) {
+                        rankings.get(i).remove(risk.keys[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param windowMinutes Window in minutes.
+     * @return true if the window can be queried.
+     */
+    public boolean isSupportedWindow(int windowMinutes) {
+        return windowIndex(windowMinutes) >= 0;
+    }
+
+    // Replaces the driver's keys in every ranking (caller holds the driver's monitor)
+    private void reindex(DriverRisk risk) {
+        for (int i = 0; i < SUPPORTED_WINDOWS.length; i++) {
+            double tau = SUPPORTED_WINDOWS[i] * 60.0;
+            double value = risk.drowsy[i] + risk.distracted[i];
+            RankKey newKey = new RankKey(Math.log(Math.max(value, 1e-9)) + risk.time / tau, risk.driverId);
+            if (risk.keys[i] != null) {
+                rankings.get(i).remove(risk.keys[i]);
+            }
+            rankings.get(i).add(newKey);
+            risk.keys[i] = newKey;
+        }
+    }
+
+    private static int windowIndex(int windowMinutes) {
+        for (int i = 0; i < SUPPORTED_WINDOWS.length; i++) {
+            if (SUPPORTED_WINDOWS[i] == windowMinutes) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static double toEpochSeconds(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) + time.getNano() / 1e9;
+    }
+
+    // Immutable sort key: higher key first, driverId breaks ties
+    private record RankKey(double key, String driverId) implements Comparable<RankKey> {
+        @Override
+        public int compareTo(RankKey other) {
+            int byKey = Double.compare(other.key, key);
+            return byKey != 0 ? byKey : driverId.compareTo(other.driverId);
+        }
+    }
+
+    // Mutable per-driver state, always accessed under its own monitor
+    private static class DriverRisk {
+        final String driverId;
+        final double[] drowsy = new double[SUPPORTED_WINDOWS.length];
+        final double[] distracted = new double[SUPPORTED_WINDOWS.length];
+        final RankKey[] keys = new RankKey[SUPPORTED_WINDOWS.length];
+        double time; // Epoch seconds the totals are decayed to
+        LocalDateTime lastEventTime;
+        boolean removed;
+
+        DriverRisk(String driverId, double time) {
+            this.driverId = driverId;
+            this.time = time;
+        }
+    }
+}
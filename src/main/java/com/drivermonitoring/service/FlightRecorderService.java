@@ -0,0 +1,224 @@
+// What is this file?
+// Manages JDK Flight Recorder recordings from inside the application: an optional continuous recording
+// (low-overhead default settings, bounded by age and size) and one on-demand recording started over the API.
+// Recordings are dumped to files in diagnostics.jfr.directory; only the latest diagnostics.jfr.max-dumps are kept.
+// Why is this needed?
+// Slow requests can be correlated with GC, JDBC waits and lock contention in production without restarting
+// the JVM with -XX:StartFlightRecording or shell access for jcmd.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.jfr.ActiveSessionLookupEvent;
+import com.drivermonitoring.jfr.DetectionRequestEvent;
+import com.drivermonitoring.jfr.EventIngestEvent;
+import com.drivermonitoring.jfr.FeatureExtractionEvent;
+import com.drivermonitoring.jfr.PredictionEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Service
+public class FlightRecorderService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlightRecorderService.class);
+
+    private static final List<Class<? extends Event>> CUSTOM_EVENTS = List.of(
+            DetectionRequestEvent.class, ActiveSessionLookupEvent.class, EventIngestEvent.class,
+            FeatureExtractionEvent.class, PredictionEvent.class);
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final String FILE_PREFIX = "drivermonitoring-";
+
+    @Value("${diagnostics.jfr.directory:./data/jfr}")
+    private String directory;
+
+    // Continuous recording from startup (JFR "default" settings, about 1% overhead)
+    @Value("${diagnostics.jfr.continuous:false}")
+    private boolean continuous;
+
+    @Value("${diagnostics.jfr.max-age-minutes:60}")
+    private long maxAgeMinutes;
+
+    @Value("${diagnostics.jfr.max-size-mb:250}")
+    private long maxSizeMb;
+
+    // Every dump writes up to max-size-mb: older dump files are deleted beyond this many
+    @Value("${diagnostics.jfr.max-dumps:5}")
+    private int maxDumps;
+
+    private Recording continuousRecording;
+    private Recording onDemandRecording;
+
+    @PostConstruct
+    public void init() {
+        if (!continuous) {
+            return;
+        }
+        try {
+            continuousRecording = new Recording(Configuration.getConfiguration("default"));
+            continuousRecording.setName(FILE_PREFIX + "continuous");
+            continuousRecording.setMaxAge(Duration.ofMinutes(maxAgeMinutes));
+            continuousRecording.setMaxSize(maxSizeMb * 1024 * 1024);
+            continuousRecording.setToDisk(true);
+            // Custom events keep their annotated thresholds: only slow requests and lookups are recorded
+            CUSTOM_EVENTS.forEach(continuousRecording::enable);
+            continuousRecording.start();
+            logger.info("Continuous flight recording started (max age {} min, max size {} MB)", maxAgeMinutes, maxSizeMb);
+        } catch (IOException | ParseException e) {
+            logger.error("Could not start the continuous flight recording: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Starts the on-demand recording. Custom events are recorded without threshold.
+     * @param settings JFR settings: "default" (low overhead) or "profile" (more detail, e.g. allocation samples).
+     * @param durationSeconds Stops by itself after this time; 0 runs until stopped.
+     */
+    public synchronized Map<String, Object> start(String settings, long durationSeconds) throws IOException, ParseException {
+        if (onDemandRecording != null && onDemandRecording.getState() == RecordingState.RUNNING) {
+            throw new IllegalStateException("An on-demand recording is already running");
+        }
+        closeOnDemand();
+        Recording recording = new Recording(Configuration.getConfiguration(settings));
+        recording.setName(FILE_PREFIX + "on-demand");
+        recording.setToDisk(true);
+        recording.setMaxSize(maxSizeMb * 1024 * 1024);
+        if (durationSeconds > 0) {
+            recording.setDuration(Duration.ofSeconds(durationSeconds));
+        }
+        CUSTOM_EVENTS.forEach(type -> recording.enable(type).withThreshold(Duration.ZERO));
+        recording.start();
+        onDemandRecording = recording;
+        logger.info("On-demand flight recording started with '{}' settings{}", settings,
+                durationSeconds > 0 ? " for " + durationSeconds + " s" : "");
+        return getStatus();
+    }
+
+    /**
+     * Writes the on-demand recording (running or finished) or else the continuous one to a file.
+     * @return The written file.
+     */
+    public synchronized Path dump() throws IOException {
+        Recording recording = onDemandRecording != null ? onDemandRecording : continuousRecording;
+        if (recording == null) {
+            throw new IllegalStateException("No flight recording is running; start one first");
+        }
+        return dumpTo(recording);
+    }
+
+    /**
+     * Stops the on-demand recording and writes it to a file.
+     * @return The written file.
+     */
+    public synchronized Path stop() throws IOException {
+        if (onDemandRecording == null) {
+            throw new IllegalStateException("No on-demand recording to stop");
+        }
+        if (onDemandRecording.getState() == RecordingState.RUNNING) {
+            onDemandRecording.stop();
+        }
+        Path file = dumpTo(onDemandRecording);
+        closeOnDemand();
+        return file;
+    }
+
+    public synchronized Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("continuous", describe(continuousRecording));
+        status.put("onDemand", describe(onDemandRecording));
+        status.put("directory", Paths.get(directory).toAbsolutePath().toString());
+        return status;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        closeOnDemand();
+        if (continuousRecording != null) {
+            continuousRecording.close();
+            continuousRecording = null;
+        }
+    }
+
+    private Path dumpTo(Recording recording) throws IOException {
+        Path dir = Paths.get(directory);
+        Files.createDirectories(dir);
+        Path file = dir.resolve(recording.getName() + "-" + LocalDateTime.now().format(FILE_TIME) + ".jfr");
+        recording.dump(file);
+        logger.info("Flight recording {} dumped to {}", recording.getName(), file.toAbsolutePath());
+        deleteOldDumps(dir, file);
+        return file;
+    }
+
+    // Keeps the newest maxDumps dump files (the one just written included); other files are left alone
+    private void deleteOldDumps(Path dir, Path latest) {
+        List<Path> dumps;
+        try (Stream<Path> files = Files.list(dir)) {
+            dumps = files.filter(f -> f.getFileName().toString().startsWith(FILE_PREFIX) && f.toString().endsWith(".jfr"))
+                    .filter(f -> !f.equals(latest))
+                    .sorted(Comparator.comparing(FlightRecorderService::lastModified).reversed())
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            logger.warn("Could not list flight recording dumps in {}: {}", dir, e.getMessage());
+            return;
+        }
+        for (Path old : dumps.subList(Math.min(dumps.size(), Math.max(0, maxDumps - 1)), dumps.size())) {
+            try {
+                Files.deleteIfExists(old);
+                logger.info("Deleted old flight recording dump {}", old.getFileName());
+            } catch (IOException e) {
+                logger.warn("Could not delete old flight recording dump {}: {}", old, e.getMessage());
+            }
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private void closeOnDemand() {
+        if (onDemandRecording != null) {
+            onDemandRecording.close();
+            onDemandRecording = null;
+        }
+    }
+
+    private static Map<String, Object> describe(Recording recording) {
+        Map<String, Object> info = new LinkedHashMap<>();
+        if (recording == null) {
+            info.put("state", "NONE");
+            return info;
+        }
+        info.put("state", recording.getState().name());
+        info.put("startTime", recording.getStartTime());
+        info.put("duration", recording.getDuration());
+        info.put("maxAge", recording.getMaxAge());
+        info.put("sizeBytes", recording.getSize());
+        return info;
+    }
+}
@@ -0,0 +1,93 @@
+// What is this file?
+// Cluster-wide locks for scheduled jobs (job_locks table). An instance runs a locked job only if no other
+// instance holds its lock; the lock expires on its own after lockAtMostFor, so a crashed instance never
+// blocks a job for longer than that.
+// Why is this needed?
+// Every instance schedules the same jobs. The stale-session cleanup, the archival and the rollup catch-up
+// work on shared tables and must run on one instance at a time, not on all of them.
+// The same locks serialize short sections every instance runs, such as the event partition DDL.
+// With cluster.enabled=false the jobs run without locking (single instance).
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.repository.JobLockRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+@Service
+public class JobLockService {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobLockService.class);
+
+    private static final long LOCK_RETRY_MILLIS = 100;
+
+    @Autowired
+    private JobLockRepository jobLockRepository;
+
+    @Autowired
+    private SessionLeaseService sessionLeaseService;
+
+    /**
+     * Runs the job if this instance gets its lock.
+     * @param lockAtMostFor How long the lock is held if this instance dies during the job; longer than the job takes.
+     * @param lockAtLeastFor How long the lock is kept after the job started, so instances whose schedule
+     *                       is a little behind do not repeat the run.
+     * @return false if another instance holds the lock and the job did not run.
+     */
+    public boolean runExclusively(String jobName, Duration lockAtMostFor, Duration lockAtLeastFor, Runnable job) {
+        if (!sessionLeaseService.isEnabled()) {
+            job.run();
+            return true;
+        }
+        String nodeId = sessionLeaseService.getNodeId();
+        try {
+            jobLockRepository.createIfMissing(jobName);
+        } catch (DataIntegrityViolationException e) {
+            // Another instance created the row at the same moment
+        }
+        if (jobLockRepository.acquire(jobName, nodeId, lockAtMostFor.toMillis()) != 1) {
+            logger.debug("Job {} skipped: locked by another instance", jobName);
+            return false;
+        }
+        long started = System.nanoTime();
+        try {
+            job.run();
+        } finally {
+            long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+            try {
+                jobLockRepository.release(jobName, nodeId, Math.max(0, lockAtLeastFor.toMillis() - elapsedMillis));
+            } catch (Exception e) {
+                // The lock expires after lockAtMostFor anyway
+                logger.error("Failed to release the lock of job {}: {}", jobName, e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs a short critical section that every instance needs (e.g. schema changes), waiting while
+     * another instance holds its lock instead of skipping it like the scheduled jobs.
+     * @param lockAtMostFor How long the lock is held if this instance dies inside the section.
+     * @param waitAtMost How long to wait for the lock.
+     * @throws IllegalStateException The lock was not free within waitAtMost.
+     */
+    public void runLocked(String lockName, Duration lockAtMostFor, Duration waitAtMost, Runnable section) {
+        long deadline = System.nanoTime() + waitAtMost.toNanos();
+        while (!runExclusively(lockName, lockAtMostFor, Duration.ZERO, section)) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new IllegalStateException("Lock " + lockName + " not acquired within " + waitAtMost);
+            }
+            try {
+                Thread.sleep(LOCK_RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for lock " + lockName, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+// What is this file?
+// Copies events from the local event journal into the database in batches and checkpoints its offset.
+// Why is this needed?
+// With ingest.mode=journal, events are acknowledged once they are in the journal; this projector
+// makes them visible in driver_events. The checkpoint is saved in the same transaction as the events,
+// so after a crash or a database outage the journal is replayed from exactly where it stopped.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.model.Event;
+import com.drivermonitoring.model.JobCheckpoint;
+import com.drivermonitoring.repository.EventRepository;
+import com.drivermonitoring.repository.JobCheckpointRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Service
+public class JournalProjector {
+
+    private static final Logger logger = LoggerFactory.getLogger(JournalProjector.class);
+
+    public static final String PROJECTOR_JOB = "event-journal-projector";
+
+    @Autowired
+    private EventJournal eventJournal;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private JobCheckpointRepository checkpointRepository;
+
+    @Autowired
+    private EventRollupService eventRollupService;
+
+    @Autowired
+    private AlertLatencyTracker alertLatencyTracker;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // Events inserted per database transaction
+    @Value("${journal.projector.batch-size:500}")
+    private int batchSize;
+
+    // Wait after a failed batch before retrying (the database may be down)
+    @Value("${journal.projector.retry-delay-ms:5000}")
+    private long retryDelayMs;
+
+    private EventJournal.Cursor cursor;
+    private long retryAfter;
+    private long projectedTotal;
+    private String lastError;
+
+    /**
+     * Projects every durable journal record that is not in the database yet.
+     * Runs continuously in the background; the first run after startup replays from the checkpoint.
+     */
+    @Scheduled(fixedDelayString = "${journal.projector.interval-ms:200}")
+    public synchronized void project() {
+        if (System.currentTimeMillis() < retryAfter) {
+            return;
+        }
+        try {
+            if (cursor == null) {
+                cursor = eventJournal.cursorAt(loadCheckpoint());
+                if (cursor.offset() < eventJournal.getDurableOffset()) {
+                    logger.info("Replaying event journal from offset {} (durable up to {})", cursor.offset(), eventJournal.getDurableOffset());
+                }
+            }
+            while (true) {
+                EventJournal.ReadResult batch = eventJournal.read(cursor, batchSize);
+                if (batch.entries().isEmpty()) {
+                    break;
+                }
+                List<Event> events = batch.entries().stream().map(EventJournal.JournalEntry::event).collect(Collectors.toList());
+                long nextOffset = batch.next().offset();
+                // Events and checkpoint commit together: a batch is either fully projected or replayed
+                transactionTemplate.executeWithoutResult(status -> {
+                    eventRepository.saveAll(events);
+                    checkpointRepository.save(new JobCheckpoint(PROJECTOR_JOB, null, LocalDateTime.now(), nextOffset));
+                });
+                cursor = batch.next();
+                projectedTotal += events.size();
+                lastError = null;
+                updateRollups(events);
+                eventJournal.deleteSegmentsBefore(nextOffset);
+            }
+        } catch (Exception e) {
+            // Keep the cursor at the last committed batch and retry later; the journal keeps accepting events
+            lastError = e.getMessage();
+            cursor = null;
+            retryAfter = System.currentTimeMillis() + retryDelayMs;
+            logger.error("Event journal projection failed, retrying in {} ms: {}", retryDelayMs, e.getMessage());
+        }
+    }
+
+    public synchronized Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>(eventJournal.getStatus());
+        long projected = cursor != null ? cursor.offset() : loadCheckpoint();
+        status.put("projectedOffset", projected);
+        status.put("lag", Math.max(0, eventJournal.getDurableOffset() - projected));
+        status.put("projectedSinceStart", projectedTotal);
+        status.put("lastError", lastError);
+        return status;
+    }
+
+    // Rollups are derived data: a failure here is repaired by the rollup catch-up job
+    private void updateRollups(List<Event> events) {
+        for (Event event : events) {
+            try {
+                eventRollupService.recordEvent(event);
+                // From now on predictions of the driver include the event
+                alertLatencyTracker.analyticsUpdated(event.getDriverId());
+            } catch (Exception e) {
+                logger.warn("Failed to update rollups for journaled event of driver {}: {}", event.getDriverId(), e.getMessage());
+            }
+        }
+    }
+
+    private long loadCheckpoint() {
+        long checkpoint = checkpointRepository.findById(PROJECTOR_JOB)
+                .map(JobCheckpoint::getOffsetValue)
+                .orElse(0L);
+        // The journal directory was removed or replaced: start over with what is on disk
+        if (checkpoint > eventJournal.getDurableOffset()) {
+            logger.warn("Journal checkpoint {} is ahead of the journal (durable offset {}), starting from the beginning",
+                    checkpoint, eventJournal.getDurableOffset());
+            return 0L;
+        }
+        return checkpoint;
+    }
+}
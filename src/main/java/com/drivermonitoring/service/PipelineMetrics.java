@@ -0,0 +1,121 @@
+// What is this file?
+// Micrometer meters of the ingest and prediction pipeline: a timer per stage, counters of received events
+// by driver state and of rejected events by reason, and a gauge of active sessions.
+// Why is this needed?
+// It makes the pipeline observable in production (Prometheus endpoint /actuator/prometheus).
+// Every tag comes from a fixed enum, so the number of series does not grow with the number of drivers.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.model.DriverState;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+@Service
+public class PipelineMetrics {
+
+    /** Pipeline stages with their own timer (tag stage=...). */
+    public enum Stage {
+        DECODE, SESSION_LOOKUP, METADATA, SAVE, FEATURES, PREDICT;
+
+        String tag() {
+            return name().toLowerCase();
+        }
+    }
+
+    /** Why an incoming detection event was not accepted (tag reason=...). */
+    public enum Rejection {
+        MISSING_FIELDS, INVALID_STATE, NO_ACTIVE_SESSION, IN_PROGRESS, STORE_FAILED, OVERLOADED, MISDIRECTED, ERROR;
+
+        String tag() {
+            return name().toLowerCase();
+        }
+    }
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private SessionLivenessService sessionLivenessService;
+
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final Map<DriverState, Counter> receivedCounters = new EnumMap<>(DriverState.class);
+    private final Map<Rejection, Counter> rejectionCounters = new EnumMap<>(Rejection.class);
+    private Counter duplicateCounter;
+
+    // All series are registered up front: they show up in Prometheus with 0 before the first event
+    @PostConstruct
+    public void init() {
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder("drivermonitoring.pipeline.stage")
+                    .description("Time spent in one stage of the ingest/prediction pipeline")
+                    .tag("stage", stage.tag())
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofNanos(1_000))
+                    .maximumExpectedValue(Duration.ofSeconds(10))
+                    .register(meterRegistry));
+        }
+        for (DriverState state : DriverState.values()) {
+            receivedCounters.put(state, Counter.builder("drivermonitoring.events.received")
+                    .description("Detection events received, by reported driver state")
+                    .tag("state", state.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+        for (Rejection reason : Rejection.values()) {
+            rejectionCounters.put(reason, Counter.builder("drivermonitoring.events.rejected")
+                    .description("Detection events not accepted, by reason")
+                    .tag("reason", reason.tag())
+                    .register(meterRegistry));
+        }
+        duplicateCounter = Counter.builder("drivermonitoring.events.duplicates")
+                .description("Retried detection events answered from the dedupe cache")
+                .register(meterRegistry);
+        Gauge.builder("drivermonitoring.sessions.active", sessionLivenessService, SessionLivenessService::getTrackedCount)
+                .description("Active driver sessions")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs a stage and records its time (also when it throws).
+     */
+    public <T> T time(Stage stage, Supplier<T> work) {
+        return stageTimers.get(stage).record(work);
+    }
+
+    /**
+     * Same as {@link #time} for a stage that throws checked exceptions.
+     */
+    public <T> T timeChecked(Stage stage, Callable<T> work) throws Exception {
+        return stageTimers.get(stage).recordCallable(work);
+    }
+
+    /**
+     * Records a stage timed by the caller.
+     */
+    public void record(Stage stage, long nanos) {
+        stageTimers.get(stage).record(Duration.ofNanos(nanos));
+    }
+
+    public void eventReceived(DriverState state) {
+        receivedCounters.get(state).increment();
+    }
+
+    public void eventRejected(Rejection reason) {
+        rejectionCounters.get(reason).increment();
+    }
+
+    public void duplicateEvent() {
+        duplicateCounter.increment();
+    }
+}
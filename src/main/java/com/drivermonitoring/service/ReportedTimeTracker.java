@@ -0,0 +1,67 @@
+// What is this file?
+// Works out how much new time a detection report adds for its driver. A report covers
+// [arrival - duration, arrival]; the part already covered by an earlier report of the same driver and state
+// is not counted again. Keeps the last reported end per driver and state.
+// Why is this needed?
+// The client reports an episode on every frame with the growing cumulative duration (closeDuration,
+// distractionDuration), about 30 times a second. Fed as is, every second of an episode was counted dozens
+// of times by the forecaster, the fleet index and the alert rules. This is the time they are fed instead,
+// with or without coalescing.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.model.DriverState;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+public class ReportedTimeTracker {
+
+    private static final long NONE = Long.MIN_VALUE;
+
+    // End (epoch ms) of the latest report per driver, indexed by DriverState ordinal
+    private final Map<String, long[]> lastEnds = new ConcurrentHashMap<>();
+
+    /**
+     * Records a report and returns the seconds it adds to the time the driver already reported in that state.
+     * @param driverId The ID of the driver.
+     * @param driverState The state of the report.
+     * @param duration Seconds covered by the report (the client's cumulative duration of the episode).
+     * @param arrivedAt Arrival of the report (end of the time it covers).
+     * @return Between 0 (fully overlapped, or late) and duration.
+     */
+    public float addedSeconds(String driverId, DriverState driverState, float duration, LocalDateTime arrivedAt) {
+        if (driverId == null || driverState == null || arrivedAt == null || duration <= 0f) {
+            return 0f;
+        }
+        long end = arrivedAt.toInstant(ZoneOffset.UTC).toEpochMilli();
+        long start = end - (long) (duration * 1000);
+        long[] ends = lastEnds.computeIfAbsent(driverId, id -> {
+            long[] empty = new long[DriverState.values().length];
+            Arrays.fill(empty, NONE);
+            return empty;
+        });
+        synchronized (ends) {
+            int index = driverState.ordinal();
+            long last = ends[index];
+            long from = Math.max(start, last);
+            ends[index] = Math.max(last, end);
+            return from < end ? (end - from) / 1000f : 0f;
+        }
+    }
+
+    /**
+     * Forgets the driver's reports (called when a session starts or ends).
+     * @param driverId The ID of the driver.
+     */
+    public void reset(String driverId) {
+        if (driverId != null) {
+            lastEnds.remove(driverId);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+// What is this file?
+// Keeps a small per-driver Holt (double exponential smoothing) forecast of the per-minute risk score.
+// It is updated every time an event is logged and answers "how many minutes until HIGH risk?".
+// Why is this needed?
+// The prediction request must not scan events to estimate a trend, so the trend is maintained
+// incrementally with O(1) state per driver and simply read when a prediction is built.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.model.DriverState;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+public class RiskTrendForecaster {
+
+    // Minute score at which the driver is considered HIGH risk (same threshold the model uses for probability)
+    public static final double HIGH_RISK_SCORE = 0.6;
+    // Upper bound of the forecast, matches the "everything is fine" value of the model
+    public static final int MAX_FORECAST_MINUTES = 120;
+
+    // Smoothing factors: level reacts quickly, trend a bit slower to ignore single noisy minutes
+    private static final double LEVEL_ALPHA = 0.5;
+    private static final double TREND_BETA = 0.3;
+    // Longer gaps are treated as "calm" minutes; after this many the state is fully decayed anyway
+    private static final int MAX_GAP_MINUTES = MAX_FORECAST_MINUTES;
+    private static final double MIN_TREND = 1e-4;
+
+    private final Map<String, TrendState> states = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a logged event to the current minute of the driver's risk series.
+     * @param driverId The ID of the driver.
+     * @param driverState The state of the event (NORMAL events are ignored).
+     * @param duration Duration of the event in seconds.
+     * @param time When the event happened.
+     */
+    public void recordEvent(String driverId, DriverState driverState, float duration, LocalDateTime time) {
+        if (driverId == null || driverState == null || driverState == DriverState.NORMAL || time == null) {
+            return;
+        }
+        long minute = toEpochMinute(time);
+        TrendState state = states.computeIfAbsent(driverId, id -> new TrendState(minute));
+        synchronized (state) {
+            advanceTo(state, minute);
+            // Late events (older than the open minute) are folded into the open minute
+            if (driverState == DriverState.DROWSY) {
+                state.drowsySeconds += Math.max(0f, duration);
+            } else if (driverState == DriverState.DISTRACTED) {
+                state.distractedSeconds += Math.max(0f, duration);
+            }
+        }
+    }
+
+    /**
+     * Estimates how many minutes remain until the risk score reaches HIGH.
+     * @param driverId The ID of the driver.
+     * @param now Current time.
+     * @return 0 if the driver is already HIGH, up to MAX_FORECAST_MINUTES, or -1 if no data was recorded.
+     */
+    public int estimateMinutesUntilHigh(String driverId, LocalDateTime now) {
+        TrendState state = (driverId != null) ? states.get(driverId) : null;
+        if (state == null || now == null) {
+            return -1;
+        }
+        synchronized (state) {
+            advanceTo(state, toEpochMinute(now));
+
+            // The open minute can already be over the threshold before it is closed
+            if (minuteScore(state.drowsySeconds, state.distractedSeconds) >= HIGH_RISK_SCORE) {
+                return 0;
+            }
+            if (!state.initialized) {
+                return -1;
+            }
+            if (state.level >= HIGH_RISK_SCORE) {
+                return 0;
+            }
+            if (state.trend <= MIN_TREND) {
+                return MAX_FORECAST_MINUTES;
+            }
+            double minutes = Math.ceil((HIGH_RISK_SCORE - state.level) / state.trend);
+            return (int) Math.max(1, Math.min(minutes, MAX_FORECAST_MINUTES));
+        }
+    }
+
+    /**
+     * Drops the forecast state of a driver (called when a session starts or ends).
+     * @param driverId The ID of the driver.
+     */
+    public void reset(String driverId) {
+        if (driverId != null) {
+            states.remove(driverId);
+        }
+    }
+
+    /**
+     * Risk score of one minute in [0,1].
+     * 10% of the minute spent drowsy gives the HIGH threshold, 10% distracted gives MEDIUM (0.5),
+     * which mirrors the thresholds of MockAIFatiguePredictionModel.
+     */
+    static double minuteScore(float drowsySeconds, float distractedSeconds) {
+        double drowsyFraction = drowsySeconds / 60.0;
+        double distractedFraction = distractedSeconds / 60.0;
+        double score = drowsyFraction / 0.1 * HIGH_RISK_SCORE + distractedFraction / 0.1 * 0.5;
+        return Math.min(1.0, score);
+    }
+
+    // Closes every minute before targetMinute and feeds it into the Holt recursion
+    private void advanceTo(TrendState state, long targetMinute) {
+        int closed = 0;
+        while (state.currentMinute < targetMinute && closed < MAX_GAP_MINUTES) {
+            update(state, minuteScore(state.drowsySeconds, state.distractedSeconds));
+            state.drowsySeconds = 0f;
+            state.distractedSeconds = 0f;
+            state.currentMinute++;
+            closed++;
+        }
+        // After a very long gap the smoothed values are already ~0, just jump forward
+        if (state.currentMinute < targetMinute) {
+            state.currentMinute = targetMinute;
+        }
+    }
+
+    // One step of Holt's linear trend method
+    private void update(TrendState state, double score) {
+        if (!state.initialized) {
+            state.level = score;
+            state.trend = 0.0;
+            state.initialized = true;
+            return;
+        }
+        double previousLevel = state.level;
+        state.level = LEVEL_ALPHA * score + (1 - LEVEL_ALPHA) * (state.level + state.trend);
+        state.trend = TREND_BETA * (state.level - previousLevel) + (1 - TREND_BETA) * state.trend;
+    }
+
+    private static long toEpochMinute(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) / 60;
+    }
+
+    // Mutable per-driver state, always accessed under its own monitor
+    private static class TrendState {
+        long currentMinute;
+        float drowsySeconds;
+        float distractedSeconds;
+        double level;
+        double trend;
+        boolean initialized;
+
+        TrendState(long currentMinute) {
+            this.currentMinute = currentMinute;
+        }
+    }
+}
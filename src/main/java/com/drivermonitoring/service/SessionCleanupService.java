@@ -7,17 +7,18 @@ package com.drivermonitoring.service;
 
 import com.drivermonitoring.model.DriverSession;
 import com.drivermonitoring.repository.DriverSessionRepository;
-import com.drivermonitoring.repository.EventRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Collectors;
 
 @Service
 @EnableScheduling
@@ -29,38 +30,70 @@ public class SessionCleanupService {
     private DriverSessionRepository sessionRepository;
     
     @Autowired
-    private EventRepository eventRepository;
+    private EventArchiveService eventArchiveService;
+
+    // Events older than this many days are moved to the archive
+    @Value("${archive.retention-days:30}")
+    private int retentionDays;
+
+    @Autowired
+    private SessionLivenessService sessionLivenessService;
+
+    @Autowired
+    private DispatcherReadModel dispatcherReadModel;
+
+    @Autowired
+    private SessionLeaseService sessionLeaseService;
+
+    @Autowired
+    private JobLockService jobLockService;
+
+    @Autowired
+    private DriverLiveStateService driverLiveStateService;
     
-    // Run every hour to check for stale sessions (sessions that were not properly closed)
+    // Run every hour to check for stale sessions (sessions that were not properly closed).
+    // Idle sessions are normally closed within seconds by SessionLivenessService; this is the safety net
+    // for sessions that keep sending heartbeats but were never ended.
+    // In a cluster one instance runs it per hour (job lock)
     @Scheduled(fixedRate = 3600000)
-    @Transactional
     public void checkStaleActiveSessions() {
+        jobLockService.runExclusively("stale-session-cleanup", Duration.ofMinutes(30), Duration.ofMinutes(50),
+                this::closeStaleActiveSessions);
+    }
+
+    private void closeStaleActiveSessions() {
         // Sessions active for more than 12 hours are likely stale
-        LocalDateTime threshold = LocalDateTime.now().minusHours(12);
-        List<DriverSession> staleSessions = sessionRepository.findByActiveTrueAndStartTimeBefore(threshold);
-        
-        for (DriverSession session : staleSessions) {
-            logger.warn("Found stale session: {} for driver: {}, active since: {}", 
-                 session.getSessionId(), session.getDriverId(), session.getStartTime());
-            
-            session.endSession();
-            sessionRepository.save(session);
-            
-            logger.info("Automatically closed stale session: {}", session.getSessionId());
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime threshold = now.minusHours(12);
+        List<String> driverIds = sessionRepository.findByActiveTrueAndStartTimeBefore(threshold).stream()
+                .map(DriverSession::getDriverId)
+                .distinct()
+                .collect(Collectors.toList());
+        if (driverIds.isEmpty()) {
+            return;
+        }
+
+        // One bulk UPDATE instead of loading and saving every session
+        int closed = sessionRepository.closeActiveSessions(driverIds, now);
+        // Other instances drop these drivers at their next lease renewal
+        for (String driverId : driverIds) {
+            sessionLeaseService.released(driverId);
+            sessionLivenessService.forget(driverId);
         }
+        driverLiveStateService.driverSessionsClosed(driverIds);
+        dispatcherReadModel.sessionsClosed(driverIds, now);
+        logger.warn("Automatically closed {} stale session(s) active since before {}: {}", closed, threshold, driverIds);
     }
     
-    // Run once a day at midnight to archive old events (older than 30 days)
+    // Run once a day at midnight to archive old events (older than the retention period)
     @Scheduled(cron = "0 0 0 * * *")
-    @Transactional
     public void archiveOldEvents() {
-        LocalDateTime threshold = LocalDateTime.now().minusDays(30);
-        
-        // For a prototype, we just delete old events
-        // In a production system, you would archive them first
-        long count = eventRepository.countByStartTimeBefore(threshold);
-        eventRepository.deleteByStartTimeBefore(threshold);
+        LocalDateTime threshold = LocalDateTime.now().minusDays(retentionDays);
         
-        logger.info("Cleaned up {} old events from before {}", count, threshold);
+        // Events are written to compressed segment files and deleted chunk by chunk,
+        // each chunk in its own short transaction (see EventArchiveService).
+        // In a cluster one instance archives (the archive directory should be shared storage)
+        jobLockService.runExclusively("event-archive", Duration.ofHours(6), Duration.ofHours(1),
+                () -> eventArchiveService.archiveEventsBefore(threshold));
     }
-}
\ No newline at end of file
+}
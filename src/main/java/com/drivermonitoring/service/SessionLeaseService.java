@@ -0,0 +1,236 @@
+// What is this file?
+// Ownership of active sessions when several instances share one database (cluster.enabled=true).
+// Every active session carries the node ID of the instance that holds the driver's live state (coalescer,
+// liveness wheel, risk trend, alert windows) and a lease that this instance renews while it runs.
+// Reports and heartbeats of a driver owned by another live instance are refused with that instance's ID,
+// so the load balancer (or the cab) can send them there. A lease that is not renewed expires and the next
+// instance that gets a request of the driver takes the session over.
+// The owner answers from memory only while its own copy of the lease is valid: the time of the last renewal
+// plus the lease minus a safety margin. After a pause longer than that (GC, network) it asks the database
+// again, so it stops accepting a driver's reports before another instance can have taken the session over.
+// (A pause between this check and the insert of the report is not covered: event inserts are not fenced.)
+// Why is this needed?
+// The per-driver state is kept in memory and the per-driver ordering (DriverPartitions) only holds within
+// one JVM: two instances writing the same driver would split its episodes and alerts between them.
+// Takeovers are a conditional UPDATE guarded by the session's version, so one instance wins a race.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.model.DriverSession;
+import com.drivermonitoring.repository.DriverSessionRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+@Service
+public class SessionLeaseService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionLeaseService.class);
+
+    // Requests of a driver owned by another instance are answered 421 Misdirected Request with its node ID
+    public static final int MISDIRECTED_REQUEST = 421;
+    public static final String OWNER_HEADER = "X-Session-Owner";
+
+    @Autowired
+    private DriverSessionRepository sessionRepository;
+
+    @Autowired
+    private DriverLiveStateService driverLiveStateService;
+
+    // Disabled: a single instance owns every session, no ownership checks (previous behaviour)
+    @Value("${cluster.enabled:false}")
+    private boolean enabled;
+
+    // ID of this instance; empty means host name and process ID
+    @Value("${cluster.node-id:}")
+    private String configuredNodeId;
+
+    // A lease not renewed for this long lets another instance take the session over
+    @Value("${cluster.lease-seconds:30}")
+    private long leaseSeconds;
+
+    // Local copies of the leases end this much earlier than the leases in the database, to cover clock
+    // drift and the time between the renewal UPDATE and its commit
+    @Value("${cluster.lease-safety-margin-ms:5000}")
+    private long leaseSafetyMarginMs;
+
+    private String nodeId;
+
+    // Drivers whose active session this instance owns -> System.nanoTime() until which the lease is certainly
+    // still held; refreshed from the database on every renewal
+    private final Map<String, Long> owned = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        nodeId = configuredNodeId != null && !configuredNodeId.isBlank() ? configuredNodeId.trim() : defaultNodeId();
+        if (enabled) {
+            if (leaseSafetyMarginMs >= leaseSeconds * 1000) {
+                throw new IllegalStateException("cluster.lease-safety-margin-ms must be shorter than cluster.lease-seconds");
+            }
+            logger.info("Cluster mode: node {} with session leases of {} s", nodeId, leaseSeconds);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Makes this instance the owner of a session that is about to be saved.
+     */
+    public void assign(DriverSession session) {
+        session.setOwnerNode(nodeId);
+        session.setLeaseExpiresAt(LocalDateTime.now().plusSeconds(leaseSeconds));
+    }
+
+    /**
+     * A session of the driver was started on this instance (after the save committed its owner).
+     */
+    public void started(String driverId) {
+        if (enabled && driverId != null) {
+            // assign() set the lease just before the save; the safety margin covers the save
+            owned.put(driverId, localLeaseEnd(System.nanoTime()));
+        }
+    }
+
+    /**
+     * The driver's session was ended on this instance.
+     */
+    public void released(String driverId) {
+        if (driverId != null) {
+            owned.remove(driverId);
+        }
+    }
+
+    /**
+     * @return true if this instance holds the driver's live state and its lease has certainly not expired
+     *         (always when cluster mode is off).
+     */
+    public boolean isOwned(String driverId) {
+        if (!enabled) {
+            return true;
+        }
+        Long leaseEnd = driverId != null ? owned.get(driverId) : null;
+        return leaseEnd != null && System.nanoTime() - leaseEnd < 0;
+    }
+
+    /**
+     * Decides which instance handles a request of the driver, taking the session over if its lease expired.
+     * Concurrent calls for the same driver are safe: one takeover wins, the others read the new owner.
+     * @return The node ID of the owner (this instance's ID when it owns or took over the session),
+     *         or null if the driver has no active session.
+     */
+    public String acquire(String driverId) {
+        if (!enabled || driverId == null) {
+            return nodeId;
+        }
+        // Answered from memory while the local copy of the lease is valid; otherwise the database decides
+        if (isOwned(driverId)) {
+            return nodeId;
+        }
+        DriverSession session = sessionRepository.findAllByDriverIdAndActiveTrue(driverId).stream().findFirst().orElse(null);
+        if (session == null) {
+            lost(driverId);
+            return null;
+        }
+        // Renews the lease if this instance still owns it, takes it over if it expired. The database decides
+        // whether the lease expired (its clock); a stale local read loses on the version
+        long beforeUpdate = System.nanoTime();
+        int taken = sessionRepository.takeOverLease(session.getSessionId(), session.getVersion(), nodeId, leaseSeconds * 1000);
+        if (taken == 1) {
+            boolean takeover = !nodeId.equals(session.getOwnerNode());
+            if (takeover) {
+                // Whatever this instance remembered of the driver is older than the previous owner's state
+                driverLiveStateService.driverSessionClosed(driverId);
+                logger.info("Took over session {} of driver {} from node {}", session.getSessionId(), driverId, session.getOwnerNode());
+            }
+            owned.put(driverId, localLeaseEnd(beforeUpdate));
+            return nodeId;
+        }
+        // Still leased, or another instance was faster: read who owns it now
+        DriverSession current = sessionRepository.findAllByDriverIdAndActiveTrue(driverId).stream().findFirst().orElse(null);
+        String owner = current == null ? null : current.getOwnerNode() != null ? current.getOwnerNode() : nodeId;
+        if (!nodeId.equals(owner)) {
+            lost(driverId);
+        }
+        return owner;
+    }
+
+    /**
+     * Renews the leases of the sessions this instance owns and drops the drivers it no longer owns
+     * (sessions ended or taken over elsewhere, e.g. after this instance paused longer than a lease).
+     */
+    @Scheduled(fixedDelayString = "${cluster.lease-renew-ms:10000}")
+    public void renewLeases() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            // Taken before the query: a driver taken over meanwhile is in the result or not in the snapshot
+            List<String> known = List.copyOf(owned.keySet());
+            long beforeUpdate = System.nanoTime();
+            sessionRepository.renewLeases(nodeId, leaseSeconds * 1000);
+            Set<String> current = new HashSet<>(sessionRepository.findActiveDriverIdsOwnedBy(nodeId));
+            List<String> lost = known.stream().filter(driverId -> !current.contains(driverId)).toList();
+            lost.forEach(this::lost);
+            // Renewed by the UPDATE above (a session is only taken over after its lease expired)
+            long leaseEnd = localLeaseEnd(beforeUpdate);
+            current.forEach(driverId -> owned.put(driverId, leaseEnd));
+            if (!lost.isEmpty()) {
+                logger.info("Node {} no longer owns the sessions of {}", nodeId, lost);
+            }
+        } catch (Exception e) {
+            // The leases last several renewal intervals; the next run tries again. Meanwhile the local copies
+            // run out and requests go to the database
+            logger.error("Failed to renew the session leases of node {}: {}", nodeId, e.getMessage());
+        }
+    }
+
+    /**
+     * @return Number of drivers whose session this instance owns.
+     */
+    public int getOwnedCount() {
+        return owned.size();
+    }
+
+    // Drops a driver this instance owned and no longer owns, with its live state
+    private void lost(String driverId) {
+        if (owned.remove(driverId) != null) {
+            driverLiveStateService.driverSessionClosed(driverId);
+        }
+    }
+
+    // End of the local copy of a lease renewed (in the database) no earlier than `renewedAt` (System.nanoTime())
+    private long localLeaseEnd(long renewedAt) {
+        return renewedAt + TimeUnit.MILLISECONDS.toNanos(leaseSeconds * 1000 - leaseSafetyMarginMs);
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "localhost";
+        }
+        String id = host + "-" + ManagementFactory.getRuntimeMXBean().getPid();
+        return id.length() > 64 ? id.substring(id.length() - 64) : id;
+    }
+}
@@ -0,0 +1,141 @@
+// What is this file?
+// Tracks when each driver with an active session was last seen (heartbeats and detection events)
+// in a hierarchical timing wheel, and closes sessions that stay silent past the heartbeat timeout.
+// Why is this needed?
+// A cab that drops off the network should not stay "active" for hours: idle sessions are closed
+// within seconds of their timeout, all of them with a single bulk UPDATE.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.model.DriverSession;
+import com.drivermonitoring.repository.DriverSessionRepository;
+import com.drivermonitoring.util.HierarchicalTimingWheel;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Service
+public class SessionLivenessService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionLivenessService.class);
+
+    // 1 s ticks, 64 slots per level, 3 levels: deadlines up to ~3 days are placed exactly
+    private static final long TICK_MILLIS = 1000;
+    private static final int WHEEL_SIZE = 64;
+    private static final int WHEEL_LEVELS = 3;
+
+    @Autowired
+    private DriverSessionRepository sessionRepository;
+
+    @Autowired
+    private DispatcherReadModel dispatcherReadModel;
+
+    @Autowired
+    private SessionLeaseService sessionLeaseService;
+
+    @Autowired
+    private DriverLiveStateService driverLiveStateService;
+
+    // A session without heartbeat or event for this long is closed
+    @Value("${session.heartbeat-timeout-seconds:60}")
+    private long heartbeatTimeoutSeconds;
+
+    private final HierarchicalTimingWheel<String> wheel =
+            new HierarchicalTimingWheel<>(TICK_MILLIS, WHEEL_SIZE, WHEEL_LEVELS, System.currentTimeMillis());
+
+    /**
+     * Starts tracking the sessions that were active before a restart; their clients get
+     * a full timeout to send the next heartbeat.
+     */
+    @PostConstruct
+    public void init() {
+        List<DriverSession> activeSessions = sessionRepository.findByActiveTrue();
+        for (DriverSession session : activeSessions) {
+            touch(session.getDriverId());
+        }
+        logger.info("Session liveness tracking {} active session(s), timeout {} s", activeSessions.size(), heartbeatTimeoutSeconds);
+    }
+
+    /**
+     * Records a sign of life of a driver whose session is known to be active.
+     * @param driverId The ID of the driver.
+     */
+    public void touch(String driverId) {
+        if (driverId != null) {
+            wheel.schedule(driverId, System.currentTimeMillis() + heartbeatTimeoutSeconds * 1000);
+        }
+    }
+
+    /**
+     * Handles a heartbeat from the cab.
+     * @param driverId The ID of the driver.
+     * @return false if the driver has no active session (for example, it was closed as idle).
+     */
+    public boolean heartbeat(String driverId) {
+        if (driverId == null) {
+            return false;
+        }
+        // Only unknown drivers cost a database lookup; tracked ones are an O(1) wheel update
+        if (!wheel.contains(driverId) && sessionRepository.findByDriverIdAndActiveTrue(driverId).isEmpty()) {
+            return false;
+        }
+        touch(driverId);
+        return true;
+    }
+
+    /**
+     * Stops tracking a driver (the session was ended normally).
+     * @param driverId The ID of the driver.
+     */
+    public void forget(String driverId) {
+        if (driverId != null) {
+            wheel.cancel(driverId);
+        }
+    }
+
+    /**
+     * Closes the sessions of every driver whose deadline has passed.
+     */
+    @Scheduled(fixedDelayString = "${session.liveness-check-ms:1000}")
+    public void expireIdleSessions() {
+        List<String> expired = wheel.advance(System.currentTimeMillis());
+        // In a cluster the owner of a session decides when it is idle: drivers tracked here since startup
+        // or taken over by another instance are only dropped from the wheel
+        expired.removeIf(driverId -> !sessionLeaseService.isOwned(driverId));
+        if (expired.isEmpty()) {
+            return;
+        }
+        // Expired drivers were last seen one timeout ago (to within a tick): that is when the session ended.
+        // Sessions started after that moment belong to a new login and are left alone.
+        LocalDateTime lastSeen = LocalDateTime.now().minusSeconds(heartbeatTimeoutSeconds);
+        int closed;
+        try {
+            closed = sessionLeaseService.isEnabled()
+                    ? sessionRepository.closeOwnedActiveSessions(expired, lastSeen, sessionLeaseService.getNodeId())
+                    : sessionRepository.closeActiveSessions(expired, lastSeen);
+        } catch (Exception e) {
+            // Keep the drivers in the wheel so the next run tries again
+            logger.error("Failed to close {} idle session(s): {}", expired.size(), e.getMessage());
+            expired.forEach(driverId -> wheel.schedule(driverId, System.currentTimeMillis() + TICK_MILLIS));
+            return;
+        }
+        expired.forEach(sessionLeaseService::released);
+        driverLiveStateService.driverSessionsClosed(expired);
+        dispatcherReadModel.sessionsClosed(expired, lastSeen);
+        logger.info("Closed {} idle session(s) of {} driver(s) silent for {} s: {}", closed, expired.size(), heartbeatTimeoutSeconds, expired);
+    }
+
+    /**
+     * @return Number of drivers currently tracked.
+     */
+    public int getTrackedCount() {
+        return wheel.size();
+    }
+}
@@ -7,6 +7,7 @@
 package com.drivermonitoring.service;
 
 import com.drivermonitoring.model.DriverSession;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -49,6 +50,15 @@ public interface SessionService {
      */
     List<DriverSession> getSessionsForDriver(String driverId);
 
+    /**
+     * Counts the sessions of a driver that overlap a time range.
+     * @param driverId The ID of the driver.
+     * @param from Range start (inclusive).
+     * @param to Range end (exclusive).
+     * @return The number of sessions started before the range end and not ended before its start.
+     */
+    long countSessionsForDriver(String driverId, LocalDateTime from, LocalDateTime to);
+
     /**
      * Retrieves all currently active sessions.
      * @return A list of all active DriverSessions.
@@ -6,6 +6,7 @@
 
 package com.drivermonitoring.service;
 
+import com.drivermonitoring.jfr.ActiveSessionLookupEvent;
 import com.drivermonitoring.model.DriverSession;
 import com.drivermonitoring.repository.DriverSessionRepository;
 import org.slf4j.Logger;
@@ -26,6 +27,18 @@ public class SessionServiceImpl implements SessionService {
     @Autowired
     private DriverSessionRepository sessionRepository;
 
+    @Autowired
+    private SessionLivenessService sessionLivenessService;
+
+    @Autowired
+    private DispatcherReadModel dispatcherReadModel;
+
+    @Autowired
+    private SessionLeaseService sessionLeaseService;
+
+    @Autowired
+    private DriverLiveStateService driverLiveStateService;
+
     @Override
     @Transactional
     public DriverSession startSession(String driverId) {
@@ -35,7 +48,9 @@ public class SessionServiceImpl implements SessionService {
         }
 
         // Check if there's already an active session for this driver
-        Optional<DriverSession> existingActiveSession = sessionRepository.findByDriverIdAndActiveTrue(driverId);
+        // Writes read the database, not the active-session cache. Starts and ends of a driver run one at a
+        // time on its partition (DriverPartitions); the list still tolerates duplicates left by older versions
+        Optional<DriverSession> existingActiveSession = sessionRepository.findAllByDriverIdAndActiveTrue(driverId).stream().findFirst();
         if (existingActiveSession.isPresent()) {
             logger.warn("Driver {} already has an active session ({}). Ending it before starting a new one.",
                         driverId, existingActiveSession.get().getSessionId());
@@ -47,7 +62,13 @@ public class SessionServiceImpl implements SessionService {
         DriverSession newSession = new DriverSession(driverId);
         newSession.setStartTime(LocalDateTime.now());
         newSession.setActive(true);
+        sessionLeaseService.assign(newSession);
         DriverSession savedSession = sessionRepository.save(newSession);
+        sessionLeaseService.started(driverId);
+        // A new session starts with a fresh risk trend, risk ranking and alert windows
+        driverLiveStateService.driverSessionClosed(driverId);
+        sessionLivenessService.touch(driverId);
+        dispatcherReadModel.sessionStarted(savedSession);
         logger.info("Started new session {} for driver {}", savedSession.getSessionId(), driverId);
         return savedSession;
     }
@@ -60,7 +81,7 @@ public class SessionServiceImpl implements SessionService {
             return null;
         }
 
-        Optional<DriverSession> activeSessionOpt = sessionRepository.findByDriverIdAndActiveTrue(driverId);
+        Optional<DriverSession> activeSessionOpt = sessionRepository.findAllByDriverIdAndActiveTrue(driverId).stream().findFirst();
         if (activeSessionOpt.isPresent()) {
             DriverSession sessionToEnd = activeSessionOpt.get();
             return endSessionInternal(sessionToEnd);
@@ -73,7 +94,13 @@ public class SessionServiceImpl implements SessionService {
     // Internal helper to end a session object
     private DriverSession endSessionInternal(DriverSession session) {
         session.endSession(); // Use the method within DriverSession entity
-        DriverSession endedSession = sessionRepository.save(session);
+        // Flushed right away: Hibernate inserts before it updates, and the new session of startSession
+        // would otherwise hit the unique index on active sessions while this one is still active
+        DriverSession endedSession = sessionRepository.saveAndFlush(session);
+        sessionLeaseService.released(endedSession.getDriverId());
+        sessionLivenessService.forget(endedSession.getDriverId());
+        driverLiveStateService.driverSessionClosed(endedSession.getDriverId());
+        dispatcherReadModel.sessionEnded(endedSession);
         logger.info("Ended session {} for driver {}. Duration: {} seconds.",
                     endedSession.getSessionId(), endedSession.getDriverId(), endedSession.getTotalDrivingTimeSeconds());
         return endedSession;
@@ -85,8 +112,16 @@ public class SessionServiceImpl implements SessionService {
             logger.warn("Cannot get active session: driverId is null or empty.");
             return null;
         }
+        ActiveSessionLookupEvent jfrEvent = new ActiveSessionLookupEvent();
+        jfrEvent.begin();
         // findByDriverIdAndActiveTrue returns Optional, orElse(null) fits the required return type
-        return sessionRepository.findByDriverIdAndActiveTrue(driverId).orElse(null);
+        DriverSession session = sessionRepository.findByDriverIdAndActiveTrue(driverId).orElse(null);
+        if (jfrEvent.shouldCommit()) {
+            jfrEvent.driverId = driverId;
+            jfrEvent.found = session != null;
+            jfrEvent.commit();
+        }
+        return session;
     }
 
     @Override
@@ -107,6 +142,14 @@ public class SessionServiceImpl implements SessionService {
         return sessionRepository.findByDriverId(driverId);
     }
 
+    @Override
+    public long countSessionsForDriver(String driverId, LocalDateTime from, LocalDateTime to) {
+        if (driverId == null || from == null || to == null || !from.isBefore(to)) {
+            return 0;
+        }
+        return sessionRepository.countSessionsOverlapping(driverId, from, to);
+    }
+
     @Override
     public List<DriverSession> getAllActiveSessions() {
         // Assuming repository has a method like findByActiveTrue()
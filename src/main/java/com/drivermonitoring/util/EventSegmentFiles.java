@@ -0,0 +1,188 @@
+// File: src/main/java/com/drivermonitoring/util/EventSegmentFiles.java
+// What is this file?
+// Utility class for the on-disk layout and format of archived event segments (gzip NDJSON files).
+// Why is this needed?
+// The archival job and any reader of the archive must agree on file names, partitioning and encoding.
+
+package com.drivermonitoring.util;
+
+import com.drivermonitoring.model.ArchiveSegment;
+import com.drivermonitoring.model.Event;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class EventSegmentFiles {
+
+    public static final String SEGMENT_PREFIX = "events-";
+    public static final String SEGMENT_SUFFIX = ".ndjson.gz";
+    public static final String TEMP_SUFFIX = ".tmp";
+    public static final String INDEX_SUFFIX = ".idx.json";
+
+    // Dates are written as ISO strings so the files stay readable with zcat
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    // Private constructor to prevent instantiation
+    private EventSegmentFiles() {}
+
+    /**
+     * Path of a segment: {root}/{yyyy-MM-dd}/{driverId}/events-{firstEventId}-{lastEventId}.ndjson.gz
+     * The name only depends on the events it contains, so re-archiving the same chunk after a crash
+     * overwrites the same file instead of creating a duplicate.
+     */
+    public static Path segmentPath(Path root, LocalDate day, String driverId, long firstEventId, long lastEventId) {
+        return root.resolve(day.toString())
+                .resolve(driverId)
+                .resolve(SEGMENT_PREFIX + firstEventId + "-" + lastEventId + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Writes events to a segment: temp file, fsync, then atomic rename.
+     * A segment therefore either exists completely or not at all.
+     * @param target Final segment path.
+     * @param events Events to write (one JSON object per line).
+     * @return Size of the written file in bytes.
+     * @throws IOException If writing fails.
+     */
+    public static long writeSegment(Path target, List<Event> events) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+
+        try (FileOutputStream fileOut = new FileOutputStream(temp.toFile())) {
+            GZIPOutputStream gzipOut = new GZIPOutputStream(fileOut, 64 * 1024);
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(gzipOut, StandardCharsets.UTF_8));
+            for (Event event : events) {
+                writer.write(objectMapper.writeValueAsString(event));
+                writer.newLine();
+            }
+            writer.flush();
+            gzipOut.finish();
+            // Make sure the data is on disk before the rows are deleted from the database
+            fileOut.getChannel().force(true);
+        }
+
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return Files.size(target);
+    }
+
+    /**
+     * Path of the small JSON index stored next to a segment (driver, min/max time, ID range).
+     */
+    public static Path indexPath(Path segment) {
+        String name = segment.getFileName().toString();
+        String base = name.endsWith(SEGMENT_SUFFIX) ? name.substring(0, name.length() - SEGMENT_SUFFIX.length()) : name;
+        return segment.resolveSibling(base + INDEX_SUFFIX);
+    }
+
+    /**
+     * Builds the index entry of a segment from the events written to it.
+     */
+    public static ArchiveSegment describe(Path segment, List<Event> events) {
+        ArchiveSegment info = new ArchiveSegment();
+        info.setPath(segment.toString());
+        info.setDriverId(events.get(0).getDriverId());
+        info.setEventCount(events.size());
+        info.setFirstEventId(events.get(0).getEventId());
+        info.setLastEventId(events.get(events.size() - 1).getEventId());
+        for (Event event : events) {
+            if (info.getMinTime() == null || event.getStartTime().isBefore(info.getMinTime())) {
+                info.setMinTime(event.getStartTime());
+            }
+            if (info.getMaxTime() == null || event.getStartTime().isAfter(info.getMaxTime())) {
+                info.setMaxTime(event.getStartTime());
+            }
+        }
+        return info;
+    }
+
+    /**
+     * Writes the index entry next to its segment (temp file + atomic rename).
+     */
+    public static void writeIndex(Path segment, ArchiveSegment info) throws IOException {
+        Path index = indexPath(segment);
+        Path temp = index.resolveSibling(index.getFileName() + TEMP_SUFFIX);
+        Files.write(temp, objectMapper.writeValueAsBytes(info));
+        Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the index entry of a segment.
+     */
+    public static ArchiveSegment readIndex(Path index) throws IOException {
+        return objectMapper.readValue(index.toFile(), ArchiveSegment.class);
+    }
+
+    /**
+     * Reads all events of a segment. The compressed file is memory-mapped and inflated
+     * straight from the mapping, so no copy of the file is loaded onto the heap.
+     * @param segment Segment path.
+     * @return Events in file order.
+     * @throws IOException If reading fails.
+     */
+    public static List<Event> readSegment(Path segment) throws IOException {
+        List<Event> events = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(new ByteBufferInputStream(mapped), 64 * 1024), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    events.add(objectMapper.readValue(line, Event.class));
+                }
+            }
+        }
+        return events;
+    }
+
+    public static ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    // Minimal InputStream over a (memory-mapped) ByteBuffer
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
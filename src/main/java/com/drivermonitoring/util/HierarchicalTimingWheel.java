@@ -0,0 +1,157 @@
+// What is this file?
+// Hierarchical timing wheel: keys with a deadline, expired in O(1) per key.
+// Level 0 has one slot per tick, each higher level covers a whole turn of the level below;
+// entries move down a level when their coarse slot comes up and expire from level 0.
+// Why is this needed?
+// Session liveness tracks a deadline per active driver that moves forward on every heartbeat.
+// Moving a deadline only updates the entry (it is re-placed lazily when its slot comes up),
+// so heartbeats and expiry cost O(1) no matter how many drivers are tracked.
+
+package com.drivermonitoring.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class HierarchicalTimingWheel<K> {
+
+    private final long tickMillis;
+    private final int wheelSize;
+    // wheels[level][slot] -> keys placed in that slot
+    private final Set<K>[][] wheels;
+    private final Map<K, Entry> entries = new HashMap<>();
+    private long currentTick;
+
+    /**
+     * @param tickMillis Resolution of the wheel (a key expires at most one tick late).
+     * @param wheelSize Slots per level.
+     * @param levels Number of levels; the wheel spans tickMillis * wheelSize^levels, longer deadlines
+     *               wait in the last slot of the top level and are re-placed when it comes up.
+     * @param startMillis Current time.
+     */
+    @SuppressWarnings("unchecked")
+    public HierarchicalTimingWheel(long tickMillis, int wheelSize, int levels, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.wheels = new Set[levels][wheelSize];
+        for (int level = 0; level < levels; level++) {
+            for (int slot = 0; slot < wheelSize; slot++) {
+                wheels[level][slot] = new LinkedHashSet<>();
+            }
+        }
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    /**
+     * Adds a key or changes its deadline.
+     * A later deadline is only recorded (the entry is re-placed when its current slot comes up);
+     * an earlier one moves the entry right away.
+     */
+    public synchronized void schedule(K key, long deadlineMillis) {
+        long deadlineTick = Math.max(currentTick + 1, (deadlineMillis + tickMillis - 1) / tickMillis);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            boolean later = deadlineTick >= entry.deadlineTick;
+            entry.deadlineTick = deadlineTick;
+            if (later) {
+                return;
+            }
+            entry.slot.remove(key);
+        } else {
+            entry = new Entry(deadlineTick);
+            entries.put(key, entry);
+        }
+        place(key, entry);
+    }
+
+    /**
+     * Removes a key (no expiry will be reported for it).
+     * @return true if the key was tracked.
+     */
+    public synchronized boolean cancel(K key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        entry.slot.remove(key);
+        return true;
+    }
+
+    /**
+     * @return true if the key is tracked and not expired yet.
+     */
+    public synchronized boolean contains(K key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * @return Number of tracked keys.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Moves the wheel to the given time and removes every key whose deadline has passed.
+     * @param nowMillis Current time.
+     * @return Expired keys.
+     */
+    public synchronized List<K> advance(long nowMillis) {
+        List<K> expired = new ArrayList<>();
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            // When level 0 completes a turn, the matching slots of the higher levels come up: cascade them down
+            long turn = currentTick;
+            for (int level = 1; level < wheels.length && turn % wheelSize == 0; level++) {
+                turn /= wheelSize;
+                Set<K> slot = wheels[level][(int) (turn % wheelSize)];
+                for (K key : new ArrayList<>(slot)) {
+                    slot.remove(key);
+                    place(key, entries.get(key));
+                }
+            }
+            Set<K> due = wheels[0][(int) (currentTick % wheelSize)];
+            for (K key : new ArrayList<>(due)) {
+                Entry entry = entries.get(key);
+                due.remove(key);
+                if (entry.deadlineTick <= currentTick) {
+                    entries.remove(key);
+                    expired.add(key);
+                } else {
+                    // The deadline was pushed back since the entry was placed
+                    place(key, entry);
+                }
+            }
+        }
+        return expired;
+    }
+
+    // Puts the entry into the lowest level whose span covers its remaining time
+    private void place(K key, Entry entry) {
+        long delta = Math.max(1, entry.deadlineTick - currentTick);
+        long span = wheelSize;
+        int level = 0;
+        while (level < wheels.length - 1 && delta >= span) {
+            span *= wheelSize;
+            level++;
+        }
+        long unit = span / wheelSize; // Ticks per slot at this level
+        long targetTick = (delta >= span) ? currentTick + span - unit : entry.deadlineTick;
+        Set<K> slot = wheels[level][(int) ((targetTick / unit) % wheelSize)];
+        slot.add(key);
+        entry.slot = slot;
+    }
+
+    private static class Entry {
+        long deadlineTick;
+        Set<?> slot;
+
+        Entry(long deadlineTick) {
+            this.deadlineTick = deadlineTick;
+        }
+    }
+}
@@ -85,22 +85,18 @@ public class JsonUtils {
             // Check if the retrieved object is an instance of the expected type
             if (type.isInstance(obj)) {
                 return Optional.of(type.cast(obj));
-            } else {
-                // Log a warning if the type does not match
-                logger.warn("Value for key '{}' found, but is of type {} instead of expected type {}",
-                            key, obj.getClass().getSimpleName(), type.getSimpleName());
-                // Attempt conversion for common numeric types if applicable
-                if (obj instanceof Number && Number.class.isAssignableFrom(type)) {
-                    try {
-                        if (type == Integer.class) return Optional.of(type.cast(((Number) obj).intValue()));
-                        if (type == Long.class) return Optional.of(type.cast(((Number) obj).longValue()));
-                        if (type == Double.class) return Optional.of(type.cast(((Number) obj).doubleValue()));
-                        if (type == Float.class) return Optional.of(type.cast(((Number) obj).floatValue()));
-                    } catch (ClassCastException | NumberFormatException e) {
-                         logger.warn("Could not convert numeric value for key '{}' to type {}: {}", key, type.getSimpleName(), e.getMessage());
-                    }
-                }
             }
+            // Numbers are converted silently: JSON has no int/double distinction (blinkRate 14 vs 14.5)
+            if (obj instanceof Number && Number.class.isAssignableFrom(type)) {
+                Number number = (Number) obj;
+                if (type == Integer.class) return Optional.of(type.cast(number.intValue()));
+                if (type == Long.class) return Optional.of(type.cast(number.longValue()));
+                if (type == Double.class) return Optional.of(type.cast(number.doubleValue()));
+                if (type == Float.class) return Optional.of(type.cast(number.floatValue()));
+            }
+            // Log a warning if the type does not match
+            logger.warn("Value for key '{}' found, but is of type {} instead of expected type {}",
+                        key, obj.getClass().getSimpleName(), type.getSimpleName());
         }
 
         return Optional.empty(); // Return empty if key not found or type mismatch
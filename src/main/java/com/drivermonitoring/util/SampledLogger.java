@@ -0,0 +1,148 @@
+// What is this file?
+// Rate-limited wrapper around an SLF4J logger for per-event messages: the first N messages per key
+// (e.g. per driver) in each time window are logged, the rest are only counted. The count is logged
+// once, when the next message of the key arrives in a later window, or when the key is dropped after
+// a whole window without messages.
+// Why is this needed?
+// Ingest logs on every detection report. At fleet scale one message per report floods the log and the
+// appender; a few messages per driver per minute plus counts keep the information at a bounded cost.
+
+package com.drivermonitoring.util;
+
+import org.slf4j.Logger;
+import org.slf4j.event.Level;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SampledLogger {
+
+    private final Logger logger;
+    private final int limitPerWindow;
+    private final long windowMillis;
+    // One entry per key with recent messages; keys idle for a whole window are dropped (swept at most once
+    // per window), so drivers that left do not stay in memory
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * @param logger The logger that writes the admitted messages.
+     * @param limitPerWindow Messages logged per key and window; 0 suppresses all (only counts are logged).
+     * @param window Length of the window.
+     */
+    public SampledLogger(Logger logger, int limitPerWindow, Duration window) {
+        this.logger = logger;
+        this.limitPerWindow = limitPerWindow;
+        this.windowMillis = window.toMillis();
+    }
+
+    public void debug(String key, String format, Object... args) {
+        if (logger.isDebugEnabled() && admit(Level.DEBUG, key)) {
+            logger.debug(format, args);
+        }
+    }
+
+    public void info(String key, String format, Object... args) {
+        if (logger.isInfoEnabled() && admit(Level.INFO, key)) {
+            logger.info(format, args);
+        }
+    }
+
+    public void warn(String key, String format, Object... args) {
+        if (logger.isWarnEnabled() && admit(Level.WARN, key)) {
+            logger.warn(format, args);
+        }
+    }
+
+    // Counts the message in the window of its key; reports what the previous window suppressed
+    private boolean admit(Level level, String key) {
+        long now = System.currentTimeMillis();
+        sweep(now);
+        String windowKey = key != null ? key : "";
+        long suppressed = 0;
+        long suppressedSince = 0;
+        boolean admitted;
+        while (true) {
+            Window window = windows.computeIfAbsent(windowKey, k -> new Window(now));
+            synchronized (window) {
+                // Dropped by a sweep after it was looked up: take the new one
+                if (window.dropped) {
+                    continue;
+                }
+                if (now - window.start >= windowMillis) {
+                    suppressed = window.suppressed;
+                    suppressedSince = window.start;
+                    window.start = now;
+                    window.logged = 0;
+                    window.suppressed = 0;
+                }
+                admitted = window.logged < limitPerWindow;
+                if (admitted) {
+                    window.logged++;
+                } else {
+                    window.suppressed++;
+                    window.level = level;
+                }
+                window.lastMessage = now;
+            }
+            break;
+        }
+        if (suppressed > 0) {
+            logSuppressed(level, key, suppressed, now - suppressedSince);
+        }
+        return admitted;
+    }
+
+    // Drops the keys without messages for a whole window, logging what their last window suppressed
+    private void sweep(long now) {
+        long last = lastSweep.get();
+        if (now - last < windowMillis || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        for (Map.Entry<String, Window> entry : windows.entrySet()) {
+            Window window = entry.getValue();
+            long suppressed;
+            Level level;
+            long since;
+            synchronized (window) {
+                if (now - window.lastMessage < windowMillis) {
+                    continue;
+                }
+                window.dropped = true;
+                windows.remove(entry.getKey(), window);
+                suppressed = window.suppressed;
+                level = window.level;
+                since = window.start;
+            }
+            if (suppressed > 0) {
+                logSuppressed(level, entry.getKey(), suppressed, now - since);
+            }
+        }
+    }
+
+    private void logSuppressed(Level level, String key, long suppressed, long periodMillis) {
+        logger.atLevel(level).log("{} similar message(s) for {} suppressed in the {} s before",
+                suppressed, key, periodMillis / 1000);
+    }
+
+    int getTrackedKeyCount() {
+        return windows.size();
+    }
+
+    private static class Window {
+        long start;
+        long logged;
+        long suppressed;
+        long lastMessage;
+        // Level of the last suppressed message, for the count logged when the key is dropped
+        Level level = Level.INFO;
+        boolean dropped;
+
+        Window(long start) {
+            this.start = start;
+            this.lastMessage = start;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+-- What is this file?
+-- Baseline schema, identical to what Hibernate ddl-auto=update used to create.
+-- Why is this needed?
+-- New databases get the schema from versioned migrations. Databases created by ddl-auto=update
+-- are baselined at version 0 and run this script too: IF NOT EXISTS only adds the tables they lack.
+-- driver_events is created as a plain table here; on startup EventPartitionManager moves it
+-- into monthly driver_events_pYYYYMM partitions and replaces it with a view.
+
+CREATE TABLE IF NOT EXISTS drivers (
+    driver_id VARCHAR(255) NOT NULL PRIMARY KEY,
+    driver_name VARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS driver_sessions (
+    session_id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    active BOOLEAN NOT NULL,
+    driver_id VARCHAR(255),
+    end_time TIMESTAMP(6),
+    start_time TIMESTAMP(6),
+    total_driving_time_seconds BIGINT
+);
+
+CREATE TABLE IF NOT EXISTS driver_events (
+    event_id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    session_id BIGINT,
+    driver_id VARCHAR(255),
+    start_time TIMESTAMP(6),
+    end_time TIMESTAMP(6),
+    duration REAL NOT NULL,
+    event_type VARCHAR(255),
+    metadata CLOB,
+    ear_value REAL,
+    left_ear REAL,
+    right_ear REAL,
+    head_direction VARCHAR(32),
+    face_detected BOOLEAN,
+    feature_source VARCHAR(32)
+);
+
+CREATE TABLE IF NOT EXISTS driver_event_rollups (
+    bucket_minutes INTEGER NOT NULL,
+    bucket_start TIMESTAMP(6) NOT NULL,
+    driver_id VARCHAR(255) NOT NULL,
+    event_type VARCHAR(255) NOT NULL,
+    blink_count BIGINT NOT NULL,
+    blink_rate_sum FLOAT(53) NOT NULL,
+    ear_count BIGINT NOT NULL,
+    ear_min FLOAT(24),
+    ear_sum FLOAT(53) NOT NULL,
+    event_count BIGINT NOT NULL,
+    total_duration FLOAT(53) NOT NULL,
+    PRIMARY KEY (bucket_minutes, bucket_start, driver_id, event_type)
+);
+
+CREATE TABLE IF NOT EXISTS job_checkpoints (
+    job_name VARCHAR(255) NOT NULL PRIMARY KEY,
+    position TIMESTAMP(6),
+    updated_at TIMESTAMP(6)
+);
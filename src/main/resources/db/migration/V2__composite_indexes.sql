@@ -0,0 +1,18 @@
+-- What is this file?
+-- Composite indexes for the filters used by DriverSessionRepository and EventRollupRepository.
+-- Why is this needed?
+-- Without them every active-session lookup and rollup read scans the whole table.
+-- Event partitions get their (driver_id, start_time), (session_id, event_type) and (start_time)
+-- indexes from EventPartitionManager when each monthly table is created.
+
+-- findByDriverId, findByDriverIdAndActiveTrue, findAllByDriverIdAndActiveTrue
+CREATE INDEX IF NOT EXISTS idx_driver_sessions_driver_active ON driver_sessions (driver_id, active);
+
+-- findByActiveTrue, findByActiveTrueAndStartTimeBefore (stale session cleanup)
+CREATE INDEX IF NOT EXISTS idx_driver_sessions_active_start ON driver_sessions (active, start_time);
+
+-- findRecentSessions (ORDER BY start_time DESC)
+CREATE INDEX IF NOT EXISTS idx_driver_sessions_start ON driver_sessions (start_time);
+
+-- findBuckets, findAllBuckets: one driver's buckets of one size in time order
+CREATE INDEX IF NOT EXISTS idx_driver_event_rollups_driver_bucket ON driver_event_rollups (driver_id, bucket_minutes, bucket_start);
@@ -0,0 +1,6 @@
+-- What is this file?
+-- Adds an offset column to job checkpoints.
+-- Why is this needed?
+-- The event journal projector resumes from a record offset rather than from a point in time.
+
+ALTER TABLE job_checkpoints ADD COLUMN IF NOT EXISTS offset_value BIGINT;
@@ -0,0 +1,30 @@
+-- What is this file?
+-- Optimistic locking and ownership leases for driver sessions, at most one active session per driver,
+-- and cluster-wide locks for scheduled jobs.
+-- Why is this needed?
+-- Several application instances can share one database. The version column makes concurrent writes of a
+-- session fail instead of overwriting each other; the owner node and lease decide which instance holds a
+-- driver's live state; the unique index stops two instances from opening an active session each.
+
+ALTER TABLE driver_sessions ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE driver_sessions ADD COLUMN IF NOT EXISTS owner_node VARCHAR(64);
+ALTER TABLE driver_sessions ADD COLUMN IF NOT EXISTS lease_expires_at TIMESTAMP(6);
+
+-- Duplicates left by concurrent starts: the newest active session of a driver stays active
+UPDATE driver_sessions s
+SET active = FALSE,
+    end_time = CURRENT_TIMESTAMP,
+    total_driving_time_seconds = DATEDIFF('SECOND', start_time, CURRENT_TIMESTAMP)
+WHERE active = TRUE
+  AND session_id < (SELECT MAX(t.session_id) FROM driver_sessions t WHERE t.driver_id = s.driver_id AND t.active = TRUE);
+
+-- NULL for ended sessions: the unique index only covers active ones
+ALTER TABLE driver_sessions ADD COLUMN IF NOT EXISTS active_driver_id VARCHAR(255)
+    GENERATED ALWAYS AS (CASE WHEN active THEN driver_id END);
+CREATE UNIQUE INDEX IF NOT EXISTS ux_driver_sessions_active_driver ON driver_sessions (active_driver_id);
+
+CREATE TABLE IF NOT EXISTS job_locks (
+    job_name VARCHAR(255) NOT NULL PRIMARY KEY,
+    locked_by VARCHAR(64),
+    locked_until TIMESTAMP(6) NOT NULL
+);
@@ -0,0 +1,254 @@
+// What is this file?
+// Performance regression suite (gradle perfTest): seeds a file H2 database with a fleet history, boots
+// the application on it and drives the key endpoints over HTTP. For each endpoint it measures p50/p99
+// latency and the SQL statements per request and compares them with perf-budgets.properties.
+// Why is this needed?
+// A change that brings back a full-history scan or an N+1 query fails the build before release,
+// instead of being found on a production fleet. Results are written to build/reports/perf.
+
+package com.drivermonitoring.perf;
+
+import com.drivermonitoring.DriverMonitoringApplication;
+import com.drivermonitoring.service.SessionService;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class EndpointPerformanceTest {
+
+    // Drivers with an active session; ingest goes to them, so predictions have fresh events
+    private static final int ACTIVE_DRIVERS = 50;
+    private static final String[] REPORTED_STATES = {"DROWSY", "DROWSY", "NORMAL", "DISTRACTED", "NORMAL"};
+
+    private static ConfigurableApplicationContext application;
+    private static HttpClient http;
+    private static String baseUrl;
+    private static Properties budgets;
+    private static double latencyFactor;
+    private static final Map<String, Result> results = new LinkedHashMap<>();
+
+    @BeforeAll
+    static void bootSeededApplication() throws IOException {
+        Path workDir = Paths.get(System.getProperty("perf.work-dir", "build/perf"));
+        FileSystemUtils.deleteRecursively(workDir);
+        Map<String, Object> properties = applicationProperties(workDir);
+
+        long started = System.currentTimeMillis();
+        try (ConfigurableApplicationContext seeding = new SpringApplicationBuilder(DriverMonitoringApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(properties)
+                .run()) {
+            long events = PerfDataSeeder.seed(seeding);
+            System.out.printf("Seeded %d drivers and %d events in %d ms%n",
+                    PerfDataSeeder.DRIVERS, events, System.currentTimeMillis() - started);
+        }
+
+        // The read model, caches and schedulers start on the seeded data, as after a restart in production
+        Map<String, Object> webProperties = new HashMap<>(properties);
+        webProperties.put("server.port", "0");
+        application = new SpringApplicationBuilder(DriverMonitoringApplication.class, PerfInstrumentation.class)
+                .properties(webProperties)
+                .run();
+        baseUrl = "http://localhost:" + application.getEnvironment().getProperty("local.server.port");
+        http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        SessionService sessionService = application.getBean(SessionService.class);
+        for (int i = 0; i < ACTIVE_DRIVERS; i++) {
+            sessionService.startSession(PerfDataSeeder.driverId(i));
+        }
+
+        budgets = new Properties();
+        try (InputStream in = EndpointPerformanceTest.class.getResourceAsStream("/perf-budgets.properties")) {
+            budgets.load(in);
+        }
+        latencyFactor = Double.parseDouble(System.getProperty("perf.latency-factor", "1"));
+    }
+
+    @AfterAll
+    static void writeReport() throws IOException {
+        if (application != null) {
+            application.close();
+        }
+        Path reportDir = Paths.get(System.getProperty("perf.report-dir", "build/reports/perf"));
+        Files.createDirectories(reportDir);
+        // Same keys as the budgets, so a run can be diffed against them or against an earlier run
+        try (Writer out = Files.newBufferedWriter(reportDir.resolve("perf-results.properties"))) {
+            for (Result result : results.values()) {
+                out.write(String.format(Locale.ROOT, "%s.p50-ms=%.2f%n%s.p99-ms=%.2f%n%s.max-sql=%d%n%s.mean-sql=%.2f%n%s.requests=%d%n",
+                        result.name, result.p50Millis, result.name, result.p99Millis, result.name, result.maxSql,
+                        result.name, result.meanSql, result.name, result.requests));
+            }
+        }
+        System.out.printf("%n%-18s %9s %9s %9s %8s %9s%n", "endpoint", "requests", "p50 ms", "p99 ms", "max sql", "mean sql");
+        for (Result result : results.values()) {
+            System.out.printf(Locale.ROOT, "%-18s %9d %9.2f %9.2f %8d %9.2f%n", result.name, result.requests,
+                    result.p50Millis, result.p99Millis, result.maxSql, result.meanSql);
+        }
+    }
+
+    @Test
+    @Order(1)
+    void detectionEventIngest() throws Exception {
+        checkBudgets(measure("detection-event", 500, 2000, i -> {
+            String driverId = PerfDataSeeder.driverId(i % ACTIVE_DRIVERS);
+            String state = REPORTED_STATES[(i / ACTIVE_DRIVERS) % REPORTED_STATES.length];
+            String body = String.format(Locale.ROOT,
+                    "{\"driverId\":\"%s\",\"state\":\"%s\",\"duration\":1.0,\"clientEventId\":\"perf-%d\"," +
+                    "\"metadata\":{\"earValue\":0.19,\"leftEar\":0.18,\"rightEar\":0.2,\"headDirection\":\"FORWARD\"," +
+                    "\"faceDetected\":true,\"blinkRate\":14,\"timestamp\":%d}}",
+                    driverId, state, i, System.currentTimeMillis());
+            return HttpRequest.newBuilder(URI.create(baseUrl + "/api/detection-event"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body));
+        }));
+    }
+
+    @Test
+    @Order(2)
+    void fatiguePrediction() throws Exception {
+        // Polling period of the driver page (demo mode, 1 minute)
+        checkBudgets(measure("prediction", 200, 1000, i -> get("/api/driver/" + PerfDataSeeder.driverId(i % ACTIVE_DRIVERS) + "/prediction?period=1")));
+    }
+
+    @Test
+    @Order(3)
+    void fatiguePredictionOverAnHour() throws Exception {
+        checkBudgets(measure("prediction-hour", 200, 1000, i -> get("/api/driver/" + PerfDataSeeder.driverId(i % ACTIVE_DRIVERS) + "/prediction?period=60")));
+    }
+
+    @Test
+    @Order(4)
+    void dispatcherPanel() throws Exception {
+        checkBudgets(measure("dispatcher", 50, 200, i -> get("/dispatcher")));
+    }
+
+    @Test
+    @Order(5)
+    void driverStatistics() throws Exception {
+        // All drivers, most of them with history only
+        checkBudgets(measure("driver-statistics", 200, 600, i -> get("/dispatcher/driver/" + PerfDataSeeder.driverId(i % PerfDataSeeder.DRIVERS))));
+    }
+
+    private static Map<String, Object> applicationProperties(Path workDir) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("spring.datasource.url", "jdbc:h2:file:" + workDir.resolve("db/perf").toAbsolutePath());
+        properties.put("archive.directory", workDir.resolve("archive").toString());
+        properties.put("journal.directory", workDir.resolve("journal").toString());
+        properties.put("diagnostics.jfr.directory", workDir.resolve("jfr").toString());
+        // Rollups of the whole seeded history are built by one catch-up run
+        properties.put("rollup.catch-up.max-hours-per-run", "1000");
+        // Sessions opened by the test stay active for the whole run
+        properties.put("session.heartbeat-timeout-seconds", "3600");
+        // Measure the code, not console logging
+        properties.put("logging.level.root", "WARN");
+        properties.put("logging.level.com.drivermonitoring", "WARN");
+        properties.put("spring.jpa.show-sql", "false");
+        properties.put("spring.main.banner-mode", "off");
+        return properties;
+    }
+
+    private static HttpRequest.Builder get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET();
+    }
+
+    // Sends the requests one after another; warm-up requests (JIT, caches) are not recorded
+    private static Result measure(String name, int warmup, int requests, IntFunction<HttpRequest.Builder> request) throws Exception {
+        Histogram latency = new Histogram(TimeUnit.MINUTES.toMicros(1), 3);
+        List<Integer> sqlCounts = new ArrayList<>(requests);
+        for (int i = 0; i < warmup + requests; i++) {
+            String requestId = name + "-" + i;
+            HttpRequest httpRequest = request.apply(i).header(SqlStatementCounter.REQUEST_ID_HEADER, requestId).build();
+            long start = System.nanoTime();
+            HttpResponse<byte[]> response = http.send(httpRequest, HttpResponse.BodyHandlers.ofByteArray());
+            long elapsedMicros = (System.nanoTime() - start) / 1000;
+            assertTrue(response.statusCode() < 300, name + " returned HTTP " + response.statusCode() + ": " + new String(response.body()));
+            int sql = awaitSqlCount(requestId);
+            if (i >= warmup) {
+                latency.recordValue(Math.min(elapsedMicros, latency.getHighestTrackableValue()));
+                sqlCounts.add(sql);
+            }
+        }
+        Result result = new Result(name, requests,
+                latency.getValueAtPercentile(50) / 1000.0,
+                latency.getValueAtPercentile(99) / 1000.0,
+                sqlCounts.stream().mapToInt(Integer::intValue).max().orElse(0),
+                sqlCounts.stream().mapToInt(Integer::intValue).average().orElse(0));
+        results.put(name, result);
+        return result;
+    }
+
+    // The filter publishes the count after the response is flushed, so it may arrive just after the body
+    private static int awaitSqlCount(String requestId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        Integer count;
+        while ((count = PerfInstrumentation.COUNTER.takeCount(requestId)) == null) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("No SQL statement count for request " + requestId);
+            }
+            Thread.sleep(1);
+        }
+        return count;
+    }
+
+    private static void checkBudgets(Result result) {
+        List<String> violations = new ArrayList<>();
+        double p50Budget = budget(result.name, "p50-ms") * latencyFactor;
+        double p99Budget = budget(result.name, "p99-ms") * latencyFactor;
+        double sqlBudget = budget(result.name, "max-sql");
+        if (result.p50Millis > p50Budget) {
+            violations.add(String.format(Locale.ROOT, "p50 %.2f ms > budget %.2f ms", result.p50Millis, p50Budget));
+        }
+        if (result.p99Millis > p99Budget) {
+            violations.add(String.format(Locale.ROOT, "p99 %.2f ms > budget %.2f ms", result.p99Millis, p99Budget));
+        }
+        if (result.maxSql > sqlBudget) {
+            violations.add(String.format(Locale.ROOT, "%d SQL statements in one request > budget %.0f", result.maxSql, sqlBudget));
+        }
+        if (!violations.isEmpty()) {
+            fail(result.name + " is over budget: " + String.join("; ", violations));
+        }
+    }
+
+    private static double budget(String endpoint, String key) {
+        String value = budgets.getProperty(endpoint + "." + key);
+        if (value == null) {
+            fail("No budget " + endpoint + "." + key + " in perf-budgets.properties");
+        }
+        return Double.parseDouble(value.trim());
+    }
+
+    private record Result(String name, int requests, double p50Millis, double p99Millis, int maxSql, double meanSql) {
+    }
+}
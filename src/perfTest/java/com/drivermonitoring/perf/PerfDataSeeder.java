@@ -0,0 +1,118 @@
+// What is this file?
+// Fills an empty database with a deterministic fleet history: drivers, finished sessions and their
+// detection events over the last two weeks, then builds the rollups with the catch-up job.
+// Why is this needed?
+// Latency and statement counts only mean something on a database the size of a real fleet's.
+
+package com.drivermonitoring.perf;
+
+import com.drivermonitoring.model.Driver;
+import com.drivermonitoring.model.DriverSession;
+import com.drivermonitoring.model.Event;
+import com.drivermonitoring.repository.DriverRepository;
+import com.drivermonitoring.repository.DriverSessionRepository;
+import com.drivermonitoring.repository.EventRepository;
+import com.drivermonitoring.service.EventRollupService;
+import org.springframework.context.ApplicationContext;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+class PerfDataSeeder {
+
+    static final int DRIVERS = 200;
+    static final int SESSIONS_PER_DRIVER = 10;
+    static final int EVENTS_PER_SESSION = 60;
+    static final int DAYS = 14;
+
+    private static final String[] STATES = {"DROWSY", "DISTRACTED"};
+    private static final String[] HEAD_DIRECTIONS = {"FORWARD", "LEFT", "RIGHT", "DOWN"};
+    private static final int BATCH_SIZE = 5000;
+
+    static String driverId(int index) {
+        return String.format("%06d", 100000 + index);
+    }
+
+    /**
+     * Seeds the database of the given (non-web) application context.
+     * @return Number of events written.
+     */
+    static long seed(ApplicationContext context) {
+        DriverRepository driverRepository = context.getBean(DriverRepository.class);
+        DriverSessionRepository sessionRepository = context.getBean(DriverSessionRepository.class);
+        EventRepository eventRepository = context.getBean(EventRepository.class);
+        Random random = new Random(42);
+        // Everything ends before the current hour, so the catch-up job builds all the rollups
+        LocalDateTime end = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(1);
+        LocalDateTime start = end.minusDays(DAYS);
+        long sessionSpanMinutes = ChronoUnit.MINUTES.between(start, end) / SESSIONS_PER_DRIVER;
+
+        List<Event> batch = new ArrayList<>(BATCH_SIZE);
+        long written = 0;
+        for (int d = 0; d < DRIVERS; d++) {
+            String driverId = driverId(d);
+            driverRepository.save(new Driver(driverId, "Driver " + driverId));
+            // Some drivers are much more often drowsy than others, so ratings and risks differ
+            double drowsiness = random.nextDouble();
+            for (int s = 0; s < SESSIONS_PER_DRIVER; s++) {
+                LocalDateTime sessionStart = start.plusMinutes(s * sessionSpanMinutes + random.nextInt(60));
+                long sessionMinutes = 120 + random.nextInt((int) Math.min(360, sessionSpanMinutes - 180));
+                DriverSession session = new DriverSession(driverId);
+                session.setStartTime(sessionStart);
+                session.setEndTime(sessionStart.plusMinutes(sessionMinutes));
+                session.setTotalDrivingTimeSeconds(sessionMinutes * 60);
+                session.setActive(false);
+                session = sessionRepository.save(session);
+
+                for (int e = 0; e < EVENTS_PER_SESSION; e++) {
+                    LocalDateTime time = sessionStart.plusSeconds(random.nextInt((int) sessionMinutes * 60));
+                    batch.add(event(random, driverId, session.getSessionId(), time, drowsiness));
+                    if (batch.size() == BATCH_SIZE) {
+                        eventRepository.saveAll(batch);
+                        written += batch.size();
+                        batch.clear();
+                    }
+                }
+            }
+        }
+        eventRepository.saveAll(batch);
+        written += batch.size();
+
+        context.getBean(EventRollupService.class).catchUp();
+        return written;
+    }
+
+    private static Event event(Random random, String driverId, Long sessionId, LocalDateTime time, double drowsiness) {
+        String state = random.nextDouble() < drowsiness ? STATES[0] : STATES[1];
+        float duration = 1 + random.nextInt(12);
+        float left = 0.12f + random.nextFloat() * 0.2f;
+        float right = 0.12f + random.nextFloat() * 0.2f;
+        float ear = (left + right) / 2;
+        String head = HEAD_DIRECTIONS[random.nextInt(HEAD_DIRECTIONS.length)];
+        int blinkRate = 8 + random.nextInt(20);
+
+        Event event = new Event();
+        event.setSessionId(sessionId);
+        event.setDriverId(driverId);
+        event.setStartTime(time);
+        event.setEndTime(time.plusNanos((long) (duration * 1_000_000_000L)));
+        event.setDuration(duration);
+        event.setEventType(state);
+        event.setEarValue(ear);
+        event.setLeftEar(left);
+        event.setRightEar(right);
+        event.setHeadDirection(head);
+        event.setFaceDetected(true);
+        event.setFeatureSource("MediaPipe");
+        // Same shape as stored by ingest: EAR, head and face values live in their own columns
+        event.setMetadata(String.format(Locale.ROOT,
+                "{\"blinkRate\":%d,\"timestamp\":%d,\"sessionId\":%d,\"eventType\":\"%s\",\"source\":\"MediaPipe\"}",
+                blinkRate, time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), sessionId, state));
+        return event;
+    }
+}
@@ -0,0 +1,40 @@
+// What is this file?
+// Extra configuration of the application under performance test: wraps the DataSource for
+// per-request SQL statement counting and registers the counting filter.
+// Why is this needed?
+// The measured application is the real one; only this instrumentation is added around it.
+
+package com.drivermonitoring.perf;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.Ordered;
+
+import javax.sql.DataSource;
+
+@TestConfiguration(proxyBeanMethods = false)
+public class PerfInstrumentation {
+
+    // Shared with the test, which runs in the same JVM
+    static final SqlStatementCounter COUNTER = new SqlStatementCounter();
+
+    @Bean
+    static BeanPostProcessor sqlCountingDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof DataSource dataSource ? COUNTER.wrap(dataSource) : bean;
+            }
+        };
+    }
+
+    @Bean
+    FilterRegistrationBean<?> sqlCountingFilter() {
+        FilterRegistrationBean<?> registration = new FilterRegistrationBean<>(COUNTER.filter());
+        // Outermost, so statements of every other filter and of view rendering are counted too
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
@@ -0,0 +1,112 @@
+// What is this file?
+// Counts the JDBC statements executed while an HTTP request is handled. The DataSource is wrapped in
+// a proxy that counts every execute* call on the request's thread; a servlet filter opens the count for
+// requests carrying the X-Perf-Request-Id header and publishes it under that ID.
+// Why is this needed?
+// Reads go through both JPA and JdbcTemplate (event partitions), so statements are counted at the
+// JDBC level. An N+1 query or a full-history scan shows up as a statement count over budget.
+
+package com.drivermonitoring.perf;
+
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class SqlStatementCounter {
+
+    public static final String REQUEST_ID_HEADER = "X-Perf-Request-Id";
+
+    // Open count of the request handled by this thread (null: not counted)
+    private final ThreadLocal<int[]> current = new ThreadLocal<>();
+    private final Map<String, Integer> counts = new ConcurrentHashMap<>();
+
+    public DataSource wrap(DataSource dataSource) {
+        return proxy(DataSource.class, dataSource);
+    }
+
+    public Filter filter() {
+        return new CountingFilter();
+    }
+
+    /**
+     * @return Statements executed by the request with the given ID, or null if it was not seen (yet).
+     */
+    public Integer takeCount(String requestId) {
+        return counts.remove(requestId);
+    }
+
+    private <T> T proxy(Class<T> type, T target) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new Counting(target)));
+    }
+
+    private class Counting implements InvocationHandler {
+        private final Object target;
+
+        Counting(Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                // executeBatch is one round trip, like a single execute
+                int[] count = current.get();
+                if (count != null) {
+                    count[0]++;
+                }
+            } else if (result instanceof CallableStatement statement) {
+                return proxy(CallableStatement.class, statement);
+            } else if (result instanceof PreparedStatement statement) {
+                return proxy(PreparedStatement.class, statement);
+            } else if (result instanceof Statement statement) {
+                return proxy(Statement.class, statement);
+            } else if (result instanceof Connection connection && !"unwrap".equals(name)) {
+                return proxy(Connection.class, connection);
+            }
+            return result;
+        }
+    }
+
+    private class CountingFilter implements Filter {
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+                throws IOException, ServletException {
+            String requestId = ((HttpServletRequest) request).getHeader(REQUEST_ID_HEADER);
+            if (requestId == null) {
+                chain.doFilter(request, response);
+                return;
+            }
+            int[] count = new int[1];
+            current.set(count);
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                current.remove();
+                counts.put(requestId, count[0]);
+            }
+        }
+    }
+}
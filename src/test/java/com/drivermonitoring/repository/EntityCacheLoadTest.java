@@ -0,0 +1,131 @@
+// What is this file?
+// Load test of the entity caches: replays detection-event requests against an in-memory H2 database
+// and counts the SELECTs on drivers and driver_sessions per request, with cold and with warm caches.
+// Why is this needed?
+// It shows the drop in queries per request the caches bring, and fails if a write stops invalidating
+// the active-session cache (a stale session would keep accepting events after logout).
+
+package com.drivermonitoring.repository;
+
+import com.drivermonitoring.model.Driver;
+import com.drivermonitoring.service.SessionService;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:entity-cache;DB_CLOSE_DELAY=-1",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.drivermonitoring.repository.EntityCacheLoadTest$CountingInspector"
+})
+@AutoConfigureMockMvc
+class EntityCacheLoadTest {
+
+    private static final String DRIVER_ID = "424242";
+    private static final int REQUESTS = 200;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private DriverRepository driverRepository;
+
+    @Autowired
+    private DriverSessionRepository sessionRepository;
+
+    @Autowired
+    private SessionService sessionService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Test
+    void cachesCutEntityQueriesPerRequest() throws Exception {
+        driverRepository.save(new Driver(DRIVER_ID, "Load Test"));
+        sessionService.startSession(DRIVER_ID);
+
+        double cold = entityQueriesPerRequest(true);
+        double warm = entityQueriesPerRequest(false);
+        System.out.printf(Locale.ROOT, "Entity SELECTs per detection request: %.2f with cold caches, %.2f with warm caches%n", cold, warm);
+
+        assertTrue(cold >= 1.0, "Expected the uncached request to read the active session, got " + cold);
+        assertTrue(warm < 0.05, "Expected warm caches to serve the active session, got " + warm + " queries per request");
+    }
+
+    @Test
+    void sessionWritesInvalidateTheCache() {
+        String driverId = "434343";
+        driverRepository.save(new Driver(driverId, "Invalidation"));
+        assertTrue(driverRepository.existsById(driverId));
+
+        sessionService.startSession(driverId);
+        assertNotNull(sessionService.getActiveSession(driverId));
+        assertNotNull(sessionService.getActiveSession(driverId)); // Served from the cache
+
+        sessionService.endSession(driverId);
+        assertNull(sessionService.getActiveSession(driverId), "Ended session is still served from the cache");
+
+        Long restarted = sessionService.startSession(driverId).getSessionId();
+        assertEquals(restarted, sessionService.getActiveSession(driverId).getSessionId());
+
+        // Bulk close (idle/stale sessions) clears the cache as well
+        sessionRepository.closeActiveSessions(List.of(driverId), LocalDateTime.now());
+        assertNull(sessionService.getActiveSession(driverId), "Bulk-closed session is still served from the cache");
+
+        driverRepository.findAll();
+        CountingInspector.STATEMENTS.clear();
+        assertTrue(driverRepository.findAll().stream().anyMatch(driver -> driverId.equals(driver.getDriverId())));
+        assertEquals(0, countEntitySelects(), "Driver list was not served from the cache");
+    }
+
+    private double entityQueriesPerRequest(boolean clearCaches) throws Exception {
+        String body = "{\"driverId\":\"" + DRIVER_ID + "\",\"state\":\"DROWSY\",\"duration\":1.0,\"metadata\":{\"earValue\":0.2}}";
+        long selects = 0;
+        for (int i = 0; i < REQUESTS; i++) {
+            if (clearCaches) {
+                cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+            }
+            CountingInspector.STATEMENTS.clear();
+            mockMvc.perform(post("/api/detection-event").contentType(MediaType.APPLICATION_JSON).content(body))
+                    .andExpect(status().isOk());
+            selects += countEntitySelects();
+        }
+        return selects / (double) REQUESTS;
+    }
+
+    private static long countEntitySelects() {
+        return CountingInspector.STATEMENTS.stream()
+                .map(sql -> sql.toLowerCase(Locale.ROOT))
+                .filter(sql -> sql.startsWith("select"))
+                .filter(sql -> sql.contains(" drivers ") || sql.contains("driver_sessions"))
+                .count();
+    }
+
+    // Registered through hibernate.session_factory.statement_inspector: records the SQL Hibernate runs
+    public static class CountingInspector implements StatementInspector {
+        static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+}
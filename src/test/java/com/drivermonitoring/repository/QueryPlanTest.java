@@ -0,0 +1,171 @@
+// What is this file?
+// Query plan regression tests: runs EXPLAIN on the SQL of every derived query of EventRepository
+// and DriverSessionRepository against a seeded in-memory H2 database.
+// Why is this needed?
+// A new repository method or a dropped index silently turns a lookup into a full table scan;
+// this test fails as soon as any plan contains one.
+
+package com.drivermonitoring.repository;
+
+import com.drivermonitoring.model.DriverSession;
+import com.drivermonitoring.model.Event;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.fail;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:query-plans;DB_CLOSE_DELAY=-1",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.drivermonitoring.repository.QueryPlanTest$CapturingInspector"
+})
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class QueryPlanTest {
+
+    private static final String DRIVER_ID = "driver-7";
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private DriverSessionRepository driverSessionRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @BeforeAll
+    void seed() throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        List<DriverSession> sessions = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            DriverSession session = new DriverSession("driver-" + (i % 20));
+            session.setStartTime(now.minusHours(i));
+            session.setActive(i < 20);
+            sessions.add(session);
+        }
+        driverSessionRepository.saveAll(sessions);
+
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Event event = new Event((long) (i % 200), "driver-" + (i % 20), i % 3 == 0 ? "DISTRACTED" : "DROWSY", 1.5f);
+            event.setStartTime(now.minusMinutes(i));
+            events.add(event);
+        }
+        eventRepository.saveAll(events);
+
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE");
+        }
+    }
+
+    @TestFactory
+    Stream<DynamicTest> derivedQueriesUseIndexes() {
+        return Stream.concat(
+                queryMethods(EventRepository.class, EventRepositoryCustom.class).map(method -> planTest(eventRepository, method)),
+                queryMethods(DriverSessionRepository.class, null).map(method -> planTest(driverSessionRepository, method)));
+    }
+
+    // Query methods declared on the repository itself; writes and hand-written JDBC methods are skipped
+    private static Stream<Method> queryMethods(Class<?> repository, Class<?> customFragment) {
+        Set<String> customMethods = customFragment == null ? Set.of()
+                : Arrays.stream(customFragment.getMethods()).map(Method::getName).collect(Collectors.toSet());
+        return Arrays.stream(repository.getDeclaredMethods())
+                .filter(method -> !customMethods.contains(method.getName()))
+                .filter(method -> !method.isAnnotationPresent(Modifying.class))
+                .filter(method -> !method.getName().startsWith("delete") && !method.getName().startsWith("save"))
+                .sorted(Comparator.comparing(Method::getName));
+    }
+
+    private DynamicTest planTest(Object repository, Method method) {
+        return DynamicTest.dynamicTest(method.getDeclaringClass().getSimpleName() + "." + method.getName(), () -> {
+            CapturingInspector.STATEMENTS.clear();
+            method.invoke(repository, sampleArguments(method));
+            List<String> statements = new ArrayList<>(CapturingInspector.STATEMENTS);
+            assertFalse(statements.isEmpty(), "No SQL captured for " + method.getName());
+            for (String sql : statements) {
+                String plan = explain(sql);
+                if (plan.contains("tableScan")) {
+                    fail(method.getName() + " falls back to a full table scan:\n" + plan);
+                }
+            }
+        });
+    }
+
+    private static Object[] sampleArguments(Method method) {
+        return Arrays.stream(method.getParameterTypes()).map(type -> {
+            if (type == String.class) {
+                return DRIVER_ID;
+            } else if (type == Long.class || type == long.class) {
+                return 7L;
+            } else if (type == LocalDateTime.class) {
+                return LocalDateTime.now().minusHours(1);
+            } else if (type == Pageable.class) {
+                return PageRequest.of(0, 10);
+            } else if (type == YearMonth.class) {
+                return YearMonth.now();
+            } else if (type == int.class || type == Integer.class) {
+                return 10;
+            }
+            throw new IllegalArgumentException("No sample value for parameter type " + type + " of " + method.getName());
+        }).toArray();
+    }
+
+    // EXPLAIN with every parameter bound to a typical value of its type
+    private String explain(String sql) throws Exception {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+            ParameterMetaData parameters = statement.getParameterMetaData();
+            for (int i = 1; i <= parameters.getParameterCount(); i++) {
+                switch (parameters.getParameterType(i)) {
+                    case Types.VARCHAR, Types.CHAR -> statement.setString(i, DRIVER_ID);
+                    case Types.TIMESTAMP -> statement.setTimestamp(i, Timestamp.valueOf(LocalDateTime.now().minusHours(1)));
+                    case Types.BOOLEAN -> statement.setBoolean(i, true);
+                    default -> statement.setLong(i, 7L);
+                }
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getString(1) : "";
+            }
+        }
+    }
+
+    // Registered through hibernate.session_factory.statement_inspector: records the SQL Hibernate runs
+    public static class CapturingInspector implements StatementInspector {
+        static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+// What is this file?
+// Unit tests of the three kinds of alert rules, fed the way the ingest path feeds them: one report per frame
+// with the growing episode duration, and the time each report added from ReportedTimeTracker.
+// Why is this needed?
+// The windows are small rings updated in place; episode merging, bucket expiry and the reset after firing
+// decide whether a dispatcher is alerted, and were only ever exercised by hand.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.ai.FatiguePrediction.RiskLevel;
+import com.drivermonitoring.model.DriverState;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AlertRulesTest {
+
+    private static final String DRIVER = "driver-1";
+    private static final LocalDateTime BASE = LocalDateTime.of(2026, 3, 2, 8, 0);
+    private static final long FRAME_MILLIS = 40;
+
+    private final ReportedTimeTracker tracker = new ReportedTimeTracker();
+
+    @Test
+    void episodeCountMergesReportsWithinTheGap() {
+        AlertRule.State rule = AlertRules.episodeCount("drowsy-episodes", DriverState.DROWSY, 3, 300_000, 2000).newState();
+
+        // One long episode reported on every frame, then a second one after a 1.5 s pause: still one episode
+        assertNull(episode(rule, DriverState.DROWSY, BASE, 2.0f, 8.0f));
+        assertNull(episode(rule, DriverState.DROWSY, BASE.plusSeconds(9).plusNanos(500_000_000), 2.0f, 4.0f));
+        assertNull(episode(rule, DriverState.DROWSY, BASE.plusSeconds(60), 2.0f, 3.0f));
+        assertNotNull(episode(rule, DriverState.DROWSY, BASE.plusSeconds(120), 2.0f, 3.0f));
+
+        // Fired: counting starts over
+        assertNull(episode(rule, DriverState.DROWSY, BASE.plusSeconds(130), 2.0f, 3.0f));
+    }
+
+    @Test
+    void episodeCountIgnoresEpisodesOutsideTheWindow() {
+        AlertRule.State rule = AlertRules.episodeCount("drowsy-episodes", DriverState.DROWSY, 3, 300_000, 2000).newState();
+
+        assertNull(episode(rule, DriverState.DROWSY, BASE, 2.0f, 3.0f));
+        assertNull(episode(rule, DriverState.DROWSY, BASE.plusSeconds(200), 2.0f, 3.0f));
+        // The first episode is more than 5 minutes before the third one
+        assertNull(episode(rule, DriverState.DROWSY, BASE.plusSeconds(320), 2.0f, 3.0f));
+        // The last three fit in the window
+        assertNotNull(episode(rule, DriverState.DROWSY, BASE.plusSeconds(400), 2.0f, 3.0f));
+    }
+
+    @Test
+    void cumulativeDurationCountsOverlappingReportsOnce() {
+        AlertRule.State rule = AlertRules.cumulativeDuration("distraction", DriverState.DISTRACTED, 20f, 120_000).newState();
+
+        // Distracted for 2.7 s, reported from 1 s on at frame rate: far from 20 s
+        assertNull(episode(rule, DriverState.DISTRACTED, BASE, 1.0f, 2.7f));
+        // 9 more episodes of 2 s within the window: 20.7 s
+        for (int i = 1; i <= 8; i++) {
+            assertNull(episode(rule, DriverState.DISTRACTED, BASE.plusSeconds(i * 10L), 1.0f, 2.0f));
+        }
+        assertNotNull(episode(rule, DriverState.DISTRACTED, BASE.plusSeconds(90), 1.0f, 2.0f));
+    }
+
+    @Test
+    void cumulativeDurationForgetsBucketsThatLeftTheWindow() {
+        AlertRule.State rule = AlertRules.cumulativeDuration("distraction", DriverState.DISTRACTED, 20f, 120_000).newState();
+
+        assertNull(episode(rule, DriverState.DISTRACTED, BASE, 1.0f, 15.0f));
+        // 15 s + 10 s, but the first episode ended more than 2 minutes ago
+        assertNull(episode(rule, DriverState.DISTRACTED, BASE.plusSeconds(150), 1.0f, 10.0f));
+        // Within 2 minutes of the second one
+        assertNotNull(episode(rule, DriverState.DISTRACTED, BASE.plusSeconds(200), 1.0f, 11.0f));
+        // Fired: the window starts empty
+        assertNull(episode(rule, DriverState.DISTRACTED, BASE.plusSeconds(230), 1.0f, 5.0f));
+    }
+
+    @Test
+    void consecutiveRiskResetsOnALowerPredictionAndAfterFiring() {
+        AlertRule.State rule = AlertRules.consecutiveRisk("high-risk", RiskLevel.HIGH, 2).newState();
+
+        assertNull(rule.onPrediction(RiskLevel.HIGH, 0));
+        assertNull(rule.onPrediction(RiskLevel.MEDIUM, 1));
+        assertNull(rule.onPrediction(RiskLevel.HIGH, 2));
+        assertNotNull(rule.onPrediction(RiskLevel.HIGH, 3));
+        assertNull(rule.onPrediction(RiskLevel.HIGH, 4));
+        assertNull(rule.onPrediction(null, 5));
+        assertNull(rule.onPrediction(RiskLevel.HIGH, 6));
+        assertNotNull(rule.onPrediction(RiskLevel.HIGH, 7));
+    }
+
+    // Reports an episode first seen at `seenAt` with `firstSeconds` already elapsed, on every frame until it
+    // lasted `seconds`; returns the alert message if the rule fired on any report
+    private String episode(AlertRule.State rule, DriverState state, LocalDateTime seenAt, float firstSeconds, float seconds) {
+        String fired = null;
+        long last = Math.round(seconds * 1000);
+        for (long elapsed = Math.round(firstSeconds * 1000); elapsed <= last; elapsed += FRAME_MILLIS) {
+            float duration = elapsed / 1000f;
+            LocalDateTime at = seenAt.plusNanos((elapsed - Math.round(firstSeconds * 1000)) * 1_000_000);
+            float added = tracker.addedSeconds(DRIVER, state, duration, at);
+            long endMillis = at.toInstant(ZoneOffset.UTC).toEpochMilli();
+            String message = rule.onReport(state, endMillis - (long) (duration * 1000), endMillis, added);
+            fired = fired != null ? fired : message;
+        }
+        return fired;
+    }
+}
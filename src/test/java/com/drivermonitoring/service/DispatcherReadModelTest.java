@@ -0,0 +1,120 @@
+// What is this file?
+// Unit tests of the prediction bookkeeping of the dispatcher read model: a prediction computed while
+// events kept arriving does not mark the driver's prediction as current.
+// Why is this needed?
+// The refresher computes a prediction between sessionsNeedingPrediction and updatePrediction; events
+// applied meanwhile are not in it, and clearing the flag unconditionally left them out until the
+// prediction got old.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.ai.FatiguePrediction;
+import com.drivermonitoring.ai.FatiguePrediction.RiskLevel;
+import com.drivermonitoring.model.DriverSession;
+import com.drivermonitoring.model.Event;
+import com.drivermonitoring.repository.DriverRepository;
+import com.drivermonitoring.service.DispatcherReadModel.PredictionDue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DispatcherReadModelTest {
+
+    private static final String DRIVER = "driver-1";
+    private static final long SESSION_ID = 11L;
+    private static final long MAX_AGE_MILLIS = 600_000;
+
+    private final DispatcherReadModel readModel = new DispatcherReadModel();
+    private final FatiguePrediction prediction = new FatiguePrediction(RiskLevel.MEDIUM, 0.4f, 30, "Take a break soon");
+
+    @BeforeEach
+    void setUp() {
+        DriverRepository driverRepository = mock(DriverRepository.class);
+        when(driverRepository.findAll()).thenReturn(List.of());
+        ReflectionTestUtils.setField(readModel, "driverRepository", driverRepository);
+        ReflectionTestUtils.setField(readModel, "queueCapacity", 100);
+        ReflectionTestUtils.setField(readModel, "recentEventsLimit", 10);
+        ReflectionTestUtils.setField(readModel, "recentSessionsLimit", 10);
+        readModel.start();
+
+        DriverSession session = new DriverSession(DRIVER);
+        session.setSessionId(SESSION_ID);
+        readModel.sessionStarted(session);
+        readModel.eventRecorded(event());
+        awaitApplied(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        readModel.stop();
+    }
+
+    @Test
+    void predictionOfTheAppliedEventsIsCurrent() {
+        PredictionDue due = readModel.sessionsNeedingPrediction(MAX_AGE_MILLIS).get(DRIVER);
+        assertEquals(SESSION_ID, due.sessionId());
+
+        readModel.updatePrediction(DRIVER, due, prediction);
+
+        assertFalse(readModel.sessionsNeedingPrediction(MAX_AGE_MILLIS).containsKey(DRIVER));
+        assertEquals(RiskLevel.MEDIUM, readModel.getPrediction(DRIVER).getRiskLevel());
+    }
+
+    @Test
+    void eventAppliedWhileThePredictionWasComputedKeepsItOutdated() {
+        PredictionDue due = readModel.sessionsNeedingPrediction(MAX_AGE_MILLIS).get(DRIVER);
+        // Applied after the refresher read the events for the prediction
+        readModel.eventRecorded(event());
+        awaitApplied(3);
+
+        readModel.updatePrediction(DRIVER, due, prediction);
+
+        // Shown meanwhile, but recomputed on the next run
+        assertEquals(RiskLevel.MEDIUM, readModel.getPrediction(DRIVER).getRiskLevel());
+        Map<String, PredictionDue> next = readModel.sessionsNeedingPrediction(MAX_AGE_MILLIS);
+        assertTrue(next.containsKey(DRIVER));
+        readModel.updatePrediction(DRIVER, next.get(DRIVER), prediction);
+        assertFalse(readModel.sessionsNeedingPrediction(MAX_AGE_MILLIS).containsKey(DRIVER));
+    }
+
+    @Test
+    void predictionOfAnEndedSessionIsDropped() {
+        PredictionDue due = readModel.sessionsNeedingPrediction(MAX_AGE_MILLIS).get(DRIVER);
+        DriverSession next = new DriverSession(DRIVER);
+        next.setSessionId(SESSION_ID + 1);
+        readModel.sessionStarted(next);
+        awaitApplied(3);
+
+        readModel.updatePrediction(DRIVER, due, prediction);
+
+        assertEquals(SESSION_ID + 1, readModel.sessionsNeedingPrediction(MAX_AGE_MILLIS).get(DRIVER).sessionId());
+    }
+
+    private static Event event() {
+        Event event = new Event(SESSION_ID, DRIVER, "DROWSY", 2.0f);
+        event.setStartTime(LocalDateTime.now());
+        return event;
+    }
+
+    // Updates are applied by the projector thread
+    private void awaitApplied(long updates) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((Long) readModel.getStatus().get("appliedUpdates") < updates) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Read model applied " + readModel.getStatus().get("appliedUpdates") + " of " + updates + " updates");
+            }
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+// What is this file?
+// Unit tests of the driver partitions: tasks of one driver run one at a time in arrival order, nested work
+// of a driver on its own partition thread does not wait for itself, a full queue rejects, and a task whose
+// caller timed out still runs afterwards.
+// Why is this needed?
+// The partitions replace the locking around session start and report storage; a reordering or a deadlock
+// here only shows up under fleet load, and callers rely on the timeout semantics when answering retries.
+
+package com.drivermonitoring.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DriverPartitionsTest {
+
+    private static final String DRIVER = "driver-1";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private DriverPartitions partitions;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        callers.shutdownNow();
+        partitions.stop();
+    }
+
+    @Test
+    void tasksOfADriverRunOneAtATimeInArrivalOrder() throws Exception {
+        start(4, 100, 5000);
+        block(DRIVER);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger running = new AtomicInteger();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            int task = i;
+            results.add(callers.submit(() -> partitions.execute(DRIVER, () -> {
+                if (running.incrementAndGet() > 1) {
+                    overlapped.set(true);
+                }
+                order.add(task);
+                Thread.sleep(1);
+                running.decrementAndGet();
+                return task;
+            })));
+            // The next caller arrives once this one is queued
+            awaitQueued(DRIVER, i + 1);
+        }
+
+        release.countDown();
+
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i, results.get(i).get(10, TimeUnit.SECONDS));
+        }
+        assertFalse(overlapped.get());
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, order);
+    }
+
+    @Test
+    void nestedTaskOfTheDriverRunsOnItsPartitionThread() throws Exception {
+        start(4, 100, 1000);
+        List<String> threads = new ArrayList<>();
+
+        String result = partitions.execute(DRIVER, () -> {
+            threads.add(Thread.currentThread().getName());
+            // Queued, this would wait for the task that is waiting for it until the timeout
+            return partitions.execute(DRIVER, () -> {
+                threads.add(Thread.currentThread().getName());
+                return "nested";
+            });
+        });
+
+        assertEquals("nested", result);
+        assertEquals(2, threads.size());
+        assertTrue(threads.get(0).startsWith("driver-partition-"));
+        assertEquals(threads.get(0), threads.get(1));
+    }
+
+    @Test
+    void fullQueueRejectsNewTasks() throws Exception {
+        start(1, 2, 5000);
+        block(DRIVER);
+        List<Future<String>> queued = new ArrayList<>();
+        for (int i = 1; i <= 2; i++) {
+            queued.add(callers.submit(() -> partitions.execute(DRIVER, () -> "queued")));
+            awaitQueued(DRIVER, i);
+        }
+
+        // Partitions are shared: another driver is rejected as well
+        assertThrows(RejectedExecutionException.class, () -> partitions.execute("driver-2", () -> "rejected"));
+        assertEquals(1, meterRegistry.get("drivermonitoring.partition.rejected").counter().count());
+
+        release.countDown();
+        for (Future<String> task : queued) {
+            assertEquals("queued", task.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals("accepted", partitions.execute(DRIVER, () -> "accepted"));
+    }
+
+    @Test
+    void taskWhoseCallerTimedOutStillRunsLater() throws Exception {
+        start(1, 100, 100);
+        block(DRIVER);
+        CountDownLatch ran = new CountDownLatch(1);
+
+        assertThrows(TimeoutException.class, () -> partitions.execute(DRIVER, () -> {
+            ran.countDown();
+            return null;
+        }));
+        assertEquals(1, ran.getCount());
+
+        release.countDown();
+        assertTrue(ran.await(10, TimeUnit.SECONDS), "timed-out task did not run after the partition freed up");
+    }
+
+    private void start(int count, int queueCapacity, long timeoutMs) {
+        partitions = new DriverPartitions();
+        ReflectionTestUtils.setField(partitions, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(partitions, "enabled", true);
+        ReflectionTestUtils.setField(partitions, "partitionCount", count);
+        ReflectionTestUtils.setField(partitions, "queueCapacity", queueCapacity);
+        ReflectionTestUtils.setField(partitions, "timeoutMs", timeoutMs);
+        partitions.start();
+    }
+
+    // Occupies the driver's partition thread until release
+    private void block(String driverId) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        callers.submit(() -> partitions.execute(driverId, () -> {
+            started.countDown();
+            return release.await(10, TimeUnit.SECONDS);
+        }));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+    }
+
+    private void awaitQueued(String driverId, int tasks) {
+        String partition = String.valueOf(partitions.partitionOf(driverId));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (meterRegistry.get("drivermonitoring.partition.queue").tag("partition", partition).gauge().value() < tasks) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Partition " + partition + " did not queue " + tasks + " task(s)");
+            }
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+// What is this file?
+// Unit tests of the archival job against an in-memory event table: a run that crashes after writing a chunk's
+// segments but before deleting its rows, then a second run, must leave every event in exactly one segment
+// and none in the table. Also checks the archive meters.
+// Why is this needed?
+// Resuming relies on a rewritten chunk landing in the same segment files; a change in chunk boundaries or
+// file naming would silently duplicate events in audits (or lose them, if rows were deleted first).
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.model.Event;
+import com.drivermonitoring.repository.EventPartitionManager;
+import com.drivermonitoring.repository.EventRepository;
+import com.drivermonitoring.util.EventSegmentFiles;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EventArchiveServiceTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2026, 3, 2, 8, 0);
+    private static final LocalDateTime THRESHOLD = BASE.plusDays(1);
+    private static final int CHUNK_SIZE = 10;
+
+    @TempDir
+    Path archive;
+
+    // The event table: rows by ID, in ID order
+    private final List<Event> table = new ArrayList<>();
+    private final AtomicInteger deletesBeforeCrash = new AtomicInteger(Integer.MAX_VALUE);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private EventArchiveService archiveService;
+
+    @BeforeEach
+    void setUp() {
+        // 35 expired events of two drivers over two days, and 5 that stay
+        for (long id = 1; id <= 40; id++) {
+            Event event = new Event(id % 3, "driver-" + (id % 2), "DROWSY", 1.5f);
+            event.setEventId(id);
+            event.setStartTime(id <= 35 ? BASE.plusMinutes(id * 40) : THRESHOLD.plusMinutes(id));
+            table.add(event);
+        }
+
+        EventRepository eventRepository = mock(EventRepository.class);
+        when(eventRepository.findByStartTimeBeforeOrderByEventIdAsc(any(), any())).thenAnswer(invocation -> {
+            LocalDateTime threshold = invocation.getArgument(0);
+            Pageable page = invocation.getArgument(1);
+            return table.stream().filter(event -> event.getStartTime().isBefore(threshold))
+                    .limit(page.getPageSize()).map(EventArchiveServiceTest::copy).collect(Collectors.toList());
+        });
+        doAnswer(invocation -> {
+            if (deletesBeforeCrash.getAndDecrement() <= 0) {
+                throw new IllegalStateException("Connection lost");
+            }
+            Collection<Long> ids = invocation.getArgument(0);
+            table.removeIf(event -> ids.contains(event.getEventId()));
+            return null;
+        }).when(eventRepository).deleteAllByIdInBatch(any());
+        EventPartitionManager partitionManager = mock(EventPartitionManager.class);
+        when(partitionManager.partitionsEndingBefore(any())).thenReturn(List.of());
+
+        ArchivedEventQueryService queryService = new ArchivedEventQueryService();
+        ReflectionTestUtils.setField(queryService, "archiveDirectory", archive.toString());
+
+        archiveService = new EventArchiveService();
+        ReflectionTestUtils.setField(archiveService, "eventRepository", eventRepository);
+        ReflectionTestUtils.setField(archiveService, "archivedEventQueryService", queryService);
+        ReflectionTestUtils.setField(archiveService, "partitionManager", partitionManager);
+        ReflectionTestUtils.setField(archiveService, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(archiveService, "archiveDirectory", archive.toString());
+        ReflectionTestUtils.setField(archiveService, "chunkSize", CHUNK_SIZE);
+        ReflectionTestUtils.setField(archiveService, "chunkPauseMs", 0L);
+        archiveService.init();
+    }
+
+    @Test
+    void rerunAfterACrashBetweenSegmentAndDeleteNeitherLosesNorDuplicates() throws Exception {
+        // The second chunk's segments are written, then its DELETE fails
+        deletesBeforeCrash.set(1);
+        assertEquals(10, archiveService.archiveEventsBefore(THRESHOLD));
+        assertEquals(30, table.size());
+        assertEquals("Connection lost", archiveService.getProgress().get("lastError"));
+
+        deletesBeforeCrash.set(Integer.MAX_VALUE);
+        assertEquals(25, archiveService.archiveEventsBefore(THRESHOLD));
+
+        assertEquals(5, table.size());
+        assertTrue(table.stream().noneMatch(event -> event.getStartTime().isBefore(THRESHOLD)));
+        Map<Long, Integer> copies = archivedCopies();
+        assertEquals(35, copies.size());
+        assertTrue(copies.values().stream().allMatch(count -> count == 1), "each event in one segment: " + copies);
+    }
+
+    @Test
+    void rerunRemovesTheTempFileOfASegmentWrittenHalfway() throws Exception {
+        Path leftover = archive.resolve("2026-03-02").resolve("driver-1").resolve("events-1-9.ndjson.gz" + EventSegmentFiles.TEMP_SUFFIX);
+        Files.createDirectories(leftover.getParent());
+        Files.writeString(leftover, "partial");
+
+        assertEquals(35, archiveService.archiveEventsBefore(THRESHOLD));
+
+        assertFalse(Files.exists(leftover));
+        assertEquals(35, archivedCopies().size());
+    }
+
+    @Test
+    void metersFollowTheRuns() {
+        deletesBeforeCrash.set(0);
+        archiveService.archiveEventsBefore(THRESHOLD);
+
+        assertEquals(1, meterRegistry.get("drivermonitoring.archive.failures").counter().count());
+        assertEquals(0, meterRegistry.get("drivermonitoring.archive.last.success").gauge().value());
+        assertEquals(0, meterRegistry.get("drivermonitoring.archive.running").gauge().value());
+
+        deletesBeforeCrash.set(Integer.MAX_VALUE);
+        archiveService.archiveEventsBefore(THRESHOLD);
+
+        assertEquals(35, meterRegistry.get("drivermonitoring.archive.events").functionCounter().count());
+        assertEquals(35, meterRegistry.get("drivermonitoring.archive.run.events").gauge().value());
+        assertTrue(meterRegistry.get("drivermonitoring.archive.segments").functionCounter().count() >= 4);
+        assertTrue(meterRegistry.get("drivermonitoring.archive.bytes").functionCounter().count() > 0);
+        assertTrue(meterRegistry.get("drivermonitoring.archive.last.success").gauge().value() > 0);
+    }
+
+    // Number of segment files each event ID is stored in
+    private Map<Long, Integer> archivedCopies() throws Exception {
+        Map<Long, Integer> copies = new HashMap<>();
+        try (Stream<Path> files = Files.walk(archive)) {
+            for (Path segment : files.filter(path -> path.toString().endsWith(EventSegmentFiles.SEGMENT_SUFFIX)).toList()) {
+                for (Event event : EventSegmentFiles.readSegment(segment)) {
+                    copies.merge(event.getEventId(), 1, Integer::sum);
+                }
+            }
+        }
+        return copies;
+    }
+
+    // Rows are read into new entities, as from the database
+    private static Event copy(Event row) {
+        Event event = new Event(row.getSessionId(), row.getDriverId(), row.getEventType(), row.getDuration());
+        event.setEventId(row.getEventId());
+        event.setStartTime(row.getStartTime());
+        event.setEndTime(row.getEndTime());
+        return event;
+    }
+}
@@ -0,0 +1,224 @@
+// What is this file?
+// Unit tests of the event coalescer: merging the frame-rate reports of one episode within the gap,
+// splitting long episodes at the maximum length, expiry racing a late report, and the stored metadata.
+// Why is this needed?
+// With coalescing on, the coalescer decides what is written to driver_events at all: a lost or doubled
+// report changes every duration downstream, and per-driver state must not outlive the driver's episodes.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.model.Event;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventCoalescerTest {
+
+    private static final long SESSION_ID = 7L;
+    private static final long GAP_MILLIS = 2000;
+    private static final long MAX_DURATION_SECONDS = 30;
+    // Gap deadlines live on a timing wheel that starts at the current time
+    private static final LocalDateTime BASE = LocalDateTime.now().withNano(0).plusMinutes(1);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private EventCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        coalescer = new EventCoalescer();
+        ReflectionTestUtils.setField(coalescer, "enabled", true);
+        ReflectionTestUtils.setField(coalescer, "gapMillis", GAP_MILLIS);
+        ReflectionTestUtils.setField(coalescer, "maxDurationSeconds", MAX_DURATION_SECONDS);
+    }
+
+    @Test
+    void mergesReportsWithinTheGapIntoOneEvent() throws Exception {
+        // DROWSY from 2 s on every 40 ms up to 3 s, then a pause of 1.5 s and another second of it
+        for (long elapsed = 2000; elapsed <= 3000; elapsed += 40) {
+            assertTrue(coalescer.offer(report("driver-1", "DROWSY", BASE.plusNanos(elapsed * 1_000_000), elapsed / 1000f, 0.2f)).isEmpty());
+        }
+        LocalDateTime secondEnd = BASE.plusNanos(5_500_000_000L);
+        assertTrue(coalescer.offer(report("driver-1", "DROWSY", secondEnd, 1.0f, 0.1f)).isEmpty());
+        // Another driver's episode stays apart
+        assertTrue(coalescer.offer(report("driver-2", "DROWSY", BASE, 2.0f, 0.3f)).isEmpty());
+        assertEquals(2, coalescer.getOpenCount());
+
+        Event event = coalescer.close("driver-1");
+
+        assertEquals(BASE, event.getStartTime());
+        assertEquals(secondEnd, event.getEndTime());
+        assertEquals(5.5f, event.getDuration(), 0.001f);
+        Map<?, ?> metadata = objectMapper.readValue(event.getMetadata(), Map.class);
+        assertEquals(27, metadata.get("coalescedReports"));
+        assertEquals(0.1, ((Number) metadata.get("earMin")).doubleValue(), 1e-6);
+        assertEquals((26 * 0.2f + 0.1f) / 27, event.getEarValue(), 1e-4f);
+        assertEquals(1, coalescer.getOpenCount());
+    }
+
+    @Test
+    void reportOfAnotherTypeOrAfterTheGapCompletesTheOpenEvent() {
+        coalescer.offer(report("driver-1", "DROWSY", BASE.plusSeconds(2), 2.0f, null));
+
+        List<Event> completed = coalescer.offer(report("driver-1", "DISTRACTED", BASE.plusSeconds(4), 1.0f, null));
+        assertEquals(1, completed.size());
+        assertEquals("DROWSY", completed.get(0).getEventType());
+
+        // Starts 2.5 s after the DISTRACTED one ended
+        completed = coalescer.offer(report("driver-1", "DISTRACTED", BASE.plusSeconds(7), 0.5f, null));
+        assertEquals(1, completed.size());
+        assertEquals(BASE.plusSeconds(4), completed.get(0).getEndTime());
+    }
+
+    @Test
+    void splitsLongEpisodesAtTheMaximumLengthWithoutOverlap() {
+        List<Event> stored = new ArrayList<>();
+        // One DROWSY episode of 70 s, reported with its growing duration every 100 ms
+        for (long elapsed = 2000; elapsed <= 70_000; elapsed += 100) {
+            stored.addAll(coalescer.offer(report("driver-1", "DROWSY", BASE.plusNanos(elapsed * 1_000_000), elapsed / 1000f, null)));
+        }
+        stored.add(coalescer.close("driver-1"));
+
+        assertEquals(3, stored.size());
+        // Durations are floats: the start is exact to well below a millisecond
+        assertEquals(0, Duration.between(BASE, stored.get(0).getStartTime()).abs().toMillis());
+        for (int i = 0; i < stored.size(); i++) {
+            Event part = stored.get(i);
+            assertTrue(part.getDuration() <= MAX_DURATION_SECONDS + 0.1f, "part " + i + " lasts " + part.getDuration());
+            if (i > 0) {
+                assertEquals(stored.get(i - 1).getEndTime(), part.getStartTime(), "part " + i + " continues the previous one");
+            }
+        }
+        assertEquals(BASE.plusSeconds(70), stored.get(2).getEndTime());
+        assertEquals(70f, (float) stored.stream().mapToDouble(Event::getDuration).sum(), 0.01f);
+    }
+
+    @Test
+    void expiryCompletesEventsAfterTheGapOnly() {
+        LocalDateTime end = BASE.plusSeconds(2);
+        coalescer.offer(report("driver-1", "DROWSY", end, 2.0f, null));
+
+        assertTrue(coalescer.expire(toMillis(end) + GAP_MILLIS - 500).isEmpty());
+        // A late report moved the end; the first deadline passes without completing the event
+        coalescer.offer(report("driver-1", "DROWSY", end.plusSeconds(1), 2.5f, null));
+        assertTrue(coalescer.expire(toMillis(end) + GAP_MILLIS + 100).isEmpty());
+
+        List<Event> completed = coalescer.expire(toMillis(end.plusSeconds(1)) + GAP_MILLIS + 100);
+        assertEquals(1, completed.size());
+        assertEquals(end.plusSeconds(1), completed.get(0).getEndTime());
+        assertEquals(0, coalescer.getOpenCount());
+    }
+
+    @Test
+    void expiryRacingALateReportLosesNoReport() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        CyclicBarrier start = new CyclicBarrier(2);
+        int rounds = 500;
+        int reports = 0;
+        List<Event> stored = new ArrayList<>();
+        try {
+            for (int round = 0; round < rounds; round++) {
+                String driverId = "driver-" + round;
+                LocalDateTime end = BASE.plusSeconds(round * 5L);
+                coalescer.offer(report(driverId, "DROWSY", end, 2.0f, null));
+                long deadline = toMillis(end) + GAP_MILLIS;
+                // The gap has just passed when a report continuing the episode arrives
+                Future<List<Event>> expired = pool.submit(() -> {
+                    start.await();
+                    return coalescer.expire(deadline);
+                });
+                Future<List<Event>> late = pool.submit(() -> {
+                    start.await();
+                    return coalescer.offer(report(driverId, "DROWSY", end.plusSeconds(1), 1.5f, null));
+                });
+                stored.addAll(expired.get(10, TimeUnit.SECONDS));
+                stored.addAll(late.get(10, TimeUnit.SECONDS));
+                reports += 2;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        stored.addAll(coalescer.closeAll());
+
+        // Either the late report extended the episode, or it opened a new one after the expired part
+        int storedReports = 0;
+        for (Event event : stored) {
+            storedReports += event.getMetadata() != null
+                    ? (Integer) objectMapper.readValue(event.getMetadata(), Map.class).get("coalescedReports") : 1;
+        }
+        assertEquals(reports, storedReports);
+        assertEquals(0, coalescer.getOpenCount());
+        assertEquals(0, locks().size(), "no monitor kept for drivers without an open event");
+    }
+
+    @Test
+    void keepsTheFirstReportsMetadataAndAddsTheMergeCounts() throws Exception {
+        Event first = report("driver-1", "DROWSY", BASE.plusSeconds(2), 2.0f, 0.18f);
+        first.setMetadata("{\"blinkRate\":31.5,\"source\":\"camera\"}");
+        coalescer.offer(first);
+        Event second = report("driver-1", "DROWSY", BASE.plusSeconds(3), 3.0f, 0.12f);
+        second.setMetadata("{\"blinkRate\":40.0}");
+        coalescer.offer(second);
+
+        Map<?, ?> metadata = objectMapper.readValue(coalescer.close("driver-1").getMetadata(), Map.class);
+
+        assertEquals(31.5, ((Number) metadata.get("blinkRate")).doubleValue(), 1e-6);
+        assertEquals("camera", metadata.get("source"));
+        assertEquals(2, metadata.get("coalescedReports"));
+        assertEquals(0.12, ((Number) metadata.get("earMin")).doubleValue(), 1e-6);
+
+        // A single report is stored as it came
+        Event single = report("driver-1", "DISTRACTED", BASE.plusSeconds(10), 1.0f, null);
+        single.setMetadata("{\"source\":\"camera\"}");
+        coalescer.offer(single);
+        assertEquals("{\"source\":\"camera\"}", coalescer.close("driver-1").getMetadata());
+    }
+
+    @Test
+    void dropsTheDriversMonitorWithItsOpenEvent() {
+        coalescer.offer(report("driver-1", "DROWSY", BASE.plusSeconds(2), 2.0f, null));
+        coalescer.offer(report("driver-2", "DROWSY", BASE.plusSeconds(2), 2.0f, null));
+        assertEquals(2, locks().size());
+
+        assertNotNull(coalescer.close("driver-1"));
+        assertFalse(locks().containsKey("driver-1"));
+        assertEquals(1, coalescer.expire(toMillis(BASE.plusSeconds(2)) + GAP_MILLIS + 100).size());
+        // Closing a driver without an open event leaves nothing behind either
+        coalescer.close("driver-3");
+        assertTrue(locks().isEmpty());
+    }
+
+    // A report as the ingest path builds it: startTime is the arrival time, duration the time it covers
+    private static Event report(String driverId, String type, LocalDateTime arrivedAt, float duration, Float ear) {
+        Event event = new Event(SESSION_ID, driverId, type, duration);
+        event.setStartTime(arrivedAt);
+        event.setEarValue(ear);
+        return event;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> locks() {
+        return (Map<String, Object>) ReflectionTestUtils.getField(coalescer, "locks");
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,119 @@
+// What is this file?
+// Unit tests of the ingest deduplication window: duplicates after completion, a copy arriving while the
+// first one is processed, release after a failure, the per-driver cap and the time window.
+// Why is this needed?
+// A wrong answer either stores a retried report twice or drops a report whose first attempt failed;
+// neither shows up anywhere but in the drivers' totals.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.service.EventDeduplicator.Claim;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EventDeduplicatorTest {
+
+    private static final String DRIVER = "driver-1";
+
+    private EventDeduplicator deduplicator;
+
+    @BeforeEach
+    void setUp() {
+        deduplicator = new EventDeduplicator();
+        ReflectionTestUtils.setField(deduplicator, "maxIdsPerDriver", 4);
+        ReflectionTestUtils.setField(deduplicator, "windowSeconds", 600L);
+    }
+
+    @Test
+    void copyOfACompletedReportIsADuplicate() {
+        assertEquals(Claim.NEW, deduplicator.claim(DRIVER, "a"));
+        deduplicator.complete(DRIVER, "a");
+
+        assertEquals(Claim.DUPLICATE, deduplicator.claim(DRIVER, "a"));
+        // A failure reported for a later copy does not forget the stored one
+        deduplicator.release(DRIVER, "a");
+        assertEquals(Claim.DUPLICATE, deduplicator.claim(DRIVER, "a"));
+        // IDs are per driver
+        assertEquals(Claim.NEW, deduplicator.claim("driver-2", "a"));
+    }
+
+    @Test
+    void copiesArrivingWhileTheFirstIsProcessedAreInProgress() throws Exception {
+        int copies = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(copies);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<Claim>> claims = new ArrayList<>();
+        try {
+            for (int i = 0; i < copies; i++) {
+                claims.add(pool.submit(() -> {
+                    go.await();
+                    return deduplicator.claim(DRIVER, "a");
+                }));
+            }
+            go.countDown();
+            int fresh = 0;
+            for (Future<Claim> claim : claims) {
+                Claim result = claim.get(10, TimeUnit.SECONDS);
+                if (result == Claim.NEW) {
+                    fresh++;
+                } else {
+                    assertEquals(Claim.IN_PROGRESS, result);
+                }
+            }
+            assertEquals(1, fresh);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(Claim.IN_PROGRESS, deduplicator.claim(DRIVER, "a"));
+    }
+
+    @Test
+    void releasedReportIsProcessedAgainOnRetry() {
+        assertEquals(Claim.NEW, deduplicator.claim(DRIVER, "a"));
+        // Storing the first attempt failed
+        deduplicator.release(DRIVER, "a");
+
+        assertEquals(Claim.NEW, deduplicator.claim(DRIVER, "a"));
+        deduplicator.complete(DRIVER, "a");
+        assertEquals(Claim.DUPLICATE, deduplicator.claim(DRIVER, "a"));
+        // Releasing or completing an unknown ID or driver does nothing
+        deduplicator.release("driver-2", "a");
+        deduplicator.complete(DRIVER, "unknown");
+        assertEquals(Claim.NEW, deduplicator.claim(DRIVER, "unknown"));
+    }
+
+    @Test
+    void oldestIdsAreForgottenBeyondTheCap() {
+        for (String id : List.of("a", "b", "c", "d")) {
+            assertEquals(Claim.NEW, deduplicator.claim(DRIVER, id));
+            deduplicator.complete(DRIVER, id);
+        }
+        // A fifth ID pushes out the oldest one
+        assertEquals(Claim.NEW, deduplicator.claim(DRIVER, "e"));
+
+        assertEquals(Claim.DUPLICATE, deduplicator.claim(DRIVER, "b"));
+        assertEquals(Claim.NEW, deduplicator.claim(DRIVER, "a"));
+    }
+
+    @Test
+    void idsOlderThanTheWindowAreForgotten() throws Exception {
+        ReflectionTestUtils.setField(deduplicator, "windowSeconds", 0L);
+        assertEquals(Claim.NEW, deduplicator.claim(DRIVER, "a"));
+        deduplicator.complete(DRIVER, "a");
+
+        Thread.sleep(20);
+
+        assertEquals(Claim.NEW, deduplicator.claim(DRIVER, "a"));
+    }
+}
@@ -0,0 +1,137 @@
+// What is this file?
+// Unit tests of the event export: CSV quoting, and events present both in an archive segment and in the
+// database, including a chunk the archiver deletes between the segment check and the database cursor.
+// Why is this needed?
+// Audits compare exports with the source rows: a broken CSV field or a missing or doubled event is a wrong
+// audit, and the overlap only exists while the archiver runs, so it never shows up in manual tests.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.model.ArchiveSegment;
+import com.drivermonitoring.model.Event;
+import com.drivermonitoring.repository.EventRepository;
+import com.drivermonitoring.service.EventExportService.Format;
+import com.drivermonitoring.util.EventSegmentFiles;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EventExportServiceTest {
+
+    private static final String DRIVER = "driver-1";
+    private static final LocalDateTime FROM = LocalDateTime.of(2026, 3, 1, 0, 0);
+    private static final LocalDateTime TO = LocalDateTime.of(2026, 3, 2, 0, 0);
+
+    @TempDir
+    Path archive;
+
+    private final EventRepository eventRepository = mock(EventRepository.class);
+    private final ArchivedEventQueryService archivedEventQueryService = mock(ArchivedEventQueryService.class);
+    private final EventExportService exportService = new EventExportService();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(exportService, "eventRepository", eventRepository);
+        ReflectionTestUtils.setField(exportService, "archivedEventQueryService", archivedEventQueryService);
+        ReflectionTestUtils.setField(exportService, "fetchSize", 100);
+        ReflectionTestUtils.setField(exportService, "maxConcurrent", 1);
+        exportService.init();
+    }
+
+    @Test
+    void csvQuotesFieldsWithSeparatorsQuotesAndLineBreaks() throws Exception {
+        Event event = event(1, 8);
+        event.setHeadDirection("left, down");
+        event.setFeatureSource("client\nv2");
+        event.setMetadata("{\"note\":\"eyes \\\"half\\\" closed\",\"blinkRate\":31.5}");
+        event.setEarValue(null);
+        databaseHolds(event);
+
+        String csv = export(Format.CSV);
+
+        String[] lines = csv.split("\n", 2);
+        assertEquals(14, lines[0].split(",").length);
+        assertEquals("1,7,driver-1,2026-03-01T08:00,2026-03-01T08:00:02,2.0,DROWSY,,,,\"left, down\",,\"client\nv2\","
+                + "\"{\"\"note\"\":\"\"eyes \\\"\"half\\\"\" closed\"\",\"\"blinkRate\"\":31.5}\"\n", lines[1]);
+    }
+
+    @Test
+    void eventsInASegmentAndInTheDatabaseAreWrittenOnce() throws Exception {
+        // Events 1-3 were archived; 2 and 3 are not deleted from the database yet, 4 was never archived
+        ArchiveSegment segment = segment(event(1, 8), event(2, 9), event(3, 10));
+        when(archivedEventQueryService.findSegmentsOverlapping(eq(DRIVER), eq(FROM), eq(TO))).thenReturn(List.of(segment));
+        when(eventRepository.findStoredEventIds(anyCollection(), any(), any())).thenReturn(Set.of(2L, 3L));
+        databaseHolds(event(2, 9), event(3, 10), event(4, 11));
+
+        assertEquals(List.of("1", "2", "3", "4"), exportedIds());
+    }
+
+    @Test
+    void chunkDeletedBeforeTheCursorReachesItIsWrittenFromTheSegment() throws Exception {
+        ArchiveSegment segment = segment(event(1, 8), event(2, 9), event(3, 10));
+        when(archivedEventQueryService.findSegmentsOverlapping(eq(DRIVER), eq(FROM), eq(TO))).thenReturn(List.of(segment));
+        // 2 and 3 were still stored when the segment was checked, then the archiver deleted 3
+        when(eventRepository.findStoredEventIds(anyCollection(), any(), any())).thenReturn(Set.of(2L, 3L));
+        databaseHolds(event(2, 9), event(4, 11));
+
+        assertEquals(List.of("1", "2", "4", "3"), exportedIds());
+    }
+
+    private List<String> exportedIds() throws Exception {
+        String[] lines = export(Format.CSV).split("\n");
+        return Arrays.stream(lines).skip(1).map(line -> line.substring(0, line.indexOf(','))).toList();
+    }
+
+    private String export(Format format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportService.export(DRIVER, FROM, TO, format, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    // The database cursor returns these events
+    @SuppressWarnings("unchecked")
+    private void databaseHolds(Event... events) {
+        doAnswer(invocation -> {
+            Consumer<Event> consumer = invocation.getArgument(4);
+            for (Event event : events) {
+                consumer.accept(event);
+            }
+            return null;
+        }).when(eventRepository).streamByStartTime(eq(DRIVER), eq(FROM), eq(TO), anyInt(), any(Consumer.class));
+    }
+
+    private ArchiveSegment segment(Event... events) throws Exception {
+        List<Event> list = List.of(events);
+        Path file = EventSegmentFiles.segmentPath(archive, FROM.toLocalDate(), DRIVER,
+                list.get(0).getEventId(), list.get(list.size() - 1).getEventId());
+        EventSegmentFiles.writeSegment(file, list);
+        return EventSegmentFiles.describe(file, list);
+    }
+
+    private static Event event(long eventId, int hour) {
+        Event event = new Event(7L, DRIVER, "DROWSY", 2.0f);
+        event.setEventId(eventId);
+        event.setStartTime(FROM.withHour(hour));
+        event.setEndTime(FROM.withHour(hour).plusSeconds(2));
+        return event;
+    }
+}
@@ -0,0 +1,262 @@
+// What is this file?
+// Crash-recovery tests of the event journal (ingest.mode=journal) and its projector: records are appended
+// to small segments, the files are damaged the way a crash or a bad disk leaves them, the journal is
+// reopened and the projector resumes from its checkpoint.
+// Why is this needed?
+// The journal promises that an acknowledged (fsynced) event reaches the database exactly once; recovery
+// code only runs after a crash, so it is exercised here rather than in production.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.model.Event;
+import com.drivermonitoring.model.JobCheckpoint;
+import com.drivermonitoring.repository.EventRepository;
+import com.drivermonitoring.repository.JobCheckpointRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EventJournalTest {
+
+    // Room for three or four records: the tests always span several segments
+    private static final long SMALL_SEGMENT_BYTES = 1024;
+    private static final long LARGE_SEGMENT_BYTES = 1024 * 1024;
+
+    @TempDir
+    Path directory;
+
+    private final List<EventJournal> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeJournals() throws InterruptedException {
+        for (EventJournal journal : opened) {
+            journal.shutdown();
+        }
+    }
+
+    @Test
+    void readsRecordsAcrossRolledSegmentsInOffsetOrder() throws Exception {
+        EventJournal journal = open(SMALL_SEGMENT_BYTES);
+        appendEvents(journal, 0, 30);
+
+        assertTrue(segmentFiles().size() > 3, "segments rolled: " + segmentFiles());
+        assertEquals(30, journal.getDurableOffset());
+        List<EventJournal.JournalEntry> entries = readAll(journal, 0);
+        assertEquals(30, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(i, entries.get(i).offset());
+            assertEquals(driverId(i), entries.get(i).event().getDriverId());
+        }
+
+        // Projected segments go away; reading from the checkpoint still finds its segment
+        int before = segmentFiles().size();
+        journal.deleteSegmentsBefore(15);
+        assertTrue(segmentFiles().size() < before);
+        assertEquals(offsets(15, 30), readAll(journal, 15).stream().map(EventJournal.JournalEntry::offset).collect(Collectors.toList()));
+    }
+
+    @Test
+    void recordWithBadChecksumEndsTheJournalOnReopen() throws Exception {
+        EventJournal journal = open(LARGE_SEGMENT_BYTES);
+        appendEvents(journal, 0, 5);
+        journal.shutdown();
+
+        // One flipped payload byte in the third record: it and everything after it are cut off
+        Path segment = lastSegment();
+        long thirdRecord = recordPosition(segment, 2);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer oneByte = ByteBuffer.allocate(1);
+            channel.read(oneByte, thirdRecord + 9);
+            oneByte.put(0, (byte) (oneByte.get(0) ^ 0x5A)).rewind();
+            channel.write(oneByte, thirdRecord + 9);
+        }
+
+        EventJournal reopened = open(LARGE_SEGMENT_BYTES);
+        assertEquals(2, reopened.getDurableOffset());
+        assertEquals(thirdRecord, Files.size(segment));
+        assertEquals(List.of(driverId(0), driverId(1)), driverIds(readAll(reopened, 0)));
+
+        // New records continue at the first lost offset
+        appendEvents(reopened, 100, 1);
+        assertEquals(List.of(driverId(0), driverId(1), driverId(100)), driverIds(readAll(reopened, 0)));
+    }
+
+    @Test
+    void replaysEveryFsyncedEventExactlyOnceAfterCrash() throws Exception {
+        EventJournal journal = open(SMALL_SEGMENT_BYTES);
+        appendEvents(journal, 0, 20);
+
+        // The database fails on the third batch: offsets 0-9 are projected and checkpointed
+        AtomicLong checkpoint = new AtomicLong(-1);
+        List<Event> stored = new ArrayList<>();
+        JournalProjector projector = projector(journal, checkpoint, stored, 3);
+        projector.project();
+        assertEquals(10, checkpoint.get());
+        assertEquals(10, stored.size());
+
+        // Crash while the next record was being written: half a record at the end of the last segment
+        journal.shutdown();
+        Path segment = lastSegment();
+        long durableSize = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer torn = ByteBuffer.allocate(8 + 40);
+            torn.putInt(200).putInt(12345).put(new byte[40]).flip();
+            channel.write(torn);
+        }
+
+        EventJournal reopened = open(SMALL_SEGMENT_BYTES);
+        assertEquals(durableSize, Files.size(segment));
+        assertEquals(20, reopened.getDurableOffset());
+
+        // A new projector (fresh process) resumes from the checkpoint, then picks up new records
+        JournalProjector restarted = projector(reopened, checkpoint, stored, 0);
+        restarted.project();
+        appendEvents(reopened, 20, 3);
+        restarted.project();
+
+        assertEquals(23, checkpoint.get());
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 23; i++) {
+            expected.add(driverId(i));
+        }
+        assertEquals(expected, stored.stream().map(Event::getDriverId).collect(Collectors.toList()));
+    }
+
+    private EventJournal open(long segmentSizeBytes) throws IOException {
+        EventJournal journal = new EventJournal();
+        ReflectionTestUtils.setField(journal, "ingestMode", EventJournal.MODE_JOURNAL);
+        ReflectionTestUtils.setField(journal, "journalDirectory", directory.toString());
+        ReflectionTestUtils.setField(journal, "segmentSizeBytes", segmentSizeBytes);
+        ReflectionTestUtils.setField(journal, "maxBatch", 16);
+        ReflectionTestUtils.setField(journal, "queueCapacity", 1000);
+        journal.init();
+        opened.add(journal);
+        return journal;
+    }
+
+    // Batches of 5 in one "transaction" each; the failing batch (1-based, 0 = none) throws before anything is stored
+    @SuppressWarnings("unchecked")
+    private JournalProjector projector(EventJournal journal, AtomicLong checkpoint, List<Event> stored, int failingBatch) {
+        EventRepository eventRepository = mock(EventRepository.class);
+        AtomicInteger batches = new AtomicInteger();
+        when(eventRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            if (batches.incrementAndGet() == failingBatch) {
+                throw new IllegalStateException("database unavailable");
+            }
+            stored.addAll(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+        JobCheckpointRepository checkpointRepository = mock(JobCheckpointRepository.class);
+        when(checkpointRepository.findById(JournalProjector.PROJECTOR_JOB)).thenAnswer(invocation -> checkpoint.get() < 0
+                ? Optional.empty()
+                : Optional.of(new JobCheckpoint(JournalProjector.PROJECTOR_JOB, null, null, checkpoint.get())));
+        when(checkpointRepository.save(any(JobCheckpoint.class))).thenAnswer(invocation -> {
+            checkpoint.set(invocation.<JobCheckpoint>getArgument(0).getOffsetValue());
+            return invocation.getArgument(0);
+        });
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any(Consumer.class));
+
+        JournalProjector projector = new JournalProjector();
+        ReflectionTestUtils.setField(projector, "eventJournal", journal);
+        ReflectionTestUtils.setField(projector, "eventRepository", eventRepository);
+        ReflectionTestUtils.setField(projector, "checkpointRepository", checkpointRepository);
+        ReflectionTestUtils.setField(projector, "eventRollupService", mock(EventRollupService.class));
+        ReflectionTestUtils.setField(projector, "alertLatencyTracker", mock(AlertLatencyTracker.class));
+        ReflectionTestUtils.setField(projector, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(projector, "batchSize", 5);
+        ReflectionTestUtils.setField(projector, "retryDelayMs", 0L);
+        return projector;
+    }
+
+    private static void appendEvents(EventJournal journal, int first, int count) throws Exception {
+        for (int i = first; i < first + count; i++) {
+            Event event = new Event(1L, driverId(i), "DROWSY", 1.5f);
+            journal.append(event).get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static List<EventJournal.JournalEntry> readAll(EventJournal journal, long fromOffset) throws IOException {
+        List<EventJournal.JournalEntry> entries = new ArrayList<>();
+        EventJournal.Cursor cursor = journal.cursorAt(fromOffset);
+        while (true) {
+            EventJournal.ReadResult result = journal.read(cursor, 7);
+            if (result.entries().isEmpty()) {
+                return entries;
+            }
+            entries.addAll(result.entries());
+            cursor = result.next();
+        }
+    }
+
+    // Byte position of the n-th record of a segment: [int length][int CRC32][payload]
+    private static long recordPosition(Path segment, int index) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            long position = 0;
+            ByteBuffer length = ByteBuffer.allocate(4);
+            for (int i = 0; i < index; i++) {
+                length.clear();
+                channel.read(length, position);
+                position += 8 + length.flip().getInt();
+            }
+            return position;
+        }
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".log")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private Path lastSegment() throws IOException {
+        List<Path> segments = segmentFiles();
+        return segments.get(segments.size() - 1);
+    }
+
+    private static List<String> driverIds(List<EventJournal.JournalEntry> entries) {
+        return entries.stream().map(entry -> entry.event().getDriverId()).collect(Collectors.toList());
+    }
+
+    private static List<Long> offsets(long from, long to) {
+        List<Long> offsets = new ArrayList<>();
+        for (long offset = from; offset < to; offset++) {
+            offsets.add(offset);
+        }
+        return offsets;
+    }
+
+    private static String driverId(int index) {
+        return "driver-" + index;
+    }
+}
@@ -0,0 +1,97 @@
+// What is this file?
+// Unit tests of the fleet risk ranking: exponential decay of the risk time, the query window, the n cap,
+// and ranking drivers that report their episodes on every frame (through ReportedTimeTracker).
+// Why is this needed?
+// /api/fleet/top-risk reads this index as is; with cumulative durations counted once per frame every
+// driver in an episode was pinned at a fraction of 1.0 and the list could not rank them.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.dto.DriverRiskDTO;
+import com.drivermonitoring.model.DriverState;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FleetRiskIndexTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2026, 3, 2, 8, 0);
+
+    private final FleetRiskIndex index = new FleetRiskIndex();
+
+    @Test
+    void ranksDriversReportingEpisodesOnEveryFrame() {
+        ReportedTimeTracker tracker = new ReportedTimeTracker();
+        reportEpisode(tracker, "short", BASE, 3.0f);
+        reportEpisode(tracker, "long", BASE, 6.0f);
+
+        List<DriverRiskDTO> top = index.topRisk(10, 1, BASE.plusSeconds(4));
+
+        assertEquals(List.of("long", "short"), driverIds(top));
+        // About 6 s and 3 s of the 60 s window, decayed by a few seconds
+        assertEquals(0.1f, top.get(0).getDrowsyFraction(), 0.01f);
+        assertEquals(0.05f, top.get(1).getDrowsyFraction(), 0.01f);
+    }
+
+    @Test
+    void riskTimeDecaysWithTheWindowAsTimeConstant() {
+        index.recordEvent("driver-1", DriverState.DROWSY, 12f, BASE);
+
+        assertEquals(0.2f, index.topRisk(1, 1, BASE).get(0).getRiskFraction(), 1e-4f);
+        // One window later: e^-1 of it
+        assertEquals(0.2f * Math.exp(-1), index.topRisk(1, 1, BASE.plusMinutes(1)).get(0).getRiskFraction(), 1e-4f);
+        // A later event is added to the decayed total
+        index.recordEvent("driver-1", DriverState.DISTRACTED, 6f, BASE.plusMinutes(1));
+        DriverRiskDTO risk = index.topRisk(1, 1, BASE.plusMinutes(1)).get(0);
+        assertEquals(0.1f, risk.getDistractedFraction(), 1e-4f);
+        assertEquals(0.2f * Math.exp(-1) + 0.1f, risk.getRiskFraction(), 1e-4f);
+    }
+
+    @Test
+    void windowSelectsTheRankingAndItsTimeConstant() {
+        // "recent" was drowsy a little just now, "earlier" a lot ten minutes ago
+        index.recordEvent("earlier", DriverState.DROWSY, 60f, BASE);
+        index.recordEvent("recent", DriverState.DROWSY, 3f, BASE.plusMinutes(10));
+        LocalDateTime now = BASE.plusMinutes(10);
+
+        assertEquals(List.of("recent", "earlier"), driverIds(index.topRisk(2, 1, now)));
+        assertEquals(List.of("earlier", "recent"), driverIds(index.topRisk(2, 30, now)));
+        assertEquals(3f / 300f, index.topRisk(2, 5, now).stream()
+                .filter(risk -> risk.getDriverId().equals("recent")).findFirst().orElseThrow().getRiskFraction(), 1e-4f);
+
+        assertTrue(index.isSupportedWindow(15));
+        assertFalse(index.isSupportedWindow(10));
+        assertThrows(IllegalArgumentException.class, () -> index.topRisk(2, 10, now));
+    }
+
+    @Test
+    void returnsAtMostNDriversHighestFirst() {
+        for (int i = 1; i <= 5; i++) {
+            index.recordEvent("driver-" + i, DriverState.DISTRACTED, i, BASE);
+        }
+        index.remove("driver-5");
+
+        assertEquals(List.of("driver-4", "driver-3", "driver-2"), driverIds(index.topRisk(3, 5, BASE)));
+        assertEquals(4, index.topRisk(10, 5, BASE).size());
+        assertTrue(index.topRisk(0, 5, BASE).isEmpty());
+    }
+
+    // A DROWSY episode reported from 2 s on every 40 ms until it lasted `seconds`, fed as the ingest path does
+    private void reportEpisode(ReportedTimeTracker tracker, String driverId, LocalDateTime seenAt, float seconds) {
+        for (long elapsed = 2000; elapsed <= Math.round(seconds * 1000); elapsed += 40) {
+            LocalDateTime at = seenAt.plusNanos((elapsed - 2000) * 1_000_000);
+            float added = tracker.addedSeconds(driverId, DriverState.DROWSY, elapsed / 1000f, at);
+            index.recordEvent(driverId, DriverState.DROWSY, added, at);
+        }
+    }
+
+    private static List<String> driverIds(List<DriverRiskDTO> risks) {
+        return risks.stream().map(DriverRiskDTO::getDriverId).toList();
+    }
+}
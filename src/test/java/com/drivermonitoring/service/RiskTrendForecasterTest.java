@@ -0,0 +1,98 @@
+// What is this file?
+// Unit tests of the risk trend forecast fed the way the driver page reports episodes: one report per frame
+// with the growing cumulative duration, passed through ReportedTimeTracker as the ingest path does.
+// Why is this needed?
+// Fed the cumulative durations directly, every second of an episode was counted once per frame, the minute
+// score saturated and "minutes until HIGH" was always 0.
+
+package com.drivermonitoring.service;
+
+import com.drivermonitoring.model.DriverState;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RiskTrendForecasterTest {
+
+    private static final String DRIVER = "driver-1";
+    private static final LocalDateTime BASE = LocalDateTime.of(2026, 3, 2, 8, 0);
+    // The page reports DROWSY once the eyes were closed for 2 s, then on every frame (25 fps here)
+    private static final float FIRST_REPORT_SECONDS = 2.0f;
+    private static final long FRAME_MILLIS = 40;
+
+    @Test
+    void overlappingCumulativeReportsCountEachSecondOnce() {
+        ReportedTimeTracker tracker = new ReportedTimeTracker();
+        RiskTrendForecaster forecaster = new RiskTrendForecaster();
+
+        float added = reportEpisode(tracker, forecaster, BASE.plusSeconds(10), 3.0f);
+
+        assertEquals(3.0f, added, 0.001f);
+        // 3 s of 60 is half the HIGH threshold (10% of the minute)
+        assertEquals(RiskTrendForecaster.MAX_FORECAST_MINUTES, forecaster.estimateMinutesUntilHigh(DRIVER, BASE.plusMinutes(1)));
+    }
+
+    @Test
+    void risingEpisodesGiveAFiniteForecast() {
+        ReportedTimeTracker tracker = new ReportedTimeTracker();
+        RiskTrendForecaster forecaster = new RiskTrendForecaster();
+        RiskTrendForecaster fedCumulative = new RiskTrendForecaster();
+
+        // Minute scores 0.24, 0.36, 0.48: level 0.399, trend 0.0423 -> 5 minutes to 0.6
+        float[] episodeSeconds = {2.4f, 3.6f, 4.8f};
+        for (int minute = 0; minute < episodeSeconds.length; minute++) {
+            LocalDateTime closedAt = BASE.plusMinutes(minute).plusSeconds(10);
+            reportEpisode(tracker, forecaster, closedAt, episodeSeconds[minute]);
+            // The same reports with their own durations, as they were fed before
+            forEachReport(closedAt, episodeSeconds[minute], (duration, at) ->
+                    fedCumulative.recordEvent(DRIVER, DriverState.DROWSY, duration, at));
+        }
+
+        assertEquals(5, forecaster.estimateMinutesUntilHigh(DRIVER, BASE.plusMinutes(3)));
+        assertEquals(0, fedCumulative.estimateMinutesUntilHigh(DRIVER, BASE.plusMinutes(3)));
+    }
+
+    @Test
+    void lateAndRepeatedReportsAddNothing() {
+        ReportedTimeTracker tracker = new ReportedTimeTracker();
+        LocalDateTime at = BASE.plusSeconds(30);
+
+        assertEquals(2.0f, tracker.addedSeconds(DRIVER, DriverState.DROWSY, 2.0f, at), 0.001f);
+        assertEquals(0f, tracker.addedSeconds(DRIVER, DriverState.DROWSY, 2.0f, at), 0.001f);
+        // Arrived out of order: covered by the report above
+        assertEquals(0f, tracker.addedSeconds(DRIVER, DriverState.DROWSY, 1.0f, at.minusNanos(500_000_000)), 0.001f);
+        // Another state has its own time
+        assertEquals(1.5f, tracker.addedSeconds(DRIVER, DriverState.DISTRACTED, 1.5f, at), 0.001f);
+        // A new episode after a pause counts in full
+        assertEquals(2.0f, tracker.addedSeconds(DRIVER, DriverState.DROWSY, 2.0f, at.plusSeconds(10)), 0.001f);
+
+        tracker.reset(DRIVER);
+        assertEquals(2.0f, tracker.addedSeconds(DRIVER, DriverState.DROWSY, 2.0f, at), 0.001f);
+    }
+
+    // Reports a DROWSY episode of `seconds` that the page first saw at closedAt; returns the time fed
+    private static float reportEpisode(ReportedTimeTracker tracker, RiskTrendForecaster forecaster,
+                                       LocalDateTime closedAt, float seconds) {
+        float[] total = {0f};
+        forEachReport(closedAt, seconds, (duration, at) -> {
+            float added = tracker.addedSeconds(DRIVER, DriverState.DROWSY, duration, at);
+            forecaster.recordEvent(DRIVER, DriverState.DROWSY, added, at);
+            total[0] += added;
+        });
+        return total[0];
+    }
+
+    // One report per frame from the first report until the episode lasted `seconds`
+    private static void forEachReport(LocalDateTime closedAt, float seconds, Report report) {
+        long last = Math.round(seconds * 1000);
+        for (long elapsed = Math.round(FIRST_REPORT_SECONDS * 1000); elapsed <= last; elapsed += FRAME_MILLIS) {
+            report.accept(elapsed / 1000f, closedAt.plusNanos(elapsed * 1_000_000));
+        }
+    }
+
+    private interface Report {
+        void accept(float duration, LocalDateTime at);
+    }
+}
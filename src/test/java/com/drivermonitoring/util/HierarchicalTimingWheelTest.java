@@ -0,0 +1,127 @@
+// What is this file?
+// Unit tests of the hierarchical timing wheel on a fake clock (the tests pass the time in milliseconds).
+// A small wheel (4 slots, 3 levels = 64 ticks) makes every deadline cross level boundaries and cascade.
+// Why is this needed?
+// Session liveness and the coalescer's gap deadlines rely on keys expiring on time, neither early nor
+// missed, after any number of reschedules; the cascading between levels is easy to get wrong.
+
+package com.drivermonitoring.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HierarchicalTimingWheelTest {
+
+    private static final long TICK = 10;
+    private static final int SLOTS = 4;
+    private static final int LEVELS = 3;
+    // Not aligned to a turn of any level
+    private static final long START = 1_000_037;
+
+    @Test
+    void expiresEveryDeadlineExactlyOnTimeAcrossLevels() {
+        HierarchicalTimingWheel<Integer> wheel = new HierarchicalTimingWheel<>(TICK, SLOTS, LEVELS, START);
+        // Deadlines 1..150 ticks ahead: level 0, level 1, level 2 and past the top level (64 ticks)
+        for (int ticks = 1; ticks <= 150; ticks++) {
+            wheel.schedule(ticks, at(ticks));
+        }
+        for (int ticks = 1; ticks <= 150; ticks++) {
+            assertEquals(List.of(ticks), wheel.advance(at(ticks)), "tick " + ticks);
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void deadlinePushedLaterIsNotExpiredAtTheOldOne() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, SLOTS, LEVELS, START);
+        wheel.schedule("driver", at(5));
+        assertTrue(wheel.advance(at(3)).isEmpty());
+        // From level 0 to a level 2 deadline; the entry stays in its old slot and is re-placed from there
+        wheel.schedule("driver", at(40));
+
+        assertTrue(wheel.advance(at(39)).isEmpty());
+        assertTrue(wheel.contains("driver"));
+        assertEquals(List.of("driver"), wheel.advance(at(40)));
+    }
+
+    @Test
+    void deadlineMovedEarlierExpiresOnceAtTheNewOne() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, SLOTS, LEVELS, START);
+        wheel.schedule("driver", at(50));
+        wheel.schedule("driver", at(6));
+
+        assertTrue(wheel.advance(at(5)).isEmpty());
+        assertEquals(List.of("driver"), wheel.advance(at(6)));
+        // The slot of the original deadline no longer holds it
+        assertTrue(wheel.advance(at(100)).isEmpty());
+        assertFalse(wheel.contains("driver"));
+    }
+
+    @Test
+    void deadlinePastTheTopLevelWaitsAndIsRePlaced() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, SLOTS, LEVELS, START);
+        // 1000 ticks: more than 15 turns of the 64-tick wheel
+        wheel.schedule("far", at(1000));
+        wheel.schedule("near", at(70));
+
+        // Advanced in uneven steps, as the scheduler does
+        List<String> expired = new ArrayList<>();
+        long now = at(0);
+        while (now < at(999)) {
+            now = Math.min(now + 37, at(999));
+            for (String key : wheel.advance(now)) {
+                assertTrue(now >= at(70) && key.equals("near"), key + " expired at " + now);
+                expired.add(key);
+            }
+        }
+        assertEquals(List.of("near"), expired);
+        assertTrue(wheel.contains("far"));
+        assertEquals(List.of("far"), wheel.advance(at(1000)));
+    }
+
+    @Test
+    void matchesReferenceUnderRandomReschedulesAndCancels() {
+        Random random = new Random(42);
+        HierarchicalTimingWheel<Integer> wheel = new HierarchicalTimingWheel<>(TICK, SLOTS, LEVELS, START);
+        // Reference: key -> deadline in ms (always a whole tick, at least one tick ahead)
+        Map<Integer, Long> deadlines = new HashMap<>();
+        long now = START;
+        for (int step = 0; step < 5000; step++) {
+            int key = random.nextInt(100);
+            int action = random.nextInt(10);
+            if (action < 7) {
+                long deadline = (now / TICK + 1 + random.nextInt(200)) * TICK;
+                wheel.schedule(key, deadline);
+                deadlines.put(key, deadline);
+            } else if (action < 8) {
+                assertEquals(deadlines.remove(key) != null, wheel.cancel(key));
+            }
+
+            now += random.nextInt(3) == 0 ? random.nextInt(300) : random.nextInt(2 * (int) TICK);
+            List<Integer> expected = new ArrayList<>();
+            for (Map.Entry<Integer, Long> entry : deadlines.entrySet()) {
+                if (entry.getValue() <= now - now % TICK) {
+                    expected.add(entry.getKey());
+                }
+            }
+            expected.forEach(deadlines::remove);
+            List<Integer> expired = wheel.advance(now);
+            assertEquals(expected.stream().sorted().toList(), expired.stream().sorted().toList(), "step " + step);
+            assertEquals(deadlines.size(), wheel.size());
+        }
+    }
+
+    // Start of the n-th tick after START
+    private static long at(long ticks) {
+        return (START / TICK + ticks) * TICK;
+    }
+}
@@ -0,0 +1,51 @@
+// What is this file?
+// Unit tests of the sampled logger's per-key windows: keys without messages for a whole window are dropped.
+// Why is this needed?
+// Ingest and the detection endpoint sample their logs per driver; the windows of drivers that left must
+// not stay in memory for the life of the process.
+
+package com.drivermonitoring.util;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SampledLoggerTest {
+
+    private static final long WINDOW_MILLIS = 50;
+
+    @Test
+    void dropsKeysIdleForAWholeWindow() throws Exception {
+        SampledLogger sampled = new SampledLogger(LoggerFactory.getLogger(SampledLoggerTest.class), 1, Duration.ofMillis(WINDOW_MILLIS));
+        for (int i = 0; i < 100; i++) {
+            sampled.info("driver-" + i, "report {}", i);
+            sampled.info("driver-" + i, "suppressed report {}", i);
+        }
+        assertEquals(100, sampled.getTrackedKeyCount());
+
+        Thread.sleep(WINDOW_MILLIS * 3);
+        sampled.info("driver-0", "report after the pause");
+
+        assertEquals(1, sampled.getTrackedKeyCount());
+        // A dropped key starts a new window when it comes back
+        sampled.info("driver-1", "report after the pause");
+        assertEquals(2, sampled.getTrackedKeyCount());
+    }
+
+    @Test
+    void keepsKeysWithRecentMessages() throws Exception {
+        SampledLogger sampled = new SampledLogger(LoggerFactory.getLogger(SampledLoggerTest.class), 1, Duration.ofMillis(WINDOW_MILLIS));
+        sampled.info("active", "report");
+        sampled.info("idle", "report");
+        // "active" keeps reporting; each pause is shorter than a window
+        for (int i = 0; i < 6; i++) {
+            Thread.sleep(WINDOW_MILLIS / 2);
+            sampled.info("active", "report {}", i);
+        }
+
+        assertEquals(1, sampled.getTrackedKeyCount());
+    }
+}